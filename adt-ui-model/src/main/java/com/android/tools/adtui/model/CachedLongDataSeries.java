@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Keeps the points of a growing {@link DataSeries} (e.g. one backed by the profilers' datastore) in a {@link LongDataSeries} with a
+ * level-of-detail index. Each query only asks the source for the points after the last one cached, and is then answered from the cache,
+ * so a line chart costs about the same at any zoom level.
+ *
+ * Points may reach the source late, up to lateDataWindow before its last point: each query that asks the source for new points also
+ * asks again for that window, and the cached points from the first difference on are replaced.
+ *
+ * The cache holds at most {@link #MAX_CACHED_POINTS} points. When it is full, it is emptied and starts again at the range being queried;
+ * ranges starting before the cache are then answered straight from the source.
+ *
+ * The source must keep its points in increasing x order, with non-negative x values, and only add points after its last one or within
+ * lateDataWindow before it.
+ */
+public class CachedLongDataSeries implements PrimitiveDataSeries<Long> {
+  static final int MAX_CACHED_POINTS = 1 << 20;
+
+  @NotNull private final DataSeries<Long> mySource;
+  private final long myLateDataWindow;
+  @NotNull private final LongDataSeries myCache = new LongDataSeries(true);
+  /**
+   * The x from which the cache holds every point of the source.
+   */
+  private long myCacheStartX = 0;
+  /**
+   * Holds the points of queries that start before {@link #myCacheStartX}.
+   */
+  @NotNull private LongDataSeries myUncached = new LongDataSeries();
+
+  public CachedLongDataSeries(@NotNull DataSeries<Long> source) {
+    this(source, 0);
+  }
+
+  /**
+   * @param lateDataWindow how far, in x, before the last point of the source new points may still be added
+   */
+  public CachedLongDataSeries(@NotNull DataSeries<Long> source, long lateDataWindow) {
+    mySource = source;
+    myLateDataWindow = lateDataWindow;
+  }
+
+  @Override
+  public List<SeriesData<Long>> getDataForXRange(Range xRange) {
+    return fetch(xRange) ? myCache.getDataForXRange(xRange) : mySource.getDataForXRange(xRange);
+  }
+
+  @NotNull
+  @Override
+  public SeriesDataView getDataViewForXRange(@NotNull Range xRange) {
+    return getSeries(xRange).getDataViewForXRange(xRange);
+  }
+
+  @NotNull
+  @Override
+  public SeriesDataView getDataViewForXRange(@NotNull Range xRange, int minPointCount) {
+    return getSeries(xRange).getDataViewForXRange(xRange, minPointCount);
+  }
+
+  @Override
+  public double getMaxYForXRange(@NotNull Range xRange) {
+    return getSeries(xRange).getMaxYForXRange(xRange);
+  }
+
+  @NotNull
+  private LongDataSeries getSeries(@NotNull Range xRange) {
+    if (fetch(xRange)) {
+      return myCache;
+    }
+    myUncached = new LongDataSeries();
+    for (SeriesData<Long> data : mySource.getDataForXRange(xRange)) {
+      myUncached.add(data.x, data.value.longValue());
+    }
+    return myUncached;
+  }
+
+  /**
+   * Brings the cache up to date with the source up to the end of the given range.
+   *
+   * @return false if the range starts before the points held by the cache, true if the cache can answer the query.
+   */
+  private boolean fetch(@NotNull Range xRange) {
+    if (xRange.isEmpty()) {
+      return true;
+    }
+    if (xRange.getMin() < myCacheStartX) {
+      return false;
+    }
+    if (myCache.size() >= MAX_CACHED_POINTS) {
+      myCache.removeFrom(0);
+      myCacheStartX = (long)xRange.getMin();
+    }
+
+    long lastX = myCache.size() == 0 ? -1 : myCache.getX(myCache.size() - 1);
+    if (xRange.getMax() <= lastX) {
+      return true;
+    }
+    // Start the request at the last cached point rather than after it, so that sources that derive a point from its predecessor have it,
+    // and also ask again for the points that may have been added late.
+    long requestMin = Math.max(myCacheStartX, lastX - myLateDataWindow);
+    int index = myCache.size() == 0 ? 0 : myCache.getNearestXIndex(requestMin);
+    if (index < myCache.size() && myCache.getX(index) < requestMin) {
+      index++;
+    }
+    for (SeriesData<Long> data : mySource.getDataForXRange(new Range(requestMin, xRange.getMax()))) {
+      if (data.x < requestMin) {
+        continue;
+      }
+      long value = data.value.longValue();
+      if (index < myCache.size()) {
+        if (myCache.getX(index) == data.x && myCache.getY(index) == value) {
+          index++;
+          continue;
+        }
+        // The source changed since the points were cached, e.g. because some points arrived late: replace them.
+        myCache.removeFrom(index);
+      }
+      if (myCache.size() == 0 || data.x > myCache.getX(myCache.size() - 1)) {
+        myCache.add(data.x, value);
+        index = myCache.size();
+      }
+    }
+    // Cached points that the source no longer returns are removed too.
+    myCache.removeFrom(index);
+    return true;
+  }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TDoubleArrayList;
+import org.jetbrains.annotations.NotNull;
+
+public class DoubleDataSeries extends BaseDataSeries<Double> implements PrimitiveDataSeries<Double> {
+
+  @NotNull
+  private final TDoubleArrayList mY = new TDoubleArrayList();
+
+  @NotNull
+  private final SeriesDataView myView = new SeriesDataView() {
+    @Override
+    protected long getXAt(int seriesIndex) {
+      return mX.get(seriesIndex);
+    }
+
+    @Override
+    protected double getYAt(int seriesIndex) {
+      return mY.get(seriesIndex);
+    }
+  };
+
+  @Override
+  public void add(long x, Double y) {
+    add(x, y.doubleValue());
+  }
+
+  public void add(long x, double y) {
+    mX.add(x);
+    mY.add(y);
+  }
+
+  @Override
+  public Double getY(int index) {
+    return mY.get(index);
+  }
+
+  @NotNull
+  @Override
+  public SeriesDataView getDataViewForXRange(@NotNull Range xRange) {
+    updateView(myView, xRange);
+    return myView;
+  }
+}
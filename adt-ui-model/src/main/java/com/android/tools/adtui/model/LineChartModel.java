@@ -47,15 +47,25 @@ public class LineChartModel extends AspectModel<LineChartModel.Aspect> implement
       Range range = ranged.getYRange();
       double yMax = -Double.MAX_VALUE;
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
-      if (seriesList.isEmpty()) {
-        continue;
+      DataSeries<Long> dataSeries = ranged.getDataSeries();
+      if (dataSeries instanceof PrimitiveDataSeries) {
+        // Series with a level-of-detail index find the max of the range without reading all its points
+        yMax = ((PrimitiveDataSeries<Long>)dataSeries).getMaxYForXRange(ranged.getXRange());
+        if (yMax == -Double.MAX_VALUE) {
+          continue;
+        }
       }
+      else {
+        List<SeriesData<Long>> seriesList = ranged.getSeries();
+        if (seriesList.isEmpty()) {
+          continue;
+        }
 
-      for (SeriesData<Long> series : seriesList) {
-        double value = series.value;
-        if (yMax < value) {
-          yMax = value;
+        for (SeriesData<Long> series : seriesList) {
+          double value = series.value;
+          if (yMax < value) {
+            yMax = value;
+          }
         }
       }
 
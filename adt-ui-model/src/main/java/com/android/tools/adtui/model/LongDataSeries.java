@@ -17,20 +17,111 @@ package com.android.tools.adtui.model;
 
 import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-public class LongDataSeries extends BaseDataSeries<Long> {
+public class LongDataSeries extends BaseDataSeries<Long> implements PrimitiveDataSeries<Long> {
 
   @NotNull
   private final TLongArrayList mY = new TLongArrayList();
 
+  @Nullable
+  private final MinMaxPyramid myPyramid;
+
+  @NotNull
+  private final SeriesDataView myView = new SeriesDataView() {
+    @Override
+    protected long getXAt(int seriesIndex) {
+      return mX.get(seriesIndex);
+    }
+
+    @Override
+    protected double getYAt(int seriesIndex) {
+      return mY.get(seriesIndex);
+    }
+
+    @Override
+    protected long getLongYAt(int seriesIndex) {
+      return mY.get(seriesIndex);
+    }
+  };
+
+  public LongDataSeries() {
+    this(false);
+  }
+
+  /**
+   * @param withLevelOfDetail if true, a min/max level-of-detail index is maintained alongside the points, so that range queries made with
+   *                          a point count (see {@link #getDataViewForXRange(Range, int)}) cost about the same at any zoom level.
+   */
+  public LongDataSeries(boolean withLevelOfDetail) {
+    myPyramid = withLevelOfDetail ? new MinMaxPyramid() : null;
+  }
+
   @Override
   public void add(long x, Long y) {
+    add(x, y.longValue());
+  }
+
+  public void add(long x, long y) {
     mX.add(x);
     mY.add(y);
+    if (myPyramid != null) {
+      myPyramid.add(x, y);
+    }
   }
 
   @Override
   public Long getY(int index) {
     return mY.get(index);
   }
+
+  @NotNull
+  @Override
+  public SeriesDataView getDataViewForXRange(@NotNull Range xRange) {
+    updateView(myView, xRange);
+    return myView;
+  }
+
+  @NotNull
+  @Override
+  public SeriesDataView getDataViewForXRange(@NotNull Range xRange, int minPointCount) {
+    SeriesDataView view = getDataViewForXRange(xRange);
+    if (myPyramid == null || view.size() <= minPointCount) {
+      return view;
+    }
+    int fromIndex = getNearestXIndex((long)xRange.getMin());
+    SeriesDataView levelView = myPyramid.getView(fromIndex, fromIndex + view.size(), minPointCount);
+    return levelView != null ? levelView : view;
+  }
+
+  @Override
+  public double getMaxYForXRange(@NotNull Range xRange) {
+    if (size() == 0 || xRange.isEmpty()) {
+      return -Double.MAX_VALUE;
+    }
+    int fromIndex = getNearestXIndex((long)xRange.getMin());
+    int toIndex = getNearestXIndex((long)xRange.getMax()) + 1;
+    if (myPyramid != null) {
+      return myPyramid.getMaxY(fromIndex, toIndex, mY);
+    }
+    long max = Long.MIN_VALUE;
+    for (int i = fromIndex; i < toIndex; i++) {
+      max = Math.max(max, mY.get(i));
+    }
+    return max;
+  }
+
+  /**
+   * Removes the points from the given index to the end of the series.
+   */
+  void removeFrom(int index) {
+    if (index >= size()) {
+      return;
+    }
+    mX.remove(index, size() - index);
+    mY.remove(index, mY.size() - index);
+    if (myPyramid != null) {
+      myPyramid.truncate(index, mX, mY);
+    }
+  }
 }
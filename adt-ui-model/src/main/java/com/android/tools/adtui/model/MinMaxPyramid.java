@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Level-of-detail index over the points of a {@link LongDataSeries}. Level k summarizes each run of 2^k consecutive points by its first,
+ * minimum, maximum and last point, so drawing a level keeps the same envelope (and the same y range) as drawing every point, which is
+ * all a per-pixel min/max reducer would keep anyway. Levels are maintained incrementally as points are appended.
+ */
+final class MinMaxPyramid {
+  /**
+   * Finest level kept. Each bucket yields 4 points, so coarser levels are needed for any reduction; starting at 16 points per bucket
+   * keeps the index at about one long per raw point.
+   */
+  static final int MIN_LEVEL = 4;
+  private static final int POINTS_PER_BUCKET = 4;
+
+  private final List<Level> myLevels = new ArrayList<>();
+  private int myPointCount;
+
+  void add(long x, long y) {
+    int index = myPointCount++;
+    if (myLevels.isEmpty()) {
+      myLevels.add(new Level(MIN_LEVEL));
+    }
+    Level coarsest = myLevels.get(myLevels.size() - 1);
+    if (index == 1 << (coarsest.myShift + 1)) {
+      // The coarsest level is about to get a third bucket, so the next level would now have two: build it from the first two buckets.
+      myLevels.add(coarsest.mergePairIntoNextLevel());
+    }
+    for (Level level : myLevels) {
+      level.add(index, x, y);
+    }
+  }
+
+  /**
+   * @return a view over the coarsest level that still has at least minPointCount buckets between the raw point indices
+   * [fromIndex, toIndex), or null if the raw points should be used.
+   */
+  @Nullable
+  SeriesDataView getView(int fromIndex, int toIndex, int minPointCount) {
+    int count = toIndex - fromIndex;
+    if (minPointCount <= 0 || count <= 0) {
+      return null;
+    }
+    for (int i = myLevels.size() - 1; i >= 0; i--) {
+      Level level = myLevels.get(i);
+      if ((count >> level.myShift) >= minPointCount) {
+        int fromBucket = fromIndex >> level.myShift;
+        int toBucket = ((toIndex - 1) >> level.myShift) + 1;
+        level.setIndexRange(fromBucket * POINTS_PER_BUCKET, toBucket * POINTS_PER_BUCKET);
+        return level;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the largest y value of the raw points [fromIndex, toIndex), whose y values are given. The range is covered by the largest
+   * buckets that fit entirely inside it, so only the raw points at its edges that are not aligned on a bucket of the finest level are read.
+   */
+  long getMaxY(int fromIndex, int toIndex, @NotNull TLongArrayList y) {
+    long max = Long.MIN_VALUE;
+    int index = fromIndex;
+    while (index < toIndex) {
+      Level bucketLevel = null;
+      for (int i = myLevels.size() - 1; i >= 0; i--) {
+        Level level = myLevels.get(i);
+        int bucketSize = 1 << level.myShift;
+        if ((index & (bucketSize - 1)) == 0 && index + bucketSize <= toIndex && (index >> level.myShift) < level.myMaxY.size()) {
+          bucketLevel = level;
+          break;
+        }
+      }
+      if (bucketLevel != null) {
+        max = Math.max(max, bucketLevel.myMaxY.get(index >> bucketLevel.myShift));
+        index += 1 << bucketLevel.myShift;
+      }
+      else {
+        max = Math.max(max, y.get(index));
+        index++;
+      }
+    }
+    return max;
+  }
+
+  /**
+   * Drops the points from pointCount on, given the x and y values of the points that are kept.
+   */
+  void truncate(int pointCount, @NotNull TLongArrayList x, @NotNull TLongArrayList y) {
+    if (pointCount >= myPointCount) {
+      return;
+    }
+    myPointCount = pointCount;
+    if (pointCount == 0) {
+      myLevels.clear();
+      return;
+    }
+    // A level (other than the finest) is created when the point at index 2^shift is added, see add().
+    while (myLevels.size() > 1 && pointCount <= 1 << myLevels.get(myLevels.size() - 1).myShift) {
+      myLevels.remove(myLevels.size() - 1);
+    }
+    for (Level level : myLevels) {
+      int bucket = pointCount >> level.myShift;
+      level.removeFrom(bucket);
+      for (int i = bucket << level.myShift; i < pointCount; i++) {
+        level.add(i, x.get(i), y.get(i));
+      }
+    }
+  }
+
+  /**
+   * One level of the pyramid, which is also the view handed out for it. Bucket b exposes 4 points: its first point, its min and max
+   * points in x order, and its last point. Small or flat buckets may expose the same point more than once.
+   */
+  private static final class Level extends SeriesDataView {
+    private final int myShift;
+    private final TLongArrayList myFirstX = new TLongArrayList();
+    private final TLongArrayList myFirstY = new TLongArrayList();
+    private final TLongArrayList myMinX = new TLongArrayList();
+    private final TLongArrayList myMinY = new TLongArrayList();
+    private final TLongArrayList myMaxX = new TLongArrayList();
+    private final TLongArrayList myMaxY = new TLongArrayList();
+    private final TLongArrayList myLastX = new TLongArrayList();
+    private final TLongArrayList myLastY = new TLongArrayList();
+
+    private Level(int shift) {
+      myShift = shift;
+    }
+
+    private void add(int index, long x, long y) {
+      int bucket = index >> myShift;
+      if (bucket == myFirstX.size()) {
+        myFirstX.add(x);
+        myFirstY.add(y);
+        myMinX.add(x);
+        myMinY.add(y);
+        myMaxX.add(x);
+        myMaxY.add(y);
+        myLastX.add(x);
+        myLastY.add(y);
+        return;
+      }
+      if (y < myMinY.get(bucket)) {
+        myMinX.set(bucket, x);
+        myMinY.set(bucket, y);
+      }
+      if (y > myMaxY.get(bucket)) {
+        myMaxX.set(bucket, x);
+        myMaxY.set(bucket, y);
+      }
+      myLastX.set(bucket, x);
+      myLastY.set(bucket, y);
+    }
+
+    private void removeFrom(int bucket) {
+      int count = myFirstX.size() - bucket;
+      if (count <= 0) {
+        return;
+      }
+      for (TLongArrayList list : new TLongArrayList[]{myFirstX, myFirstY, myMinX, myMinY, myMaxX, myMaxY, myLastX, myLastY}) {
+        list.remove(bucket, count);
+      }
+    }
+
+    @NotNull
+    private Level mergePairIntoNextLevel() {
+      Level next = new Level(myShift + 1);
+      next.myFirstX.add(myFirstX.get(0));
+      next.myFirstY.add(myFirstY.get(0));
+      int min = myMinY.get(1) < myMinY.get(0) ? 1 : 0;
+      next.myMinX.add(myMinX.get(min));
+      next.myMinY.add(myMinY.get(min));
+      int max = myMaxY.get(1) > myMaxY.get(0) ? 1 : 0;
+      next.myMaxX.add(myMaxX.get(max));
+      next.myMaxY.add(myMaxY.get(max));
+      next.myLastX.add(myLastX.get(1));
+      next.myLastY.add(myLastY.get(1));
+      return next;
+    }
+
+    @Override
+    protected long getXAt(int seriesIndex) {
+      int bucket = seriesIndex / POINTS_PER_BUCKET;
+      switch (seriesIndex % POINTS_PER_BUCKET) {
+        case 0:
+          return myFirstX.get(bucket);
+        case 1:
+          return Math.min(myMinX.get(bucket), myMaxX.get(bucket));
+        case 2:
+          return Math.max(myMinX.get(bucket), myMaxX.get(bucket));
+        default:
+          return myLastX.get(bucket);
+      }
+    }
+
+    @Override
+    protected double getYAt(int seriesIndex) {
+      return getLongYAt(seriesIndex);
+    }
+
+    @Override
+    protected long getLongYAt(int seriesIndex) {
+      int bucket = seriesIndex / POINTS_PER_BUCKET;
+      boolean minFirst = myMinX.get(bucket) <= myMaxX.get(bucket);
+      switch (seriesIndex % POINTS_PER_BUCKET) {
+        case 0:
+          return myFirstY.get(bucket);
+        case 1:
+          return minFirst ? myMinY.get(bucket) : myMaxY.get(bucket);
+        case 2:
+          return minFirst ? myMaxY.get(bucket) : myMinY.get(bucket);
+        default:
+          return myLastY.get(bucket);
+      }
+    }
+  }
+}
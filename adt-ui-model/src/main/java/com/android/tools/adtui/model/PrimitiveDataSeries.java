@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A {@link DataSeries} that keeps its points in primitive arrays and can expose a range of them without boxing.
+ */
+public interface PrimitiveDataSeries<E> extends DataSeries<E> {
+  /**
+   * @return a view over the same points {@link #getDataForXRange(Range)} would return. The view is owned and reused by the series.
+   */
+  @NotNull
+  SeriesDataView getDataViewForXRange(@NotNull Range xRange);
+
+  /**
+   * Like {@link #getDataViewForXRange(Range)}, for a consumer that can only show about minPointCount points (e.g. a chart that is
+   * minPointCount pixels wide). Series that keep a level-of-detail index may return fewer points than the range contains, as long as
+   * there are at least minPointCount of them and they keep the range's per-bucket min and max.
+   */
+  @NotNull
+  default SeriesDataView getDataViewForXRange(@NotNull Range xRange, int minPointCount) {
+    return getDataViewForXRange(xRange);
+  }
+
+  /**
+   * @return the largest y value of the points {@link #getDataViewForXRange(Range)} would return, or -Double.MAX_VALUE if there are none.
+   * Series that keep a level-of-detail index can answer without reading every point of the range.
+   */
+  default double getMaxYForXRange(@NotNull Range xRange) {
+    SeriesDataView view = getDataViewForXRange(xRange);
+    double max = -Double.MAX_VALUE;
+    for (int i = 0; i < view.size(); i++) {
+      max = Math.max(max, view.getY(i));
+    }
+    return max;
+  }
+}
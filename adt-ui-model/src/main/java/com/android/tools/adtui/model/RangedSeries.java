@@ -16,6 +16,7 @@
 package com.android.tools.adtui.model;
 
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.List;
 
@@ -50,6 +51,27 @@ public class RangedSeries<E> {
     return mSeries.getDataForXRange(mXRange);
   }
 
+  /**
+   * @return a boxing-free view of the same points as {@link #getSeries()} if the underlying series is a {@link PrimitiveDataSeries},
+   * null otherwise. The view is reused by the series, see {@link SeriesDataView}.
+   */
+  @Nullable
+  public SeriesDataView getSeriesView() {
+    return mSeries instanceof PrimitiveDataSeries ? ((PrimitiveDataSeries<E>)mSeries).getDataViewForXRange(mXRange) : null;
+  }
+
+  /**
+   * Same as {@link #getSeriesView()}, for a consumer that can only show about minPointCount points. Series with a level-of-detail index
+   * may then return a min/max summary of the range instead of every point in it,
+   * see {@link PrimitiveDataSeries#getDataViewForXRange(Range, int)}.
+   */
+  @Nullable
+  public SeriesDataView getSeriesView(int minPointCount) {
+    return mSeries instanceof PrimitiveDataSeries
+           ? ((PrimitiveDataSeries<E>)mSeries).getDataViewForXRange(mXRange, minPointCount)
+           : null;
+  }
+
   /**
    * @return The {@link Range} object that represents the xRange of this series.
    */
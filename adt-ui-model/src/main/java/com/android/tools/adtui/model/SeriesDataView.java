@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+/**
+ * A window of consecutive points of a {@link PrimitiveDataSeries}, read straight from the series' primitive storage. Unlike the
+ * {@link SeriesData} lists returned by {@link DataSeries#getDataForXRange(Range)}, a view allocates nothing per point and is reused
+ * by its series: it is only valid until the next call to {@link PrimitiveDataSeries#getDataViewForXRange(Range)} on the same series.
+ */
+public abstract class SeriesDataView {
+  private int myFromIndex;
+  private int myToIndex;
+
+  void setIndexRange(int fromIndex, int toIndex) {
+    myFromIndex = fromIndex;
+    myToIndex = toIndex;
+  }
+
+  public int size() {
+    return myToIndex - myFromIndex;
+  }
+
+  public boolean isEmpty() {
+    return size() == 0;
+  }
+
+  public long getX(int index) {
+    return getXAt(myFromIndex + index);
+  }
+
+  public double getY(int index) {
+    return getYAt(myFromIndex + index);
+  }
+
+  /**
+   * Same as {@link #getY(int)}, but exact for series that store their values as longs.
+   */
+  public long getLongY(int index) {
+    return getLongYAt(myFromIndex + index);
+  }
+
+  protected abstract long getXAt(int seriesIndex);
+
+  protected abstract double getYAt(int seriesIndex);
+
+  protected long getLongYAt(int seriesIndex) {
+    return (long)getYAt(seriesIndex);
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class CachedLongDataSeriesTest {
+
+  @Test
+  public void testOnlyNewPointsAreRequested() {
+    DefaultDataSeries<Long> source = new DefaultDataSeries<>();
+    List<Range> requests = new ArrayList<>();
+    CachedLongDataSeries series = new CachedLongDataSeries(range -> {
+      requests.add(new Range(range));
+      return source.getDataForXRange(range);
+    });
+    for (long i = 0; i < 10; i++) {
+      source.add(i, i * 10);
+    }
+
+    SeriesDataView view = series.getDataViewForXRange(new Range(0, 9));
+    assertThat(view.size()).isEqualTo(10);
+    assertThat(view.getLongY(9)).isEqualTo(90);
+
+    // Ranges that end before the last cached point are answered from the cache.
+    assertThat(series.getDataForXRange(new Range(2, 5))).hasSize(4);
+    assertThat(requests).hasSize(1);
+
+    for (long i = 10; i < 20; i++) {
+      source.add(i, i * 10);
+    }
+    view = series.getDataViewForXRange(new Range(5, 19));
+    assertThat(view.size()).isEqualTo(15);
+    assertThat(view.getX(0)).isEqualTo(5);
+    assertThat(view.getLongY(14)).isEqualTo(190);
+    assertThat(requests).hasSize(2);
+    assertThat(requests.get(1).getMin()).isEqualTo(9.0);
+  }
+
+  @Test
+  public void testLatePointsReplaceCachedOnes() {
+    DefaultDataSeries<Long> source = new DefaultDataSeries<>();
+    CachedLongDataSeries series = new CachedLongDataSeries(source, 5);
+    for (long i = 0; i < 10; i += 2) {
+      source.add(i, i);
+    }
+    assertThat(series.getDataViewForXRange(new Range(0, 10)).size()).isEqualTo(5);
+
+    // A point arrives late between cached points, within the window before the last point
+    source.clear();
+    for (long i = 0; i <= 12; i += 2) {
+      source.add(i, i);
+      if (i == 6) {
+        source.add(7, 700L);
+      }
+    }
+
+    SeriesDataView view = series.getDataViewForXRange(new Range(0, 12));
+    assertThat(view.size()).isEqualTo(8);
+    assertThat(view.getX(4)).isEqualTo(7);
+    assertThat(view.getLongY(4)).isEqualTo(700);
+    assertThat(series.getMaxYForXRange(new Range(0, 12))).isEqualTo(700.0);
+    assertThat(series.getMaxYForXRange(new Range(8, 12))).isEqualTo(12.0);
+  }
+
+  @Test
+  public void testCacheIsBounded() {
+    DefaultDataSeries<Long> source = new DefaultDataSeries<>();
+    CachedLongDataSeries series = new CachedLongDataSeries(source);
+    int count = CachedLongDataSeries.MAX_CACHED_POINTS;
+    for (long i = 0; i < count; i++) {
+      source.add(i, i % 100);
+    }
+    assertThat(series.getDataViewForXRange(new Range(0, count - 1)).size()).isEqualTo(count);
+
+    // Once full, the cache starts over at the range being queried
+    for (long i = count; i < count + 100; i++) {
+      source.add(i, 1000L);
+    }
+    SeriesDataView view = series.getDataViewForXRange(new Range(count - 10, count + 99));
+    assertThat(view.size()).isEqualTo(110);
+    assertThat(view.getLongY(109)).isEqualTo(1000);
+
+    // Earlier ranges are answered from the source
+    view = series.getDataViewForXRange(new Range(0, 9));
+    assertThat(view.size()).isEqualTo(10);
+    assertThat(view.getLongY(9)).isEqualTo(9);
+    assertThat(series.getMaxYForXRange(new Range(0, count + 99))).isEqualTo(1000.0);
+  }
+
+  @Test
+  public void testLargeRangesUseLevelOfDetail() {
+    DefaultDataSeries<Long> source = new DefaultDataSeries<>();
+    for (long i = 0; i < 100000; i++) {
+      source.add(i, i == 50000 ? 1000L : i % 10);
+    }
+    CachedLongDataSeries series = new CachedLongDataSeries(source);
+
+    SeriesDataView view = series.getDataViewForXRange(new Range(0, 99999), 100);
+    assertThat(view.size()).isAtLeast(100);
+    assertThat(view.size()).isLessThan(100000 / 8);
+    long max = Long.MIN_VALUE;
+    for (int i = 0; i < view.size(); i++) {
+      max = Math.max(max, view.getLongY(i));
+    }
+    assertThat(max).isEqualTo(1000);
+  }
+}
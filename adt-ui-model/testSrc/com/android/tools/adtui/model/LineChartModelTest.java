@@ -43,6 +43,27 @@ public class LineChartModelTest {
     assertEquals(100, yRange.getMax(), 0);  // after update.
   }
 
+  @Test
+  public void testYMaxOnlyCoversTheXRange() {
+    // A series with a level-of-detail index must not pick up the values of points outside of the x range
+    Range xRange = new Range(0, 1000);
+    Range yRange = new Range(0, 0);
+    DefaultDataSeries<Long> testSeries = new DefaultDataSeries<>();
+    for (int i = 0; i < 10000; i++) {
+      testSeries.add(i, i <= 1000 ? 10L : 5000L);
+    }
+    RangedContinuousSeries rangedSeries = new RangedContinuousSeries("test", xRange, yRange, new CachedLongDataSeries(testSeries));
+    FakeTimer t = new FakeTimer();
+    Updater updater = new Updater(t);
+
+    LineChartModel model = new LineChartModel();
+    model.add(rangedSeries);
+    updater.register(model);
+
+    t.step();
+    assertEquals(10, yRange.getMax(), 0);
+  }
+
   @Test
   public void testNoUpdateOnZeroYValue() {
     Range xRange = new Range(0, 10);
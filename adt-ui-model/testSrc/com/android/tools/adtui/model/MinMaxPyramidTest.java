@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.adtui.model;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class MinMaxPyramidTest {
+
+  @Test
+  public void testSmallRangesUseRawPoints() {
+    LongDataSeries series = new LongDataSeries(true);
+    for (int i = 0; i < 100; i++) {
+      series.add(i, i);
+    }
+    SeriesDataView view = series.getDataViewForXRange(new Range(10, 19), 100);
+    assertThat(view.size()).isEqualTo(10);
+    assertThat(view.getX(0)).isEqualTo(10);
+  }
+
+  @Test
+  public void testLargeRangesKeepEnvelope() {
+    int count = 100000;
+    LongDataSeries series = new LongDataSeries(true);
+    for (int i = 0; i < count; i++) {
+      // A sawtooth with a single spike and a single dip.
+      long y = i == 12345 ? 1000 : i == 67890 ? -1000 : i % 10;
+      series.add(i, y);
+    }
+
+    SeriesDataView view = series.getDataViewForXRange(new Range(0, count - 1), 500);
+    assertThat(view.size()).isAtLeast(500);
+    assertThat(view.size()).isLessThan(count / 8);
+
+    long min = Long.MAX_VALUE;
+    long max = Long.MIN_VALUE;
+    long lastX = Long.MIN_VALUE;
+    for (int i = 0; i < view.size(); i++) {
+      assertThat(view.getX(i)).isAtLeast(lastX);
+      lastX = view.getX(i);
+      min = Math.min(min, view.getLongY(i));
+      max = Math.max(max, view.getLongY(i));
+    }
+    assertThat(min).isEqualTo(-1000);
+    assertThat(max).isEqualTo(1000);
+    assertThat(view.getX(0)).isEqualTo(0);
+    assertThat(lastX).isEqualTo(count - 1);
+  }
+
+  @Test
+  public void testMaxYOnlyCoversTheRange() {
+    int count = 10000;
+    LongDataSeries series = new LongDataSeries(true);
+    LongDataSeries rawSeries = new LongDataSeries();
+    Random random = new Random(1);
+    for (int i = 0; i < count; i++) {
+      long y = random.nextInt(1000);
+      series.add(i, y);
+      rawSeries.add(i, y);
+    }
+    for (int i = 0; i < 1000; i++) {
+      int from = random.nextInt(count);
+      int to = from + random.nextInt(count - from);
+      Range range = new Range(from, to);
+      assertThat(series.getMaxYForXRange(range)).isEqualTo(rawSeries.getMaxYForXRange(range));
+    }
+
+    // A spike just outside of the range is not part of its max
+    series.add(count, 5000);
+    assertThat(series.getMaxYForXRange(new Range(0, count - 1))).isLessThan(5000.0);
+    assertThat(series.getMaxYForXRange(new Range(0, count))).isEqualTo(5000.0);
+  }
+
+  @Test
+  public void testRemovedPointsLeaveTheLevelsOfTheRemainingOnes() {
+    Random random = new Random(2);
+    for (int kept : new int[]{0, 1, 15, 16, 17, 100, 1024, 1025, 3000}) {
+      LongDataSeries series = new LongDataSeries(true);
+      LongDataSeries expected = new LongDataSeries(true);
+      for (int i = 0; i < 4096; i++) {
+        long y = random.nextInt(1000);
+        series.add(i, y);
+        if (i < kept) {
+          expected.add(i, y);
+        }
+      }
+      series.removeFrom(kept);
+      assertThat(series.size()).isEqualTo(kept);
+
+      // Points added after the removal are summarized as if the removed ones never existed
+      for (int i = kept; i < 5000; i++) {
+        long y = random.nextInt(1000);
+        series.add(i, y);
+        expected.add(i, y);
+      }
+      Range range = new Range(0, 4999);
+      SeriesDataView view = series.getDataViewForXRange(range, 100);
+      SeriesDataView expectedView = expected.getDataViewForXRange(range, 100);
+      assertThat(view.size()).isEqualTo(expectedView.size());
+      for (int i = 0; i < view.size(); i++) {
+        assertThat(view.getX(i)).isEqualTo(expectedView.getX(i));
+        assertThat(view.getLongY(i)).isEqualTo(expectedView.getLongY(i));
+      }
+    }
+  }
+
+  @Test
+  public void testWithoutLevelOfDetailReturnsAllPoints() {
+    LongDataSeries series = new LongDataSeries();
+    for (int i = 0; i < 1000; i++) {
+      series.add(i, i);
+    }
+    assertThat(series.getDataViewForXRange(new Range(0, 999), 10).size()).isEqualTo(1000);
+  }
+}
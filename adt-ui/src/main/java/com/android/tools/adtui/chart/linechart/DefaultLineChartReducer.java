@@ -16,6 +16,8 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDataView;
+import gnu.trove.TIntArrayList;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.geom.Path2D;
@@ -66,6 +68,39 @@ class DefaultLineChartReducer implements LineChartReducer {
     return reduced;
   }
 
+  /**
+   * Same reduction as {@link #reduceData(List, LineConfig)}, done over indices of the view so that only the kept points are boxed.
+   */
+  @Override
+  public List<SeriesData<Long>> reduceData(@NotNull SeriesDataView data, @NotNull LineConfig config) {
+    if (config.getDataBucketInterval() > 0) {
+      return LineChartReducer.super.reduceData(data, config);
+    }
+
+    TIntArrayList reduced = new TIntArrayList();
+    for (int i = 0; i < data.size(); i++) {
+      long value = data.getLongY(i);
+      while (reduced.size() >= 2) {
+        long preLast = data.getLongY(reduced.get(reduced.size() - 2));
+        long last = data.getLongY(reduced.get(reduced.size() - 1));
+
+        if (preLast == last && (config.isStepped() || last == value)) {
+          reduced.remove(reduced.size() - 1);
+        } else {
+          break;
+        }
+      }
+      reduced.add(i);
+    }
+
+    List<SeriesData<Long>> result = new ArrayList<>(reduced.size());
+    for (int i = 0; i < reduced.size(); i++) {
+      int index = reduced.get(i);
+      result.add(new SeriesData<>(data.getX(index), data.getLongY(index)));
+    }
+    return result;
+  }
+
   /**
   * The basic idea behind this algorithm is to reduce number of points to available pixels.
   * For every pixel it draws 4 points: the first point, the last point,
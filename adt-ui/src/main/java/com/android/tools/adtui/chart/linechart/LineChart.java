@@ -21,6 +21,7 @@ import com.android.tools.adtui.AnimatedComponent;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.RangedContinuousSeries;
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDataView;
 import org.jetbrains.annotations.NotNull;
 
 import java.awt.*;
@@ -184,7 +185,9 @@ public class LineChart extends AnimatedComponent {
       }
       final LineConfig config = getLineConfig(ranged);
 
-      List<SeriesData<Long>> seriesList = ranged.getSeries();
+      // Stacking mutates the points it sums, so only unstacked lines read from the (reused) primitive view.
+      SeriesDataView seriesView = config.isStacked() ? null : ranged.getSeriesView(dim.width);
+      List<SeriesData<Long>> seriesList = seriesView != null ? null : ranged.getSeries();
       if (config.isStacked()) {
         if (lastStackedSeries == null) {
           lastStackedSeries = new ArrayList<>(seriesList);
@@ -213,7 +216,7 @@ public class LineChart extends AnimatedComponent {
       double firstXd = 0f;
       // Actual value of first point
       double firstX = 0;
-      seriesList = myReducer.reduceData(seriesList, config);
+      seriesList = seriesView != null ? myReducer.reduceData(seriesView, config) : myReducer.reduceData(seriesList, config);
       double xBucketInterval = config.getDataBucketInterval() / xLength;
       double xBucketBarWidth = xBucketInterval * BUCKET_BAR_PERCENTAGE;
       // If we are a stepped chart or bar chart, we don't need to worry about start and end points' Y value.
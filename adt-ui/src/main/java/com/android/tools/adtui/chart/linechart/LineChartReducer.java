@@ -16,8 +16,10 @@
 package com.android.tools.adtui.chart.linechart;
 
 import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.adtui.model.SeriesDataView;
 
 import java.awt.geom.Path2D;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -31,6 +33,18 @@ public interface LineChartReducer {
    */
   List<SeriesData<Long>> reduceData(List<SeriesData<Long>> data, LineConfig config);
 
+  /**
+   * Same as {@link #reduceData(List, LineConfig)}, but reads the points from a primitive {@link SeriesDataView}. Implementations should
+   * only allocate {@link SeriesData} for the points they keep.
+   */
+  default List<SeriesData<Long>> reduceData(SeriesDataView data, LineConfig config) {
+    List<SeriesData<Long>> dataList = new ArrayList<>(data.size());
+    for (int i = 0; i < data.size(); i++) {
+      dataList.add(new SeriesData<>(data.getX(i), data.getLongY(i)));
+    }
+    return reduceData(dataList, config);
+  }
+
   /**
    * Reduces the given path in a pixel level, i.e when dimensions are available.
    * The result shouldn't affect the looking of the line when it's drawn.
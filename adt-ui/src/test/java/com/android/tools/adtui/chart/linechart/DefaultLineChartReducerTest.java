@@ -15,6 +15,8 @@
  */
 package com.android.tools.adtui.chart.linechart;
 
+import com.android.tools.adtui.model.LongDataSeries;
+import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.google.common.collect.ImmutableList;
 import org.junit.Before;
@@ -66,6 +68,22 @@ public class DefaultLineChartReducerTest {
     assertSeriesEquals(expected, result);
   }
 
+  @Test
+  public void reduceDataFromView() {
+    long[] values = {10, 10, 13, 13, 13, 13, 5, 5};
+    LongDataSeries series = new LongDataSeries();
+    List<SeriesData<Long>> data = new ArrayList<>();
+    for (int i = 0; i < values.length; i++) {
+      series.add(i, values[i]);
+      data.add(new SeriesData<>(i, values[i]));
+    }
+
+    Range range = new Range(0, values.length - 1);
+    assertSeriesEquals(myReducer.reduceData(data, myConfig), myReducer.reduceData(series.getDataViewForXRange(range), myConfig));
+    myConfig.setStepped(true);
+    assertSeriesEquals(myReducer.reduceData(data, myConfig), myReducer.reduceData(series.getDataViewForXRange(range), myConfig));
+  }
+
   @Test
   public void reduceDataForSteppedLine() {
     List<SeriesData<Long>> data = new ImmutableList.Builder<SeriesData<Long>>()
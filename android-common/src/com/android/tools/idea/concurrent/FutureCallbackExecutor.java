@@ -20,7 +20,9 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.lang.reflect.UndeclaredThrowableException;
+import java.util.ArrayList;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.Executor;
 import java.util.function.BiConsumer;
@@ -227,6 +229,54 @@ public class FutureCallbackExecutor implements Executor {
     }
   }
 
+  /**
+   * Execute a task from the {@code taskFactory} for each element of the {@code iterator}, with
+   * at most {@code maxConcurrency} tasks running at the same time. When a task completes, the task
+   * for the next element is started.
+   *
+   * <p>This is similar to {@link #executeFuturesInSequence(Iterator, Function)}, which is the same
+   * as calling this method with a {@code maxConcurrency} of 1.
+   *
+   * <p>Returns a {@link ListenableFuture} that completes when all tasks have completed.
+   *
+   * @param iterator       The source of elements to process
+   * @param taskFactory    A factory {@link Function} that returns a {@link ListenableFuture} for a given element
+   * @param maxConcurrency The maximum number of tasks running at the same time
+   * @param <T>            The type of the elements to process
+   */
+  @NotNull
+  public <T> ListenableFuture<Void> executeFuturesInParallel(@NotNull Iterator<T> iterator,
+                                                             @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                             int maxConcurrency) {
+    if (maxConcurrency <= 1) {
+      return executeFuturesInSequence(iterator, taskFactory);
+    }
+
+    // Each worker processes elements in sequence, taking the next element from the shared iterator.
+    List<ListenableFuture<Void>> workers = new ArrayList<>(maxConcurrency);
+    for (int i = 0; i < maxConcurrency; i++) {
+      SettableFuture<Void> worker = SettableFuture.create();
+      workers.add(worker);
+      executeFuturesInParallelWorker(iterator, taskFactory, worker);
+    }
+    return transform(Futures.allAsList(workers), list -> null);
+  }
+
+  private <T> void executeFuturesInParallelWorker(@NotNull Iterator<T> iterator,
+                                                  @NotNull Function<T, ListenableFuture<Void>> taskFactory,
+                                                  @NotNull SettableFuture<Void> finalResult) {
+    T element;
+    synchronized (iterator) {
+      if (!iterator.hasNext()) {
+        finalResult.set(null);
+        return;
+      }
+      element = iterator.next();
+    }
+    ListenableFuture<Void> future = taskFactory.apply(element);
+    addConsumer(future, (aVoid, throwable) -> executeFuturesInParallelWorker(iterator, taskFactory, finalResult));
+  }
+
   /**
    * Wrap a {@link ThrowableFunction} into a {@link Function} using a {@link UndeclaredThrowableException}.
    *
@@ -338,6 +338,10 @@ public final class StudioFlags {
     RESOURCES_MANAGEMENT, "enabled", "Enable the new resources management tools",
     "If enabled, the new resource management tools are enabled. Subflags will also need to be enabled to enable all available new tools",
     false);
+  public static final Flag<Boolean> RESOURCE_FOLDER_PARALLEL_SCAN = Flag.create(
+    RESOURCES_MANAGEMENT, "parallel.scan", "Scan resource folders in parallel",
+    "If enabled, the initial scan of a res/ directory parses its subfolders in parallel.",
+    true);
 
   private static final FlagGroup LAYOUT_INSPECTOR = new FlagGroup(FLAGS, "layout.inspector", "Layout Inspector");
   public static final Flag<Boolean> LAYOUT_INSPECTOR_LOAD_OVERLAY_ENABLED = Flag.create(
@@ -407,6 +411,14 @@ public final class StudioFlags {
     "Use ResourceRepository to resolve references, not ResourceManager.",
     false);
 
+  private static final FlagGroup LINT = new FlagGroup(FLAGS, "lint", "Lint");
+  public static final Flag<Boolean> LINT_PARALLEL_BATCH = Flag.create(
+    LINT,
+    "parallel.batch",
+    "Run batch lint on independent modules in parallel",
+    "If enabled, Inspect Code analyzes groups of modules which do not depend on each other with separate lint drivers in parallel.",
+    false);
+
   private static final FlagGroup ANALYZER = new FlagGroup(FLAGS, "analyzer", "Apk/Bundle Analyzer");
   public static final Flag<Boolean> ENABLE_APP_SIZE_OPTIMIZER = Flag.create(
     ANALYZER, "enable.app.size.optimizer", "Enable size optimization suggestions in apk analyzer",
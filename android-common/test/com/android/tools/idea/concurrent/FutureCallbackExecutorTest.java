@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.concurrent;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.SettableFuture;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link FutureCallbackExecutor}.
+ */
+public class FutureCallbackExecutorTest {
+  private final FutureCallbackExecutor myExecutor = FutureCallbackExecutor.wrap(MoreExecutors.directExecutor());
+
+  @Test
+  public void executeFuturesInParallelLimitsRunningTasks() {
+    List<Integer> started = new ArrayList<>();
+    List<SettableFuture<Void>> tasks = new ArrayList<>();
+    ListenableFuture<Void> result = myExecutor.executeFuturesInParallel(Arrays.asList(0, 1, 2, 3, 4, 5).iterator(), element -> {
+      started.add(element);
+      SettableFuture<Void> task = SettableFuture.create();
+      tasks.add(task);
+      return task;
+    }, 2);
+
+    assertEquals(Arrays.asList(0, 1), started);
+
+    tasks.get(1).set(null);
+    assertEquals(Arrays.asList(0, 1, 2), started);
+
+    tasks.get(0).set(null);
+    tasks.get(2).set(null);
+    assertEquals(Arrays.asList(0, 1, 2, 3, 4), started);
+    assertFalse(result.isDone());
+
+    tasks.get(3).set(null);
+    tasks.get(4).set(null);
+    assertFalse(result.isDone());
+
+    tasks.get(5).set(null);
+    assertTrue(result.isDone());
+    assertEquals(6, started.size());
+  }
+
+  @Test
+  public void executeFuturesInParallelContinuesAfterFailure() throws Exception {
+    List<Integer> started = new ArrayList<>();
+    ListenableFuture<Void> result = myExecutor.executeFuturesInParallel(Arrays.asList(0, 1, 2, 3).iterator(), element -> {
+      started.add(element);
+      SettableFuture<Void> task = SettableFuture.create();
+      if (element == 1) {
+        task.setException(new IllegalStateException());
+      }
+      else {
+        task.set(null);
+      }
+      return task;
+    }, 3);
+
+    // Like executeFuturesInSequence, a failed task does not prevent the next ones from running
+    assertTrue(result.isDone());
+    result.get();
+    assertEquals(Arrays.asList(0, 1, 2, 3), started);
+  }
+
+  @Test
+  public void executeFuturesInParallelWithOneTaskRunsInSequence() {
+    List<Integer> started = new ArrayList<>();
+    List<SettableFuture<Void>> tasks = new ArrayList<>();
+    ListenableFuture<Void> result = myExecutor.executeFuturesInParallel(Arrays.asList(0, 1).iterator(), element -> {
+      started.add(element);
+      SettableFuture<Void> task = SettableFuture.create();
+      tasks.add(task);
+      return task;
+    }, 1);
+
+    assertEquals(Arrays.asList(0), started);
+    tasks.get(0).set(null);
+    assertEquals(Arrays.asList(0, 1), started);
+    tasks.get(1).set(null);
+    assertTrue(result.isDone());
+  }
+
+  @Test
+  public void executeFuturesInParallelWithNoElements() {
+    ListenableFuture<Void> result = myExecutor.executeFuturesInParallel(new ArrayList<Integer>().iterator(), element -> {
+      throw new AssertionError();
+    }, 4);
+
+    assertTrue(result.isDone());
+  }
+}
@@ -18,6 +18,7 @@ package com.android.tools.idea.explorer;
 import com.android.tools.idea.concurrent.FutureCallbackExecutor;
 import com.android.tools.idea.explorer.adbimpl.AdbPathUtil;
 import com.android.tools.idea.explorer.fs.*;
+import com.android.tools.idea.explorer.options.DeviceFileExplorerSettings;
 import com.android.tools.idea.explorer.ui.TreeUtil;
 import com.android.utils.FileUtils;
 import com.google.common.primitives.Ints;
@@ -56,6 +57,7 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.function.Predicate;
@@ -74,6 +76,9 @@ public class DeviceExplorerController {
   private static final String DEVICE_EXPLORER_BUSY_MESSAGE = "Device Explorer is busy, please retry later or cancel current operation";
   private static final long FILE_ENTRY_CREATION_TIMEOUT_MILLIS = 10_000;
   private static final long FILE_ENTRY_DELETION_TIMEOUT_MILLIS = 10_000;
+  /** Files up to this size are downloaded with the other small files of their directory, with a single request */
+  private static final long MAX_BATCHED_FILE_SIZE = 64 * 1024;
+  private static final int MIN_BATCHED_FILE_COUNT = 2;
 
   private int myShowLoadingNodeDelayMillis = 200;
   private int myTransferringNodeRepaintMillis = 100;
@@ -271,6 +276,12 @@ public class DeviceExplorerController {
     }
   }
 
+  private static boolean isSmallFileNode(@NotNull DeviceFileEntryNode node) {
+    DeviceFileEntry entry = node.getEntry();
+    return entry.isFile() && !entry.isSymbolicLink() && entry.getSize() >= 0 && entry.getSize() <= MAX_BATCHED_FILE_SIZE &&
+           !node.isTransferring();
+  }
+
   private <T> ListenableFuture<Void> executeFuturesInSequence(@NotNull Iterator<T> iterator,
                                                               @NotNull Function<T, ListenableFuture<Void>> taskFactory) {
     return myEdtExecutor.executeFuturesInSequence(iterator, taskFactory);
@@ -719,10 +730,26 @@ public class DeviceExplorerController {
       myEdtExecutor.addCallback(futureLoadChildren, new FutureCallback<Void>() {
         @Override
         public void onSuccess(@Nullable Void result) {
-          ListenableFuture<Void> futureDownloadChildren = executeFuturesInSequence(treeNode.getChildEntryNodes().iterator(), node -> {
+          // Small files are downloaded all at once, other files and directories are downloaded in parallel
+          List<DeviceFileEntryNode> childNodes = treeNode.getChildEntryNodes();
+          List<DeviceFileEntryNode> smallFileNodes = childNodes.stream()
+            .filter(DeviceExplorerController::isSmallFileNode)
+            .collect(Collectors.toList());
+          if (smallFileNodes.size() < MIN_BATCHED_FILE_COUNT) {
+            smallFileNodes = Collections.emptyList();
+          }
+          Set<DeviceFileEntryNode> batchedNodes = new HashSet<>(smallFileNodes);
+          List<DeviceFileEntryNode> otherNodes = childNodes.stream()
+            .filter(node -> !batchedNodes.contains(node))
+            .collect(Collectors.toList());
+
+          ListenableFuture<Void> futureSmallFiles = downloadSmallFiles(treeNode, smallFileNodes, localDirectoryPath, tracker);
+          ListenableFuture<Void> futureOtherNodes = myEdtExecutor.executeFuturesInParallel(otherNodes.iterator(), node -> {
             Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
             return downloadSingleNode(node, nodePath, tracker);
-          });
+          }, DeviceFileExplorerSettings.getInstance().getTransferConcurrency());
+          ListenableFuture<Void> futureDownloadChildren =
+            myEdtExecutor.transform(Futures.successfulAsList(futureSmallFiles, futureOtherNodes), list -> null);
           myEdtExecutor.addConsumer(futureDownloadChildren, (aVoid, throwable) -> {
             if (throwable != null) {
               tracker.addProblem(throwable);
@@ -741,6 +768,70 @@ public class DeviceExplorerController {
       return futureResult;
     }
 
+    /**
+     * Downloads the {@code fileNodes} of the {@code treeNode} directory with a single request, see
+     * {@link DeviceFileEntry#downloadFiles}. If the file system does not support it, or if the request fails,
+     * downloads the files separately instead, in parallel.
+     */
+    @NotNull
+    private ListenableFuture<Void> downloadSmallFiles(@NotNull DeviceFileEntryNode treeNode,
+                                                      @NotNull List<DeviceFileEntryNode> fileNodes,
+                                                      @NotNull Path localDirectoryPath,
+                                                      @NotNull FileTransferOperationTracker tracker) {
+      if (fileNodes.isEmpty()) {
+        return Futures.immediateFuture(null);
+      }
+      if (tracker.isCancelled()) {
+        return Futures.immediateCancelledFuture();
+      }
+
+      List<DeviceFileEntry> entries = fileNodes.stream().map(DeviceFileEntryNode::getEntry).collect(Collectors.toList());
+      fileNodes.forEach(DeviceExplorerController.this::startNodeDownload);
+      AtomicLong reportedBytes = new AtomicLong();
+      ListenableFuture<Void> futureDownload = treeNode.getEntry().downloadFiles(entries, localDirectoryPath, new FileTransferProgress() {
+        @Override
+        public void progress(long currentBytes, long totalBytes) {
+          tracker.processFileBytes(currentBytes - reportedBytes.getAndSet(currentBytes));
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return tracker.isCancelled();
+        }
+      });
+      myEdtExecutor.addListener(futureDownload, () -> fileNodes.forEach(DeviceExplorerController.this::stopNodeDownload));
+      logFuture(futureDownload, millis -> String.format("Downloaded %,d files in %,d msec: %s",
+                                                        fileNodes.size(), millis, treeNode.getEntry().getFullPath()));
+
+      SettableFuture<Void> futureResult = SettableFuture.create();
+      myEdtExecutor.addConsumer(futureDownload, (aVoid, throwable) -> {
+        if (throwable == null) {
+          for (DeviceFileEntryNode node : fileNodes) {
+            tracker.processFile();
+            tracker.getSummary().addFileCount(1);
+            tracker.getSummary().addByteCount(node.getEntry().getSize());
+          }
+          futureResult.set(null);
+        }
+        else if (tracker.isCancelled()) {
+          futureResult.cancel(false);
+        }
+        else {
+          if (!(throwable instanceof UnsupportedOperationException)) {
+            LOGGER.info(String.format("Error downloading files of %s at once, downloading them one at a time",
+                                      treeNode.getEntry().getFullPath()), throwable);
+          }
+          tracker.processFileBytes(-reportedBytes.getAndSet(0));
+          ListenableFuture<Void> futureFiles = myEdtExecutor.executeFuturesInParallel(fileNodes.iterator(), node -> {
+            Path nodePath = localDirectoryPath.resolve(node.getEntry().getName());
+            return downloadSingleFile(node, nodePath, tracker);
+          }, DeviceFileExplorerSettings.getInstance().getTransferConcurrency());
+          myEdtExecutor.addListener(futureFiles, () -> futureResult.set(null));
+        }
+      });
+      return futureResult;
+    }
+
     @Override
     public void copyNodePathsInvoked(@NotNull List<DeviceFileEntryNode> treeNodes) {
       String text = treeNodes.stream().map(x -> x.getEntry().getFullPath()).collect(Collectors.joining("\n"));
@@ -1218,7 +1309,7 @@ public class DeviceExplorerController {
       if (summary.getProblems().isEmpty()) {
         String successMessage;
         if (summary.getDirectoryCount() > 0) {
-          successMessage = String.format("Successfully %s %,d %s and %,d %s for a total size of %,d %s in %s.",
+          successMessage = String.format("Successfully %s %,d %s and %,d %s for a total size of %,d %s in %s (%s/s).",
                                          pastParticiple,
                                          summary.getFileCount(),
                                          fileString,
@@ -1226,16 +1317,18 @@ public class DeviceExplorerController {
                                          directoryString,
                                          summary.getByteCount(),
                                          byteCountString,
-                                         StringUtil.formatDuration(summary.getDurationMillis()));
+                                         StringUtil.formatDuration(summary.getDurationMillis()),
+                                         StringUtil.formatFileSize(summary.getBytesPerSecond()));
         }
         else {
-          successMessage = String.format("Successfully %s %,d %s for a total of size of %,d %s in %s.",
+          successMessage = String.format("Successfully %s %,d %s for a total of size of %,d %s in %s (%s/s).",
                                          pastParticiple,
                                          summary.getFileCount(),
                                          fileString,
                                          summary.getByteCount(),
                                          byteCountString,
-                                         StringUtil.formatDuration(summary.getDurationMillis()));
+                                         StringUtil.formatDuration(summary.getDurationMillis()),
+                                         StringUtil.formatFileSize(summary.getBytesPerSecond()));
         }
         myView.reportMessageRelatedToNode(node, successMessage);
         return;
@@ -18,6 +18,7 @@ package com.android.tools.idea.explorer;
 import com.android.tools.idea.concurrent.EdtExecutor;
 import com.android.tools.idea.explorer.adbimpl.AdbDeviceFileSystemRendererFactory;
 import com.android.tools.idea.explorer.adbimpl.AdbDeviceFileSystemService;
+import com.android.tools.idea.explorer.options.DeviceFileExplorerSettings;
 import com.android.tools.idea.explorer.ui.DeviceExplorerViewImpl;
 import com.intellij.openapi.project.DumbAware;
 import com.intellij.openapi.project.Project;
@@ -39,7 +40,8 @@ public class DeviceExplorerToolWindowFactory implements DumbAware, ToolWindowFac
 
     AdbDeviceFileSystemService service = new AdbDeviceFileSystemService(aVoid -> AndroidSdkUtils.getAdb(project),
                                                                         edtExecutor,
-                                                                        taskExecutor);
+                                                                        taskExecutor,
+                                                                        () -> DeviceFileExplorerSettings.getInstance().getTransferConcurrency());
     DeviceFileSystemRendererFactory deviceFileSystemRendererFactory = new AdbDeviceFileSystemRendererFactory(service);
     DeviceExplorerFileManager fileManager = new DeviceExplorerFileManagerImpl(project, edtExecutor);
 
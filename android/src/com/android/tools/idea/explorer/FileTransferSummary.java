@@ -63,4 +63,15 @@ public class FileTransferSummary {
   public void setDurationMillis(long durationMillis) {
     myDurationMillis = durationMillis;
   }
+
+  /**
+   * The average number of bytes transferred per second, across all the files transferred concurrently,
+   * or {@code 0} if the duration is unknown.
+   */
+  public long getBytesPerSecond() {
+    if (myDurationMillis <= 0) {
+      return 0;
+    }
+    return myByteCount * 1000 / myDurationMillis;
+  }
 }
@@ -49,6 +49,8 @@ public class AdbDeviceCapabilities {
   @Nullable private Boolean mySupportsCpCommand;
   @Nullable private Boolean myEscapingLs;
   @Nullable private Boolean mySupportsMkTempCommand;
+  @Nullable private Boolean mySupportsTarCommand;
+  @Nullable private Boolean mySupportsDdCommand;
 
   public AdbDeviceCapabilities(@NotNull IDevice device) {
     myDevice = device;
@@ -136,6 +138,26 @@ public class AdbDeviceCapabilities {
     return mySupportsMkTempCommand;
   }
 
+  public synchronized boolean supportsTarCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+    assert !ApplicationManager.getApplication().isDispatchThread();
+
+    if (mySupportsTarCommand == null) {
+      mySupportsTarCommand = supportsTarCommandWorker();
+    }
+    return mySupportsTarCommand;
+  }
+
+  public synchronized boolean supportsDdCommand()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+    assert !ApplicationManager.getApplication().isDispatchThread();
+
+    if (mySupportsDdCommand == null) {
+      mySupportsDdCommand = supportsDdCommandWorker();
+    }
+    return mySupportsDdCommand;
+  }
+
   @NotNull
   private static String getCommandOutputExtract(@NotNull AdbShellCommandResult commandResult) {
     List<String> output = commandResult.getOutput();
@@ -366,6 +388,76 @@ public class AdbDeviceCapabilities {
     }
   }
 
+  private boolean supportsTarCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    String fileName = ".__temp_tar_test_file__.tmp";
+    try (ScopedRemoteFile srcFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, fileName));
+         ScopedRemoteFile dstFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_tar_test_file_dst__.tmp"))) {
+      // Create the remote file used for testing capability
+      srcFile.create();
+
+      // Archive the source file into the destination file
+      String command = new AdbShellCommandBuilder()
+        .withText("tar -cf ")
+        .withEscapedPath(dstFile.getRemotePath())
+        .withText(" -C ")
+        .withEscapedPath(PROBE_FILES_TEMP_PATH)
+        .withText(" ")
+        .withEscapedPath(fileName)
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+
+        // If "tar" succeeded, we need to delete the destination file
+        dstFile.setDeleteOnClose(true);
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"tar\" command: %s",
+                                  DeviceUtil.toDebugString(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
+  private boolean supportsDdCommandWorker()
+    throws TimeoutException, AdbCommandRejectedException, ShellCommandUnresponsiveException, IOException, SyncException {
+
+    try (ScopedRemoteFile srcFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_dd_test_file__.tmp"));
+         ScopedRemoteFile dstFile = new ScopedRemoteFile(AdbPathUtil.resolve(PROBE_FILES_TEMP_PATH, ".__temp_dd_test_file_dst__.tmp"))) {
+      // Create the remote file used for testing capability
+      srcFile.create();
+
+      // Copy the (empty) first block of the source file to the destination file
+      String command = new AdbShellCommandBuilder()
+        .withText("dd if=")
+        .withEscapedPath(srcFile.getRemotePath())
+        .withText(" of=")
+        .withEscapedPath(dstFile.getRemotePath())
+        .withText(" bs=1024 skip=0 count=1")
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      try {
+        commandResult.throwIfError();
+
+        // If "dd" succeeded, we need to delete the destination file
+        dstFile.setDeleteOnClose(true);
+        return true;
+      }
+      catch (AdbShellCommandException e) {
+        LOGGER.info(String.format("Device \"%s\" does not seem to support the \"dd\" command: %s",
+                                  DeviceUtil.toDebugString(myDevice),
+                                  getCommandOutputExtract(commandResult)),
+                    e);
+        return false;
+      }
+    }
+  }
+
   /**
    * An {@link AutoCloseable} wrapper around a temporary file on a remote device.
    * The {@link #close()} method attempts to delete the file from the remote device
@@ -87,6 +87,18 @@ public class AdbDeviceDefaultFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadFiles(@NotNull List<DeviceFileEntry> entries,
+                                              @NotNull Path localDirectory,
+                                              @NotNull FileTransferProgress progress) {
+    ListenableFuture<AdbDeviceFileEntry> futureMountPoint = myDevice.resolveMountPoint(this);
+    return myDevice.getTaskExecutor().transformAsync(futureMountPoint, x -> {
+      assert x != null;
+      return x.downloadFiles(entries, localDirectory, progress);
+    });
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath, @NotNull String fileName, @NotNull FileTransferProgress progress) {
@@ -107,6 +107,16 @@ public class AdbDeviceDirectFileEntry extends AdbDeviceFileEntry {
     });
   }
 
+  @NotNull
+  @Override
+  public ListenableFuture<Void> downloadFiles(@NotNull List<DeviceFileEntry> entries,
+                                              @NotNull Path localDirectory,
+                                              @NotNull FileTransferProgress progress) {
+    List<String> fileNames = entries.stream().map(DeviceFileEntry::getName).collect(Collectors.toList());
+    long totalBytes = entries.stream().mapToLong(DeviceFileEntry::getSize).sum();
+    return myDevice.getAdbFileTransfer().downloadFilesViaArchive(getFullPath(), fileNames, totalBytes, localDirectory, progress, myRunAs);
+  }
+
   @NotNull
   @Override
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
@@ -46,7 +46,8 @@ public class AdbDeviceFileSystem implements DeviceFileSystem {
     myDeviceCapabilities = new AdbDeviceCapabilities(myDevice);
     myFileListing = new AdbFileListing(myDevice, myDeviceCapabilities, service.getTaskExecutor());
     myFileOperations = new AdbFileOperations(myDevice, myDeviceCapabilities, service.getTaskExecutor());
-    myFileTransfer = new AdbFileTransfer(myDevice, myFileOperations, service.getEdtExecutor(), service.getTaskExecutor());
+    myFileTransfer = new AdbFileTransfer(myDevice, myFileOperations, service.getEdtExecutor(), service.getTaskExecutor(),
+                                         service.getMaxConcurrentTransfers());
   }
 
   boolean isDevice(@Nullable IDevice device) {
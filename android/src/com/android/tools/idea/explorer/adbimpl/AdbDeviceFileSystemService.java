@@ -38,6 +38,7 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.IntSupplier;
 
 /**
  * Abstraction over ADB devices and their file system.
@@ -57,13 +58,26 @@ public final class AdbDeviceFileSystemService implements DeviceFileSystemService
   @Nullable private DeviceChangeListener myDeviceChangeListener;
   @Nullable private DebugBridgeChangeListener myDebugBridgeChangeListener;
   @Nullable private File myAdb;
+  @NotNull private final IntSupplier myMaxConcurrentTransfers;
 
   public AdbDeviceFileSystemService(@NotNull Function<Void, File> adbProvider,
                                     @NotNull Executor edtExecutor,
                                     @NotNull Executor taskExecutor) {
+    this(adbProvider, edtExecutor, taskExecutor, () -> AdbFileTransfer.DEFAULT_MAX_CONCURRENT_TRANSFERS);
+  }
+
+  /**
+   * @param maxConcurrentTransfers the maximum number of files transferred at the same time from or to each device,
+   *                               read when a device is connected
+   */
+  public AdbDeviceFileSystemService(@NotNull Function<Void, File> adbProvider,
+                                    @NotNull Executor edtExecutor,
+                                    @NotNull Executor taskExecutor,
+                                    @NotNull IntSupplier maxConcurrentTransfers) {
     myAdbProvider = adbProvider;
     myEdtExecutor = new FutureCallbackExecutor(edtExecutor);
     myTaskExecutor = new FutureCallbackExecutor(taskExecutor);
+    myMaxConcurrentTransfers = maxConcurrentTransfers;
   }
 
   public enum State {
@@ -97,6 +111,10 @@ public final class AdbDeviceFileSystemService implements DeviceFileSystemService
     return myTaskExecutor;
   }
 
+  int getMaxConcurrentTransfers() {
+    return myMaxConcurrentTransfers.getAsInt();
+  }
+
   @Override
   @NotNull
   public ListenableFuture<Void> start() {
@@ -29,6 +29,12 @@ import java.util.concurrent.Executor;
 import java.util.stream.Collectors;
 
 public class AdbFileOperations {
+  /**
+   * Maximum length of a "tar" command line built by {@link #createArchiveRunAs}, to stay well under the
+   * command line length limit of older devices.
+   */
+  public static final int MAX_ARCHIVE_COMMAND_LENGTH = 4_000;
+
   @NotNull private final IDevice myDevice;
   @NotNull private final FutureCallbackExecutor myExecutor;
   @NotNull private final AdbDeviceCapabilities myDeviceCapabilities;
@@ -237,6 +243,67 @@ public class AdbFileOperations {
     });
   }
 
+  /**
+   * Creates a tar archive at {@code archivePath} containing the files {@code fileNames} of the
+   * {@code directory}, with paths relative to the directory. Fails with an {@link AdbShellCommandException}
+   * if the device does not support the "tar" command, or if the command would be longer than
+   * {@link #MAX_ARCHIVE_COMMAND_LENGTH}.
+   */
+  @NotNull
+  public ListenableFuture<Void> createArchiveRunAs(@NotNull String directory,
+                                                   @NotNull List<String> fileNames,
+                                                   @NotNull String archivePath,
+                                                   @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      if (!myDeviceCapabilities.supportsTarCommand()) {
+        throw AdbShellCommandException.create("Device does not support the \"tar\" command");
+      }
+
+      AdbShellCommandBuilder command = getCommand(runAs, "tar -cf ")
+        .withEscapedPath(archivePath)
+        .withText(" -C ")
+        .withEscapedPath(directory);
+      for (String fileName : fileNames) {
+        command.withText(" ").withEscapedPath(fileName);
+      }
+      String commandText = command.build();
+      if (commandText.length() > MAX_ARCHIVE_COMMAND_LENGTH) {
+        throw AdbShellCommandException.create("Command to archive %,d files of \"%s\" is too long", fileNames.size(), directory);
+      }
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, commandText);
+      commandResult.throwIfError();
+      return null;
+    });
+  }
+
+  /**
+   * Copies the block {@code blockIndex} of {@code blockSize} bytes of the {@code source} file to the
+   * {@code destination} file. Fails with an {@link AdbShellCommandException} if the device does not
+   * support the "dd" command.
+   */
+  @NotNull
+  public ListenableFuture<Void> copyFileBlockRunAs(@NotNull String source,
+                                                   @NotNull String destination,
+                                                   long blockIndex,
+                                                   int blockSize,
+                                                   @Nullable String runAs) {
+    return myExecutor.executeAsync(() -> {
+      if (!myDeviceCapabilities.supportsDdCommand()) {
+        throw AdbShellCommandException.create("Device does not support the \"dd\" command");
+      }
+
+      String command = getCommand(runAs, "dd if=")
+        .withEscapedPath(source)
+        .withText(" of=")
+        .withEscapedPath(destination)
+        .withText(String.format(" bs=%d skip=%d count=1", blockSize, blockIndex))
+        .build();
+      AdbShellCommandResult commandResult = AdbShellCommandsUtil.executeCommand(myDevice, command);
+      commandResult.throwIfError();
+      return null;
+    });
+  }
+
   @NotNull
   public ListenableFuture<String> createTempFile(@NotNull String tempPath) {
     return createTempFileRunAs(tempPath, null);
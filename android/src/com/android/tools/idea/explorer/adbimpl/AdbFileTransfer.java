@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.adbimpl;
 
+import com.android.annotations.VisibleForTesting;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.SyncException;
 import com.android.ddmlib.SyncService;
@@ -24,38 +25,101 @@ import com.android.tools.idea.explorer.fs.FileTransferProgress;
 import com.android.tools.idea.explorer.fs.ThrottledProgress;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
 
 import static com.android.tools.idea.explorer.adbimpl.AdbPathUtil.DEVICE_TEMP_DIRECTORY;
 
 public class AdbFileTransfer {
   @NotNull private static Logger LOGGER = Logger.getInstance(AdbFileTransfer.class);
 
+  /**
+   * The default maximum number of sync connections used at the same time for a device.
+   */
+  public static final int DEFAULT_MAX_CONCURRENT_TRANSFERS = 4;
+
+  /**
+   * Files at least this big are downloaded in chunks, see {@link #downloadFileInChunks}.
+   */
+  static final long CHUNKED_DOWNLOAD_MIN_SIZE = 64L * 1024 * 1024;
+  static final int DOWNLOAD_CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final int DOWNLOAD_CHUNK_MAX_ATTEMPTS = 3;
+  @NotNull static final String PARTIAL_DOWNLOAD_SUFFIX = ".part";
+  /**
+   * Suffix of the file recording the size and modification time of the remote file a partial download was made from.
+   */
+  @NotNull static final String PARTIAL_DOWNLOAD_INFO_SUFFIX = ".part.info";
+
+  /**
+   * Room left in a "tar" command line for everything but the file names and the directory, i.e. the
+   * "run-as" prefix, the options and the path of the archive.
+   */
+  private static final int ARCHIVE_COMMAND_OVERHEAD = 512;
+
   @NotNull private final IDevice myDevice;
   @NotNull private final AdbFileOperations myFileOperations;
   @NotNull private final FutureCallbackExecutor myProgressExecutor;
   @NotNull private final FutureCallbackExecutor myTaskExecutor;
+  @NotNull private final Semaphore myTransferPermits;
 
   public AdbFileTransfer(@NotNull IDevice device,
                          @NotNull AdbFileOperations fileOperations,
                          @NotNull Executor progressExecutor,
                          @NotNull Executor taskExecutor) {
+    this(device, fileOperations, progressExecutor, taskExecutor, DEFAULT_MAX_CONCURRENT_TRANSFERS);
+  }
+
+  /**
+   * @param maxConcurrentTransfers the maximum number of files pulled from or pushed to the device at the same time.
+   *                               Additional transfers wait for one of the running transfers to complete.
+   */
+  public AdbFileTransfer(@NotNull IDevice device,
+                         @NotNull AdbFileOperations fileOperations,
+                         @NotNull Executor progressExecutor,
+                         @NotNull Executor taskExecutor,
+                         int maxConcurrentTransfers) {
     myDevice = device;
     myFileOperations = fileOperations;
     myProgressExecutor = FutureCallbackExecutor.wrap(progressExecutor);
     myTaskExecutor = FutureCallbackExecutor.wrap(taskExecutor);
+    myTransferPermits = new Semaphore(Math.max(1, maxConcurrentTransfers), true);
   }
 
   @NotNull
   public ListenableFuture<Void> downloadFile(@NotNull AdbFileListingEntry remoteFileEntry,
                                              @NotNull Path localPath,
                                              @NotNull FileTransferProgress progress) {
+    if (remoteFileEntry.getSize() >= CHUNKED_DOWNLOAD_MIN_SIZE) {
+      // Fall back to a regular download if the device can't copy chunks of the file, e.g. because "dd" is missing
+      // or because of permissions.
+      ListenableFuture<Void> futureChunks = downloadFileInChunks(remoteFileEntry.getFullPath(), remoteFileEntry.getSize(),
+                                                                 getModificationTime(remoteFileEntry), localPath, progress, null);
+      return myTaskExecutor.catchingAsync(futureChunks, AdbShellCommandException.class, error -> {
+        LOGGER.info(String.format("Error downloading file \"%s\" in chunks, downloading it at once", remoteFileEntry.getFullPath()), error);
+        Files.deleteIfExists(getPartialDownloadPath(localPath));
+        Files.deleteIfExists(getPartialDownloadInfoPath(localPath));
+        return downloadFileWorker(remoteFileEntry.getFullPath(), remoteFileEntry.getSize(), localPath, progress);
+      });
+    }
     return downloadFileWorker(remoteFileEntry.getFullPath(), remoteFileEntry.getSize(), localPath, progress);
   }
 
@@ -94,6 +158,290 @@ public class AdbFileTransfer {
   }
 
 
+  /**
+   * Downloads the files {@code fileNames} of the {@code remoteDirectory} into the {@code localDirectory}. Instead of
+   * pulling each file with its own sync request, which is slow for many small files, the files are first archived
+   * with "tar" in a temporary file on the device, and the archive is pulled and extracted locally.
+   *
+   * <p>The returned future fails with an {@link AdbShellCommandException} if the archive can't be created, for example
+   * when the device does not support the "tar" command.
+   *
+   * @param totalBytes the total size of the files, used to report progress
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadFilesViaArchive(@NotNull String remoteDirectory,
+                                                        @NotNull List<String> fileNames,
+                                                        long totalBytes,
+                                                        @NotNull Path localDirectory,
+                                                        @NotNull FileTransferProgress progress,
+                                                        @Nullable String runAs) {
+    List<List<String>> groups = getArchiveGroups(remoteDirectory, fileNames);
+    AggregateProgress aggregateProgress = new AggregateProgress(progress, totalBytes);
+    SettableFuture<Void> futureResult = SettableFuture.create();
+    downloadArchivesWorker(remoteDirectory, groups, 0, localDirectory, aggregateProgress, runAs, futureResult);
+    return futureResult;
+  }
+
+  /**
+   * Splits the files in groups small enough for the "tar" command line of {@link #downloadArchive}, keeping their order.
+   */
+  @VisibleForTesting
+  @NotNull
+  static List<List<String>> getArchiveGroups(@NotNull String remoteDirectory, @NotNull List<String> fileNames) {
+    int maxGroupLength =
+      AdbFileOperations.MAX_ARCHIVE_COMMAND_LENGTH - ARCHIVE_COMMAND_OVERHEAD - AdbPathUtil.getEscapedPath(remoteDirectory).length();
+    List<List<String>> groups = new ArrayList<>();
+    List<String> group = new ArrayList<>();
+    int groupLength = 0;
+    for (String fileName : fileNames) {
+      int length = AdbPathUtil.getEscapedPath(fileName).length() + 1;
+      if (!group.isEmpty() && groupLength + length > maxGroupLength) {
+        groups.add(group);
+        group = new ArrayList<>();
+        groupLength = 0;
+      }
+      group.add(fileName);
+      groupLength += length;
+    }
+    if (!group.isEmpty()) {
+      groups.add(group);
+    }
+    return groups;
+  }
+
+  private void downloadArchivesWorker(@NotNull String remoteDirectory,
+                                      @NotNull List<List<String>> groups,
+                                      int groupIndex,
+                                      @NotNull Path localDirectory,
+                                      @NotNull AggregateProgress progress,
+                                      @Nullable String runAs,
+                                      @NotNull SettableFuture<Void> futureResult) {
+    if (groupIndex == groups.size()) {
+      futureResult.set(null);
+      return;
+    }
+    if (progress.isCancelled()) {
+      futureResult.cancel(false);
+      return;
+    }
+
+    ListenableFuture<Void> futureGroup = downloadArchive(remoteDirectory, groups.get(groupIndex), localDirectory, progress, runAs);
+    myTaskExecutor.addConsumer(futureGroup, (aVoid, throwable) -> {
+      if (throwable != null) {
+        futureResult.setException(throwable);
+      }
+      else {
+        downloadArchivesWorker(remoteDirectory, groups, groupIndex + 1, localDirectory, progress, runAs, futureResult);
+      }
+    });
+  }
+
+  @NotNull
+  private ListenableFuture<Void> downloadArchive(@NotNull String remoteDirectory,
+                                                 @NotNull List<String> fileNames,
+                                                 @NotNull Path localDirectory,
+                                                 @NotNull AggregateProgress progress,
+                                                 @Nullable String runAs) {
+    ListenableFuture<String> futureTempFile = myFileOperations.createTempFile(DEVICE_TEMP_DIRECTORY);
+    return myTaskExecutor.transformAsync(futureTempFile, tempFile -> {
+      assert tempFile != null;
+
+      // Archive the files into the temporary remote location
+      ListenableFuture<Void> futureArchive = myFileOperations.createArchiveRunAs(remoteDirectory, fileNames, tempFile, runAs);
+      ListenableFuture<Void> futureDownload = myTaskExecutor.transformAsync(futureArchive, aVoid -> {
+        // Download the archive to a local temporary file, then extract it. The size of the archive is not known,
+        // so progress is reported as a fraction of the total size of the files.
+        File localArchive = FileUtil.createTempFile("device-explorer", ".tar", true);
+        ListenableFuture<Void> futurePull = downloadFileWorker(tempFile, 0, localArchive.toPath(), progress.forNextPart());
+        ListenableFuture<Void> futureExtract = myTaskExecutor.transform(futurePull, aVoid2 -> {
+          try (InputStream input = Files.newInputStream(localArchive.toPath())) {
+            int fileCount = TarArchiveExtractor.extract(input, localDirectory);
+            LOGGER.info(String.format("Extracted %,d files from archive of \"%s\"", fileCount, remoteDirectory));
+          }
+          return null;
+        });
+        return myTaskExecutor.finallyAsync(futureExtract, () -> {
+          FileUtil.delete(localArchive);
+          return Futures.immediateFuture(null);
+        });
+      });
+
+      // Ensure temporary remote file is deleted in all cases (after download success *or* error)
+      return myTaskExecutor.finallyAsync(futureDownload,
+                                         () -> myFileOperations.deleteFile(tempFile));
+    });
+  }
+
+  /**
+   * Downloads a large file in chunks of {@link #DOWNLOAD_CHUNK_SIZE} bytes. Each chunk is copied with "dd" to a
+   * temporary file on the device, pulled, and appended to a partial local file named after {@code localPath} with
+   * the {@link #PARTIAL_DOWNLOAD_SUFFIX}. A chunk that fails to download is retried a few times.
+   *
+   * <p>If the download fails or is cancelled, the partial local file is kept, and the next download of the same
+   * file to the same location resumes after the last complete chunk. The size and modification time of the remote
+   * file are recorded next to the partial file (with the {@link #PARTIAL_DOWNLOAD_INFO_SUFFIX}), and the download
+   * starts over if the remote file changed since.
+   *
+   * <p>The returned future fails with an {@link AdbShellCommandException} if the device can't copy the first chunk,
+   * for example when the device does not support the "dd" command.
+   *
+   * @param remoteModificationTime the modification time of the remote file as listed by the device, if known
+   */
+  @NotNull
+  public ListenableFuture<Void> downloadFileInChunks(@NotNull String remotePath,
+                                                     long remotePathSize,
+                                                     @Nullable String remoteModificationTime,
+                                                     @NotNull Path localPath,
+                                                     @NotNull FileTransferProgress progress,
+                                                     @Nullable String runAs) {
+    Path partialPath = getPartialDownloadPath(localPath);
+    Path infoPath = getPartialDownloadInfoPath(localPath);
+    ListenableFuture<Long> futureFirstChunk =
+      myTaskExecutor.executeAsync(() -> getResumeChunk(partialPath, infoPath, remotePathSize, remoteModificationTime));
+    ListenableFuture<String> futureTempFile = myTaskExecutor.transformAsync(futureFirstChunk, firstChunk ->
+      myFileOperations.createTempFile(DEVICE_TEMP_DIRECTORY)
+    );
+    return myTaskExecutor.transformAsync(futureTempFile, tempFile -> {
+      assert tempFile != null;
+      long firstChunk = Futures.getDone(futureFirstChunk);
+      if (firstChunk > 0) {
+        LOGGER.info(String.format("Resuming download of \"%s\" at offset %,d", remotePath, firstChunk * DOWNLOAD_CHUNK_SIZE));
+      }
+
+      long chunkCount = (remotePathSize + DOWNLOAD_CHUNK_SIZE - 1) / DOWNLOAD_CHUNK_SIZE;
+      SettableFuture<Void> futureChunks = SettableFuture.create();
+      downloadChunksWorker(remotePath, remotePathSize, tempFile, partialPath, firstChunk, chunkCount, 1, progress, runAs, futureChunks);
+
+      ListenableFuture<Void> futureMove = myTaskExecutor.transform(futureChunks, aVoid -> {
+        Files.move(partialPath, localPath, StandardCopyOption.REPLACE_EXISTING);
+        Files.deleteIfExists(infoPath);
+        return null;
+      });
+
+      // Ensure temporary remote file is deleted in all cases (after download success *or* error)
+      return myTaskExecutor.finallyAsync(futureMove,
+                                         () -> myFileOperations.deleteFile(tempFile));
+    });
+  }
+
+  @NotNull
+  private static Path getPartialDownloadPath(@NotNull Path localPath) {
+    return localPath.resolveSibling(localPath.getFileName() + PARTIAL_DOWNLOAD_SUFFIX);
+  }
+
+  @NotNull
+  private static Path getPartialDownloadInfoPath(@NotNull Path localPath) {
+    return localPath.resolveSibling(localPath.getFileName() + PARTIAL_DOWNLOAD_INFO_SUFFIX);
+  }
+
+  @Nullable
+  private static String getModificationTime(@NotNull AdbFileListingEntry entry) {
+    // "ls" only lists the modification time to the minute, together with the size this is enough to detect most changes
+    if (entry.getDate() == null || entry.getTime() == null) {
+      return null;
+    }
+    return entry.getDate() + " " + entry.getTime();
+  }
+
+  /**
+   * Returns the index of the first chunk missing from the partial download, discarding any incomplete chunk. The
+   * partial download is discarded entirely if it was made from a remote file of a different size or modification
+   * time, as recorded in {@code infoPath}.
+   */
+  private static long getResumeChunk(@NotNull Path partialPath,
+                                     @NotNull Path infoPath,
+                                     long remotePathSize,
+                                     @Nullable String remoteModificationTime) throws IOException {
+    List<String> info = Arrays.asList(Long.toString(remotePathSize), remoteModificationTime == null ? "" : remoteModificationTime);
+    long chunk = 0;
+    if (Files.exists(partialPath) && Files.exists(infoPath) && info.equals(Files.readAllLines(infoPath, StandardCharsets.UTF_8))) {
+      long size = Files.size(partialPath);
+      chunk = size > remotePathSize ? 0 : size / DOWNLOAD_CHUNK_SIZE;
+    }
+    else {
+      Files.createDirectories(partialPath.getParent());
+      Files.write(infoPath, info, StandardCharsets.UTF_8);
+    }
+    if (!Files.exists(partialPath)) {
+      Files.createFile(partialPath);
+      return 0;
+    }
+    try (FileChannel channel = FileChannel.open(partialPath, StandardOpenOption.WRITE)) {
+      channel.truncate(chunk * DOWNLOAD_CHUNK_SIZE);
+    }
+    return chunk;
+  }
+
+  private void downloadChunksWorker(@NotNull String remotePath,
+                                    long remotePathSize,
+                                    @NotNull String tempFile,
+                                    @NotNull Path partialPath,
+                                    long chunk,
+                                    long chunkCount,
+                                    int attempt,
+                                    @NotNull FileTransferProgress progress,
+                                    @Nullable String runAs,
+                                    @NotNull SettableFuture<Void> futureResult) {
+    if (chunk >= chunkCount) {
+      futureResult.set(null);
+      return;
+    }
+    if (progress.isCancelled()) {
+      futureResult.cancel(false);
+      return;
+    }
+
+    long offset = chunk * DOWNLOAD_CHUNK_SIZE;
+    long chunkSize = Math.min(DOWNLOAD_CHUNK_SIZE, remotePathSize - offset);
+    FileTransferProgress chunkProgress = new FileTransferProgress() {
+      @Override
+      public void progress(long currentBytes, long totalBytes) {
+        progress.progress(offset + currentBytes, remotePathSize);
+      }
+
+      @Override
+      public boolean isCancelled() {
+        return progress.isCancelled();
+      }
+    };
+
+    ListenableFuture<Void> futureCopy = myFileOperations.copyFileBlockRunAs(remotePath, tempFile, chunk, DOWNLOAD_CHUNK_SIZE, runAs);
+    ListenableFuture<Void> futureChunk = myTaskExecutor.transformAsync(futureCopy, aVoid -> {
+      File localChunk = FileUtil.createTempFile("device-explorer", ".chunk", true);
+      ListenableFuture<Void> futurePull = downloadFileWorker(tempFile, chunkSize, localChunk.toPath(), chunkProgress);
+      ListenableFuture<Void> futureAppend = myTaskExecutor.transform(futurePull, aVoid2 -> {
+        if (localChunk.length() != chunkSize) {
+          throw new IOException(String.format("Chunk %,d of \"%s\" has an unexpected size", chunk, remotePath));
+        }
+        try (OutputStream output = Files.newOutputStream(partialPath, StandardOpenOption.APPEND)) {
+          Files.copy(localChunk.toPath(), output);
+        }
+        return null;
+      });
+      return myTaskExecutor.finallyAsync(futureAppend, () -> {
+        FileUtil.delete(localChunk);
+        return Futures.immediateFuture(null);
+      });
+    });
+
+    myTaskExecutor.addConsumer(futureChunk, (aVoid, throwable) -> {
+      if (throwable == null) {
+        downloadChunksWorker(remotePath, remotePathSize, tempFile, partialPath, chunk + 1, chunkCount, 1, progress, runAs, futureResult);
+      }
+      else if (futureChunk.isCancelled() || progress.isCancelled()) {
+        futureResult.cancel(false);
+      }
+      else if (attempt < DOWNLOAD_CHUNK_MAX_ATTEMPTS && !(throwable instanceof AdbShellCommandException && chunk == 0)) {
+        LOGGER.info(String.format("Error downloading chunk %,d of \"%s\", retrying", chunk, remotePath), throwable);
+        downloadChunksWorker(remotePath, remotePathSize, tempFile, partialPath, chunk, chunkCount, attempt + 1, progress, runAs,
+                             futureResult);
+      }
+      else {
+        futureResult.setException(throwable);
+      }
+    });
+  }
+
   @NotNull
   public ListenableFuture<Void> uploadFile(@NotNull Path localPath,
                                            @NotNull String remotePath,
@@ -143,7 +491,7 @@ public class AdbFileTransfer {
         return null;
       }
       finally {
-        syncService.close();
+        closeSyncService(syncService);
       }
     });
 
@@ -179,7 +527,7 @@ public class AdbFileTransfer {
         return null;
       }
       finally {
-        syncService.close();
+        closeSyncService(syncService);
       }
     });
 
@@ -194,17 +542,84 @@ public class AdbFileTransfer {
     });
   }
 
+  /**
+   * Opens a {@link SyncService} once fewer than the maximum number of transfers are running. The caller
+   * must call {@link #closeSyncService(SyncService)} when done.
+   */
   @NotNull
   private ListenableFuture<SyncService> getSyncService() {
     return myTaskExecutor.executeAsync(() -> {
-      SyncService sync = myDevice.getSyncService();
-      if (sync == null) {
-        throw new IOException("Unable to open synchronization service to device");
+      myTransferPermits.acquire();
+      SyncService sync = null;
+      try {
+        sync = myDevice.getSyncService();
+        if (sync == null) {
+          throw new IOException("Unable to open synchronization service to device");
+        }
+        return sync;
+      }
+      finally {
+        if (sync == null) {
+          myTransferPermits.release();
+        }
       }
-      return sync;
     });
   }
 
+  private void closeSyncService(@NotNull SyncService syncService) {
+    try {
+      syncService.close();
+    }
+    finally {
+      myTransferPermits.release();
+    }
+  }
+
+  /**
+   * A {@link FileTransferProgress} for several consecutive transfers, for example of several archives, reporting
+   * the sum of their progress as the progress of a single transfer of {@code totalBytes}.
+   */
+  private static class AggregateProgress {
+    @NotNull private final FileTransferProgress myProgress;
+    private final long myTotalBytes;
+    private long myCompletedBytes;
+
+    AggregateProgress(@NotNull FileTransferProgress progress, long totalBytes) {
+      myProgress = progress;
+      myTotalBytes = totalBytes;
+    }
+
+    boolean isCancelled() {
+      return myProgress.isCancelled();
+    }
+
+    /**
+     * Returns the {@link FileTransferProgress} of the next transfer. Progress callbacks are invoked on the
+     * progress executor, one transfer at a time, so no synchronization is needed.
+     */
+    @NotNull
+    FileTransferProgress forNextPart() {
+      return new FileTransferProgress() {
+        private long myPartBytes;
+
+        @Override
+        public void progress(long currentBytes, long totalBytes) {
+          // The size of the part may not be known in advance, in which case "totalBytes" is not meaningful.
+          if (currentBytes > myPartBytes) {
+            myCompletedBytes += currentBytes - myPartBytes;
+            myPartBytes = currentBytes;
+            myProgress.progress(Math.min(myCompletedBytes, myTotalBytes), myTotalBytes);
+          }
+        }
+
+        @Override
+        public boolean isCancelled() {
+          return myProgress.isCancelled();
+        }
+      };
+    }
+  }
+
   /**
    * Forward callbacks from a {@link SyncService.ISyncProgressMonitor}, running on a pooled thread,
    * to a {@link FileTransferProgress}, using the provided {@link Executor}, typically the
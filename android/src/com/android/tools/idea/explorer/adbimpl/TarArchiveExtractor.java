@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Extracts the regular files and directories of the tar archives created on devices by
+ * {@link AdbFileOperations#createArchiveRunAs}. Supports the ustar format, and the GNU and pax
+ * extensions for long file names used by the toybox and busybox implementations of "tar".
+ * Other entries, for example symbolic links, are skipped.
+ */
+final class TarArchiveExtractor {
+  private static final int BLOCK_SIZE = 512;
+
+  private TarArchiveExtractor() {
+  }
+
+  /**
+   * Extracts the {@code archive} into the {@code directory}, and returns the number of files extracted.
+   *
+   * @throws IOException if the archive is invalid or contains entries outside of the directory
+   */
+  static int extract(@NotNull InputStream archive, @NotNull Path directory) throws IOException {
+    DataInputStream input = new DataInputStream(new BufferedInputStream(archive));
+    byte[] header = new byte[BLOCK_SIZE];
+    Path root = directory.toAbsolutePath().normalize();
+    String longName = null;
+    int fileCount = 0;
+
+    while (true) {
+      try {
+        input.readFully(header);
+      }
+      catch (EOFException e) {
+        // Some implementations omit the end of archive blocks.
+        return fileCount;
+      }
+      if (isZeroBlock(header)) {
+        return fileCount;
+      }
+
+      long size = parseNumber(header, 124, 12);
+      byte type = header[156];
+      switch (type) {
+        case 'L': // GNU long name of the next entry
+          longName = trimNul(readString(input, size));
+          skipPadding(input, size);
+          continue;
+        case 'x': // pax extended header of the next entry
+          String path = getPaxPath(readString(input, size));
+          if (path != null) {
+            longName = path;
+          }
+          skipPadding(input, size);
+          continue;
+        default:
+          break;
+      }
+
+      String name = longName != null ? longName : getName(header);
+      longName = null;
+
+      if (type == '0' || type == 0 || type == '5') {
+        Path target = root.resolve(name).normalize();
+        if (!target.startsWith(root) || target.equals(root) && type != '5') {
+          throw new IOException(String.format("Invalid entry \"%s\" in archive", name));
+        }
+        if (type == '5') {
+          Files.createDirectories(target);
+        }
+        else {
+          Files.createDirectories(target.getParent());
+          try (OutputStream output = Files.newOutputStream(target)) {
+            copy(input, output, size);
+          }
+          skipPadding(input, size);
+          fileCount++;
+          continue;
+        }
+      }
+      skip(input, size);
+      skipPadding(input, size);
+    }
+  }
+
+  @NotNull
+  private static String getName(@NotNull byte[] header) {
+    String name = trimNul(new String(header, 0, 100, StandardCharsets.UTF_8));
+    // The ustar format splits long names in a prefix and a name.
+    if (new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar")) {
+      String prefix = trimNul(new String(header, 345, 155, StandardCharsets.UTF_8));
+      if (!prefix.isEmpty()) {
+        return prefix + "/" + name;
+      }
+    }
+    return name;
+  }
+
+  /**
+   * Returns the value of the "path" record of a pax extended header. Records have the form "length key=value\n".
+   */
+  @Nullable
+  private static String getPaxPath(@NotNull String records) {
+    for (String record : records.split("\n")) {
+      int space = record.indexOf(' ');
+      if (space >= 0 && record.startsWith("path=", space + 1)) {
+        return record.substring(space + 1 + "path=".length());
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Parses a numeric header field, which is either an octal number or, for large values, a
+   * big endian binary number marked by the high bit of the first byte.
+   */
+  private static long parseNumber(@NotNull byte[] header, int offset, int length) throws IOException {
+    if ((header[offset] & 0x80) != 0) {
+      long value = header[offset] & 0x7f;
+      for (int i = offset + 1; i < offset + length; i++) {
+        value = (value << 8) | (header[i] & 0xff);
+      }
+      return value;
+    }
+
+    long value = 0;
+    for (int i = offset; i < offset + length; i++) {
+      byte b = header[i];
+      if (b == 0 || b == ' ') {
+        if (value > 0) {
+          break;
+        }
+        continue;
+      }
+      if (b < '0' || b > '7') {
+        throw new IOException("Invalid number in tar archive header");
+      }
+      value = value * 8 + (b - '0');
+    }
+    return value;
+  }
+
+  private static boolean isZeroBlock(@NotNull byte[] block) {
+    for (byte b : block) {
+      if (b != 0) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @NotNull
+  private static String trimNul(@NotNull String value) {
+    int end = value.indexOf('\0');
+    return end >= 0 ? value.substring(0, end) : value;
+  }
+
+  @NotNull
+  private static String readString(@NotNull DataInputStream input, long size) throws IOException {
+    if (size > 1024 * 1024) {
+      throw new IOException("Invalid extended header in tar archive");
+    }
+    byte[] bytes = new byte[(int)size];
+    input.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static void copy(@NotNull InputStream input, @NotNull OutputStream output, long size) throws IOException {
+    byte[] buffer = new byte[64 * 1024];
+    long remaining = size;
+    while (remaining > 0) {
+      int count = input.read(buffer, 0, (int)Math.min(buffer.length, remaining));
+      if (count < 0) {
+        throw new EOFException("Unexpected end of tar archive");
+      }
+      output.write(buffer, 0, count);
+      remaining -= count;
+    }
+  }
+
+  private static void skip(@NotNull InputStream input, long size) throws IOException {
+    long remaining = size;
+    while (remaining > 0) {
+      long count = input.skip(remaining);
+      if (count <= 0) {
+        if (input.read() < 0) {
+          throw new EOFException("Unexpected end of tar archive");
+        }
+        count = 1;
+      }
+      remaining -= count;
+    }
+  }
+
+  private static void skipPadding(@NotNull InputStream input, long size) throws IOException {
+    long remainder = size % BLOCK_SIZE;
+    if (remainder != 0) {
+      skip(input, BLOCK_SIZE - remainder);
+    }
+  }
+}
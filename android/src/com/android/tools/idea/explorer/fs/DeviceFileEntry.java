@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.explorer.fs;
 
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -93,6 +94,21 @@ public interface DeviceFileEntry {
   ListenableFuture<Void> downloadFile(@NotNull Path localPath,
                                       @NotNull FileTransferProgress progress);
 
+  /**
+   * Downloads the contents of several files contained in this directory to a local directory,
+   * using the same file names. File systems that can transfer many files at once, which is much
+   * faster than downloading small files one at a time, override this method.
+   *
+   * <p>The default implementation returns a future that fails with an {@link UnsupportedOperationException},
+   * in which case callers should use {@link #downloadFile(Path, FileTransferProgress)} for each file.
+   */
+  @NotNull
+  default ListenableFuture<Void> downloadFiles(@NotNull List<DeviceFileEntry> entries,
+                                               @NotNull Path localDirectory,
+                                               @NotNull FileTransferProgress progress) {
+    return Futures.immediateFailedFuture(new UnsupportedOperationException("Downloading multiple files is not supported"));
+  }
+
   /**
    * Uploads the contents of a local file to a remote {@link DeviceFileEntry} directory.
    */
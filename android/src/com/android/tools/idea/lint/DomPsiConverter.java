@@ -18,10 +18,14 @@ package com.android.tools.idea.lint;
 import com.android.annotations.NonNull;
 import com.android.ide.common.blame.SourcePosition;
 import com.android.utils.PositionXmlParser;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -31,6 +35,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.w3c.dom.*;
 
+import java.lang.ref.SoftReference;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -48,11 +53,22 @@ import java.util.Map;
  * text and comment nodes.)
  */
 class DomPsiConverter {
+  /**
+   * The document converted from a file, kept in the user data of the file. It is softly referenced so that the documents
+   * of the files of a large batch run can be collected under memory pressure, and converted again when needed.
+   */
+  private static final Key<SoftReference<DomDocument>> DOCUMENT_KEY = Key.create("DomPsiConverter.document");
+
+  /**
+   * Number of files converted at a time by {@link #prepare}.
+   */
+  private static final int PREPARE_BATCH_SIZE = 200;
+
   private DomPsiConverter() {
   }
 
   /**
-   * Convert the given {@link XmlFile} to a DOM tree
+   * Convert the given {@link XmlFile} to a DOM tree. The tree is reused by later calls until the file is modified.
    *
    * @param xmlFile the file to be converted
    * @return a corresponding W3C DOM tree
@@ -60,12 +76,21 @@ class DomPsiConverter {
   @Nullable
   public static Document convert(@NotNull XmlFile xmlFile) {
     try {
+      // The documents are read-only views of the PSI, so they can be shared by lint runs until the file is modified.
+      // They are kept in the user data of the file, so they go away with the file and its project.
+      long modificationStamp = xmlFile.getModificationStamp();
+      SoftReference<DomDocument> reference = xmlFile.getUserData(DOCUMENT_KEY);
+      DomDocument document = reference != null ? reference.get() : null;
+      if (document != null && document.myModificationStamp == modificationStamp && document.myPsiDocument.isValid()) {
+        return document;
+      }
       XmlDocument xmlDocument = xmlFile.getDocument();
       if (xmlDocument == null) {
         return null;
       }
-
-      return convert(xmlDocument);
+      document = convert(xmlDocument, modificationStamp);
+      xmlFile.putUserData(DOCUMENT_KEY, new SoftReference<>(document));
+      return document;
     }
     catch (ProcessCanceledException e) {
       // Ignore: common occurrence, e.g. we're running lint as part of an editor background
@@ -87,12 +112,64 @@ class DomPsiConverter {
   /**
    * Convert the given {@link XmlDocument} to a DOM tree
    *
-   * @param document the document to be converted
+   * @param document          the document to be converted
+   * @param modificationStamp the modification stamp of the file of the document
    * @return a corresponding W3C DOM tree
    */
-  @Nullable
-  private static Document convert(@NotNull XmlDocument document)  {
-    return new DomDocument(document);
+  @NotNull
+  private static DomDocument convert(@NotNull XmlDocument document, long modificationStamp)  {
+    return new DomDocument(document, modificationStamp);
+  }
+
+  /**
+   * Converts the files in parallel, under read actions, so that the lint checks of a batch run find their
+   * documents in the cache. Since the DOM is built lazily, the whole tree of each file is visited to build it,
+   * together with the underlying PSI. The files are converted {@link #PREPARE_BATCH_SIZE} at a time, and the
+   * documents are only softly referenced, so preparing many files does not pin all their documents in memory.
+   *
+   * @param xmlFiles  the files to be converted
+   * @param indicator the indicator of the batch run, checked for cancellation
+   */
+  public static void prepare(@NotNull List<XmlFile> xmlFiles, @Nullable ProgressIndicator indicator) {
+    for (int start = 0; start < xmlFiles.size(); start += PREPARE_BATCH_SIZE) {
+      if (indicator != null) {
+        indicator.checkCanceled();
+      }
+      List<XmlFile> batch = xmlFiles.subList(start, Math.min(start + PREPARE_BATCH_SIZE, xmlFiles.size()));
+      prepareBatch(batch, indicator);
+    }
+  }
+
+  private static void prepareBatch(@NotNull List<XmlFile> xmlFiles, @Nullable ProgressIndicator indicator) {
+    JobLauncher.getInstance().invokeConcurrentlyUnderProgress(xmlFiles, indicator, false, xmlFile -> {
+      ReadAction.run(() -> {
+        if (!xmlFile.isValid()) {
+          return;
+        }
+        try {
+          Document document = convert(xmlFile);
+          if (document != null) {
+            visit(document);
+          }
+        }
+        catch (ProcessCanceledException e) {
+          throw e;
+        }
+        catch (RuntimeException ignore) {
+          // Reported by the lint run when it converts the file again
+        }
+      });
+      return true;
+    });
+  }
+
+  private static void visit(@NotNull Node node) {
+    if (node.getNodeType() == Node.ELEMENT_NODE) {
+      node.getAttributes();
+    }
+    for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+      visit(child);
+    }
   }
 
   @Nullable
@@ -381,7 +458,7 @@ class DomPsiConverter {
     @Nullable protected final Document myOwner;
     @Nullable protected final DomNode myParent;
     @NotNull protected final XmlElement myElement;
-    @Nullable protected DomNodeList myChildren;
+    @Nullable protected volatile DomNodeList myChildren;
     @Nullable protected DomNode myNext;
     @Nullable protected DomNode myPrevious;
 
@@ -400,31 +477,44 @@ class DomPsiConverter {
     @NotNull
     @Override
     public DomNodeList getChildNodes() {
-      if (myChildren == null) {
-        PsiElement[] children = myElement.getChildren();
-        if (children.length > 0) {
-          DomNodeList list = new DomNodeList();
-          myChildren = list;
-          // True except for in DomDocument, which has custom getChildNodes
-          assert myOwner != null;
-
-          for (PsiElement child : children) {
-            if (child instanceof XmlTag) {
-              list.add(new DomElement(myOwner, this, (XmlTag) child));
-            } else if (child instanceof XmlText) {
-              list.add(new DomText(myOwner, this, (XmlText) child));
-            } else if (child instanceof XmlComment) {
-              list.add(new DomComment(myOwner, this, (XmlComment) child));
-            } else {
-              // Skipping other types for now; lint doesn't care about them.
-              // TODO: Consider whether we need CDATA.
-            }
+      // Documents are shared across lint runs and threads (see DomPsiConverter#convert(XmlFile)), so the
+      // children are only published once they are complete
+      DomNodeList children = myChildren;
+      if (children == null) {
+        synchronized (this) {
+          children = myChildren;
+          if (children == null) {
+            children = createChildNodes();
+            myChildren = children;
           }
+        }
+      }
+      return children;
+    }
+
+    @NotNull
+    protected DomNodeList createChildNodes() {
+      PsiElement[] children = myElement.getChildren();
+      if (children.length == 0) {
+        return EMPTY;
+      }
+      DomNodeList list = new DomNodeList();
+      // True except for in DomDocument, which has custom createChildNodes
+      assert myOwner != null;
+
+      for (PsiElement child : children) {
+        if (child instanceof XmlTag) {
+          list.add(new DomElement(myOwner, this, (XmlTag) child));
+        } else if (child instanceof XmlText) {
+          list.add(new DomText(myOwner, this, (XmlText) child));
+        } else if (child instanceof XmlComment) {
+          list.add(new DomComment(myOwner, this, (XmlComment) child));
         } else {
-          myChildren = EMPTY;
+          // Skipping other types for now; lint doesn't care about them.
+          // TODO: Consider whether we need CDATA.
         }
       }
-      return myChildren;
+      return list;
     }
 
     @Nullable
@@ -657,11 +747,13 @@ class DomPsiConverter {
 
   private static class DomDocument extends DomNode implements Document {
     @NotNull private final XmlDocument myPsiDocument;
-    @Nullable private DomElement myRoot;
+    private final long myModificationStamp;
+    @Nullable private volatile DomElement myRoot;
 
-    private DomDocument(@NotNull XmlDocument document) {
+    private DomDocument(@NotNull XmlDocument document, long modificationStamp) {
       super(null, null, document);
       myPsiDocument = document;
+      myModificationStamp = modificationStamp;
     }
 
     // From org.w3c.dom.Node:
@@ -685,17 +777,13 @@ class DomPsiConverter {
 
     @NotNull
     @Override
-    public DomNodeList getChildNodes() {
-      if (myChildren == null) {
-        DomNodeList list = new DomNodeList();
-        myChildren = list;
-        DomNode documentElement = (DomNode)getDocumentElement();
-        if (documentElement != null) {
-          list.add(documentElement);
-        }
+    protected DomNodeList createChildNodes() {
+      DomNodeList list = new DomNodeList();
+      DomNode documentElement = (DomNode)getDocumentElement();
+      if (documentElement != null) {
+        list.add(documentElement);
       }
-
-      return myChildren;
+      return list;
     }
 
     @Nullable
@@ -721,15 +809,22 @@ class DomPsiConverter {
     @Nullable
     @Override
     public Element getDocumentElement() {
-      if (myRoot == null) {
-        XmlTag rootTag = myPsiDocument.getRootTag();
-        if (rootTag == null) {
-          return null;
+      DomElement root = myRoot;
+      if (root == null) {
+        synchronized (this) {
+          root = myRoot;
+          if (root == null) {
+            XmlTag rootTag = myPsiDocument.getRootTag();
+            if (rootTag == null) {
+              return null;
+            }
+            root = new DomElement(this, this, rootTag);
+            myRoot = root;
+          }
         }
-        myRoot = new DomElement(this, this, rootTag);
       }
 
-      return myRoot;
+      return root;
     }
 
     @NotNull
@@ -899,7 +994,7 @@ class DomPsiConverter {
 
   private static class DomElement extends DomNode implements Element {
     private final XmlTag myTag;
-    @Nullable private NamedNodeMap myAttributes;
+    @Nullable private volatile NamedNodeMap myAttributes;
 
     private DomElement(@NotNull Document owner, @NotNull DomNode parent, @NotNull XmlTag tag) {
       super(owner, parent, tag);
@@ -943,16 +1038,23 @@ class DomPsiConverter {
         return application.runReadAction((Computable<NamedNodeMap>)this::getAttributes);
       }
 
-      if (myAttributes == null) {
-        XmlAttribute[] attributes = myTag.getAttributes();
-        if (attributes.length == 0) {
-         myAttributes = EMPTY_ATTRIBUTES;
-        } else {
-          myAttributes = new DomNamedNodeMap(this, attributes);
+      NamedNodeMap attributes = myAttributes;
+      if (attributes == null) {
+        synchronized (this) {
+          attributes = myAttributes;
+          if (attributes == null) {
+            XmlAttribute[] psiAttributes = myTag.getAttributes();
+            if (psiAttributes.length == 0) {
+              attributes = EMPTY_ATTRIBUTES;
+            } else {
+              attributes = new DomNamedNodeMap(this, psiAttributes);
+            }
+            myAttributes = attributes;
+          }
         }
       }
 
-      return myAttributes;
+      return attributes;
     }
 
     // From org.w3c.dom.Element:
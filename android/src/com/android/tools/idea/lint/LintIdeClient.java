@@ -15,6 +15,7 @@
  */
 package com.android.tools.idea.lint;
 
+import static com.android.SdkConstants.EXT_XML;
 import static com.android.ide.common.repository.GoogleMavenRepository.MAVEN_GOOGLE_CACHE_DIR_KEY;
 import static com.android.tools.lint.checks.DeprecatedSdkRegistryKt.DEPRECATED_SDK_CACHE_DIR_KEY;
 import static com.android.tools.lint.detector.api.TextFormat.RAW;
@@ -74,6 +75,7 @@ import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.Application;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.application.ex.ApplicationInfoEx;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.editor.Document;
@@ -83,6 +85,7 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
 import com.intellij.openapi.module.ModuleUtilCore;
 import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.util.AbstractProgressIndicatorExBase;
 import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
 import com.intellij.openapi.project.Project;
@@ -93,6 +96,7 @@ import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.util.Ref;
 import com.intellij.openapi.util.TextRange;
 import com.intellij.openapi.vfs.LocalFileSystem;
+import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.JavaDirectoryService;
 import com.intellij.psi.PsiDirectory;
@@ -102,6 +106,7 @@ import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.PsiPackage;
 import com.intellij.psi.xml.XmlElement;
+import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTag;
 import com.intellij.util.PathUtil;
 import com.intellij.util.containers.HashMap;
@@ -116,6 +121,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.function.Consumer;
 import java.util.function.Predicate;
 import org.jetbrains.android.facet.AndroidFacet;
 import org.jetbrains.android.facet.AndroidRootUtil;
@@ -186,6 +192,54 @@ public class LintIdeClient extends LintClient implements Disposable {
     return myProject;
   }
 
+  /**
+   * Converts the XML files of a batch run to DOM documents in parallel before the run, see {@link DomPsiConverter#prepare}.
+   *
+   * @param modules   the modules whose manifest and resource files are analyzed, if {@code files} is null
+   * @param files     the files analyzed, or null to analyze the whole modules
+   * @param indicator the indicator of the batch run
+   */
+  public void prepareXmlFiles(@NotNull List<Module> modules, @Nullable List<VirtualFile> files, @Nullable ProgressIndicator indicator) {
+    List<XmlFile> xmlFiles = ReadAction.compute(() -> {
+      PsiManager psiManager = PsiManager.getInstance(myProject);
+      List<XmlFile> result = new ArrayList<>();
+      Consumer<VirtualFile> addFile = file -> {
+        if (!file.isDirectory() && EXT_XML.equals(file.getExtension())) {
+          PsiFile psiFile = psiManager.findFile(file);
+          if (psiFile instanceof XmlFile) {
+            result.add((XmlFile)psiFile);
+          }
+        }
+      };
+
+      if (files != null) {
+        files.forEach(addFile);
+        return result;
+      }
+      for (Module module : modules) {
+        AndroidFacet facet = AndroidFacet.getInstance(module);
+        if (facet == null) {
+          continue;
+        }
+        VirtualFile manifest = AndroidRootUtil.getPrimaryManifestFile(facet);
+        if (manifest != null) {
+          addFile.accept(manifest);
+        }
+        for (File resourceDirectory : LintIdeUtils.getResourceDirectories(facet)) {
+          VirtualFile directory = LocalFileSystem.getInstance().findFileByIoFile(resourceDirectory);
+          if (directory != null) {
+            VfsUtilCore.iterateChildrenRecursively(directory, null, file -> {
+              addFile.accept(file);
+              return true;
+            });
+          }
+        }
+      }
+      return result;
+    });
+    DomPsiConverter.prepare(xmlFiles, indicator);
+  }
+
   @Nullable
   protected Module findModuleForLintProject(@NotNull Project project,
                                             @NotNull com.android.tools.lint.detector.api.Project lintProject) {
@@ -16,6 +16,7 @@
 package com.android.tools.idea.lint;
 
 import com.android.annotations.NonNull;
+import com.android.annotations.VisibleForTesting;
 import com.android.builder.model.*;
 import com.android.ide.common.repository.GradleCoordinate;
 import com.android.ide.common.repository.GradleVersion;
@@ -57,6 +58,7 @@ import org.jetbrains.jps.android.model.impl.JpsAndroidModuleProperties;
 
 import java.io.File;
 import java.util.*;
+import java.util.function.Function;
 
 import static com.android.SdkConstants.*;
 
@@ -112,6 +114,67 @@ public class LintIdeProject extends Project {
     }
   }
 
+  /**
+   * Splits the given modules into groups which can be analyzed independently, by separate lint drivers: modules depending,
+   * directly or not, on a common module are in the same group, so each module is analyzed by a single driver.
+   * The groups, and the modules in each group, are in the order of the given modules.
+   */
+  @NonNull
+  public static List<List<Module>> groupIndependentModules(@NonNull List<Module> modules) {
+    return ApplicationManager.getApplication().runReadAction((Computable<List<List<Module>>>)() -> groupIndependent(modules, module -> {
+      return module.isDisposed() ? Collections.emptyList() : Arrays.asList(ModuleRootManager.getInstance(module).getDependencies());
+    }));
+  }
+
+  /**
+   * Splits the {@code items} into groups which share no dependency, directly or not, see {@link #groupIndependentModules}.
+   */
+  @VisibleForTesting
+  @NonNull
+  static <T> List<List<T>> groupIndependent(@NonNull List<T> items, @NonNull Function<T, Collection<T>> getDependencies) {
+    // Union-find over the items and their transitive dependencies
+    Map<T, T> parents = Maps.newHashMap();
+    Deque<T> queue = new ArrayDeque<>(items);
+    for (T item : items) {
+      parents.put(item, item);
+    }
+    while (!queue.isEmpty()) {
+      T item = queue.poll();
+      for (T dependency : getDependencies.apply(item)) {
+        if (!parents.containsKey(dependency)) {
+          parents.put(dependency, dependency);
+          queue.add(dependency);
+        }
+        T root = findGroup(parents, item);
+        T dependencyRoot = findGroup(parents, dependency);
+        if (!root.equals(dependencyRoot)) {
+          parents.put(dependencyRoot, root);
+        }
+      }
+    }
+
+    Map<T, List<T>> groups = new LinkedHashMap<>();
+    for (T item : items) {
+      groups.computeIfAbsent(findGroup(parents, item), root -> new ArrayList<>()).add(item);
+    }
+    return new ArrayList<>(groups.values());
+  }
+
+  @NonNull
+  private static <T> T findGroup(@NonNull Map<T, T> parents, @NonNull T item) {
+    T root = item;
+    while (!parents.get(root).equals(root)) {
+      root = parents.get(root);
+    }
+    // Path compression
+    while (!item.equals(root)) {
+      T parent = parents.get(item);
+      parents.put(item, root);
+      item = parent;
+    }
+    return root;
+  }
+
   /**
    * Creates a project for a single file. Also optionally creates a main project for the file, if applicable.
    *
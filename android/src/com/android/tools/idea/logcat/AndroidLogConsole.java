@@ -24,6 +24,7 @@ import com.android.tools.idea.ddms.actions.TerminateVMAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyConfigureLogcatHeaderAction;
 import com.android.tools.idea.logcat.AndroidLogcatView.MyRestartAction;
 import com.intellij.diagnostic.logging.LogConsoleBase;
+import com.intellij.diagnostic.logging.LogFilter;
 import com.intellij.diagnostic.logging.LogFormatter;
 import com.intellij.execution.impl.ConsoleViewImpl;
 import com.intellij.execution.ui.ConsoleView;
@@ -76,6 +77,24 @@ public final class AndroidLogConsole extends LogConsoleBase {
     });
   }
 
+  /**
+   * Rebuilds the console from the logcat buffer of the selected device, which only replays the lines that may pass the filters instead of
+   * running the filters over every line of the console. Falls back to filtering the console if no lines are buffered for the device.
+   */
+  @Override
+  public void onTextFilterChange() {
+    if (myView == null || !myView.replayBufferedLogs()) {
+      super.onTextFilterChange();
+    }
+  }
+
+  @Override
+  public void onFilterStateChange(LogFilter filter) {
+    if (myView == null || !myView.replayBufferedLogs()) {
+      super.onFilterStateChange(filter);
+    }
+  }
+
   @Override
   public boolean isActive() {
     return myView.isActive();
@@ -40,6 +40,11 @@ import java.util.regex.Pattern;
  * This deliberately drops the custom pattern behaviour of LogFilterModel, replacing it with a new version that allows regex support.
  */
 public abstract class AndroidLogFilterModel extends LogFilterModel {
+  /**
+   * The process ID of the messages written by the logcat view itself, such as the notice of dropped lines. These are shown whatever
+   * filter is configured. Real process IDs never get this large.
+   */
+  static final int VIEW_MESSAGE_PID = Integer.MAX_VALUE;
 
   private final List<LogFilterListener> myListeners = ContainerUtil.createLockFreeCopyOnWriteList();
 
@@ -99,6 +104,23 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
     fireTextFilterChange();
   }
 
+  /**
+   * Returns the filter selected in the filter combo box, if any.
+   */
+  @Nullable
+  final AndroidLogcatFilter getConfiguredFilter() {
+    return myConfiguredFilter;
+  }
+
+  /**
+   * Returns the minimum log level of the shown messages, if any.
+   */
+  @Nullable
+  final Log.LogLevel getSelectedLogLevel() {
+    AndroidLogLevelFilter filter = getSelectedLogLevelFilter();
+    return filter != null ? filter.myLogLevel : null;
+  }
+
   protected abstract void saveConfiguredFilterName(String filterName);
 
   protected abstract void saveLogLevel(String logLevelName);
@@ -165,6 +187,9 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
     }
 
     assert myPrevHeader != null; // We never call this method unless we already parsed a header
+    if (myPrevHeader.getPid() == VIEW_MESSAGE_PID) {
+      return true;
+    }
     return myConfiguredFilter
       .isApplicable(message, myPrevHeader.getTag(), myPrevHeader.getAppName(), myPrevHeader.getPid(), myPrevHeader.getLogLevel());
   }
@@ -191,7 +216,7 @@ public abstract class AndroidLogFilterModel extends LogFilterModel {
   public abstract String getSelectedLogLevelName();
 
   @Nullable
-  private LogFilter getSelectedLogLevelFilter() {
+  private AndroidLogLevelFilter getSelectedLogLevelFilter() {
     final String filterName = getSelectedLogLevelName();
     if (filterName != null) {
       for (AndroidLogLevelFilter logFilter : myLogLevelFilters) {
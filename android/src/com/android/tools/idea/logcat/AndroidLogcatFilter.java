@@ -19,6 +19,8 @@ import com.android.ddmlib.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.BitSet;
+
 /**
  * A filter which can reject lines of logcat output.
  */
@@ -34,4 +36,11 @@ public interface AndroidLogcatFilter {
    * Returns {@code true} if the current logcat message should be accepted, {@code false} otherwise.
    */
   boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String pkg, int pid, @NotNull Log.LogLevel logLevel);
+
+  /**
+   * Narrows down {@code candidates}, the slots of the lines of {@code buffer} this filter may accept, using the indexes of the buffer.
+   * The remaining candidates are still checked with {@link #isApplicable}, so filters only need to remove the lines they always reject.
+   */
+  default void selectCandidates(@NotNull LogcatBuffer buffer, @NotNull BitSet candidates) {
+  }
 }
@@ -19,9 +19,7 @@ package com.android.tools.idea.logcat;
 import com.android.annotations.VisibleForTesting;
 import com.android.ddmlib.IDevice;
 import com.android.ddmlib.logcat.LogCatHeader;
-import com.android.ddmlib.logcat.LogCatLongEpochMessageParser;
 import com.android.ddmlib.logcat.LogCatMessage;
-import com.android.ddmlib.logcat.LogCatMessageParser;
 import com.android.tools.idea.logcat.AndroidLogcatService.LogcatListener;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.util.text.StringUtil;
@@ -29,7 +27,8 @@ import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.regex.Pattern;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * An {@link AndroidOutputReceiver} which receives output from logcat and processes each line,
@@ -38,6 +37,9 @@ import java.util.regex.Pattern;
  *
  * <p>This class expects the logcat format to be 'logcat -v long' (which prints out a header and then
  * 1+ lines of log text below, for each log message).
+ *
+ * <p>Lines received together from the device are delivered to the {@link LogcatListener} as a single batch, see
+ * {@link LogcatListener#onLogLinesReceived(List)}.
  */
 public final class AndroidLogcatReceiver extends AndroidOutputReceiver implements Disposable {
   /**
@@ -50,10 +52,6 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
    */
   private static final String STACK_TRACE_CAUSE_LINE_PREFIX = Character.toString(' ');
 
-  private static final Pattern CARRIAGE_RETURN = Pattern.compile("\r", Pattern.LITERAL);
-
-  private final LogCatMessageParser myLongEpochParser;
-  private final LogCatMessageParser myLongParser;
   private final IDevice myDevice;
   private final StackTraceExpander myStackTraceExpander;
   private final LogcatListener myLogcatListener;
@@ -69,16 +67,40 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
   private int myLineIndex;
   private volatile boolean myCanceled;
 
+  /**
+   * Messages which haven't been delivered to the listener yet. While a chunk of lines is being processed by
+   * {@link #processNewLines(String[])} messages are collected here and delivered all at once at the end.
+   */
+  private final List<LogCatMessage> myPendingMessages = new ArrayList<>();
+  private boolean myProcessingChunk;
+
   AndroidLogcatReceiver(@NotNull IDevice device, @NotNull LogcatListener listener) {
-    myLongEpochParser = new LogCatLongEpochMessageParser();
-    myLongParser = new LogCatMessageParser();
     myDevice = device;
     myStackTraceExpander = new StackTraceExpander(STACK_TRACE_LINE_PREFIX, STACK_TRACE_CAUSE_LINE_PREFIX);
     myLogcatListener = listener;
   }
 
+  @Override
+  public void processNewLines(@NotNull String[] lines) {
+    myProcessingChunk = true;
+    try {
+      super.processNewLines(lines);
+    }
+    finally {
+      myProcessingChunk = false;
+      flush();
+    }
+  }
+
   @Override
   public void processNewLine(@NotNull String line) {
+    processLine(line);
+    if (!myProcessingChunk) {
+      flush();
+    }
+  }
+
+  private void processLine(@NotNull String line) {
     // Really, the user's log should never put any system characters in it ever - that will cause
     // it to get filtered by our strict regex patterns (see AndroidLogcatFormatter). The reason
     // this might happen in practice is due to a bug where either adb or logcat (not sure which)
@@ -90,18 +112,14 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
     // both external to Android Studio. In fact, the latest adb/logcat versions have already fixed
     // this issue! But we still need to run properly with older versions. Also, putting this fix in
     // MultiLineReceiver isn't right either because it is used for more than just receiving logcat.
-    line = CARRIAGE_RETURN.matcher(line).replaceAll("");
+    line = removeCarriageReturns(line);
 
     if (line.isEmpty()) {
       myDelayedNewlineCount++;
       return;
     }
 
-    LogCatHeader header = myLongEpochParser.processLogHeader(line, myDevice);
-
-    if (header == null) {
-      header = myLongParser.processLogHeader(line, myDevice);
-    }
+    LogCatHeader header = LogcatHeaderParser.parseHeader(line, myDevice);
 
     if (header != null) {
       myStackTraceExpander.reset();
@@ -122,23 +140,54 @@ public final class AndroidLogcatReceiver extends AndroidOutputReceiver implement
         processAnyDelayedNewlines(myActiveHeader);
       }
       for (String processedLine : myStackTraceExpander.process(line)) {
-        notifyLine(myActiveHeader, processedLine);
+        addLine(myActiveHeader, processedLine);
       }
     }
   }
 
+  @NotNull
+  private static String removeCarriageReturns(@NotNull String line) {
+    int index = line.indexOf('\r');
+    if (index < 0) {
+      return line;
+    }
+    StringBuilder builder = new StringBuilder(line.length() - 1);
+    int start = 0;
+    do {
+      builder.append(line, start, index);
+      start = index + 1;
+      index = line.indexOf('\r', start);
+    }
+    while (index >= 0);
+    return builder.append(line, start, line.length()).toString();
+  }
+
   // This method is package protected so other Logcat components can feed receiver processed log lines if they need to
   void notifyLine(@NotNull LogCatHeader header, @NotNull String line) {
-    myLogcatListener.onLogLineReceived(new LogCatMessage(header, line));
+    addLine(header, line);
+    flush();
+  }
+
+  private void addLine(@NotNull LogCatHeader header, @NotNull String line) {
+    myPendingMessages.add(new LogCatMessage(header, line));
     myLineIndex++;
   }
 
+  private void flush() {
+    if (myPendingMessages.isEmpty()) {
+      return;
+    }
+    List<LogCatMessage> messages = new ArrayList<>(myPendingMessages);
+    myPendingMessages.clear();
+    myLogcatListener.onLogLinesReceived(messages);
+  }
+
   private void processAnyDelayedNewlines(@NotNull LogCatHeader header) {
     if (myDelayedNewlineCount == 0) {
       return;
     }
     for (int i = 0; i < myDelayedNewlineCount; i++) {
-      notifyLine(header, "");
+      addLine(header, "");
     }
     myDelayedNewlineCount = 0;
   }
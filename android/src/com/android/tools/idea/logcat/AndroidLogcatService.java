@@ -37,6 +37,7 @@ import net.jcip.annotations.ThreadSafe;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.android.util.AndroidOutputReceiver;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.IOException;
@@ -59,34 +60,52 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return Logger.getInstance(AndroidLogcatService.class);
   }
 
-  private static class LogcatBuffer {
-    private int myBufferSize;
-    private final LinkedList<LogCatMessage> myMessages = new LinkedList<>();
+  public interface LogcatListener {
+    default void onLogLineReceived(@NotNull LogCatMessage line) {
+    }
 
-    public void addMessage(@NotNull LogCatMessage message) {
-      myMessages.add(message);
-      myBufferSize += message.getMessage().length();
-      if (ConsoleBuffer.useCycleBuffer()) {
-        while (myBufferSize > ConsoleBuffer.getCycleBufferSize()) {
-          myBufferSize -= myMessages.removeFirst().getMessage().length();
-        }
+    /**
+     * Called with the log lines received together from the device, in order. Listeners which can handle many lines at once more
+     * efficiently than one at a time, for example by scheduling a single UI update, should override this method.
+     */
+    default void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      for (LogCatMessage line : lines) {
+        onLogLineReceived(line);
       }
     }
 
-    @NotNull
-    public List<LogCatMessage> getMessages() {
-      return myMessages;
+    /**
+     * Called with log lines sent again from the buffer, by {@link AndroidLogcatService#addListener} or
+     * {@link AndroidLogcatService#replayMessages}. Unlike lines received from the device, these are bounded by the buffer size, so
+     * listeners should not drop any of them.
+     */
+    default void onBufferedLinesReceived(@NotNull List<LogCatMessage> lines) {
+      onLogLinesReceived(lines);
     }
-  }
 
-  public interface LogcatListener {
-    default void onLogLineReceived(@NotNull LogCatMessage line) {
+    default void onCleared() {
     }
 
-    default void onCleared() {
+    /**
+     * Called before the buffered log lines are sent again by {@link AndroidLogcatService#replayMessages}. The lines received from the
+     * device afterwards are newer than all the replayed lines.
+     */
+    default void onReplayStarted() {
+    }
+
+    /**
+     * Called once all the buffered log lines have been sent again by {@link AndroidLogcatService#replayMessages}, or when the replay was
+     * cancelled, for example by another replay.
+     */
+    default void onReplayFinished() {
     }
   }
 
+  /**
+   * Number of lines sent at once to the listeners when replaying the buffered lines.
+   */
+  private static final int REPLAY_BATCH_SIZE = 1000;
+
   private final Object myLock;
 
   // TODO Change these maps into a set of LogcatDevices that each maintain their receivers, buffers, executors, etc
@@ -108,6 +127,12 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
   @GuardedBy("myLock")
   private final Multimap<IDevice, LogcatListener> myDeviceToListenerMultimap;
 
+  /**
+   * The replay in progress for each listener. A replay only notifies its listener while it is still the one registered here.
+   */
+  @GuardedBy("myLock")
+  private final Map<LogcatListener, Object> myReplays;
+
   @NotNull
   public static AndroidLogcatService getInstance() {
     return ServiceManager.getService(AndroidLogcatService.class);
@@ -120,6 +145,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     myLogBuffers = new HashMap<>();
     myExecutors = new HashMap<>();
     myDeviceToListenerMultimap = ArrayListMultimap.create();
+    myReplays = new HashMap<>();
 
     AndroidDebugBridge.addDeviceChangeListener(this);
   }
@@ -134,7 +160,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
       AndroidLogcatReceiver receiver = newAndroidLogcatReceiver(device);
       myLogReceivers.put(device, receiver);
-      myLogBuffers.put(device, new LogcatBuffer());
+      myLogBuffers.put(device, new LogcatBuffer(ConsoleBuffer.useCycleBuffer() ? ConsoleBuffer.getCycleBufferSize() : -1));
       myExecutors.get(device).submit(() -> executeLogcat(device, receiver));
     }
   }
@@ -144,12 +170,19 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     return new AndroidLogcatReceiver(device, new LogcatListener() {
       @Override
       public void onLogLineReceived(@NotNull LogCatMessage line) {
+        onLogLinesReceived(Collections.singletonList(line));
+      }
+
+      @Override
+      public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
         synchronized (myLock) {
-          myDeviceToListenerMultimap.get(device).forEach(listener -> listener.onLogLineReceived(line));
+          myDeviceToListenerMultimap.get(device).forEach(listener -> listener.onLogLinesReceived(lines));
           LogcatBuffer buffer = myLogBuffers.get(device);
 
           if (buffer != null) {
-            buffer.addMessage(line);
+            for (LogCatMessage line : lines) {
+              buffer.addMessage(line);
+            }
           }
         }
       }
@@ -266,7 +299,10 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
 
   private void notifyThatLogcatWasCleared(@NotNull IDevice device) {
     synchronized (myLock) {
-      myDeviceToListenerMultimap.get(device).forEach(LogcatListener::onCleared);
+      myDeviceToListenerMultimap.get(device).forEach(listener -> {
+        cancelReplay(listener);
+        listener.onCleared();
+      });
     }
   }
 
@@ -277,13 +313,15 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
    * For example, Log.d(tag, "Line1\nLine2") will be sent to listeners in two iterations,
    * first: "Line1" with a header, second: "Line2" with the same header.
    * Listeners are invoked in a pooled thread, and they are triggered A LOT. You should be very careful if delegating this text
-   * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but consider batching many log lines first.
+   * to a UI thread. For example, don't directly invoke a runnable on the UI thread per line, but override
+   * {@link LogcatListener#onLogLinesReceived(List)} to handle each batch of lines at once.
    */
   public void addListener(@NotNull IDevice device, @NotNull LogcatListener listener, boolean addOldLogs) {
     synchronized (myLock) {
       if (addOldLogs && myLogBuffers.containsKey(device)) {
-        for (LogCatMessage line : myLogBuffers.get(device).getMessages()) {
-          listener.onLogLineReceived(line);
+        List<LogCatMessage> lines = myLogBuffers.get(device).getMessages();
+        if (!lines.isEmpty()) {
+          listener.onBufferedLinesReceived(lines);
         }
       }
 
@@ -295,6 +333,64 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
     }
   }
 
+  /**
+   * Notifies the listener of the log lines received so far from the specified device that may be accepted by the filter and have at
+   * least the given log level, without adding it as a listener. The lines are selected with the indexes of the logcat buffer, so this is
+   * much cheaper than filtering every line received so far.
+   * <p>
+   * {@link LogcatListener#onReplayStarted()} is called first, before this method returns. Only a snapshot of the buffer is taken while
+   * holding the lock: the lines are filtered in a pooled thread and sent to {@link LogcatListener#onBufferedLinesReceived(List)} in
+   * batches as they are found, followed by {@link LogcatListener#onReplayFinished()}. A new replay for the same listener cancels this
+   * one.
+   *
+   * @return false if no lines are buffered for the device, in which case the listener isn't notified at all
+   */
+  public boolean replayMessages(@NotNull IDevice device,
+                                @NotNull LogcatListener listener,
+                                @Nullable AndroidLogcatFilter filter,
+                                @Nullable LogLevel minLevel) {
+    LogcatBuffer snapshot;
+    Object replay = new Object();
+    synchronized (myLock) {
+      LogcatBuffer buffer = myLogBuffers.get(device);
+      if (buffer == null) {
+        return false;
+      }
+
+      cancelReplay(listener);
+      snapshot = buffer.copy();
+      myReplays.put(listener, replay);
+      listener.onReplayStarted();
+    }
+
+    ApplicationManager.getApplication().executeOnPooledThread(() -> {
+      snapshot.processMessages(filter, minLevel, REPLAY_BATCH_SIZE, lines -> {
+        synchronized (myLock) {
+          if (myReplays.get(listener) != replay) {
+            return false;
+          }
+          listener.onBufferedLinesReceived(lines);
+          return true;
+        }
+      });
+
+      synchronized (myLock) {
+        if (myReplays.get(listener) == replay) {
+          myReplays.remove(listener);
+          listener.onReplayFinished();
+        }
+      }
+    });
+    return true;
+  }
+
+  @GuardedBy("myLock")
+  private void cancelReplay(@NotNull LogcatListener listener) {
+    if (myReplays.remove(listener) != null) {
+      listener.onReplayFinished();
+    }
+  }
+
   /**
    * @see #addListener(IDevice, LogcatListener, boolean)
    */
@@ -311,6 +407,7 @@ public final class AndroidLogcatService implements AndroidDebugBridge.IDeviceCha
       }
 
       listeners.remove(listener);
+      cancelReplay(listener);
 
       if (listeners.isEmpty()) {
         stopReceiving(device);
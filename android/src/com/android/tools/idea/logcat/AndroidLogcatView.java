@@ -19,6 +19,9 @@ import com.android.annotations.VisibleForTesting;
 import com.android.ddmlib.Client;
 import com.android.ddmlib.ClientData;
 import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
 import com.android.tools.idea.ddms.DeviceContext;
 import com.intellij.execution.ui.ConsoleView;
 import com.intellij.icons.AllIcons;
@@ -27,6 +30,7 @@ import com.intellij.openapi.actionSystem.ActionManager;
 import com.intellij.openapi.actionSystem.ActionToolbar;
 import com.intellij.openapi.actionSystem.AnAction;
 import com.intellij.openapi.actionSystem.AnActionEvent;
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.Task;
@@ -44,7 +48,12 @@ import java.awt.BorderLayout;
 import java.awt.Component;
 import java.awt.event.ItemEvent;
 import java.awt.event.ItemListener;
+import java.time.Instant;
 import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.IntStream;
@@ -54,6 +63,7 @@ import javax.swing.JComponent;
 import javax.swing.JList;
 import javax.swing.JPanel;
 import javax.swing.ListModel;
+import net.jcip.annotations.GuardedBy;
 import org.jetbrains.android.util.AndroidBundle;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -75,7 +85,7 @@ public class AndroidLogcatView implements Disposable {
   static final AndroidLogcatFilter EDIT_FILTER_CONFIGURATION_ITEM = new MatchAllFilter(EDIT_FILTER_CONFIGURATION);
 
   private final Project myProject;
-  private final FormattedLogcatReceiver myLogcatReceiver;
+  private final AndroidLogcatService.LogcatListener myLogcatReceiver;
   private final AndroidLogConsole myLogConsole;
   private final DeviceContext myDeviceContext;
   private final AndroidLogFilterModel myLogFilterModel;
@@ -211,33 +221,176 @@ public class AndroidLogcatView implements Disposable {
     updateLogConsole();
   }
 
-  private static final class MyLogcatListener extends FormattedLogcatReceiver {
+  /**
+   * Feeds the log lines received from the device to the console. Formatting and filtering the lines for the console is done in a pooled
+   * thread, one batch at a time, so that the logcat service isn't blocked by the console. If the lines arrive faster than the console can
+   * keep up with, the oldest lines that haven't been printed yet are skipped and the number of skipped lines is printed instead. All
+   * lines are still kept by the {@link LogcatBuffer} of the service, and show up again when the console is refreshed.
+   */
+  private static final class MyLogcatListener implements AndroidLogcatService.LogcatListener {
+    private static final int MAX_PENDING_LINES = 10_000;
+
     private final AndroidLogConsole myConsole;
     private final AndroidLogFilterModel myModel;
+    private final FormattedLogcatReceiver myReceiver;
+
+    private final Object myLock = new Object();
+
+    /**
+     * Lines sent again from the service's buffer. They are shown before {@link #myPendingLines} and never dropped.
+     */
+    @GuardedBy("myLock")
+    private final List<LogCatMessage> myPendingBufferedLines = new ArrayList<>();
+
+    @GuardedBy("myLock")
+    private final Deque<LogCatMessage> myPendingLines = new ArrayDeque<>();
+
+    @GuardedBy("myLock")
+    private int myDroppedLineCount;
+
+    @GuardedBy("myLock")
+    private boolean myRejectOldMessages;
+
+    @GuardedBy("myLock")
+    private boolean myClearConsole;
+
+    @GuardedBy("myLock")
+    private boolean myDrainScheduled;
+
+    /**
+     * Whether the service is still replaying its buffer. The lines received from the device meanwhile are newer than the replayed lines,
+     * so they are held back until the replay is finished.
+     */
+    @GuardedBy("myLock")
+    private boolean myReplaying;
 
     private MyLogcatListener(@NotNull AndroidLogcatFormatter formatter,
                              @NotNull AndroidLogConsole console,
                              @NotNull AndroidLogFilterModel model) {
-      super(formatter);
-
       myConsole = console;
       myModel = model;
+      myReceiver = new FormattedLogcatReceiver(formatter) {
+        @Override
+        void receiveFormattedLogLine(@NotNull String line) {
+          myConsole.addLogLine(line);
+        }
+      };
+    }
+
+    @Override
+    public void onLogLineReceived(@NotNull LogCatMessage line) {
+      onLogLinesReceived(Collections.singletonList(line));
+    }
+
+    @Override
+    public void onLogLinesReceived(@NotNull List<LogCatMessage> lines) {
+      synchronized (myLock) {
+        int skipped = Math.max(0, lines.size() - MAX_PENDING_LINES);
+        myPendingLines.addAll(skipped == 0 ? lines : lines.subList(skipped, lines.size()));
+        myDroppedLineCount += skipped;
+
+        while (myPendingLines.size() > MAX_PENDING_LINES) {
+          myPendingLines.removeFirst();
+          myDroppedLineCount++;
+        }
+        scheduleDrain();
+      }
+    }
+
+    @Override
+    public void onBufferedLinesReceived(@NotNull List<LogCatMessage> lines) {
+      synchronized (myLock) {
+        myPendingBufferedLines.addAll(lines);
+        scheduleDrain();
+      }
     }
 
     @Override
-    protected void receiveFormattedLogLine(@NotNull String line) {
-      myConsole.addLogLine(line);
+    public void onReplayStarted() {
+      synchronized (myLock) {
+        discardPendingLines();
+        myReplaying = true;
+        myClearConsole = true;
+        scheduleDrain();
+      }
+    }
+
+    @Override
+    public void onReplayFinished() {
+      synchronized (myLock) {
+        myReplaying = false;
+        scheduleDrain();
+      }
     }
 
     @Override
     public void onCleared() {
-      myModel.beginRejectingOldMessages();
+      synchronized (myLock) {
+        discardPendingLines();
+        myRejectOldMessages = true;
+        myClearConsole = true;
+        scheduleDrain();
+      }
+    }
 
-      if (myConsole.getConsole() == null) {
-        return;
+    @GuardedBy("myLock")
+    private void discardPendingLines() {
+      myPendingBufferedLines.clear();
+      myPendingLines.clear();
+      myDroppedLineCount = 0;
+    }
+
+    @GuardedBy("myLock")
+    private void scheduleDrain() {
+      if (!myDrainScheduled) {
+        myDrainScheduled = true;
+        ApplicationManager.getApplication().executeOnPooledThread(this::drain);
       }
+    }
 
-      myConsole.clear();
+    private void drain() {
+      while (true) {
+        List<LogCatMessage> bufferedLines;
+        List<LogCatMessage> lines;
+        int droppedLineCount;
+        boolean rejectOldMessages;
+        boolean clearConsole;
+
+        synchronized (myLock) {
+          boolean hasLines = !myReplaying && !myPendingLines.isEmpty();
+          if (myPendingBufferedLines.isEmpty() && !hasLines && !myClearConsole && !myRejectOldMessages) {
+            myDrainScheduled = false;
+            return;
+          }
+          bufferedLines = new ArrayList<>(myPendingBufferedLines);
+          lines = hasLines ? new ArrayList<>(myPendingLines) : Collections.emptyList();
+          droppedLineCount = hasLines ? myDroppedLineCount : 0;
+          rejectOldMessages = myRejectOldMessages;
+          clearConsole = myClearConsole;
+
+          myPendingBufferedLines.clear();
+          if (hasLines) {
+            myPendingLines.clear();
+            myDroppedLineCount = 0;
+          }
+          myRejectOldMessages = false;
+          myClearConsole = false;
+        }
+
+        if (rejectOldMessages) {
+          myModel.beginRejectingOldMessages();
+        }
+        if (clearConsole && myConsole.getConsole() != null) {
+          myConsole.clear();
+        }
+        myReceiver.onLogLinesReceived(bufferedLines);
+        if (droppedLineCount > 0 && !lines.isEmpty()) {
+          LogCatHeader header = new LogCatHeader(LogLevel.WARN, AndroidLogFilterModel.VIEW_MESSAGE_PID, 0, "?", "AndroidLogcatView",
+                                                 Instant.now());
+          myReceiver.onLogLineReceived(new LogCatMessage(header, AndroidBundle.message("android.logcat.lines.dropped", droppedLineCount)));
+        }
+        myReceiver.onLogLinesReceived(lines);
+      }
     }
   }
 
@@ -343,6 +496,22 @@ public class AndroidLogcatView implements Disposable {
     }
   }
 
+  /**
+   * Clears the console and replays the buffered log lines of the device that may pass the configured filter and log level. The lines are
+   * filtered in a pooled thread and printed as they are found.
+   *
+   * @return false if there is no device or no lines are buffered for it
+   */
+  boolean replayBufferedLogs() {
+    IDevice device = myDevice;
+    if (device == null) {
+      return false;
+    }
+
+    AndroidLogcatService service = AndroidLogcatService.getInstance();
+    return service.replayMessages(device, myLogcatReceiver, myLogFilterModel.getConfiguredFilter(), myLogFilterModel.getSelectedLogLevel());
+  }
+
   @Nullable
   IDevice getSelectedDevice() {
     if (myDeviceContext != null) {
@@ -19,6 +19,7 @@ import com.android.ddmlib.Log;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.BitSet;
 import java.util.regex.Pattern;
 
 /**
@@ -123,6 +124,31 @@ public final class DefaultAndroidLogcatFilter implements AndroidLogcatFilter {
     return true;
   }
 
+  @Override
+  public void selectCandidates(@NotNull LogcatBuffer buffer, @NotNull BitSet candidates) {
+    if (myLogLevel != null) {
+      candidates.and(buffer.getLevelSlots(myLogLevel));
+    }
+
+    if (myTagPattern != null) {
+      candidates.and(buffer.getTagSlots(myTagPattern));
+    }
+
+    if (myPkgNamePattern != null) {
+      candidates.and(buffer.getPackageSlots(myPkgNamePattern));
+    }
+
+    if (myPid != null && !myPid.isEmpty()) {
+      try {
+        candidates.and(buffer.getPidSlots(Integer.parseInt(myPid)));
+      }
+      catch (NumberFormatException e) {
+        // Not a process id, isApplicable rejects all the lines.
+        candidates.clear();
+      }
+    }
+  }
+
   @Override
   @NotNull
   public String getName() {
@@ -0,0 +1,579 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import com.intellij.util.Processor;
+import com.intellij.util.containers.ObjectIntHashMap;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * History of the log lines received from a device, kept by {@link AndroidLogcatService} to replay them into the logcat consoles.
+ * <p>
+ * Lines are stored in a ring of records: tags and package names are interned, the header fields are kept in primitive arrays and the
+ * text of the lines is encoded in a ring of UTF-8 bytes. If the buffer has a maximum size, the oldest lines are dropped once the text
+ * of the lines exceeds it.
+ * <p>
+ * The records are also indexed by log level, process id, tag and package name. Filters use these bitmaps to narrow down the lines
+ * that may match them, see {@link AndroidLogcatFilter#selectCandidates}, so that only the remaining lines are checked one by one.
+ * <p>
+ * This class is not thread safe. {@link #copy()} takes a snapshot of the buffer which can be read in another thread, for example to
+ * filter the lines without holding the lock guarding the buffer.
+ */
+public final class LogcatBuffer {
+  private static final int INITIAL_RECORD_CAPACITY = 256;
+  private static final int INITIAL_BYTE_CAPACITY = 16 * 1024;
+  private static final LogLevel[] LOG_LEVELS = LogLevel.values();
+
+  /** Maximum number of bytes of text, or -1 if the buffer is unbounded. */
+  private final int myMaxBytes;
+
+  /** Interned tags and package names. The entries of the strings no longer used by any record are null, and reused by the next string. */
+  private final List<String> myStrings;
+  private final ObjectIntHashMap<String> myStringIndexes;
+  private final TIntArrayList myFreeStringIndexes;
+
+  // Records, indexed by slot. The records form a ring starting at slot myStart.
+  private int myStart;
+  private int mySize;
+  private byte[] myLevels = new byte[INITIAL_RECORD_CAPACITY];
+  private int[] myPids = new int[INITIAL_RECORD_CAPACITY];
+  private int[] myTids = new int[INITIAL_RECORD_CAPACITY];
+  private int[] myTags = new int[INITIAL_RECORD_CAPACITY];
+  private int[] myApps = new int[INITIAL_RECORD_CAPACITY];
+  private long[] mySeconds = new long[INITIAL_RECORD_CAPACITY];
+  private int[] myNanos = new int[INITIAL_RECORD_CAPACITY];
+  /** Timestamps of the headers of the "logcat -v long" format, which doesn't include the year. Allocated when first needed. */
+  @Nullable private LogCatTimestamp[] myLegacyTimestamps;
+  private int[] myOffsets = new int[INITIAL_RECORD_CAPACITY];
+  private int[] myLengths = new int[INITIAL_RECORD_CAPACITY];
+  /** Records which continue the log entry of the previous record, i.e. share its header. */
+  private final BitSet myContinuations;
+
+  // Indexes of the records, by slot.
+  private final BitSet[] myLevelSlots = new BitSet[LOG_LEVELS.length];
+  private final Map<Integer, BitSet> myPidSlots;
+  private final List<BitSet> myTagSlots;
+  private final List<BitSet> myAppSlots;
+
+  // Text of the records. The text of the records is stored in order in a ring of bytes starting at myByteStart.
+  private byte[] myBytes;
+  private int myByteStart;
+  private int myByteSize;
+
+  @Nullable private LogCatHeader myLastHeader;
+
+  /**
+   * @param maxBytes the maximum number of bytes of text kept by the buffer, or -1 to keep all the lines
+   */
+  public LogcatBuffer(int maxBytes) {
+    myMaxBytes = maxBytes;
+    myStrings = new ArrayList<>();
+    myStringIndexes = new ObjectIntHashMap<>();
+    myFreeStringIndexes = new TIntArrayList();
+    myContinuations = new BitSet();
+    myPidSlots = new HashMap<>();
+    myTagSlots = new ArrayList<>();
+    myAppSlots = new ArrayList<>();
+    myBytes = new byte[maxBytes < 0 ? INITIAL_BYTE_CAPACITY : Math.min(maxBytes, INITIAL_BYTE_CAPACITY)];
+    for (int i = 0; i < myLevelSlots.length; i++) {
+      myLevelSlots[i] = new BitSet();
+    }
+  }
+
+  private LogcatBuffer(@NotNull LogcatBuffer buffer) {
+    myMaxBytes = buffer.myMaxBytes;
+    myStrings = new ArrayList<>(buffer.myStrings);
+    myStringIndexes = new ObjectIntHashMap<>();
+    for (int i = 0; i < myStrings.size(); i++) {
+      String string = myStrings.get(i);
+      if (string != null) {
+        myStringIndexes.put(string, i);
+      }
+    }
+    myFreeStringIndexes = new TIntArrayList(buffer.myFreeStringIndexes.toNativeArray());
+    myStart = buffer.myStart;
+    mySize = buffer.mySize;
+    myLevels = buffer.myLevels.clone();
+    myPids = buffer.myPids.clone();
+    myTids = buffer.myTids.clone();
+    myTags = buffer.myTags.clone();
+    myApps = buffer.myApps.clone();
+    mySeconds = buffer.mySeconds.clone();
+    myNanos = buffer.myNanos.clone();
+    myLegacyTimestamps = buffer.myLegacyTimestamps == null ? null : buffer.myLegacyTimestamps.clone();
+    myOffsets = buffer.myOffsets.clone();
+    myLengths = buffer.myLengths.clone();
+    myContinuations = (BitSet)buffer.myContinuations.clone();
+    for (int i = 0; i < myLevelSlots.length; i++) {
+      myLevelSlots[i] = (BitSet)buffer.myLevelSlots[i].clone();
+    }
+    myPidSlots = new HashMap<>();
+    buffer.myPidSlots.forEach((pid, slots) -> myPidSlots.put(pid, (BitSet)slots.clone()));
+    myTagSlots = copySlots(buffer.myTagSlots);
+    myAppSlots = copySlots(buffer.myAppSlots);
+    myBytes = buffer.myBytes.clone();
+    myByteStart = buffer.myByteStart;
+    myByteSize = buffer.myByteSize;
+    myLastHeader = buffer.myLastHeader;
+  }
+
+  /**
+   * Returns a copy of the buffer, which isn't affected by the lines added to this buffer afterwards.
+   */
+  @NotNull
+  public LogcatBuffer copy() {
+    return new LogcatBuffer(this);
+  }
+
+  @NotNull
+  private static List<BitSet> copySlots(@NotNull List<BitSet> slotsByString) {
+    List<BitSet> copy = new ArrayList<>(slotsByString.size());
+    for (BitSet slots : slotsByString) {
+      copy.add(slots == null ? null : (BitSet)slots.clone());
+    }
+    return copy;
+  }
+
+  public int size() {
+    return mySize;
+  }
+
+  public void addMessage(@NotNull LogCatMessage message) {
+    LogCatHeader header = message.getHeader();
+    byte[] text = message.getMessage().getBytes(StandardCharsets.UTF_8);
+
+    if (myMaxBytes >= 0) {
+      if (text.length > myMaxBytes) {
+        // The line doesn't fit, even in an empty buffer.
+        clear();
+        return;
+      }
+      while (myByteSize + text.length > myMaxBytes) {
+        removeFirst();
+      }
+    }
+    ensureRecordCapacity();
+    ensureByteCapacity(text.length);
+
+    int slot = toSlot(mySize);
+    myLevels[slot] = (byte)header.getLogLevel().ordinal();
+    myPids[slot] = header.getPid();
+    myTids[slot] = header.getTid();
+    myTags[slot] = intern(header.getTag(), myTagSlots);
+    myApps[slot] = intern(header.getAppName(), myAppSlots);
+    Instant timestamp = header.getTimestampInstant();
+    if (timestamp != null) {
+      mySeconds[slot] = timestamp.getEpochSecond();
+      myNanos[slot] = timestamp.getNano();
+      if (myLegacyTimestamps != null) {
+        myLegacyTimestamps[slot] = null;
+      }
+    }
+    else {
+      if (myLegacyTimestamps == null) {
+        myLegacyTimestamps = new LogCatTimestamp[myLevels.length];
+      }
+      //noinspection deprecation
+      myLegacyTimestamps[slot] = header.getTimestamp();
+    }
+    myContinuations.set(slot, mySize > 0 && header == myLastHeader);
+    myLastHeader = header;
+
+    int offset = (myByteStart + myByteSize) % myBytes.length;
+    int firstPart = Math.min(text.length, myBytes.length - offset);
+    System.arraycopy(text, 0, myBytes, offset, firstPart);
+    System.arraycopy(text, firstPart, myBytes, 0, text.length - firstPart);
+    myOffsets[slot] = offset;
+    myLengths[slot] = text.length;
+    myByteSize += text.length;
+
+    mySize++;
+    index(slot);
+  }
+
+  public void clear() {
+    mySize = 0;
+    myStart = 0;
+    myByteStart = 0;
+    myByteSize = 0;
+    myLastHeader = null;
+    myContinuations.clear();
+    for (BitSet slots : myLevelSlots) {
+      slots.clear();
+    }
+    myPidSlots.clear();
+    myStrings.clear();
+    myStringIndexes.clear();
+    myFreeStringIndexes.clear();
+    myTagSlots.clear();
+    myAppSlots.clear();
+  }
+
+  /**
+   * Returns all the lines of the buffer, oldest first.
+   */
+  @NotNull
+  public List<LogCatMessage> getMessages() {
+    return getMessages(null, null);
+  }
+
+  /**
+   * Returns the lines of the log entries accepted by the filter and with at least the given log level, oldest first. Like
+   * {@link AndroidLogFilterModel}, all the lines of a multi-line entry are returned if any of them is accepted by the filter.
+   */
+  @NotNull
+  public List<LogCatMessage> getMessages(@Nullable AndroidLogcatFilter filter, @Nullable LogLevel minLevel) {
+    List<LogCatMessage> messages = new ArrayList<>();
+    processMessages(filter, minLevel, Integer.MAX_VALUE, batch -> {
+      messages.addAll(batch);
+      return true;
+    });
+    return messages;
+  }
+
+  /**
+   * Passes the lines returned by {@link #getMessages(AndroidLogcatFilter, LogLevel)} to the processor in batches of about
+   * {@code batchSize} lines, so that the first lines can be used before the whole buffer has been filtered. The lines of an entry are
+   * never split between batches. Stops early if the processor returns false.
+   *
+   * @return false if the processor stopped the processing
+   */
+  public boolean processMessages(@Nullable AndroidLogcatFilter filter,
+                                 @Nullable LogLevel minLevel,
+                                 int batchSize,
+                                 @NotNull Processor<List<LogCatMessage>> processor) {
+    BitSet candidates = getAllSlots();
+    if (minLevel != null) {
+      candidates.and(getLevelSlots(minLevel));
+    }
+    if (filter != null) {
+      filter.selectCandidates(this, candidates);
+    }
+
+    List<LogCatMessage> messages = new ArrayList<>(Math.min(candidates.cardinality(), batchSize));
+    int i = 0;
+    while (i < mySize) {
+      // Lines of the same entry have the same header, so they are all candidates or none of them is.
+      int end = i + 1;
+      while (end < mySize && myContinuations.get(toSlot(end))) {
+        end++;
+      }
+      int slot = toSlot(i);
+      if (candidates.get(slot)) {
+        LogCatHeader header = createHeader(slot);
+        boolean accepted = filter == null;
+        for (int j = i; j < end && !accepted; j++) {
+          accepted = filter.isApplicable(getText(toSlot(j)), header.getTag(), header.getAppName(), header.getPid(), header.getLogLevel());
+        }
+        if (accepted) {
+          for (int j = i; j < end; j++) {
+            messages.add(new LogCatMessage(header, getText(toSlot(j))));
+          }
+          if (messages.size() >= batchSize) {
+            if (!processor.process(messages)) {
+              return false;
+            }
+            messages = new ArrayList<>();
+          }
+        }
+      }
+      i = end;
+    }
+    return messages.isEmpty() || processor.process(messages);
+  }
+
+  /**
+   * Returns the slots of the lines with at least the given log level.
+   */
+  @NotNull
+  public BitSet getLevelSlots(@NotNull LogLevel minLevel) {
+    BitSet result = new BitSet();
+    for (LogLevel level : LOG_LEVELS) {
+      if (level.getPriority() >= minLevel.getPriority()) {
+        result.or(myLevelSlots[level.ordinal()]);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Returns the slots of the lines logged by the given process.
+   */
+  @NotNull
+  public BitSet getPidSlots(int pid) {
+    BitSet slots = myPidSlots.get(pid);
+    return slots == null ? new BitSet() : (BitSet)slots.clone();
+  }
+
+  /**
+   * Returns the slots of the lines whose tag contains a match of the pattern. The pattern is only matched against each distinct tag.
+   */
+  @NotNull
+  public BitSet getTagSlots(@NotNull Pattern pattern) {
+    return getMatchingSlots(pattern, myTagSlots);
+  }
+
+  /**
+   * Returns the slots of the lines whose package name contains a match of the pattern. The pattern is only matched against each distinct
+   * package name.
+   */
+  @NotNull
+  public BitSet getPackageSlots(@NotNull Pattern pattern) {
+    return getMatchingSlots(pattern, myAppSlots);
+  }
+
+  @NotNull
+  private BitSet getMatchingSlots(@NotNull Pattern pattern, @NotNull List<BitSet> slotsByString) {
+    BitSet result = new BitSet();
+    for (int i = 0; i < slotsByString.size(); i++) {
+      BitSet slots = slotsByString.get(i);
+      if (slots != null && !slots.isEmpty() && pattern.matcher(myStrings.get(i)).find()) {
+        result.or(slots);
+      }
+    }
+    return result;
+  }
+
+  @VisibleForTesting
+  int getInternedStringCount() {
+    return myStrings.size() - myFreeStringIndexes.size();
+  }
+
+  @NotNull
+  private BitSet getAllSlots() {
+    BitSet slots = new BitSet(myLevels.length);
+    int end = myStart + mySize;
+    if (end <= myLevels.length) {
+      slots.set(myStart, end);
+    }
+    else {
+      slots.set(myStart, myLevels.length);
+      slots.set(0, end - myLevels.length);
+    }
+    return slots;
+  }
+
+  private int toSlot(int index) {
+    int slot = myStart + index;
+    return slot < myLevels.length ? slot : slot - myLevels.length;
+  }
+
+  private int intern(@NotNull String string, @NotNull List<BitSet> slotsByString) {
+    int index;
+    if (myStringIndexes.containsKey(string)) {
+      index = myStringIndexes.get(string);
+    }
+    else if (!myFreeStringIndexes.isEmpty()) {
+      index = myFreeStringIndexes.remove(myFreeStringIndexes.size() - 1);
+      myStrings.set(index, string);
+      myStringIndexes.put(string, index);
+    }
+    else {
+      index = myStrings.size();
+      myStrings.add(string);
+      myStringIndexes.put(string, index);
+    }
+    while (slotsByString.size() <= index) {
+      slotsByString.add(null);
+    }
+    if (slotsByString.get(index) == null) {
+      slotsByString.set(index, new BitSet());
+    }
+    return index;
+  }
+
+  private void index(int slot) {
+    myLevelSlots[myLevels[slot]].set(slot);
+    myPidSlots.computeIfAbsent(myPids[slot], pid -> new BitSet()).set(slot);
+    myTagSlots.get(myTags[slot]).set(slot);
+    myAppSlots.get(myApps[slot]).set(slot);
+  }
+
+  private void removeFirst() {
+    int slot = myStart;
+    myLevelSlots[myLevels[slot]].clear(slot);
+    BitSet pidSlots = myPidSlots.get(myPids[slot]);
+    pidSlots.clear(slot);
+    if (pidSlots.isEmpty()) {
+      myPidSlots.remove(myPids[slot]);
+    }
+    myTagSlots.get(myTags[slot]).clear(slot);
+    myAppSlots.get(myApps[slot]).clear(slot);
+    releaseIfUnused(myTags[slot]);
+    releaseIfUnused(myApps[slot]);
+    myContinuations.clear(slot);
+    if (myLegacyTimestamps != null) {
+      myLegacyTimestamps[slot] = null;
+    }
+
+    myByteStart = (myByteStart + myLengths[slot]) % myBytes.length;
+    myByteSize -= myLengths[slot];
+    myStart = toSlot(1);
+    mySize--;
+  }
+
+  /**
+   * Drops the interned string if no record uses it as its tag or package name anymore, so that the strings of the evicted lines
+   * don't accumulate.
+   */
+  private void releaseIfUnused(int index) {
+    String string = myStrings.get(index);
+    if (string != null && isUnused(myTagSlots, index) && isUnused(myAppSlots, index)) {
+      myStringIndexes.remove(string);
+      myStrings.set(index, null);
+      if (index < myTagSlots.size()) {
+        myTagSlots.set(index, null);
+      }
+      if (index < myAppSlots.size()) {
+        myAppSlots.set(index, null);
+      }
+      myFreeStringIndexes.add(index);
+    }
+  }
+
+  private static boolean isUnused(@NotNull List<BitSet> slotsByString, int index) {
+    BitSet slots = index < slotsByString.size() ? slotsByString.get(index) : null;
+    return slots == null || slots.isEmpty();
+  }
+
+  private void ensureRecordCapacity() {
+    int capacity = myLevels.length;
+    if (mySize < capacity) {
+      return;
+    }
+
+    // Move the records to the beginning of larger arrays and index them again.
+    int newCapacity = capacity * 2;
+    myLevels = copyRecords(myLevels, new byte[newCapacity], capacity);
+    myPids = copyRecords(myPids, new int[newCapacity], capacity);
+    myTids = copyRecords(myTids, new int[newCapacity], capacity);
+    myTags = copyRecords(myTags, new int[newCapacity], capacity);
+    myApps = copyRecords(myApps, new int[newCapacity], capacity);
+    mySeconds = copyRecords(mySeconds, new long[newCapacity], capacity);
+    myNanos = copyRecords(myNanos, new int[newCapacity], capacity);
+    if (myLegacyTimestamps != null) {
+      myLegacyTimestamps = copyRecords(myLegacyTimestamps, new LogCatTimestamp[newCapacity], capacity);
+    }
+    myOffsets = copyRecords(myOffsets, new int[newCapacity], capacity);
+    myLengths = copyRecords(myLengths, new int[newCapacity], capacity);
+
+    BitSet continuations = new BitSet(newCapacity);
+    for (int i = 0; i < mySize; i++) {
+      if (myContinuations.get(toSlot(i, capacity))) {
+        continuations.set(i);
+      }
+    }
+    myContinuations.clear();
+    myContinuations.or(continuations);
+
+    myStart = 0;
+    for (BitSet slots : myLevelSlots) {
+      slots.clear();
+    }
+    myPidSlots.clear();
+    clearAll(myTagSlots);
+    clearAll(myAppSlots);
+    for (int slot = 0; slot < mySize; slot++) {
+      index(slot);
+    }
+  }
+
+  private int toSlot(int index, int capacity) {
+    int slot = myStart + index;
+    return slot < capacity ? slot : slot - capacity;
+  }
+
+  private static void clearAll(@NotNull List<BitSet> slotsByString) {
+    for (BitSet slots : slotsByString) {
+      if (slots != null) {
+        slots.clear();
+      }
+    }
+  }
+
+  /**
+   * Copies the records of the ring in {@code array}, which has the given capacity, to the beginning of {@code newArray}.
+   */
+  @NotNull
+  private <T> T copyRecords(@NotNull T array, @NotNull T newArray, int capacity) {
+    int firstPart = Math.min(mySize, capacity - myStart);
+    System.arraycopy(array, myStart, newArray, 0, firstPart);
+    System.arraycopy(array, 0, newArray, firstPart, mySize - firstPart);
+    return newArray;
+  }
+
+  private void ensureByteCapacity(int length) {
+    int capacity = myBytes.length;
+    if (myByteSize + length <= capacity) {
+      return;
+    }
+
+    int newCapacity = Math.max(capacity * 2, myByteSize + length);
+    if (myMaxBytes >= 0) {
+      newCapacity = Math.min(newCapacity, myMaxBytes);
+    }
+    byte[] bytes = new byte[newCapacity];
+    int firstPart = Math.min(myByteSize, capacity - myByteStart);
+    System.arraycopy(myBytes, myByteStart, bytes, 0, firstPart);
+    System.arraycopy(myBytes, 0, bytes, firstPart, myByteSize - firstPart);
+    for (int i = 0; i < mySize; i++) {
+      int slot = toSlot(i);
+      int offset = myOffsets[slot] - myByteStart;
+      myOffsets[slot] = offset < 0 ? offset + capacity : offset;
+    }
+    myBytes = bytes;
+    myByteStart = 0;
+  }
+
+  @NotNull
+  private String getText(int slot) {
+    int offset = myOffsets[slot];
+    int length = myLengths[slot];
+    if (offset + length <= myBytes.length) {
+      return new String(myBytes, offset, length, StandardCharsets.UTF_8);
+    }
+    byte[] text = new byte[length];
+    int firstPart = myBytes.length - offset;
+    System.arraycopy(myBytes, offset, text, 0, firstPart);
+    System.arraycopy(myBytes, 0, text, firstPart, length - firstPart);
+    return new String(text, StandardCharsets.UTF_8);
+  }
+
+  @NotNull
+  private LogCatHeader createHeader(int slot) {
+    LogLevel level = LOG_LEVELS[myLevels[slot]];
+    String tag = myStrings.get(myTags[slot]);
+    String app = myStrings.get(myApps[slot]);
+    LogCatTimestamp legacyTimestamp = myLegacyTimestamps == null ? null : myLegacyTimestamps[slot];
+    if (legacyTimestamp != null) {
+      //noinspection deprecation
+      return new LogCatHeader(level, myPids[slot], myTids[slot], app, tag, legacyTimestamp);
+    }
+    return new LogCatHeader(level, myPids[slot], myTids[slot], app, tag, Instant.ofEpochSecond(mySeconds[slot], myNanos[slot]));
+  }
+}
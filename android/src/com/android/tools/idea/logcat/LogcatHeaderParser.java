@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatLongEpochMessageParser;
+import com.android.ddmlib.logcat.LogCatMessageParser;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Instant;
+
+/**
+ * Parses the headers printed by "logcat -v long" and "logcat -v long -v epoch", for example
+ * {@code [ 1534635551.439 1493:1595 W/EDMNativeHelper     ]}.
+ * <p>
+ * This accepts the same headers as {@link LogCatLongEpochMessageParser} and {@link LogCatMessageParser}, but scans the line by hand
+ * instead of matching regular expressions, since every line received from logcat has to be checked. Most lines aren't headers and are
+ * rejected after looking at their first character.
+ */
+final class LogcatHeaderParser {
+  private LogcatHeaderParser() {
+  }
+
+  /**
+   * Returns the header in the line, or null if the line isn't a header.
+   *
+   * @param device the device the line was received from, used to look up the package names of the processes
+   */
+  @Nullable
+  static LogCatHeader parseHeader(@NotNull String line, @Nullable IDevice device) {
+    int length = line.length();
+    if (length < 2 || line.charAt(0) != '[' || line.charAt(length - 1) != ']') {
+      return null;
+    }
+
+    int i = skipWhitespace(line, 1);
+    if (i == 1) {
+      return null;
+    }
+
+    // Timestamp, either "seconds.fraction" or "MM-DD HH:MM:SS.fraction".
+    Instant instant = null;
+    LogCatTimestamp timestamp = null;
+    int end = skipDigits(line, i);
+    if (end - i == 2 && end < length && line.charAt(end) == '-') {
+      end = scanDate(line, i);
+      if (end < 0) {
+        return null;
+      }
+      timestamp = LogCatTimestamp.fromString(line.substring(i, end));
+    }
+    else {
+      if (end == i || end >= length || line.charAt(end) != '.') {
+        return null;
+      }
+      int fractionStart = end + 1;
+      int fractionEnd = skipDigits(line, fractionStart);
+      if (fractionEnd == fractionStart || fractionEnd - fractionStart > 9) {
+        return null;
+      }
+      long seconds = parseLong(line, i, end);
+      long nanos = parseLong(line, fractionStart, fractionEnd);
+      for (int digits = fractionEnd - fractionStart; digits < 9; digits++) {
+        nanos *= 10;
+      }
+      if (seconds < 0) {
+        return null;
+      }
+      instant = Instant.ofEpochSecond(seconds, nanos);
+      end = fractionEnd;
+    }
+
+    // Process id, followed by a colon.
+    i = skipWhitespace(line, end);
+    if (i == end) {
+      return null;
+    }
+    end = skipDigits(line, i);
+    if (end >= length || line.charAt(end) != ':') {
+      return null;
+    }
+    int pid = end == i ? -1 : (int)parseLong(line, i, end);
+
+    // Thread id, in decimal or hexadecimal.
+    i = skipWhitespace(line, end + 1);
+    end = skipNonWhitespace(line, i);
+    if (end == i) {
+      return null;
+    }
+    int tid = parseThreadId(line, i, end);
+
+    // Log level and tag. The tag may contain spaces, but is followed by at least one space before the closing bracket.
+    i = skipWhitespace(line, end);
+    if (i == end || i + 2 >= length || line.charAt(i + 1) != '/') {
+      return null;
+    }
+    LogLevel level = parseLogLevel(line.charAt(i));
+    if (level == null) {
+      return null;
+    }
+    int tagStart = i + 2;
+    int tagEnd = length - 1;
+    while (tagEnd > tagStart && Character.isWhitespace(line.charAt(tagEnd - 1))) {
+      tagEnd--;
+    }
+    if (tagEnd == length - 1 || tagEnd == tagStart) {
+      return null;
+    }
+    String tag = line.substring(tagStart, tagEnd);
+
+    String appName = "?";
+    if (device != null && pid != -1) {
+      String clientName = device.getClientName(pid);
+      if (clientName != null && !clientName.isEmpty()) {
+        appName = clientName;
+      }
+    }
+
+    if (instant != null) {
+      return new LogCatHeader(level, pid, tid, appName, tag, instant);
+    }
+    //noinspection deprecation
+    return new LogCatHeader(level, pid, tid, appName, tag, timestamp);
+  }
+
+  /**
+   * Returns the end of the "MM-DD HH:MM:SS.fraction" date starting at {@code start}, or -1 if there is no such date.
+   */
+  private static int scanDate(@NotNull String line, int start) {
+    String pattern = "dd-dd dd:dd:dd.";
+    if (start + pattern.length() >= line.length()) {
+      return -1;
+    }
+    for (int i = 0; i < pattern.length(); i++) {
+      char c = line.charAt(start + i);
+      char expected = pattern.charAt(i);
+      if (expected == 'd' ? !isDigit(c) : c != expected) {
+        return -1;
+      }
+    }
+    int fractionStart = start + pattern.length();
+    int end = skipDigits(line, fractionStart);
+    return end == fractionStart ? -1 : end;
+  }
+
+  private static int parseThreadId(@NotNull String line, int start, int end) {
+    try {
+      if (end - start > 2 && line.charAt(start) == '0' && line.charAt(start + 1) == 'x') {
+        return Integer.parseInt(line.substring(start + 2, end), 16);
+      }
+      return Integer.parseInt(line.substring(start, end));
+    }
+    catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+  @Nullable
+  private static LogLevel parseLogLevel(char letter) {
+    switch (letter) {
+      case 'V':
+        return LogLevel.VERBOSE;
+      case 'D':
+        return LogLevel.DEBUG;
+      case 'I':
+        return LogLevel.INFO;
+      case 'W':
+        return LogLevel.WARN;
+      case 'E':
+        return LogLevel.ERROR;
+      case 'A':
+      case 'F':
+        return LogLevel.ASSERT;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Parses the digits between {@code start} and {@code end}, returning -1 if the number doesn't fit in an int.
+   */
+  private static long parseLong(@NotNull String line, int start, int end) {
+    if (end - start > 18) {
+      return -1;
+    }
+    long value = 0;
+    for (int i = start; i < end; i++) {
+      value = value * 10 + (line.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static int skipDigits(@NotNull String line, int start) {
+    int i = start;
+    while (i < line.length() && isDigit(line.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipWhitespace(@NotNull String line, int start) {
+    int i = start;
+    while (i < line.length() && Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipNonWhitespace(@NotNull String line, int start) {
+    int i = start;
+    while (i < line.length() && !Character.isWhitespace(line.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+}
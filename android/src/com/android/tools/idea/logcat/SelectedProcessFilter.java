@@ -18,6 +18,8 @@ package com.android.tools.idea.logcat;
 import com.android.ddmlib.Log.LogLevel;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.BitSet;
+
 final class SelectedProcessFilter implements AndroidLogcatFilter {
   private final int myProcessId;
 
@@ -38,4 +40,9 @@ final class SelectedProcessFilter implements AndroidLogcatFilter {
   public boolean isApplicable(@NotNull String message, @NotNull String tag, @NotNull String p, int processId, @NotNull LogLevel priority) {
     return myProcessId == processId;
   }
+
+  @Override
+  public void selectCandidates(@NotNull LogcatBuffer buffer, @NotNull BitSet candidates) {
+    candidates.and(buffer.getPidSlots(myProcessId));
+  }
 }
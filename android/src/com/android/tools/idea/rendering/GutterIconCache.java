@@ -15,41 +15,74 @@
  */
 package com.android.tools.idea.rendering;
 
+import static com.android.SdkConstants.DOT_XML;
+
 import com.android.annotations.VisibleForTesting;
 import com.android.ide.common.rendering.api.RenderResources;
-import com.google.common.collect.Maps;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.editor.Document;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.editor.EditorFactory;
+import com.intellij.openapi.editor.ex.EditorEx;
 import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.ui.EmptyIcon;
 import com.intellij.util.ui.JBUI;
 import com.intellij.util.ui.UIUtil;
-import icons.AndroidArtworkIcons;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import javax.swing.*;
-import java.util.Map;
-
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Cache of the scaled down icons shown for image resources in the editor gutters and the property panels.
+ * <p/>
+ * The cache is bounded and its icons are softly referenced, so it doesn't keep the thumbnails of every drawable of a large project.
+ * Entries are invalidated when the modification stamp of the image file, or of its unsaved changes, changes.
+ * <p/>
+ * {@link #getIcon} decodes missing icons on the calling thread. {@link #getIconAsync}, which is meant for painting code, decodes them on
+ * a background thread instead and returns a placeholder until they are available.
+ */
 public class GutterIconCache {
   private static final Logger LOG = Logger.getInstance(GutterIconCache.class);
-  private static final Icon NONE = AndroidArtworkIcons.Icons.Android; // placeholder
 
   @VisibleForTesting static final int MAX_WIDTH = JBUI.scale(16);
   @VisibleForTesting static final int MAX_HEIGHT = JBUI.scale(16);
+  /** Maximum number of cached icons, roughly the drawables of a few large modules. */
+  private static final int MAX_ENTRIES = 2000;
+  private static final long NO_FILE_STAMP = -1;
 
-  private static final GutterIconCache ourInstance = new GutterIconCache();
+  /** Icon returned by {@link #getIconAsync} while the icon is being decoded. */
+  public static final Icon LOADING_PLACEHOLDER = EmptyIcon.create(MAX_WIDTH, MAX_HEIGHT);
 
-  private Map<String, Icon> myThumbnailCache = Maps.newHashMap();
+  private static final GutterIconCache ourInstance = new GutterIconCache();
 
-  /**
-   * Stores timestamps for the last modification time of image files using the
-   * path as a key.
-   */
-  private Map<String, Long> myModificationStampCache = Maps.newHashMap();
-  private boolean myRetina;
+  /** Thumbnails using the path as a key. */
+  private final Cache<String, Entry> myThumbnailCache = CacheBuilder.newBuilder().maximumSize(MAX_ENTRIES).softValues().build();
+  /** Paths of the icons being decoded in the background. */
+  private final Set<String> myPendingDecodes = ContainerUtil.newConcurrentSet();
+  @NotNull private final Executor myDecodeExecutor;
+  private final AtomicBoolean myRepaintScheduled = new AtomicBoolean();
+  private volatile boolean myRetina;
 
   public GutterIconCache() {
+    this(AppExecutorUtil.createBoundedApplicationPoolExecutor("GutterIconCache", 1));
+  }
+
+  @VisibleForTesting
+  GutterIconCache(@NotNull Executor decodeExecutor) {
+    myDecodeExecutor = decodeExecutor;
   }
 
   @NotNull
@@ -59,43 +92,164 @@ public class GutterIconCache {
 
   @VisibleForTesting
   boolean isIconUpToDate(@NotNull String path) {
-    if (myModificationStampCache.containsKey(path)) {
-      // Entry is valid if image resource has not been modified since the entry was cached
-      VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
-      if (file != null) {
-        return myModificationStampCache.get(path) == file.getModificationStamp()
-               && !FileDocumentManager.getInstance().isFileModified(file);
-      }
+    Entry entry = myThumbnailCache.getIfPresent(path);
+    return entry != null && isUpToDate(path, entry);
+  }
+
+  private static boolean isUpToDate(@NotNull String path, @NotNull Entry entry) {
+    // Entry is valid if image resource has not been modified since the entry was cached
+    VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
+    if (file != null) {
+      return entry.myModificationStamp == file.getModificationStamp() && entry.myDocumentStamp == getDocumentStamp(file);
     }
 
-    return false;
+    // Files unknown to the VFS are decoded again once they are found, otherwise the gutters would keep repainting them
+    return entry.myModificationStamp == NO_FILE_STAMP;
   }
 
+  /**
+   * Returns the modification stamp of the unsaved changes of the file, if any. Comparing it rather than just checking for unsaved changes
+   * avoids decoding the icon of a modified file again on every paint.
+   */
+  private static long getDocumentStamp(@NotNull VirtualFile file) {
+    FileDocumentManager manager = FileDocumentManager.getInstance();
+    Document document = manager.isFileModified(file) ? manager.getCachedDocument(file) : null;
+    return document != null ? document.getModificationStamp() : NO_FILE_STAMP;
+  }
+
+  /**
+   * Returns the icon for the image at the given path, decoding it on the calling thread if needed, or null if it can't be rendered.
+   */
   @Nullable
   public Icon getIcon(@NotNull String path, @Nullable RenderResources resolver) {
+    Entry entry = getUpToDateEntry(path);
+    if (entry == null) {
+      entry = decode(path, resolver);
+    }
+
+    return entry.myIcon;
+  }
+
+  /**
+   * Returns the icon for the image at the given path without blocking, or null if it can't be rendered.
+   * <p/>
+   * If the icon isn't cached, it is decoded in the background and {@link #LOADING_PLACEHOLDER} is returned in the meantime; the editor
+   * gutters are repainted once it is available. If the cached icon is out of date, it is returned until the new one is decoded.
+   */
+  @Nullable
+  public Icon getIconAsync(@NotNull String path, @Nullable RenderResources resolver) {
+    Entry entry = getUpToDateEntry(path);
+    if (entry != null) {
+      return entry.myIcon;
+    }
+
+    if (myPendingDecodes.add(path)) {
+      myDecodeExecutor.execute(() -> {
+        try {
+          decode(path, resolver);
+        }
+        finally {
+          myPendingDecodes.remove(path);
+        }
+        scheduleRepaint();
+      });
+    }
+
+    Entry stale = myThumbnailCache.getIfPresent(path);
+    return stale != null ? stale.myIcon : LOADING_PLACEHOLDER;
+  }
+
+  @Nullable
+  private Entry getUpToDateEntry(@NotNull String path) {
     boolean isRetina = UIUtil.isRetina();
     if (myRetina != isRetina) {
       myRetina = isRetina;
-      myThumbnailCache.clear();
+      myThumbnailCache.invalidateAll();
+    }
+    Entry entry = myThumbnailCache.getIfPresent(path);
+    return entry != null && isUpToDate(path, entry) ? entry : null;
+  }
+
+  @NotNull
+  private Entry decode(@NotNull String path, @Nullable RenderResources resolver) {
+    // Only the stamps, and the content of XML files which may have unsaved changes, are read under the read action. Rendering the image
+    // happens outside of it, so that it doesn't hold off write actions.
+    FileState state = ReadAction.compute(() -> new FileState(path));
+    Icon icon;
+    if (!path.endsWith(DOT_XML)) {
+      icon = GutterIconFactory.createIcon(path, resolver, MAX_WIDTH, MAX_HEIGHT);
+    }
+    else if (state.myXmlContent != null) {
+      icon = GutterIconFactory.createXmlIcon(path, state.myXmlContent, resolver, MAX_WIDTH);
     }
-    Icon myIcon = myThumbnailCache.get(path);
-    if (myIcon == null || !isIconUpToDate(path)) {
-      myIcon = GutterIconFactory.createIcon(path, resolver, MAX_WIDTH, MAX_HEIGHT);
+    else {
+      icon = null;
+    }
+    Entry entry = new Entry(icon, state.myModificationStamp, state.myDocumentStamp);
+    if (entry.myIcon == null && LOG.isDebugEnabled()) {
+      LOG.debug("No gutter icon for " + path);
+    }
+
+    myThumbnailCache.put(path, entry);
+    return entry;
+  }
 
-      if (myIcon == null) {
-        myIcon = NONE;
+  /**
+   * Repaints the editor gutters once for all the icons decoded before the repaint runs.
+   */
+  private void scheduleRepaint() {
+    if (!myRepaintScheduled.compareAndSet(false, true) || ApplicationManager.getApplication() == null) {
+      return;
+    }
+    ApplicationManager.getApplication().invokeLater(() -> {
+      myRepaintScheduled.set(false);
+      for (Editor editor : EditorFactory.getInstance().getAllEditors()) {
+        if (editor instanceof EditorEx && !editor.isDisposed()) {
+          ((EditorEx)editor).getGutterComponentEx().repaint();
+        }
       }
+    });
+  }
 
-      myThumbnailCache.put(path, myIcon);
+  /**
+   * What {@link #decode} reads from an image file under a read action.
+   */
+  private static class FileState {
+    private final long myModificationStamp;
+    private final long myDocumentStamp;
+    /** Null if the file isn't an XML file, or can't be read */
+    @Nullable private final String myXmlContent;
 
+    private FileState(@NotNull String path) {
       // Record timestamp of image resource at the time of caching
       VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
-      if (file != null) {
-        myModificationStampCache.put(path, file.getModificationStamp());
-      }
+      myModificationStamp = file != null ? file.getModificationStamp() : NO_FILE_STAMP;
+      myDocumentStamp = file != null ? getDocumentStamp(file) : NO_FILE_STAMP;
+      myXmlContent = path.endsWith(DOT_XML) ? readXmlContent(path) : null;
     }
 
-    return myIcon != NONE ? myIcon : null;
+    @Nullable
+    private static String readXmlContent(@NotNull String path) {
+      try {
+        return GutterIconFactory.getXmlContent(path);
+      }
+      catch (IOException e) {
+        LOG.warn(String.format("Could not read icon image %1$s", path), e);
+        return null;
+      }
+    }
   }
 
+  private static class Entry {
+    /** Null if the image can't be rendered */
+    @Nullable private final Icon myIcon;
+    private final long myModificationStamp;
+    private final long myDocumentStamp;
+
+    private Entry(@Nullable Icon icon, long modificationStamp, long documentStamp) {
+      myIcon = icon;
+      myModificationStamp = modificationStamp;
+      myDocumentStamp = documentStamp;
+    }
+  }
 }
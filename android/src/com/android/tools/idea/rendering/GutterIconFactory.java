@@ -78,7 +78,7 @@ public class GutterIconFactory {
    * Read XML data from Document when possible (in case there are unsaved changes
    * for a file open in an editor).
    */
-  private static String getXmlContent(@NotNull String path) throws IOException {
+  static String getXmlContent(@NotNull String path) throws IOException {
     VirtualFile file = LocalFileSystem.getInstance().findFileByPath(path);
 
     if (file == null) {
@@ -98,11 +98,27 @@ public class GutterIconFactory {
 
   @Nullable
   private static Icon createXmlIcon(@NotNull String path, @Nullable RenderResources resolver, int maxWidth) {
+    String xml;
+    try {
+      xml = getXmlContent(path);
+    }
+    catch (Throwable e) {
+      LOG.warn(String.format("Could not read/render icon image %1$s", path), e);
+      return null;
+    }
+    return createXmlIcon(path, xml, resolver, maxWidth);
+  }
+
+  /**
+   * Like {@link #createIcon(String, RenderResources, int, int)} for an XML resource whose content was read with
+   * {@link #getXmlContent(String)}, which lets callers read it under a read action and render it outside of it.
+   */
+  @Nullable
+  static Icon createXmlIcon(@NotNull String path, @NotNull String xml, @Nullable RenderResources resolver, int maxWidth) {
     try {
       VdPreview.TargetSize imageTargetSize =
         VdPreview.TargetSize.createFromMaxDimension(isRetinaEnabled() ? ImageUtils.RETINA_SCALE * maxWidth : maxWidth);
 
-      String xml = getXmlContent(path);
       // See if this drawable is a vector; we can't render other drawables yet.
       // TODO: Consider resolving selectors to render for example the default image!
       if (xml.contains("<vector")) {
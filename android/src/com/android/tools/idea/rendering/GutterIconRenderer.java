@@ -40,7 +40,8 @@ public class GutterIconRenderer extends com.intellij.openapi.editor.markup.Gutte
   @Override
   @NotNull
   public Icon getIcon() {
-    Icon icon = GutterIconCache.getInstance().getIcon(myFile.getPath(), myResourceResolver);
+    // Called while painting the gutter, so the icon is decoded in the background if needed
+    Icon icon = GutterIconCache.getInstance().getIconAsync(myFile.getPath(), myResourceResolver);
 
     if (icon != null) {
       return icon;
@@ -0,0 +1,316 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.util.concurrent.ExecutionList;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.intellij.openapi.diagnostic.Logger;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Runs the render actions on the layoutlib render threads.
+ * <p/>
+ * Layoutlib is not thread safe, so the actions for one layoutlib instance run one at a time. Each layoutlib instance is loaded in its own
+ * class loader though, so the actions of different instances (e.g. renders for different API levels) can run in parallel on separate
+ * workers. Actions that don't say which instance they use may access any of them, so they run exclusively, when no other action is
+ * running.
+ * <p/>
+ * Pending actions of a worker run in {@link Priority} order. An action submitted with a supersede key cancels the pending action that was
+ * submitted with the same key, if it has not started yet.
+ */
+public class RenderExecutor {
+  private static final Logger LOG = Logger.getInstance(RenderExecutor.class);
+
+  public enum Priority {
+    /** Actions for the editor the user is interacting with */
+    HIGH,
+    NORMAL,
+    /** Thumbnails and other previews that can wait */
+    LOW
+  }
+
+  private final long myIdleTimeoutMs;
+  @NotNull private final Worker myExclusiveWorker;
+  @NotNull private final Worker[] myWorkers;
+  /** Worker assigned to each layoutlib instance. Access is synchronized on the map itself. */
+  private final Map<Object, Worker> myWorkerByKey = new WeakHashMap<>();
+  private int myNextWorker;
+  /** Held in shared mode by the actions of a layoutlib instance, and in exclusive mode by the other actions. */
+  private final ReentrantReadWriteLock myLock = new ReentrantReadWriteLock();
+  private final ConcurrentHashMap<Object, RenderAction<?>> myPendingActions = new ConcurrentHashMap<>();
+  private final AtomicLong mySequence = new AtomicLong();
+  private final Statistics myStatistics = new Statistics();
+  /** Action running on the current render thread */
+  private final ThreadLocal<RenderAction<?>> myCurrentAction = new ThreadLocal<>();
+
+  /**
+   * @param workerCount maximum number of layoutlib instances rendering at the same time
+   * @param idleTimeoutMs time after which an idle render thread is stopped
+   */
+  public RenderExecutor(int workerCount, long idleTimeoutMs) {
+    myIdleTimeoutMs = idleTimeoutMs;
+    myExclusiveWorker = new Worker("Layoutlib Render Thread");
+    myWorkers = new Worker[Math.max(1, workerCount)];
+    for (int i = 0; i < myWorkers.length; i++) {
+      myWorkers[i] = new Worker("Layoutlib Render Thread " + (i + 1));
+    }
+  }
+
+  /**
+   * Submits an action.
+   *
+   * @param layoutLibrary the layoutlib instance that the action uses, or null if it may use any of them
+   * @param supersedeKey if not null, the pending action previously submitted with the same key is cancelled
+   */
+  @NotNull
+  public <T> ListenableFuture<T> submit(@NotNull Callable<T> callable,
+                                        @Nullable Object layoutLibrary,
+                                        @NotNull Priority priority,
+                                        @Nullable Object supersedeKey) {
+    Worker worker = layoutLibrary != null ? getWorker(layoutLibrary) : myExclusiveWorker;
+    Lock lock = layoutLibrary != null ? myLock.readLock() : myLock.writeLock();
+    RenderAction<T> action = new RenderAction<>(callable, worker, lock, priority, supersedeKey);
+    if (supersedeKey != null) {
+      RenderAction<?> previous = myPendingActions.put(supersedeKey, action);
+      if (previous != null && previous.cancelIfPending()) {
+        myStatistics.mySuperseded.incrementAndGet();
+      }
+    }
+    worker.myExecutor.execute(action);
+    return action;
+  }
+
+  /**
+   * Returns the thread currently used by the worker of the given layoutlib instance, or by the exclusive actions if it is null.
+   */
+  @Nullable
+  public Thread getThread(@Nullable Object layoutLibrary) {
+    return (layoutLibrary != null ? getWorker(layoutLibrary) : myExclusiveWorker).myThread;
+  }
+
+  /**
+   * Returns whether the current thread is one of the render threads.
+   */
+  public static boolean isRenderThread() {
+    return Thread.currentThread() instanceof RenderThread;
+  }
+
+  /**
+   * Returns whether an action for the given layoutlib instance (or an exclusive action, if it is null) can be run directly by the action
+   * running on the current thread, because that action already holds the lock the new one needs and runs on the worker it would be
+   * submitted to. That is the case if the current action is exclusive, or if it is not and the new action is for a layoutlib instance
+   * of the same worker.
+   */
+  public boolean canRunInline(@Nullable Object layoutLibrary) {
+    RenderAction<?> current = myCurrentAction.get();
+    if (current == null) {
+      return false;
+    }
+    if (current.myWorker == myExclusiveWorker) {
+      return true;
+    }
+    return layoutLibrary != null && getWorker(layoutLibrary) == current.myWorker;
+  }
+
+  /**
+   * Returns whether the current thread runs an action of a single layoutlib instance, from which waiting for an exclusive action would
+   * never end: the exclusive action can't start while the current one holds the shared lock.
+   */
+  public boolean holdsSharedLock() {
+    RenderAction<?> current = myCurrentAction.get();
+    return current != null && current.myWorker != myExclusiveWorker;
+  }
+
+  @NotNull
+  public Statistics getStatistics() {
+    return myStatistics;
+  }
+
+  public void shutdownNow() {
+    myExclusiveWorker.myExecutor.shutdownNow();
+    for (Worker worker : myWorkers) {
+      worker.myExecutor.shutdownNow();
+    }
+  }
+
+  /**
+   * Waits for the running actions to complete.
+   *
+   * @return true if they all completed within the timeout
+   */
+  public boolean awaitTermination(long timeout, @NotNull TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    boolean terminated = myExclusiveWorker.myExecutor.awaitTermination(timeout, unit);
+    for (Worker worker : myWorkers) {
+      terminated &= worker.myExecutor.awaitTermination(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+    }
+    return terminated;
+  }
+
+  @NotNull
+  private Worker getWorker(@NotNull Object layoutLibrary) {
+    synchronized (myWorkerByKey) {
+      Worker worker = myWorkerByKey.get(layoutLibrary);
+      if (worker == null) {
+        worker = myWorkers[myNextWorker];
+        myNextWorker = (myNextWorker + 1) % myWorkers.length;
+        myWorkerByKey.put(layoutLibrary, worker);
+      }
+      return worker;
+    }
+  }
+
+  /**
+   * Queue wait and run times of the completed actions, by {@link Priority}.
+   */
+  public static class Statistics {
+    private final AtomicLongArray myCounts = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray myWaitNanos = new AtomicLongArray(Priority.values().length);
+    private final AtomicLongArray myRunNanos = new AtomicLongArray(Priority.values().length);
+    private final AtomicLong mySuperseded = new AtomicLong();
+
+    private void record(@NotNull Priority priority, long waitNanos, long runNanos) {
+      myCounts.incrementAndGet(priority.ordinal());
+      myWaitNanos.addAndGet(priority.ordinal(), waitNanos);
+      myRunNanos.addAndGet(priority.ordinal(), runNanos);
+    }
+
+    public long getCompletedCount(@NotNull Priority priority) {
+      return myCounts.get(priority.ordinal());
+    }
+
+    public long getTotalQueueWaitMs(@NotNull Priority priority) {
+      return TimeUnit.NANOSECONDS.toMillis(myWaitNanos.get(priority.ordinal()));
+    }
+
+    public long getTotalRunMs(@NotNull Priority priority) {
+      return TimeUnit.NANOSECONDS.toMillis(myRunNanos.get(priority.ordinal()));
+    }
+
+    /**
+     * Returns the number of actions cancelled before running because a newer action replaced them.
+     */
+    public long getSupersededCount() {
+      return mySuperseded.get();
+    }
+  }
+
+  private static class RenderThread extends Thread {
+    private RenderThread(@NotNull Runnable runnable, @NotNull String name) {
+      super(null, runnable, name);
+      setDaemon(true);
+    }
+  }
+
+  private class Worker {
+    @NotNull private final ThreadPoolExecutor myExecutor;
+    @Nullable private volatile Thread myThread;
+
+    private Worker(@NotNull String threadName) {
+      // The queue only receives RenderActions, which are ordered by priority and then by submission.
+      myExecutor = new ThreadPoolExecutor(0, 1, myIdleTimeoutMs, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<>(), runnable -> {
+        Thread thread = new RenderThread(runnable, threadName);
+        myThread = thread;
+        return thread;
+      });
+    }
+  }
+
+  private class RenderAction<T> extends FutureTask<T> implements ListenableFuture<T>, Comparable<RenderAction<?>> {
+    @NotNull private final ExecutionList myListeners = new ExecutionList();
+    @NotNull private final Worker myWorker;
+    @NotNull private final Lock myActionLock;
+    @NotNull private final Priority myPriority;
+    @Nullable private final Object mySupersedeKey;
+    private final long mySequence = RenderExecutor.this.mySequence.getAndIncrement();
+    private final long mySubmitNanos = System.nanoTime();
+    /** Set when the action starts, or when it is cancelled before starting */
+    private final AtomicBoolean myClaimed = new AtomicBoolean();
+
+    private RenderAction(@NotNull Callable<T> callable,
+                         @NotNull Worker worker,
+                         @NotNull Lock lock,
+                         @NotNull Priority priority,
+                         @Nullable Object supersedeKey) {
+      super(callable);
+      myWorker = worker;
+      myActionLock = lock;
+      myPriority = priority;
+      mySupersedeKey = supersedeKey;
+    }
+
+    private boolean cancelIfPending() {
+      if (!myClaimed.compareAndSet(false, true)) {
+        return false;
+      }
+      cancel(false);
+      myWorker.myExecutor.remove(this);
+      return true;
+    }
+
+    @Override
+    public void run() {
+      if (mySupersedeKey != null) {
+        myPendingActions.remove(mySupersedeKey, this);
+      }
+      if (!myClaimed.compareAndSet(false, true)) {
+        return;
+      }
+      myActionLock.lock();
+      myCurrentAction.set(this);
+      long startNanos = System.nanoTime();
+      try {
+        super.run();
+      }
+      finally {
+        myCurrentAction.remove();
+        myActionLock.unlock();
+        long runNanos = System.nanoTime() - startNanos;
+        myStatistics.record(myPriority, startNanos - mySubmitNanos, runNanos);
+        if (LOG.isDebugEnabled()) {
+          LOG.debug(String.format("%s render action waited %dms and ran in %dms", myPriority,
+                                  TimeUnit.NANOSECONDS.toMillis(startNanos - mySubmitNanos), TimeUnit.NANOSECONDS.toMillis(runNanos)));
+        }
+      }
+    }
+
+    @Override
+    public void addListener(@NotNull Runnable listener, @NotNull Executor executor) {
+      myListeners.add(listener, executor);
+    }
+
+    @Override
+    protected void done() {
+      myListeners.execute();
+    }
+
+    @Override
+    public int compareTo(@NotNull RenderAction<?> other) {
+      int result = myPriority.compareTo(other.myPriority);
+      return result != 0 ? result : Long.compare(mySequence, other.mySequence);
+    }
+  }
+}
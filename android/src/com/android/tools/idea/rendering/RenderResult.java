@@ -95,6 +95,24 @@ public class RenderResult {
       defaultStyles != null ? ImmutableMap.copyOf(defaultStyles) : ImmutableMap.of());
   }
 
+  /**
+   * Creates a copy of the given {@link RenderResult} with a different image and task
+   */
+  @NotNull
+  static RenderResult copyOf(@NotNull RenderResult result, @NotNull ImagePool.Image image, @Nullable RenderTask renderTask) {
+    return new RenderResult(
+      result.myFile,
+      result.myModule,
+      result.myLogger,
+      renderTask,
+      result.myRenderResult,
+      result.myRootViews,
+      result.mySystemRootViews,
+      image,
+      result.myDefaultProperties,
+      result.myDefaultStyles);
+  }
+
   /**
    * Creates a new session initialization error {@link RenderResult} from a given RenderTask
    */
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.ViewInfo;
+import com.android.sdklib.IAndroidTarget;
+import com.android.sdklib.devices.Device;
+import com.android.sdklib.devices.State;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.gradle.project.build.PostProjectBuildTasksExecutor;
+import com.android.tools.idea.rendering.imagepool.ImagePool;
+import com.android.tools.idea.rendering.parsers.TagSnapshot;
+import com.android.tools.idea.res.ResourceNotificationManager;
+import com.google.common.annotations.VisibleForTesting;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.xml.XmlTag;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.android.facet.AndroidFacet;
+
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Cache of successful {@link RenderResult}s, so that a layout that was already rendered with the same content, configuration and
+ * resources can be displayed again without going through layoutlib (e.g. when reopening a layout or scrolling back to a preview).
+ * <p/>
+ * The cache keeps its own copy of the rendered images, allocated from an {@link ImagePool}, and evicts the least recently used results
+ * when their images exceed the maximum size. Results returned by {@link #get(Key)} are copies owned by the caller, who must dispose
+ * them.
+ */
+public class RenderResultCache {
+  @NotNull private final ImagePool myImagePool;
+  private final long myMaxBytes;
+  /** Results in access order, from least to most recently used. Access is synchronized on the map itself. */
+  private final LinkedHashMap<Key, RenderResult> myResults = new LinkedHashMap<>(16, 0.75f, true);
+  private long myBytes;
+
+  public RenderResultCache(@NotNull ImagePool imagePool, long maxBytes) {
+    myImagePool = imagePool;
+    myMaxBytes = maxBytes;
+  }
+
+  /**
+   * Returns a copy of the result rendered for the key, or null if there is none. The result no longer matches if the PSI of the file was
+   * recreated since it was rendered, since the view cookies point to the old tags. Such results are released.
+   * <p/>
+   * Must be called from a read action.
+   */
+  @Nullable
+  public RenderResult get(@NotNull Key key) {
+    RenderResult cached;
+    synchronized (myResults) {
+      cached = myResults.get(key);
+    }
+    if (cached == null) {
+      return null;
+    }
+    if (!cached.getFile().isValid() || !hasValidCookies(cached.getRootViews())) {
+      remove(key, cached);
+      return null;
+    }
+    ImagePool.Image image = copyImage(cached.getRenderedImage());
+    return image != null ? RenderResult.copyOf(cached, image, null) : null;
+  }
+
+  /**
+   * Stores a copy of a result rendered for the key. Only successful results with an image are kept.
+   */
+  public void put(@NotNull Key key, @NotNull RenderResult result) {
+    if (!result.getRenderResult().isSuccess() || !result.hasImage()) {
+      return;
+    }
+    long bytes = getBytes(result);
+    if (bytes > myMaxBytes) {
+      return;
+    }
+    ImagePool.Image image = copyImage(result.getRenderedImage());
+    if (image == null) {
+      return;
+    }
+    // The cached copy doesn't reference the task, which is disposed independently.
+    RenderResult copy = RenderResult.copyOf(result, image, null);
+    synchronized (myResults) {
+      RenderResult previous = myResults.put(key, copy);
+      if (previous != null) {
+        myBytes -= getBytes(previous);
+        previous.dispose();
+      }
+      myBytes += bytes;
+      Iterator<RenderResult> iterator = myResults.values().iterator();
+      while (myBytes > myMaxBytes && iterator.hasNext()) {
+        RenderResult eldest = iterator.next();
+        iterator.remove();
+        myBytes -= getBytes(eldest);
+        eldest.dispose();
+      }
+    }
+  }
+
+  private void remove(@NotNull Key key, @NotNull RenderResult result) {
+    synchronized (myResults) {
+      if (myResults.remove(key, result)) {
+        myBytes -= getBytes(result);
+        result.dispose();
+      }
+    }
+  }
+
+  public void clear() {
+    synchronized (myResults) {
+      myResults.values().forEach(RenderResult::dispose);
+      myResults.clear();
+      myBytes = 0;
+    }
+  }
+
+  @VisibleForTesting
+  int size() {
+    synchronized (myResults) {
+      return myResults.size();
+    }
+  }
+
+  @Nullable
+  private ImagePool.Image copyImage(@NotNull ImagePool.Image source) {
+    int width = source.getWidth();
+    int height = source.getHeight();
+    if (width <= 0 || height <= 0) {
+      return null;
+    }
+    ImagePool.Image copy = myImagePool.create(width, height, BufferedImage.TYPE_INT_ARGB);
+    copy.paint(g -> source.drawImageTo(g, 0, 0, width, height));
+    return copy;
+  }
+
+  private static long getBytes(@NotNull RenderResult result) {
+    ImagePool.Image image = result.getRenderedImage();
+    return (long)image.getWidth() * image.getHeight() * 4;
+  }
+
+  private static boolean hasValidCookies(@Nullable List<ViewInfo> views) {
+    if (views == null) {
+      return true;
+    }
+    for (ViewInfo view : views) {
+      Object cookie = view.getCookie();
+      XmlTag tag = cookie instanceof TagSnapshot ? ((TagSnapshot)cookie).tag : cookie instanceof XmlTag ? (XmlTag)cookie : null;
+      if (tag != null && !tag.isValid()) {
+        return false;
+      }
+      if (!hasValidCookies(view.getChildren())) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Identifies the inputs of a render: the layout file and its modification stamp, the configuration it is rendered in, the version of
+   * the project resources, the last build of the project (which compiles the custom views) and the render options of the caller.
+   * <p/>
+   * Keys don't reference the PSI, which can be released and recreated while the key is in the cache.
+   */
+  public static class Key {
+    @NotNull private final VirtualFile myVirtualFile;
+    private final long myModificationStamp;
+    @NotNull private final String myConfiguration;
+    @NotNull private final ResourceNotificationManager.ResourceVersion myResourceVersion;
+    @Nullable private final Long myLastBuildTimestamp;
+    @NotNull private final Object myOptions;
+
+    private Key(@NotNull VirtualFile virtualFile,
+                long modificationStamp,
+                @NotNull String configuration,
+                @NotNull ResourceNotificationManager.ResourceVersion resourceVersion,
+                @Nullable Long lastBuildTimestamp,
+                @NotNull Object options) {
+      myVirtualFile = virtualFile;
+      myModificationStamp = modificationStamp;
+      myConfiguration = configuration;
+      myResourceVersion = resourceVersion;
+      myLastBuildTimestamp = lastBuildTimestamp;
+      myOptions = options;
+    }
+
+    /**
+     * Must be called from a read action.
+     *
+     * @param options anything else that changes the rendered image, e.g. the scale or whether decorations are shown. It must implement
+     *                {@link Object#equals(Object)}.
+     * @return the key, or null if the file is not backed by a {@link VirtualFile}, in which case its results can't be cached
+     */
+    @Nullable
+    public static Key create(@NotNull AndroidFacet facet,
+                             @NotNull PsiFile file,
+                             @NotNull Configuration configuration,
+                             @NotNull Object options) {
+      VirtualFile virtualFile = file.getVirtualFile();
+      if (virtualFile == null) {
+        return null;
+      }
+      // The configuration generation is left out: the configuration state is compared instead, so that going back to a previous
+      // configuration matches the result rendered for it.
+      ResourceNotificationManager.ResourceVersion resourceVersion =
+        ResourceNotificationManager.getInstance(file.getProject()).getCurrentVersion(facet, null, null);
+      // Rebuilding a custom view changes its rendering without changing the layout, so results don't survive a build.
+      Long lastBuildTimestamp = PostProjectBuildTasksExecutor.getInstance(file.getProject()).getLastBuildTimestamp();
+      return new Key(virtualFile, file.getModificationStamp(), getConfigurationState(configuration), resourceVersion, lastBuildTimestamp,
+                     options);
+    }
+
+    @NotNull
+    private static String getConfigurationState(@NotNull Configuration configuration) {
+      Device device = configuration.getDevice();
+      State state = configuration.getDeviceState();
+      IAndroidTarget target = configuration.getRealTarget();
+      return String.join("|",
+                         device != null ? device.getId() : "",
+                         state != null ? state.getName() : "",
+                         configuration.getFullConfig().getQualifierString(),
+                         String.valueOf(configuration.getTheme()),
+                         String.valueOf(configuration.getActivity()),
+                         target != null ? target.hashString() : "");
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+
+      Key key = (Key)o;
+      return myModificationStamp == key.myModificationStamp &&
+             myVirtualFile.equals(key.myVirtualFile) &&
+             myConfiguration.equals(key.myConfiguration) &&
+             myResourceVersion.equals(key.myResourceVersion) &&
+             Objects.equals(myLastBuildTimestamp, key.myLastBuildTimestamp) &&
+             myOptions.equals(key.myOptions);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(myVirtualFile, myModificationStamp, myConfiguration, myResourceVersion, myLastBuildTimestamp, myOptions);
+    }
+  }
+}
@@ -36,12 +36,13 @@ import com.android.tools.idea.rendering.parsers.LayoutPullParsers;
 import com.android.tools.idea.rendering.parsers.TagSnapshot;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.ListenableFuture;
-import com.google.common.util.concurrent.ListenableFutureTask;
 import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.project.ProjectManager;
+import com.intellij.openapi.project.ProjectManagerListener;
 import com.intellij.openapi.roots.ui.configuration.ProjectSettingsService;
 import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.Key;
@@ -63,7 +64,6 @@ import org.jetbrains.annotations.TestOnly;
 import java.io.IOException;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import static com.android.SdkConstants.TAG_PREFERENCE_SCREEN;
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
@@ -80,11 +80,14 @@ public class RenderService implements Disposable {
                                                                               : 6));
   /** Number of ms that we will keep the render thread alive when idle */
   private static final long RENDER_THREAD_IDLE_TIMEOUT_MS = TimeUnit.SECONDS.toMillis(10);
+  /** Maximum size of the images kept by the {@link RenderResultCache} */
+  private static final long RENDER_RESULT_CACHE_MAX_BYTES = 100 * 1024 * 1024;
+  /** Maximum number of layoutlib instances (one per platform version) rendering in parallel */
+  private static final int RENDER_WORKER_COUNT = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
 
   @VisibleForTesting
   public static long ourRenderThreadTimeoutMs = DEFAULT_RENDER_THREAD_TIMEOUT_MS;
-  private static final AtomicReference<Thread> ourRenderingThread = new AtomicReference<>();
-  private static ExecutorService ourRenderingExecutor;
+  private static RenderExecutor ourRenderingExecutor;
   private static final AtomicInteger ourTimeoutExceptionCounter = new AtomicInteger(0);
 
   private static final Key<RenderService> KEY = Key.create(RenderService.class.getName());
@@ -99,17 +102,7 @@ public class RenderService implements Disposable {
   private final Project myProject;
 
   private static void innerInitializeRenderExecutor() {
-    ourRenderingExecutor = new ThreadPoolExecutor(0, 1,
-                             RENDER_THREAD_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS,
-                             new LinkedBlockingQueue<>(),
-                             (Runnable r) -> {
-                               Thread renderingThread =
-                                 new Thread(null, r, "Layoutlib Render Thread");
-                               renderingThread.setDaemon(true);
-                               ourRenderingThread.set(renderingThread);
-
-                               return renderingThread;
-                             });
+    ourRenderingExecutor = new RenderExecutor(RENDER_WORKER_COUNT, RENDER_THREAD_IDLE_TIMEOUT_MS);
   }
 
   @TestOnly
@@ -121,10 +114,6 @@ public class RenderService implements Disposable {
 
   private static void shutdownRenderExecutor() {
     ourRenderingExecutor.shutdownNow();
-    Thread currentThread = ourRenderingThread.getAndSet(null);
-    if (currentThread != null) {
-      currentThread.interrupt();
-    }
   }
 
   /**
@@ -153,6 +142,9 @@ public class RenderService implements Disposable {
 
   private final ImagePool myImagePool = ImagePoolFactory.createImagePool();
 
+  private final RenderResultCache myRenderResultCache =
+    new RenderResultCache(myImagePool, Math.min(Runtime.getRuntime().maxMemory() / 20, RENDER_RESULT_CACHE_MAX_BYTES));
+
   /**
    * @return the {@linkplain RenderService} for the given facet.
    */
@@ -175,6 +167,13 @@ public class RenderService implements Disposable {
   protected RenderService(@NotNull Project project) {
     myProject = project;
     Disposer.register(project, this);
+    ProjectManager.getInstance().addProjectManagerListener(project, new ProjectManagerListener() {
+      @Override
+      public void projectClosing(@NotNull Project closingProject) {
+        // The cached results reference the PSI and the modules of the project, which are released when it closes
+        myRenderResultCache.clear();
+      }
+    });
   }
 
   @Nullable
@@ -236,9 +235,18 @@ public class RenderService implements Disposable {
   @Override
   public void dispose() {
     myProject.putUserData(KEY, null);
+    myRenderResultCache.clear();
     myImagePool.dispose();
   }
 
+  /**
+   * Returns the cache of the results rendered in this project.
+   */
+  @NotNull
+  public RenderResultCache getRenderResultCache() {
+    return myRenderResultCache;
+  }
+
   @Nullable
   public AndroidPlatform getPlatform(@NotNull AndroidFacet facet) {
     return AndroidPlatform.getInstance(facet.getModule());
@@ -284,11 +292,34 @@ public class RenderService implements Disposable {
    * method.
    */
   public static <T> T runRenderAction(@NotNull Callable<T> callable) throws Exception {
+    return runRenderAction(callable, null);
+  }
+
+  /**
+   * Runs a action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
+   * method.
+   *
+   * @param layoutLibrary the only {@link LayoutLibrary} used by the action, which allows it to run in parallel with the actions of other
+   *                      instances. If null, the action runs while no other action is running.
+   * @throws IllegalStateException if called with a null layoutLibrary from a render action that has one
+   */
+  public static <T> T runRenderAction(@NotNull Callable<T> callable, @Nullable LayoutLibrary layoutLibrary) throws Exception {
+    if (ourRenderingExecutor.canRunInline(layoutLibrary)) {
+      // The current render action already holds the lock and is on the worker the action would be queued to: waiting for it would only
+      // time out.
+      return callable.call();
+    }
+    if (layoutLibrary == null && ourRenderingExecutor.holdsSharedLock()) {
+      throw new IllegalStateException("An action using any layoutlib instance can't be run from the action of a single instance");
+    }
     try {
       // If the number of timeouts exceeds a certain threshold, stop waiting so the caller doesn't block. We try to submit a task that
       // clean-up the timeout counter instead. If it goes through, it means the queue is free.
       if (ourTimeoutExceptionCounter.get() > 3) {
-        ourRenderingExecutor.submit(() -> ourTimeoutExceptionCounter.set(0)).get(50, TimeUnit.MILLISECONDS);
+        ourRenderingExecutor.submit(() -> {
+          ourTimeoutExceptionCounter.set(0);
+          return null;
+        }, layoutLibrary, RenderExecutor.Priority.NORMAL, null).get(50, TimeUnit.MILLISECONDS);
       }
       long timeout = ourRenderThreadTimeoutMs;
       if (isFirstCall) {
@@ -297,7 +328,8 @@ public class RenderService implements Disposable {
         isFirstCall = false;
         timeout *= 2;
       }
-      T result = ourRenderingExecutor.submit(callable).get(timeout, TimeUnit.MILLISECONDS);
+      T result = ourRenderingExecutor.submit(callable, layoutLibrary, RenderExecutor.Priority.NORMAL, null)
+        .get(timeout, TimeUnit.MILLISECONDS);
       // The executor seems to be taking tasks so reset the counter
       ourTimeoutExceptionCounter.set(0);
 
@@ -306,7 +338,7 @@ public class RenderService implements Disposable {
     catch (TimeoutException e) {
       ourTimeoutExceptionCounter.incrementAndGet();
 
-      Thread renderingThread = ourRenderingThread.get();
+      Thread renderingThread = ourRenderingExecutor.getThread(layoutLibrary);
       TimeoutException timeoutException = new TimeoutException("Preview timed out while rendering the layout.\n" +
                                                                "This typically happens when there is an infinite loop or unbounded recursion in one of the custom views.");
       if (renderingThread != null) {
@@ -325,10 +357,22 @@ public class RenderService implements Disposable {
    */
   @NotNull
   public static <T> ListenableFuture<T> runAsyncRenderAction(@NotNull Callable<T> callable) {
-    ListenableFutureTask<T> future = ListenableFutureTask.create(callable);
-    ourRenderingExecutor.submit(future);
+    return runAsyncRenderAction(callable, null, RenderExecutor.Priority.NORMAL, null);
+  }
 
-    return future;
+  /**
+   * Runs an action that requires the rendering lock. Layoutlib is not thread safe so any rendering actions should be called using this
+   * method.
+   * <p/>
+   * This method will run the passed action asynchronously and return a {@link ListenableFuture}. See
+   * {@link RenderExecutor#submit(Callable, Object, RenderExecutor.Priority, Object)} for the meaning of the parameters.
+   */
+  @NotNull
+  public static <T> ListenableFuture<T> runAsyncRenderAction(@NotNull Callable<T> callable,
+                                                             @Nullable LayoutLibrary layoutLibrary,
+                                                             @NotNull RenderExecutor.Priority priority,
+                                                             @Nullable Object supersedeKey) {
+    return ourRenderingExecutor.submit(callable, layoutLibrary, priority, supersedeKey);
   }
 
   /**
@@ -338,7 +382,15 @@ public class RenderService implements Disposable {
    * This method will run the passed action asynchronously
    */
   public static void runAsyncRenderAction(@NotNull Runnable runnable) {
-    ourRenderingExecutor.submit(runnable);
+    runAsyncRenderAction(Executors.callable(runnable));
+  }
+
+  /**
+   * Returns the queue wait and run times of the render actions.
+   */
+  @NotNull
+  public static RenderExecutor.Statistics getRenderActionStatistics() {
+    return ourRenderingExecutor.getStatistics();
   }
 
 
@@ -437,6 +489,7 @@ public class RenderService implements Disposable {
     private boolean isSecurityManagerEnabled = true;
     private float myDownscaleFactor = 1f;
     private boolean showDecorations = true;
+    @NotNull private RenderExecutor.Priority myPriority = RenderExecutor.Priority.NORMAL;
 
     private RenderTaskBuilder(@NotNull RenderService service,
                               @NotNull AndroidFacet facet,
@@ -515,6 +568,15 @@ public class RenderService implements Disposable {
       return this;
     }
 
+    /**
+     * Sets the priority of the render actions of the task. See {@link RenderTask#setPriority(RenderExecutor.Priority)}.
+     */
+    @NotNull
+    public RenderTaskBuilder withPriority(@NotNull RenderExecutor.Priority priority) {
+      this.myPriority = priority;
+      return this;
+    }
+
     /**
      * Builds a new {@link RenderTask}
      */
@@ -594,6 +656,7 @@ public class RenderService implements Disposable {
         }
 
         task.setDecorations(showDecorations);
+        task.setPriority(myPriority);
 
         return task;
       } catch (IllegalStateException | IncorrectOperationException | AssertionError e) {
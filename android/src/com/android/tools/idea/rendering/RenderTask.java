@@ -70,6 +70,7 @@ import java.util.*;
 import java.util.List;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static com.intellij.lang.annotation.HighlightSeverity.ERROR;
 
@@ -103,6 +104,11 @@ public class RenderTask {
    * When quality < 1.0, the max allowed size for the rendering is DOWNSCALED_IMAGE_MAX_BYTES * downscalingFactor
    */
   private static final int DOWNSCALED_IMAGE_MAX_BYTES = 2_500_000; // 2.5MB
+  /**
+   * The {@link RenderSecurityManager} is installed globally while inflating, so inflations with the security manager enabled can't run in
+   * parallel, even for different layoutlib instances.
+   */
+  private static final ReentrantLock ourSecurityManagerLock = new ReentrantLock();
 
   @NotNull private final ImagePool myImagePool;
   @NotNull private final RenderTaskContext myContext;
@@ -128,6 +134,10 @@ public class RenderTask {
   private final List<ListenableFuture<?>> myRunningFutures = new LinkedList<>();
   @NotNull private final AtomicBoolean isDisposed = new AtomicBoolean(false);
   @Nullable private XmlFile myXmlFile;
+  @NotNull private RenderExecutor.Priority myPriority = RenderExecutor.Priority.NORMAL;
+  /** Keys used to cancel a pending render or layout when a newer one is requested */
+  private final Object myRenderActionKey = new Object();
+  private final Object myLayoutActionKey = new Object();
 
   /**
    * Don't create this task directly; obtain via {@link RenderService}
@@ -338,6 +348,19 @@ public class RenderTask {
     return this;
   }
 
+  /**
+   * Sets the priority of the render actions of this task over the ones of other tasks. The default is
+   * {@link RenderExecutor.Priority#NORMAL}.
+   *
+   * @return this (such that chains of setters can be stringed together)
+   */
+  @SuppressWarnings("UnusedReturnValue")
+  @NotNull
+  public RenderTask setPriority(@NotNull RenderExecutor.Priority priority) {
+    myPriority = priority;
+    return this;
+  }
+
   /**
    * Sets the overriding background color to be used, if any. The color should be a bitmask of AARRGGBB.
    * The default is null.
@@ -504,10 +527,13 @@ public class RenderTask {
       RenderSecurityManager securityManager =
           isSecurityManagerEnabled ? RenderSecurityManagerFactory.create(module, getContext().getPlatform()) : null;
       if (securityManager != null) {
-        securityManager.setActive(true, myCredential);
+        ourSecurityManagerLock.lock();
       }
 
       try {
+        if (securityManager != null) {
+          securityManager.setActive(true, myCredential);
+        }
         RenderSession session = myLayoutLib.createSession(params);
 
         if (session.getResult().isSuccess()) {
@@ -524,7 +550,12 @@ public class RenderTask {
       }
       finally {
         if (securityManager != null) {
-          securityManager.dispose(myCredential);
+          try {
+            securityManager.dispose(myCredential);
+          }
+          finally {
+            ourSecurityManagerLock.unlock();
+          }
         }
       }
     }
@@ -592,12 +623,21 @@ public class RenderTask {
   @VisibleForTesting
   @NotNull
   <V> ListenableFuture<V> runAsyncRenderAction(@NotNull Callable<V> callable) {
+    return runAsyncRenderAction(callable, null);
+  }
+
+  /**
+   * Same as {@link #runAsyncRenderAction(Callable)}, but the action is cancelled if it hasn't started when another action with the same
+   * supersede key is submitted.
+   */
+  @NotNull
+  private <V> ListenableFuture<V> runAsyncRenderAction(@NotNull Callable<V> callable, @Nullable Object supersedeKey) {
     if (isDisposed.get()) {
       return Futures.immediateFailedFuture(new IllegalStateException("RenderTask was already disposed"));
     }
 
     synchronized (myRunningFutures) {
-      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable);
+      ListenableFuture<V> newFuture = RenderService.runAsyncRenderAction(callable, myLayoutLib, myPriority, supersedeKey);
       Futures.addCallback(newFuture, new FutureCallback<V>() {
         @Override
         public void onSuccess(@Nullable V result) {
@@ -661,6 +701,8 @@ public class RenderTask {
 
   /**
    * Only do a measure pass using the current render session
+   * <p/>
+   * If a newer layout is requested before this one starts, the returned future is cancelled.
    */
   @NotNull
   public ListenableFuture<RenderResult> layout() {
@@ -676,7 +718,7 @@ public class RenderTask {
       return runAsyncRenderAction(() -> {
         myRenderSession.measure();
         return RenderResult.create(this, renderSession, psiFile, myLogger, ImagePool.NULL_POOLED_IMAGE);
-      });
+      }, myLayoutActionKey);
     }
     catch (Exception e) {
       // nothing
@@ -727,7 +769,7 @@ public class RenderTask {
           myLogger.error(null, renderResult.getErrorMessage(), renderResult.getException(), null, null);
         }
         return result;
-      });
+      }, myRenderActionKey);
     }
     catch (Exception e) {
       reportException(e);
@@ -758,6 +800,8 @@ public class RenderTask {
    * that can be accessed via the returned {@link RenderResult}
    * <p/>
    * If {@link #inflate()} hasn't been called before, this method will implicitly call it.
+   * <p/>
+   * If a newer render is requested before this one starts, the returned future is cancelled.
    */
   @NotNull
   public ListenableFuture<RenderResult> render() {
@@ -861,7 +905,7 @@ public class RenderTask {
     }
 
     try {
-      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params));
+      Result result = RenderService.runRenderAction(() -> myLayoutLib.renderDrawable(params), myLayoutLib);
 
       if (result != null && result.isSuccess()) {
         Object data = result.getData();
@@ -922,7 +966,7 @@ public class RenderTask {
     Map<XmlTag, ViewInfo> map = new HashMap<>();
     RenderSession session = null;
     try {
-      session = RenderService.runRenderAction(() -> measure(modelParser));
+      session = RenderService.runRenderAction(() -> measure(modelParser), myLayoutLib);
     }
     catch (Exception ignored) {
     }
@@ -25,8 +25,13 @@ import com.android.tools.idea.log.LogWrapper;
 import com.android.tools.idea.res.aar.AarSourceResourceRepository;
 import com.android.utils.ILogger;
 import com.android.utils.XmlUtils;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.*;
 import com.google.common.hash.Hashing;
+import com.google.common.util.concurrent.ExecutionError;
+import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.intellij.ide.plugins.IdeaPluginDescriptor;
 import com.intellij.ide.plugins.PluginManager;
 import com.intellij.openapi.application.ApplicationManager;
@@ -44,10 +49,14 @@ import org.w3c.dom.*;
 import org.xmlpull.v1.XmlPullParser;
 
 import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
@@ -66,7 +75,10 @@ import static com.google.common.collect.Sets.newLinkedHashSetWithExpectedSize;
  *
  * <p>For performance the repository, when possible, is loaded from a binary cache file located
  * under the directory returned by the {@link PathManager#getSystemPath()} method.
- * Loading from a cache file is 7-8 times faster than reading XML files.
+ * Loading from a cache file is 7-8 times faster than reading XML files. The cache file is memory
+ * mapped, the XML nodes of the resources are decoded from it when they are first used, and
+ * the locale-specific resources of each type are only loaded when resources of that type are
+ * requested.
  *
  * <p>For safety we don't assume any compatibility of cache file format between different versions
  * of the Android plugin. For the built-in framework resources used by LayoutLib this also guarantees
@@ -78,7 +90,7 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
   private static final ResourceNamespace ANDROID_NAMESPACE = ResourceNamespace.ANDROID;
   private static final String CACHE_DIRECTORY = "caches/framework_resources";
   private static final String CACHE_FILE_HEADER = "Framework resource cache";
-  private static final String CACHE_FILE_FORMAT_VERSION = "3";
+  private static final String CACHE_FILE_FORMAT_VERSION = "4";
   private static final String ANDROID_PLUGIN_ID = "org.jetbrains.android";
   // Used for parsing group of attributes, used heuristically to skip long comments before <eat-comment/>.
   private static final int ATTR_GROUP_MAX_CHARACTERS = 40;
@@ -97,6 +109,11 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
   private final Map<ResourceType, Set<ResourceItem>> myPublicResources = new EnumMap<>(ResourceType.class);
   private Future myCacheCreatedFuture;
   private boolean myLoadedFromCache;
+  /** State of the persistent cache while some of the locale-specific resources loaded from it are still pending. */
+  @Nullable private volatile CacheState myCacheState;
+
+  /** Repositories shared by {@link #getOrCreate}, keyed by the path of the resource directory and the locale flag. */
+  private static final Cache<String, FrameworkResourceRepository> ourSharedRepositories = CacheBuilder.newBuilder().weakValues().build();
 
   private FrameworkResourceRepository(@NotNull File resFolder, boolean withLocaleResources) {
     super(resFolder, ANDROID_NAMESPACE, null);
@@ -162,6 +179,35 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     return repository;
   }
 
+  /**
+   * Returns an Android framework resource repository backed by the persistent cache, reusing the repository created by
+   * a previous call for the same resource folder while it is still referenced. A repository including locale-specific
+   * resources is also returned when they are not requested, since its locale-specific resources are only loaded when used.
+   *
+   * @param resFolder the folder containing resources of the Android framework
+   * @param withLocaleResources whether to include locale-specific resources or not
+   * @return the shared resource repository
+   */
+  @NotNull
+  public static FrameworkResourceRepository getOrCreate(@NotNull File resFolder, boolean withLocaleResources) {
+    String path = resFolder.getAbsolutePath();
+    FrameworkResourceRepository repository = ourSharedRepositories.getIfPresent(path + "_L");
+    if (repository == null && !withLocaleResources) {
+      repository = ourSharedRepositories.getIfPresent(path);
+    }
+    if (repository != null) {
+      return repository;
+    }
+    // The cache only blocks the callers asking for the same key while the repository is created.
+    try {
+      return ourSharedRepositories.get(withLocaleResources ? path + "_L" : path, () -> create(resFolder, withLocaleResources, true));
+    }
+    catch (ExecutionException | UncheckedExecutionException | ExecutionError e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    }
+  }
+
   private void createPersistentCacheAsynchronously() {
     myCacheCreatedFuture = ApplicationManager.getApplication().executeOnPooledThread(this::createPersistentCache);
   }
@@ -172,6 +218,7 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     if (!namespace.equals(ANDROID_NAMESPACE)) {
       return Collections.emptySet();
     }
+    loadLocaleResources(type);
     Set<ResourceItem> resourceItems = myPublicResources.get(type);
     return resourceItems == null ? Collections.emptySet() : resourceItems;
   }
@@ -425,19 +472,39 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       }
       return ImmutableListMultimap.of();
     }
-    return getMap(type, create);
+    loadLocaleResources(type);
+    return getLoadedMap(type, create);
   }
 
+  /**
+   * Returns the resources of the given type without loading the pending locale-specific ones.
+   */
   @NotNull
-  private ListMultimap<String, ResourceItem> getMap(@NotNull ResourceType type, boolean create) {
+  private ListMultimap<String, ResourceItem> getLoadedMap(@NotNull ResourceType type, boolean create) {
     ListMultimap<String, ResourceItem> map = super.getMap(ANDROID_NAMESPACE, type, create);
     return map == null ? ImmutableListMultimap.of() : map;
   }
 
+  @Override
+  @NotNull
+  protected ResourceTable getFullTable() {
+    loadLocaleResources(null);
+    return super.getFullTable();
+  }
+
   @Override
   @NotNull
   public Set<ResourceType> getResourceTypes(@NotNull ResourceNamespace namespace) {
-    return namespace == ANDROID_NAMESPACE ? Sets.immutableEnumSet(getMapByType().keySet()) : ImmutableSet.of();
+    if (namespace != ANDROID_NAMESPACE) {
+      return ImmutableSet.of();
+    }
+    CacheState state = myCacheState;
+    if (state == null) {
+      return Sets.immutableEnumSet(getLoadedMapByType().keySet());
+    }
+    synchronized (ITEM_MAP_LOCK) {
+      return Sets.immutableEnumSet(Sets.union(getLoadedMapByType().keySet(), state.myLocaleSections.keySet()));
+    }
   }
 
   /**
@@ -450,6 +517,10 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
   /**
    * Loads the framework resource repository from a binary cache file on disk.
    *
+   * <p>The cache file is memory mapped. The XML nodes of the resources are decoded from the mapped file
+   * when they are first accessed, and the resources of the locale-specific folders are only loaded when
+   * resources of the same type are requested, see {@link #loadLocaleResources(ResourceType)}.
+   *
    * @return true if the repository was loaded from the cache, or false if the cache does not
    *     exist or is out of date
    * @see #createPersistentCache()
@@ -460,7 +531,9 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       return false; // Cache file does not exist.
     }
 
-    try (CacheInputStream in = new CacheInputStream(cacheFile)) {
+    try {
+      CacheFile cache = CacheFile.open(cacheFile);
+      DataInputStream in = cache.getMetadata();
       if (!in.readUTF().equals(getResourceDirectory().getAbsolutePath())) {
         return false; // The cache is for a different resource directory.
       }
@@ -493,66 +566,40 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
         resourceFiles[i] = new ResourceFile(new File(path), Collections.emptyList(), folderConfig);
       }
 
+      CacheState state = new CacheState(cache, folderConfigurations, resourceFiles);
+
       // Read resource items.
       int numTypes = in.readUnsignedByte();
       for (int i = 0; i < numTypes; i++) {
-        ResourceType resourceType = in.readResourceType();
-        ListMultimap<String, ResourceItem> map = getMap(resourceType, true);
-        int numResources = in.readUnsignedShort();
-        for (int j = 0; j < numResources; j++) {
-          String resourceName = in.readUTF();
-          int n = in.readUnsignedShort();
-          for (int k = 0; k < n; k++) {
-            Node node = in.readNode();
-            ResourceItemType itemType = ResourceItemType.values()[in.readUnsignedByte()];
-            ResourceMergerItem item = null;
-            switch (itemType) {
-              case VALUE: {
-                item = new ResourceMergerItem(resourceName, ANDROID_NAMESPACE, resourceType, node, null);
-                int fileIndex = in.readUnsignedShort();
-                ResourceFile resourceFile = resourceFiles[fileIndex];
-                resourceFile.addItem(item);
-                break;
-              }
-              case FILE: {
-                item = new ResourceMergerItem(resourceName, ANDROID_NAMESPACE, resourceType, node, null);
-                int folderConfigurationIndex = in.readUnsignedShort();
-                FolderConfiguration folderConfig = folderConfigurations[folderConfigurationIndex];
-                String path = in.readUTF();
-                new ResourceFile(new File(path), item, folderConfig);
-                break;
-              }
-            }
-
-            if (item != null) {
-              map.put(resourceName, item);
-            }
-          }
-        }
+        ResourceType resourceType = readResourceType(in);
+        readResourceItems(in, resourceType, state);
       }
 
       // Read public resources.
       int numPublic = in.readUnsignedByte();
       for (int i = 0; i < numPublic; i++) {
-        ResourceType resourceType = in.readResourceType();
-        ListMultimap<String, ResourceItem> map = getMap(resourceType, false);
+        ResourceType resourceType = readResourceType(in);
         int m = in.readUnsignedShort();
+        Set<String> names = new HashSet<>(m);
         for (int j = 0; j < m; j++) {
-          String resourceName = in.readUTF();
-          List<ResourceItem> items = map.get(resourceName);
-          if (items == null) {
-            throw new StreamCorruptedException("Unresolved public resource reference, type: " + resourceType.getName()
-                                               + ", name: " + resourceName);
-          }
-          Set<ResourceItem> publicItems = myPublicResources.get(resourceType);
-          if (publicItems == null) {
-            publicItems = ContainerUtil.newIdentityTroveSet(items.size());
-            myPublicResources.put(resourceType, publicItems);
-          }
-          publicItems.addAll(items);
+          names.add(in.readUTF());
         }
+        state.myPublicNames.put(resourceType, names);
+        addPublicResources(resourceType, names);
+      }
+
+      // Read the locations of the locale-specific resources, which are loaded on demand.
+      int numLocaleTypes = in.readUnsignedByte();
+      for (int i = 0; i < numLocaleTypes; i++) {
+        ResourceType resourceType = readResourceType(in);
+        int offset = in.readInt();
+        int length = in.readInt();
+        state.myLocaleSections.put(resourceType, cache.getLocaleSection(offset, length));
       }
 
+      if (!state.myLocaleSections.isEmpty()) {
+        myCacheState = state;
+      }
       myLoadedFromCache = true;
     }
     catch (VersionMismatchException e) {
@@ -563,17 +610,126 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       return false;
     } finally {
       if (!myLoadedFromCache) {
-        getMapByType().clear();  // Remove partially loaded data.
+        getLoadedMapByType().clear();  // Remove partially loaded data.
+        myPublicResources.clear();
       }
     }
 
     return true;
   }
 
+  /**
+   * Reads the resources of one type written by {@link #writeResourceItems} and adds them to the repository.
+   */
+  private void readResourceItems(@NotNull DataInputStream in, @NotNull ResourceType resourceType, @NotNull CacheState state)
+      throws IOException {
+    ListMultimap<String, ResourceItem> map = getLoadedMap(resourceType, true);
+    int numResources = in.readUnsignedShort();
+    for (int j = 0; j < numResources; j++) {
+      String resourceName = in.readUTF();
+      int n = in.readUnsignedShort();
+      for (int k = 0; k < n; k++) {
+        Node node = state.myCache.getNode(in.readInt());
+        ResourceItemType itemType = ResourceItemType.values()[in.readUnsignedByte()];
+        ResourceMergerItem item = null;
+        switch (itemType) {
+          case VALUE: {
+            item = new ResourceMergerItem(resourceName, ANDROID_NAMESPACE, resourceType, node, null);
+            int fileIndex = in.readUnsignedShort();
+            ResourceFile resourceFile = state.myResourceFiles[fileIndex];
+            resourceFile.addItem(item);
+            break;
+          }
+          case FILE: {
+            item = new ResourceMergerItem(resourceName, ANDROID_NAMESPACE, resourceType, node, null);
+            int folderConfigurationIndex = in.readUnsignedShort();
+            FolderConfiguration folderConfig = state.myFolderConfigurations[folderConfigurationIndex];
+            String path = in.readUTF();
+            new ResourceFile(new File(path), item, folderConfig);
+            break;
+          }
+        }
+
+        if (item != null) {
+          map.put(resourceName, item);
+        }
+      }
+    }
+  }
+
+  private void addPublicResources(@NotNull ResourceType resourceType, @NotNull Set<String> names) {
+    ListMultimap<String, ResourceItem> map = getLoadedMap(resourceType, false);
+    Set<ResourceItem> publicItems = myPublicResources.get(resourceType);
+    if (publicItems == null) {
+      publicItems = ContainerUtil.newIdentityTroveSet(names.size());
+      myPublicResources.put(resourceType, publicItems);
+    }
+    for (String name : names) {
+      publicItems.addAll(map.get(name));
+    }
+  }
+
+  /**
+   * Loads the locale-specific resources of the given type, or of all types if {@code type} is null,
+   * if the repository was loaded from the cache and they haven't been loaded yet.
+   */
+  private void loadLocaleResources(@Nullable ResourceType type) {
+    if (myCacheState == null) {
+      return;
+    }
+
+    synchronized (ITEM_MAP_LOCK) {
+      CacheState state = myCacheState;
+      if (state == null) {
+        return;
+      }
+      for (Iterator<Map.Entry<ResourceType, ByteBuffer>> iterator = state.myLocaleSections.entrySet().iterator(); iterator.hasNext(); ) {
+        Map.Entry<ResourceType, ByteBuffer> entry = iterator.next();
+        ResourceType resourceType = entry.getKey();
+        if (type == null || type == resourceType) {
+          iterator.remove();
+          try {
+            readResourceItems(new DataInputStream(new ByteBufferInputStream(entry.getValue())), resourceType, state);
+          }
+          catch (IOException e) {
+            LOG.warn("Unable to load locale-specific resources from cache file " + getCacheFile().getAbsolutePath(), e);
+          }
+          Set<String> publicNames = state.myPublicNames.get(resourceType);
+          if (publicNames != null) {
+            addPublicResources(resourceType, publicNames);
+          }
+        }
+      }
+      if (state.myLocaleSections.isEmpty()) {
+        myCacheState = null;
+      }
+    }
+  }
+
   /**
    * Creates a persistent cache file with the following format:
    * <ol>
    *   <li>Header (see below)</li>
+   *   <li>Length of the metadata section (int)</li>
+   *   <li>Length of the locale section (int)</li>
+   *   <li>Length of the string section (int)</li>
+   *   <li>Metadata section (see below)</li>
+   *   <li>Locale section, containing the resource group entries of the locale-specific resources,
+   *       one for each resource type (see below)</li>
+   *   <li>String section (see below)</li>
+   *   <li>Node section, containing the XML node entries (see below)</li>
+   * </ol>
+   *
+   * The header contains:
+   * <ol>
+   *   <li>The {@linkplain #CACHE_FILE_HEADER} string (one byte per character)</li>
+   *   <li>Space (one byte)</li>
+   *   <li>The {@linkplain #CACHE_FILE_FORMAT_VERSION} string (one byte per character)</li>
+   *   <li>Space (one byte)</li>
+   * </ol>
+   *
+   * The metadata section contains:
+   * <ol>
    *   <li>Absolute path of the resource directory (UTF-8 string)</li>
    *   <li>Version of the Android plugin (UTF-8 string)</li>
    *   <li>Number of folder configurations (unsigned short)</li>
@@ -581,17 +737,13 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
    *   <li>Number of multi-resource files (unsigned short)</li>
    *   <li>Multi-resource file entries (see below)</li>
    *   <li>Number of resource group entries (unsigned byte)</li>
-   *   <li>Resource group entries (see below)</li>
+   *   <li>Resource type represented by its ordinal (unsigned byte) followed by the resource group entry
+   *       (see below), for each type of resources that are not locale-specific</li>
    *   <li>Number of public resource group entries (unsigned byte)</li>
    *   <li>Public resource group entries (see below)</li>
-   * </ol>
-   *
-   * The header contains:
-   * <ol>
-   *   <li>The {@linkplain #CACHE_FILE_HEADER} string (one byte per character)</li>
-   *   <li>Space (one byte)</li>
-   *   <li>The {@linkplain #CACHE_FILE_FORMAT_VERSION} string (one byte per character)</li>
-   *   <li>Space (one byte)</li>
+   *   <li>Number of locale-specific resource types (unsigned byte)</li>
+   *   <li>Resource type represented by its ordinal (unsigned byte), offset and length of its resource group entry
+   *       in the locale section (ints), for each type of locale-specific resources</li>
    * </ol>
    *
    * A multi-resource file entry contains:
@@ -602,7 +754,6 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
    *
    * A resource group entry contains:
    * <ol>
-   *   <li>{@linkplain ResourceType} represented by its ordinal (unsigned byte)</li>
    *   <li>Number of resource subgroups (unsigned short)</li>
    *   <li>Resource subgroup entries (see below)</li>
    * </ol>
@@ -616,8 +767,8 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
    *
    * A resource item entry contains:
    * <ol>
-   *   <li>The XML node entry associated with the resource (see below), or a zero byte if the resource
-   *   does not have an associated XML node</li>
+   *   <li>The offset of the XML node entry associated with the resource in the node section (int), or -1
+   *       if the resource does not have an associated XML node</li>
    *   <li>The type of the entry represented by the ordinal of {@linkplain ResourceItemType} (unsigned byte)</li>
    *   <li>If the type of the entry is {@linkplain ResourceItemType#VALUE}, the index of the corresponding
    *       multi-resource file (unsigned short)</li>
@@ -633,26 +784,33 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
    *   <li>Resource names (UTF-8 strings)</li>
    * </ol>
    *
+   * The string section contains:
+   * <ol>
+   *   <li>Number of strings (int)</li>
+   *   <li>Offsets of the strings relative to the end of the offsets (ints)</li>
+   *   <li>For each string, the number of bytes (int) followed by the UTF-8 bytes of the string</li>
+   * </ol>
+   *
    * An XML node entry contains:
    * <ol>
    *   <li>The type of the node, Node.ELEMENT_NODE or Node.TEXT_NODE (unsigned byte)</li>
    *   <li>If the node is an {@link Element}, the XML element entry (see below)</li>
-   *   <li>If the node is a {@link Text}, the value of the node (UTF-8 string)</li>
+   *   <li>If the node is a {@link Text}, the index of the value of the node in the string section (int)</li>
    * </ol>
    *
    * An XML element entry contains:
    * <ol>
-   *   <li>The name of the node (UTF-8 string)</li>
+   *   <li>The index of the name of the node in the string section (int)</li>
    *   <li>The number of attributes (unsigned byte)</li>
    *   <li>XML attribute entries, one for each attribute (see below)</li>
-   *   <li>The number of child nodes (unsigned byte)</li>
+   *   <li>The number of child nodes (unsigned short)</li>
    *   <li>XML node entries, one for each child</li>
    * </ol>
    *
    * An XML attribute entry contains:
    * <ol>
-   *   <li>The name of the attribute (UTF-8 string)</li>
-   *   <li>The value of the attribute (UTF-8 string)</li>
+   *   <li>The index of the name of the attribute in the string section (int)</li>
+   *   <li>The index of the value of the attribute in the string section (int)</li>
    * </ol>
    */
   private void createPersistentCache() {
@@ -669,11 +827,17 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       return;
     }
 
-    try (CacheOutputStream out = new CacheOutputStream(tempFile)) {
-      out.writeUTF(getResourceDirectory().getAbsolutePath());
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      CacheWriter writer = new CacheWriter();
+      ByteArrayOutputStream metadataBytes = new ByteArrayOutputStream();
+      DataOutputStream metadata = new DataOutputStream(metadataBytes);
+      ByteArrayOutputStream localeBytes = new ByteArrayOutputStream();
+      DataOutputStream locale = new DataOutputStream(localeBytes);
+
+      metadata.writeUTF(getResourceDirectory().getAbsolutePath());
 
       // Write version of the Android plugin.
-      out.writeUTF(getAndroidPluginVersion());
+      metadata.writeUTF(getAndroidPluginVersion());
 
       // Extract all referenced folder configurations and multi-resource files.
       List<FolderConfiguration> folderConfigurations = new ArrayList<>();
@@ -708,89 +872,54 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
       if (folderConfigurations.size() > 0xFFFF) {
         throw new IOException("Too many folder configurations: " + folderConfigurations.size());
       }
-      out.writeShort(folderConfigurations.size());
+      metadata.writeShort(folderConfigurations.size());
       for (FolderConfiguration config : folderConfigurations) {
-        out.writeUTF(config.getQualifierString());
+        metadata.writeUTF(config.getQualifierString());
       }
 
       // Write paths of the files containing multiple resources.
       if (multiResourceFiles.size() > 0xFFFF) {
         throw new IOException("Too many multi-resource files: " + multiResourceFiles.size());
       }
-      out.writeShort(multiResourceFiles.size());
+      metadata.writeShort(multiResourceFiles.size());
       for (ResourceFile resourceFile : multiResourceFiles) {
-        out.writeUTF(resourceFile.getFile().getPath());
+        metadata.writeUTF(resourceFile.getFile().getPath());
         int folderConfigurationIndex = folderConfigurationIndexes.get(resourceFile.getFolderConfiguration());
-        out.writeShort(folderConfigurationIndex);
+        metadata.writeShort(folderConfigurationIndex);
       }
 
-      // Write resource items.
-      Set<Map.Entry<ResourceType, ListMultimap<String, ResourceItem>>> typeEntries = mapByType.entrySet();
-      int numNonEmpty = 0;
-      for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> typeEntry : typeEntries) {
-        if (!typeEntry.getValue().isEmpty()) {
-          numNonEmpty++;
+      // Separate the locale-specific resources, which are written to the locale section.
+      Map<ResourceType, ListMultimap<String, ResourceItem>> mainItems = new EnumMap<>(ResourceType.class);
+      Map<ResourceType, ListMultimap<String, ResourceItem>> localeItems = new EnumMap<>(ResourceType.class);
+      for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> typeEntry : mapByType.entrySet()) {
+        for (Map.Entry<String, ResourceItem> itemEntry : typeEntry.getValue().entries()) {
+          ResourceItem resourceItem = itemEntry.getValue();
+          Map<ResourceType, ListMultimap<String, ResourceItem>> items =
+              resourceItem.getConfiguration().getLocaleQualifier() == null ? mainItems : localeItems;
+          items.computeIfAbsent(typeEntry.getKey(), type -> LinkedListMultimap.create()).put(itemEntry.getKey(), resourceItem);
         }
       }
 
-      out.writeByte(numNonEmpty);
-      for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> typeEntry : typeEntries) {
-        ListMultimap<String, ResourceItem> multimap = typeEntry.getValue();
-        if (!multimap.isEmpty()) {
-          ResourceType resourceType = typeEntry.getKey();
-          out.writeResourceType(resourceType);
-          Map<String, Collection<ResourceItem>> resources = multimap.asMap();
-          if (resources.size() > 0xFFFF) {
-            throw new IOException("Too many resources of type " + resourceType.getName() + ": " + resources.size());
-          }
-
-          out.writeShort(resources.size());
-          for (Map.Entry<String, Collection<ResourceItem>> itemEntry : resources.entrySet()) {
-            String resourceName = itemEntry.getKey();
-            Collection<ResourceItem> resourceItems = itemEntry.getValue();
-            out.writeUTF(resourceName);
-            if (resources.size() > 0xFFFF) {
-              throw new IOException("Too many resources items: " + resourceItems.size());
-            }
-
-            out.writeShort(resourceItems.size());
-            for (ResourceItem resourceItem : resourceItems) {
-              ResourceMergerItem resourceMergerItem = (ResourceMergerItem)resourceItem;
-              out.writeNode(resourceMergerItem.getValue());
-              ResourceFile resourceFile = resourceMergerItem.getSourceFile();
-              assert resourceFile != null;
-              ResourceItemType itemType;
-              if (resourceItem.isFileBased()) {
-                itemType = ResourceItemType.FILE;
-              } else {
-                itemType = ResourceItemType.VALUE;
-              }
-              out.writeByte(itemType.ordinal());
-              if (itemType == ResourceItemType.VALUE) {
-                out.writeShort(multiResourceFileIndexes.get(resourceFile.getFile()));
-              } else {
-                int folderConfigurationIndex = folderConfigurationIndexes.get(resourceItem.getConfiguration());
-                out.writeShort(folderConfigurationIndex);
-                out.writeUTF(resourceFile.getFile().getPath());
-              }
-            }
-          }
-        }
+      // Write resource items.
+      metadata.writeByte(mainItems.size());
+      for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> typeEntry : mainItems.entrySet()) {
+        writeResourceType(metadata, typeEntry.getKey());
+        writeResourceItems(metadata, typeEntry.getKey(), typeEntry.getValue(), writer, folderConfigurationIndexes, multiResourceFileIndexes);
       }
 
       // Write public resources.
-      numNonEmpty = 0;
+      int numNonEmpty = 0;
       for (Map.Entry<ResourceType, Set<ResourceItem>> typeEntry : myPublicResources.entrySet()) {
         if (!typeEntry.getValue().isEmpty()) {
           numNonEmpty++;
         }
       }
-      out.writeByte(numNonEmpty);
+      metadata.writeByte(numNonEmpty);
       for (Map.Entry<ResourceType, Set<ResourceItem>> entry : myPublicResources.entrySet()) {
         Set<ResourceItem> resourceItems = entry.getValue();
         if (!resourceItems.isEmpty()) {
           ResourceType resourceType = entry.getKey();
-          out.writeResourceType(resourceType);
+          writeResourceType(metadata, resourceType);
           Set<String> uniqueNames = newLinkedHashSetWithExpectedSize(resourceItems.size());
           for (ResourceItem item : resourceItems) {
             uniqueNames.add(item.getName());
@@ -798,12 +927,43 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
           if (uniqueNames.size() > 0xFFFF) {
             throw new IOException("Too many public resources of type " + resourceType.getName() + ": " + uniqueNames.size());
           }
-          out.writeShort(uniqueNames.size());
+          metadata.writeShort(uniqueNames.size());
           for (String name : uniqueNames) {
-            out.writeUTF(name);
+            metadata.writeUTF(name);
           }
         }
       }
+
+      // Write locale-specific resource items.
+      metadata.writeByte(localeItems.size());
+      for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> typeEntry : localeItems.entrySet()) {
+        int offset = locale.size();
+        writeResourceItems(locale, typeEntry.getKey(), typeEntry.getValue(), writer, folderConfigurationIndexes, multiResourceFileIndexes);
+        writeResourceType(metadata, typeEntry.getKey());
+        metadata.writeInt(offset);
+        metadata.writeInt(locale.size() - offset);
+      }
+
+      metadata.flush();
+      locale.flush();
+      ByteArrayOutputStream stringBytes = new ByteArrayOutputStream();
+      writer.writeStrings(new DataOutputStream(stringBytes));
+
+      for (int i = 0; i < CACHE_FILE_HEADER.length(); i++) {
+        out.writeByte(CACHE_FILE_HEADER.charAt(i));
+      }
+      out.writeByte(' ');
+      for (int i = 0; i < CACHE_FILE_FORMAT_VERSION.length(); i++) {
+        out.writeByte(CACHE_FILE_FORMAT_VERSION.charAt(i));
+      }
+      out.writeByte(' ');
+      out.writeInt(metadataBytes.size());
+      out.writeInt(localeBytes.size());
+      out.writeInt(stringBytes.size());
+      metadataBytes.writeTo(out);
+      localeBytes.writeTo(out);
+      stringBytes.writeTo(out);
+      writer.writeNodes(out);
     }
     catch (Throwable e) {
       LOG.error("Unable to create cache file " + tempFile.getAbsolutePath(), e);
@@ -823,11 +983,83 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     }
   }
 
+  /**
+   * Writes a resource group entry, see {@link #createPersistentCache()}.
+   */
+  private static void writeResourceItems(@NotNull DataOutputStream out,
+                                         @NotNull ResourceType resourceType,
+                                         @NotNull ListMultimap<String, ResourceItem> multimap,
+                                         @NotNull CacheWriter writer,
+                                         @NotNull ObjectIntHashMap<FolderConfiguration> folderConfigurationIndexes,
+                                         @NotNull ObjectIntHashMap<File> multiResourceFileIndexes) throws IOException {
+    Map<String, Collection<ResourceItem>> resources = multimap.asMap();
+    if (resources.size() > 0xFFFF) {
+      throw new IOException("Too many resources of type " + resourceType.getName() + ": " + resources.size());
+    }
+
+    out.writeShort(resources.size());
+    for (Map.Entry<String, Collection<ResourceItem>> itemEntry : resources.entrySet()) {
+      String resourceName = itemEntry.getKey();
+      Collection<ResourceItem> resourceItems = itemEntry.getValue();
+      out.writeUTF(resourceName);
+      if (resourceItems.size() > 0xFFFF) {
+        throw new IOException("Too many resources items: " + resourceItems.size());
+      }
+
+      out.writeShort(resourceItems.size());
+      for (ResourceItem resourceItem : resourceItems) {
+        ResourceMergerItem resourceMergerItem = (ResourceMergerItem)resourceItem;
+        out.writeInt(writer.writeNode(resourceMergerItem.getValue()));
+        ResourceFile resourceFile = resourceMergerItem.getSourceFile();
+        assert resourceFile != null;
+        ResourceItemType itemType;
+        if (resourceItem.isFileBased()) {
+          itemType = ResourceItemType.FILE;
+        } else {
+          itemType = ResourceItemType.VALUE;
+        }
+        out.writeByte(itemType.ordinal());
+        if (itemType == ResourceItemType.VALUE) {
+          out.writeShort(multiResourceFileIndexes.get(resourceFile.getFile()));
+        } else {
+          int folderConfigurationIndex = folderConfigurationIndexes.get(resourceItem.getConfiguration());
+          out.writeShort(folderConfigurationIndex);
+          out.writeUTF(resourceFile.getFile().getPath());
+        }
+      }
+    }
+  }
+
+  private static void writeResourceType(@NotNull DataOutputStream out, @NotNull ResourceType type) throws IOException {
+    out.writeByte(type.ordinal());
+  }
+
+  @NotNull
+  private static ResourceType readResourceType(@NotNull DataInputStream in) throws IOException {
+    int ordinal = in.readUnsignedByte();
+    try {
+      return ResourceType.values()[ordinal];
+    } catch (ArrayIndexOutOfBoundsException e) {
+      throw new StreamCorruptedException("Invalid resource type reference: " + ordinal);
+    }
+  }
+
+  /**
+   * Returns all resources of the repository by type, including the locale-specific ones that haven't been loaded yet.
+   */
   @NotNull
   private Map<ResourceType, ListMultimap<String, ResourceItem>> getMapByType() {
     return getFullTable().row(ANDROID_NAMESPACE);
   }
 
+  /**
+   * Returns the resources of the repository by type, without loading the locale-specific ones.
+   */
+  @NotNull
+  private Map<ResourceType, ListMultimap<String, ResourceItem>> getLoadedMapByType() {
+    return myFullTable.row(ANDROID_NAMESPACE);
+  }
+
   @NotNull
   private File getCacheFile() {
     return getCacheFile(getResourceDirectory(), myWithLocaleResources);
@@ -849,153 +1081,304 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     return exception;
   }
 
-  private static class CacheOutputStream extends ObjectOutputStream {
-    CacheOutputStream(@NotNull File file) throws IOException {
-      super(new BufferedOutputStream(new FileOutputStream(file)));
-    }
-
-    @Override
-    protected void writeStreamHeader() throws IOException {
-      for (int i = 0; i < CACHE_FILE_HEADER.length(); i++) {
-        writeByte(CACHE_FILE_HEADER.charAt(i));
+  /**
+   * Encodes the strings and the XML nodes of the persistent cache, see {@link #createPersistentCache()}.
+   * Strings are stored only once, since the same tag and attribute names are used by most resources.
+   */
+  private static class CacheWriter {
+    private final List<String> myStrings = new ArrayList<>();
+    private final ObjectIntHashMap<String> myStringIndexes = new ObjectIntHashMap<>();
+    private final ByteArrayOutputStream myNodeBytes = new ByteArrayOutputStream();
+    private final DataOutputStream myNodes = new DataOutputStream(myNodeBytes);
+
+    /**
+     * Writes the node to the node section and returns its offset, or -1 if the node is null.
+     */
+    int writeNode(@Nullable Node node) throws IOException {
+      if (node == null) {
+        return -1;
       }
-      writeByte(' ');
-      for (int i = 0; i < CACHE_FILE_FORMAT_VERSION.length(); i++) {
-        writeByte(CACHE_FILE_FORMAT_VERSION.charAt(i));
+      int offset = myNodes.size();
+      synchronized (node.getOwnerDocument()) {
+        writeNodeEntry(node);
       }
-      writeByte(' ');
-    }
-
-    void writeResourceType(@NotNull ResourceType type) throws IOException {
-      writeByte(type.ordinal());
-    }
-
-    void writeAttribute(@NotNull Attr attribute) throws IOException {
-      writeUTF(attribute.getName());
-      writeUTF(attribute.getValue());
-    }
-
-    void writeNode(@Nullable Node node) throws IOException {
-      if (node == null) {
-        writeByte(0);
-      } else {
-        synchronized (node.getOwnerDocument()) {
-          short nodeType = node.getNodeType();
-          writeByte(nodeType);
-          if (nodeType == Node.ELEMENT_NODE) {
-            writeUTF(node.getNodeName());
-            NamedNodeMap attributes = node.getAttributes();
-            int numAttributes = attributes.getLength();
-            if (numAttributes > 0xFF) {
-              throw new IOException("XML node " + node.getNodeName() + " has too many attributes: " + numAttributes);
-            }
-            writeByte(numAttributes);
-            for (int i = 0; i < numAttributes; i++) {
-              writeAttribute((Attr)attributes.item(i));
-            }
-            NodeList children = node.getChildNodes();
-            int numChildren = children.getLength();
-            if (numChildren > 0xFFFF) {
-              throw new IOException("XML node " + node.getNodeName() + " has too many children: " + numChildren);
-            }
-            int numSignificantChildren = numChildren;
-            for (int i = 0; i < numChildren; i++) {
-              if (children.item(i).getNodeType() == Node.COMMENT_NODE) {
-                numSignificantChildren--;
-              }
-            }
-            writeShort(numSignificantChildren);
-            for (int i = 0; i < numChildren; i++) {
-              Node child = children.item(i);
-              if (child.getNodeType() != Node.COMMENT_NODE) {
-                writeNode(child);
-              }
-            }
-          }
-          else if (nodeType == Node.TEXT_NODE) {
-            writeUTF(node.getNodeValue());
+      return offset;
+    }
+
+    private void writeNodeEntry(@NotNull Node node) throws IOException {
+      short nodeType = node.getNodeType();
+      myNodes.writeByte(nodeType);
+      if (nodeType == Node.ELEMENT_NODE) {
+        myNodes.writeInt(getStringIndex(node.getNodeName()));
+        NamedNodeMap attributes = node.getAttributes();
+        int numAttributes = attributes.getLength();
+        if (numAttributes > 0xFF) {
+          throw new IOException("XML node " + node.getNodeName() + " has too many attributes: " + numAttributes);
+        }
+        myNodes.writeByte(numAttributes);
+        for (int i = 0; i < numAttributes; i++) {
+          Attr attribute = (Attr)attributes.item(i);
+          myNodes.writeInt(getStringIndex(attribute.getName()));
+          myNodes.writeInt(getStringIndex(attribute.getValue()));
+        }
+        NodeList children = node.getChildNodes();
+        int numChildren = children.getLength();
+        if (numChildren > 0xFFFF) {
+          throw new IOException("XML node " + node.getNodeName() + " has too many children: " + numChildren);
+        }
+        int numSignificantChildren = numChildren;
+        for (int i = 0; i < numChildren; i++) {
+          if (children.item(i).getNodeType() == Node.COMMENT_NODE) {
+            numSignificantChildren--;
           }
-          else {
-            throw new RuntimeException("Unsupported XML node type: " + nodeType);
+        }
+        myNodes.writeShort(numSignificantChildren);
+        for (int i = 0; i < numChildren; i++) {
+          Node child = children.item(i);
+          if (child.getNodeType() != Node.COMMENT_NODE) {
+            writeNodeEntry(child);
           }
         }
       }
+      else if (nodeType == Node.TEXT_NODE) {
+        myNodes.writeInt(getStringIndex(node.getNodeValue()));
+      }
+      else {
+        throw new RuntimeException("Unsupported XML node type: " + nodeType);
+      }
     }
-  }
 
-  private static class CacheInputStream extends ObjectInputStream {
-    CacheInputStream(@NotNull File file) throws IOException {
-      super(new BufferedInputStream(new FileInputStream(file)));
+    private int getStringIndex(@NotNull String string) {
+      if (myStringIndexes.containsKey(string)) {
+        return myStringIndexes.get(string);
+      }
+      int index = myStrings.size();
+      myStrings.add(string);
+      myStringIndexes.put(string, index);
+      return index;
+    }
+
+    void writeStrings(@NotNull DataOutputStream out) throws IOException {
+      List<byte[]> encodedStrings = new ArrayList<>(myStrings.size());
+      out.writeInt(myStrings.size());
+      int offset = 0;
+      for (String string : myStrings) {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        encodedStrings.add(bytes);
+        out.writeInt(offset);
+        offset += 4 + bytes.length;
+      }
+      for (byte[] bytes : encodedStrings) {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+      }
+      out.flush();
     }
 
-    @Override
-    protected void readStreamHeader() throws IOException {
+    void writeNodes(@NotNull OutputStream out) throws IOException {
+      myNodes.flush();
+      myNodeBytes.writeTo(out);
+    }
+  }
+
+  /**
+   * Memory mapped persistent cache file, see {@link #createPersistentCache()}. XML nodes and strings are decoded
+   * from the mapped file on demand, so the parts of the file that are never used are never read.
+   */
+  private static class CacheFile {
+    @NotNull private final ByteBuffer myMetadata;
+    @NotNull private final ByteBuffer myLocaleSection;
+    @NotNull private final ByteBuffer myStringSection;
+    @NotNull private final ByteBuffer myNodeSection;
+    private final int myStringDataStart;
+    /** Decoded strings. Races between threads decoding the same string are benign. */
+    @NotNull private final String[] myStrings;
+
+    private CacheFile(@NotNull ByteBuffer buffer) throws IOException {
       for (int i = 0; i < CACHE_FILE_HEADER.length(); i++) {
-        if (readUnsignedByte() != CACHE_FILE_HEADER.charAt(i)) {
+        if (buffer.get() != CACHE_FILE_HEADER.charAt(i)) {
           throw new StreamCorruptedException();
         }
       }
-      if (readUnsignedByte() != ' ') {
+      if (buffer.get() != ' ') {
         throw new StreamCorruptedException();
       }
       for (int i = 0; i < CACHE_FILE_FORMAT_VERSION.length(); i++) {
-        if (readUnsignedByte() != CACHE_FILE_FORMAT_VERSION.charAt(i)) {
+        if (buffer.get() != CACHE_FILE_FORMAT_VERSION.charAt(i)) {
           throw new VersionMismatchException();
         }
       }
-      if (readUnsignedByte() != ' ') {
+      if (buffer.get() != ' ') {
         throw new VersionMismatchException();
       }
+      int metadataLength = buffer.getInt();
+      int localeLength = buffer.getInt();
+      int stringsLength = buffer.getInt();
+      myMetadata = slice(buffer, metadataLength);
+      myLocaleSection = slice(buffer, localeLength);
+      myStringSection = slice(buffer, stringsLength);
+      myNodeSection = slice(buffer, buffer.remaining());
+      int numStrings = myStringSection.getInt(0);
+      myStringDataStart = 4 + numStrings * 4;
+      myStrings = new String[numStrings];
     }
 
     @NotNull
-    ResourceType readResourceType() throws IOException {
-      int ordinal = readUnsignedByte();
-      try {
-        return ResourceType.values()[ordinal];
-      } catch (ArrayIndexOutOfBoundsException e) {
-        throw new StreamCorruptedException("Invalid resource type reference: " + ordinal);
+    static CacheFile open(@NotNull File file) throws IOException {
+      try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+        // The mapping stays valid after the channel is closed.
+        return new CacheFile(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
       }
+      catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+        throw new StreamCorruptedException("Truncated cache file");
+      }
+    }
+
+    @NotNull
+    private static ByteBuffer slice(@NotNull ByteBuffer buffer, int length) {
+      ByteBuffer slice = buffer.slice();
+      slice.limit(length);
+      buffer.position(buffer.position() + length);
+      return slice;
+    }
+
+    @NotNull
+    DataInputStream getMetadata() {
+      return new DataInputStream(new ByteBufferInputStream(myMetadata));
+    }
+
+    @NotNull
+    ByteBuffer getLocaleSection(int offset, int length) throws IOException {
+      if (offset < 0 || length < 0 || offset + length > myLocaleSection.limit()) {
+        throw new StreamCorruptedException("Invalid locale section: " + offset + ", " + length);
+      }
+      ByteBuffer section = myLocaleSection.duplicate();
+      section.position(offset);
+      section.limit(offset + length);
+      return section.slice();
     }
 
     @NotNull
-    Attr readAttribute() throws IOException {
-      String name = readUTF();
-      String value = readUTF();
-      return new AttrImpl(name, value);
+    String getString(int index) {
+      String string = myStrings[index];
+      if (string == null) {
+        int position = myStringDataStart + myStringSection.getInt(4 + index * 4);
+        byte[] bytes = new byte[myStringSection.getInt(position)];
+        ByteBuffer buffer = myStringSection.duplicate();
+        buffer.position(position + 4);
+        buffer.get(bytes);
+        string = new String(bytes, StandardCharsets.UTF_8);
+        myStrings[index] = string;
+      }
+      return string;
     }
 
+    /**
+     * Returns the node at the given offset of the node section, or null if the offset is negative. The attributes and
+     * children of elements are decoded when they are first accessed.
+     */
     @Nullable
-    Node readNode() throws IOException {
-      int nodeType = readUnsignedByte();
+    Node getNode(int offset) throws IOException {
+      if (offset < 0) {
+        return null;
+      }
+      int nodeType = myNodeSection.get(offset);
       switch (nodeType) {
-        case 0:
-          return null;
-
         case Node.ELEMENT_NODE:
-          String name = readUTF();
-          int numAttributes = readUnsignedByte();
-          ArrayList<Node> attributes = new ArrayList<>(numAttributes);
-          for (int i = 0; i < numAttributes; i++) {
-            attributes.add(readAttribute());
-          }
-          NamedNodeMap attributeMap = new NamedNodeMapImpl(attributes);
-          int numChildren = readUnsignedShort();
-          List<Node> children = numChildren == 0 ? Collections.emptyList() : new ArrayList<>(numChildren);
-          for (int i = 0; i < numChildren; i++) {
-            Node child = readNode();
-            children.add(child);
-          }
-          return new ElementImpl(name, attributeMap, children);
+          return new ElementImpl(getString(myNodeSection.getInt(offset + 1)), this, offset);
 
         case Node.TEXT_NODE:
-          String text = readUTF();
-          return new TextImpl(text);
+          return new TextImpl(getString(myNodeSection.getInt(offset + 1)));
 
         default:
-          throw new RuntimeException("Unexpected node type: " + nodeType);
+          throw new StreamCorruptedException("Unexpected node type: " + nodeType);
       }
     }
+
+    /**
+     * Decodes the attributes and children of the element at the given offset of the node section.
+     */
+    @NotNull
+    ElementContent readElementContent(int offset) {
+      return readElementContent(new int[] {offset + 5});
+    }
+
+    /**
+     * Decodes the attributes and children of an element starting at {@code position[0]}, and advances the position to
+     * the end of the element.
+     */
+    @NotNull
+    private ElementContent readElementContent(@NotNull int[] position) {
+      int numAttributes = myNodeSection.get(position[0]) & 0xFF;
+      position[0]++;
+      List<Node> attributes = new ArrayList<>(numAttributes);
+      for (int i = 0; i < numAttributes; i++) {
+        String name = getString(myNodeSection.getInt(position[0]));
+        String value = getString(myNodeSection.getInt(position[0] + 4));
+        position[0] += 8;
+        attributes.add(new AttrImpl(name, value));
+      }
+      int numChildren = myNodeSection.getShort(position[0]) & 0xFFFF;
+      position[0] += 2;
+      List<Node> children = numChildren == 0 ? Collections.emptyList() : new ArrayList<>(numChildren);
+      for (int i = 0; i < numChildren; i++) {
+        int nodeType = myNodeSection.get(position[0]);
+        String string = getString(myNodeSection.getInt(position[0] + 1));
+        position[0] += 5;
+        if (nodeType == Node.ELEMENT_NODE) {
+          ElementContent content = readElementContent(position);
+          children.add(new ElementImpl(string, content.myAttributeMap, content.myChildren));
+        }
+        else if (nodeType == Node.TEXT_NODE) {
+          children.add(new TextImpl(string));
+        }
+        else {
+          throw new IllegalStateException("Unexpected node type: " + nodeType);
+        }
+      }
+      return new ElementContent(new NamedNodeMapImpl(attributes), children);
+    }
+  }
+
+  /**
+   * State of the persistent cache needed to load the locale-specific resources after the repository was loaded.
+   */
+  private static class CacheState {
+    @NotNull final CacheFile myCache;
+    @NotNull final FolderConfiguration[] myFolderConfigurations;
+    @NotNull final ResourceFile[] myResourceFiles;
+    /** Sections of the locale-specific resources that haven't been loaded yet. */
+    @NotNull final Map<ResourceType, ByteBuffer> myLocaleSections = new EnumMap<>(ResourceType.class);
+    @NotNull final Map<ResourceType, Set<String>> myPublicNames = new EnumMap<>(ResourceType.class);
+
+    CacheState(@NotNull CacheFile cache, @NotNull FolderConfiguration[] folderConfigurations, @NotNull ResourceFile[] resourceFiles) {
+      myCache = cache;
+      myFolderConfigurations = folderConfigurations;
+      myResourceFiles = resourceFiles;
+    }
+  }
+
+  private static class ByteBufferInputStream extends InputStream {
+    @NotNull private final ByteBuffer myBuffer;
+
+    ByteBufferInputStream(@NotNull ByteBuffer buffer) {
+      myBuffer = buffer.duplicate();
+    }
+
+    @Override
+    public int read() {
+      return myBuffer.hasRemaining() ? myBuffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(@NotNull byte[] bytes, int offset, int length) {
+      if (!myBuffer.hasRemaining()) {
+        return -1;
+      }
+      int n = Math.min(length, myBuffer.remaining());
+      myBuffer.get(bytes, offset, n);
+      return n;
+    }
   }
 
   private static class VersionMismatchException extends IOException {
@@ -1042,14 +1425,51 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
     }
   }
 
+  /**
+   * Attributes and children of an {@link ElementImpl}.
+   */
+  private static final class ElementContent {
+    @NotNull final NamedNodeMap myAttributeMap;
+    @NotNull final List<Node> myChildren;
+
+    ElementContent(@NotNull NamedNodeMap attributeMap, @NotNull List<Node> children) {
+      myAttributeMap = attributeMap;
+      myChildren = children;
+    }
+  }
+
   private static final class ElementImpl extends NamedNodeImpl implements Element, NodeList {
-    @NotNull private final NamedNodeMap myAttributeMap;
-    @NotNull private final List<Node> myChildren;
+    /** The cache file the content of the element is decoded from, or null if the content has already been decoded. */
+    @Nullable private volatile CacheFile myCache;
+    private final int myOffset;
+    @Nullable private volatile ElementContent myContent;
 
     private ElementImpl(@NotNull String name, @NotNull NamedNodeMap attributeMap, @NotNull List<Node> children) {
       super(name);
-      myAttributeMap = attributeMap;
-      myChildren = children;
+      myContent = new ElementContent(attributeMap, children);
+      myOffset = -1;
+    }
+
+    /**
+     * Creates an element whose attributes and children are decoded from the given cache file when they are first accessed.
+     */
+    private ElementImpl(@NotNull String name, @NotNull CacheFile cache, int offset) {
+      super(name);
+      myCache = cache;
+      myOffset = offset;
+    }
+
+    @NotNull
+    private ElementContent getContent() {
+      ElementContent content = myContent;
+      if (content == null) {
+        CacheFile cache = myCache;
+        assert cache != null;
+        content = cache.readElementContent(myOffset);
+        myContent = content;
+        myCache = null;
+      }
+      return content;
     }
 
     @Override
@@ -1064,37 +1484,37 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
 
     @Override
     public NamedNodeMap getAttributes() {
-      return myAttributeMap;
+      return getContent().myAttributeMap;
     }
 
     @Override
     public String getAttribute(String name) {
-      return myAttributeMap.getNamedItem(name).getNodeValue();
+      return getContent().myAttributeMap.getNamedItem(name).getNodeValue();
     }
 
     @Override
     public Attr getAttributeNode(String name) {
-      return (Attr)myAttributeMap.getNamedItem(name);
+      return (Attr)getContent().myAttributeMap.getNamedItem(name);
     }
 
     @Override
     public String getAttributeNS(String namespaceUri, String localName) throws DOMException {
-      return myAttributeMap.getNamedItemNS(namespaceUri, localName).getNodeValue();
+      return getContent().myAttributeMap.getNamedItemNS(namespaceUri, localName).getNodeValue();
     }
 
     @Override
     public Attr getAttributeNodeNS(String namespaceUri, String localName) throws DOMException {
-      return (Attr)myAttributeMap.getNamedItemNS(namespaceUri, localName);
+      return (Attr)getContent().myAttributeMap.getNamedItemNS(namespaceUri, localName);
     }
 
     @Override
     public boolean hasAttribute(String name) {
-      return myAttributeMap.getNamedItem(name) != null;
+      return getContent().myAttributeMap.getNamedItem(name) != null;
     }
 
     @Override
     public boolean hasAttributeNS(String namespaceUri, String localName) throws DOMException {
-      return myAttributeMap.getNamedItemNS(namespaceUri, localName) != null;
+      return getContent().myAttributeMap.getNamedItemNS(namespaceUri, localName) != null;
     }
 
     @Override
@@ -1169,12 +1589,13 @@ public final class FrameworkResourceRepository extends AarSourceResourceReposito
 
     @Override
     public Node item(int index) {
-      return index < myChildren.size() ? myChildren.get(index) : null;
+      List<Node> children = getContent().myChildren;
+      return index < children.size() ? children.get(index) : null;
     }
 
     @Override
     public int getLength() {
-      return myChildren.size();
+      return getContent().myChildren.size();
     }
   }
 
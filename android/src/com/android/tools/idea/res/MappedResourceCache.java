@@ -0,0 +1,489 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.resources.ResourceType;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-only view of a resource cache file, which is memory mapped so that opening it doesn't depend on the number of resources.
+ * <p>
+ * The file consists of:
+ * <ul>
+ *   <li>a header with the number of strings, files and items,</li>
+ *   <li>a string table: the offsets of the strings, followed by their length-prefixed UTF-8 bytes,</li>
+ *   <li>fixed-size file records: path relative to the resource directory, first item, number of items, timestamp and length,</li>
+ *   <li>fixed-size item records, grouped by file in their original order: name, file, value and type,</li>
+ *   <li>a name index: for each resource type, the items of the type sorted by name.</li>
+ * </ul>
+ * Strings are only decoded when they are requested, so an item costs nothing until it is used.
+ * <p>
+ * Files are written by {@link Writer}. The format has its own version, on top of the version of the cache directory.
+ * <p>
+ * A file can't be replaced while it's mapped on Windows, and mapped files can't be unmapped explicitly. So caches that are rewritten
+ * while being read use a new file for each version, see {@link Writer#writeGeneration(File, String)} and {@link #openLatest}.
+ */
+public final class MappedResourceCache {
+  private static final int MAGIC = 0x52455343; // "RESC"
+  private static final int FORMAT_VERSION = 2;
+  private static final int HEADER_SIZE = 6 * 4;
+  private static final int FILE_RECORD_SIZE = 3 * 4 + 2 * 8;
+  private static final int ITEM_RECORD_SIZE = 4 * 4;
+  private static final int TYPE_RECORD_SIZE = 3 * 4;
+  private static final int NO_VALUE = -1;
+  private static final String EXTENSION = ".bin";
+
+  /** Flag of the items whose value is the file that defines them, e.g. layouts or drawables. */
+  public static final int FLAG_FILE_BASED = 1;
+
+  @NotNull private final ByteBuffer myBuffer;
+  private final int myStringCount;
+  private final int myFileCount;
+  private final int myItemCount;
+  private final int myStringOffsetsPosition;
+  private final int myStringDataPosition;
+  private final int myFileTablePosition;
+  private final int myItemTablePosition;
+  private final int myNameIndexPosition;
+  /** Items of each type, sorted by name, as positions in the name index. */
+  @NotNull private final Map<ResourceType, int[]> myNameIndexRanges = new EnumMap<>(ResourceType.class);
+  @NotNull private final ResourceType[] myTypes;
+
+  private MappedResourceCache(@NotNull ByteBuffer buffer) throws IOException {
+    myBuffer = buffer;
+    try {
+      if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) {
+        throw new StreamCorruptedException("Not a resource cache file");
+      }
+      myStringCount = buffer.getInt(8);
+      myFileCount = buffer.getInt(12);
+      myItemCount = buffer.getInt(16);
+      int typeCount = buffer.getInt(20);
+      myStringOffsetsPosition = HEADER_SIZE;
+      myStringDataPosition = myStringOffsetsPosition + myStringCount * 4;
+      int stringDataSize = myStringCount == 0 ? 0 : getStringEnd(myStringCount - 1);
+      myFileTablePosition = myStringDataPosition + stringDataSize;
+      myItemTablePosition = myFileTablePosition + myFileCount * FILE_RECORD_SIZE;
+      int typeTablePosition = myItemTablePosition + myItemCount * ITEM_RECORD_SIZE;
+      myNameIndexPosition = typeTablePosition + typeCount * TYPE_RECORD_SIZE;
+      if (myStringCount < 0 || myFileCount < 0 || myItemCount < 0 || typeCount < 0 ||
+          myNameIndexPosition + myItemCount * 4 != buffer.limit()) {
+        throw new StreamCorruptedException("Invalid resource cache file size");
+      }
+
+      // Types are stored by constant name, so that the file doesn't depend on the order of the ResourceType constants. Names returned by
+      // ResourceType.getName() don't all round-trip through ResourceType.fromXmlValue, e.g. "styleable".
+      myTypes = new ResourceType[typeCount];
+      for (int i = 0; i < typeCount; i++) {
+        int position = typeTablePosition + i * TYPE_RECORD_SIZE;
+        ResourceType type;
+        try {
+          type = ResourceType.valueOf(getString(buffer.getInt(position)));
+        }
+        catch (IllegalArgumentException e) {
+          throw new StreamCorruptedException("Unknown resource type");
+        }
+        myTypes[i] = type;
+        myNameIndexRanges.put(type, new int[]{buffer.getInt(position + 4), buffer.getInt(position + 8)});
+      }
+    }
+    catch (IndexOutOfBoundsException | BufferUnderflowException e) {
+      throw new StreamCorruptedException("Truncated resource cache file");
+    }
+  }
+
+  /**
+   * Maps the given cache file, or returns null if it doesn't exist or is not a valid cache file.
+   */
+  @Nullable
+  public static MappedResourceCache open(@NotNull File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      // The mapping stays valid after the channel is closed.
+      MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      return new MappedResourceCache(buffer);
+    }
+    catch (IOException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Maps the most recent cache file of the given base name written by {@link Writer#writeGeneration(File, String)} to the directory, or
+   * returns null if there is no valid one.
+   */
+  @Nullable
+  public static MappedResourceCache openLatest(@NotNull File directory, @NotNull String baseName) {
+    long[] generations = getGenerations(directory, baseName);
+    for (int i = generations.length - 1; i >= 0; i--) {
+      MappedResourceCache cache = open(getGenerationFile(directory, baseName, generations[i]));
+      if (cache != null) {
+        return cache;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the generations of the cache files of the given base name in the directory, in increasing order.
+   */
+  @NotNull
+  private static long[] getGenerations(@NotNull File directory, @NotNull String baseName) {
+    String[] names = directory.list();
+    if (names == null) {
+      return new long[0];
+    }
+    String prefix = baseName + '.';
+    long[] generations = new long[names.length];
+    int count = 0;
+    for (String name : names) {
+      if (name.startsWith(prefix) && name.endsWith(EXTENSION)) {
+        try {
+          generations[count] = Long.parseLong(name.substring(prefix.length(), name.length() - EXTENSION.length()));
+          count++;
+        }
+        catch (NumberFormatException ignored) {
+          // Not a cache file.
+        }
+      }
+    }
+    generations = Arrays.copyOf(generations, count);
+    Arrays.sort(generations);
+    return generations;
+  }
+
+  @NotNull
+  private static File getGenerationFile(@NotNull File directory, @NotNull String baseName, long generation) {
+    return new File(directory, baseName + '.' + generation + EXTENSION);
+  }
+
+  public int getFileCount() {
+    return myFileCount;
+  }
+
+  public int getItemCount() {
+    return myItemCount;
+  }
+
+  /** Returns the path of the file relative to the resource directory, using '/' as separator. */
+  @NotNull
+  public String getFilePath(int file) {
+    return getString(myBuffer.getInt(getFilePosition(file)));
+  }
+
+  public int getFirstItem(int file) {
+    return myBuffer.getInt(getFilePosition(file) + 4);
+  }
+
+  public int getItemCount(int file) {
+    return myBuffer.getInt(getFilePosition(file) + 8);
+  }
+
+  public long getFileTimestamp(int file) {
+    return myBuffer.getLong(getFilePosition(file) + 12);
+  }
+
+  public long getFileLength(int file) {
+    return myBuffer.getLong(getFilePosition(file) + 20);
+  }
+
+  @NotNull
+  public String getItemName(int item) {
+    return getString(myBuffer.getInt(getItemPosition(item)));
+  }
+
+  public int getItemFile(int item) {
+    return myBuffer.getInt(getItemPosition(item) + 4);
+  }
+
+  /** Returns the XML element that defines the value of the item, or null if the item doesn't have one. */
+  @Nullable
+  public String getItemValue(int item) {
+    int value = myBuffer.getInt(getItemPosition(item) + 8);
+    return value == NO_VALUE ? null : getString(value);
+  }
+
+  @NotNull
+  public ResourceType getItemType(int item) {
+    return myTypes[myBuffer.getShort(getItemPosition(item) + 12)];
+  }
+
+  public int getItemFlags(int item) {
+    return myBuffer.getShort(getItemPosition(item) + 14);
+  }
+
+  /**
+   * Returns the items of the given type and name, found with a binary search of the name index.
+   */
+  @NotNull
+  public int[] findItems(@NotNull ResourceType type, @NotNull String name) {
+    int[] range = myNameIndexRanges.get(type);
+    if (range == null) {
+      return new int[0];
+    }
+    int low = range[0];
+    int high = range[0] + range[1] - 1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      int comparison = getItemName(getIndexedItem(middle)).compareTo(name);
+      if (comparison < 0) {
+        low = middle + 1;
+      }
+      else if (comparison > 0) {
+        high = middle - 1;
+      }
+      else {
+        // Items with the same name are next to each other.
+        int first = middle;
+        while (first > range[0] && getItemName(getIndexedItem(first - 1)).equals(name)) {
+          first--;
+        }
+        int last = middle;
+        while (last < range[0] + range[1] - 1 && getItemName(getIndexedItem(last + 1)).equals(name)) {
+          last++;
+        }
+        int[] items = new int[last - first + 1];
+        for (int i = 0; i < items.length; i++) {
+          items[i] = getIndexedItem(first + i);
+        }
+        Arrays.sort(items);
+        return items;
+      }
+    }
+    return new int[0];
+  }
+
+  /** Returns the number of items of the given type. */
+  public int getItemCount(@NotNull ResourceType type) {
+    int[] range = myNameIndexRanges.get(type);
+    return range == null ? 0 : range[1];
+  }
+
+  private int getIndexedItem(int position) {
+    return myBuffer.getInt(myNameIndexPosition + position * 4);
+  }
+
+  private int getFilePosition(int file) {
+    return myFileTablePosition + file * FILE_RECORD_SIZE;
+  }
+
+  private int getItemPosition(int item) {
+    return myItemTablePosition + item * ITEM_RECORD_SIZE;
+  }
+
+  private int getStringEnd(int index) {
+    int start = myBuffer.getInt(myStringOffsetsPosition + index * 4);
+    return start + 4 + myBuffer.getInt(myStringDataPosition + start);
+  }
+
+  @NotNull
+  private String getString(int index) {
+    int position = myStringDataPosition + myBuffer.getInt(myStringOffsetsPosition + index * 4);
+    byte[] bytes = new byte[myBuffer.getInt(position)];
+    ByteBuffer buffer = myBuffer.duplicate();
+    buffer.position(position + 4);
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Collects the files and items of a resource directory and writes them in the format read by {@link MappedResourceCache}.
+   * Files have to be added with all their items before the next one.
+   */
+  public static final class Writer {
+    private final List<String> myStrings = new ArrayList<>();
+    private final TObjectIntHashMap<String> myStringIndices = new TObjectIntHashMap<>();
+    private final List<FileRecord> myFiles = new ArrayList<>();
+    private final List<ItemRecord> myItems = new ArrayList<>();
+
+    public void addFile(@NotNull String relativePath, long timestamp, long length) {
+      myFiles.add(new FileRecord(addString(relativePath), myItems.size(), timestamp, length));
+    }
+
+    /**
+     * Adds an item of the last added file.
+     *
+     * @param value the XML element that defines the value of the item, if any
+     */
+    public void addItem(@NotNull ResourceType type, @NotNull String name, @Nullable String value, int flags) {
+      assert !myFiles.isEmpty();
+      FileRecord file = myFiles.get(myFiles.size() - 1);
+      file.myItemCount++;
+      myItems.add(new ItemRecord(type, addString(name), name, myFiles.size() - 1, value == null ? NO_VALUE : addString(value), flags));
+    }
+
+    /**
+     * Writes the cache to a new file of the directory, with a generation number higher than the ones of the existing files of the given
+     * base name, and then deletes these files. The files that can't be deleted because they are still mapped are deleted by later calls.
+     *
+     * @return the written file, which is the one opened by {@link MappedResourceCache#openLatest(File, String)}
+     */
+    @NotNull
+    public File writeGeneration(@NotNull File directory, @NotNull String baseName) throws IOException {
+      long[] generations = getGenerations(directory, baseName);
+      long generation = generations.length == 0 ? 0 : generations[generations.length - 1] + 1;
+      File file = getGenerationFile(directory, baseName, generation);
+      write(file);
+      for (long previous : generations) {
+        FileUtil.delete(getGenerationFile(directory, baseName, previous));
+      }
+      return file;
+    }
+
+    /**
+     * Writes the cache to a temporary file, then moves it to the given file, so that readers never see a partially written file. The
+     * given file must not be mapped, see {@link #writeGeneration(File, String)}.
+     */
+    public void write(@NotNull File file) throws IOException {
+      List<ResourceType> types = new ArrayList<>();
+      Map<ResourceType, List<ItemRecord>> itemsByType = new EnumMap<>(ResourceType.class);
+      for (ItemRecord item : myItems) {
+        itemsByType.computeIfAbsent(item.myType, type -> new ArrayList<>()).add(item);
+      }
+      int[] typeNames = new int[itemsByType.size()];
+      for (ResourceType type : itemsByType.keySet()) {
+        typeNames[types.size()] = addString(type.name());
+        types.add(type);
+      }
+
+      File tempFile = FileUtil.createTempFile(file.getParentFile(), file.getName(), ".tmp", true, true);
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeInt(myStrings.size());
+        out.writeInt(myFiles.size());
+        out.writeInt(myItems.size());
+        out.writeInt(types.size());
+
+        List<byte[]> encodedStrings = new ArrayList<>(myStrings.size());
+        int offset = 0;
+        for (String string : myStrings) {
+          byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+          encodedStrings.add(bytes);
+          out.writeInt(offset);
+          offset += 4 + bytes.length;
+        }
+        for (byte[] bytes : encodedStrings) {
+          out.writeInt(bytes.length);
+          out.write(bytes);
+        }
+
+        for (FileRecord fileRecord : myFiles) {
+          out.writeInt(fileRecord.myPath);
+          out.writeInt(fileRecord.myFirstItem);
+          out.writeInt(fileRecord.myItemCount);
+          out.writeLong(fileRecord.myTimestamp);
+          out.writeLong(fileRecord.myLength);
+        }
+
+        for (int i = 0; i < myItems.size(); i++) {
+          ItemRecord item = myItems.get(i);
+          item.myIndex = i;
+          out.writeInt(item.myName);
+          out.writeInt(item.myFile);
+          out.writeInt(item.myValue);
+          out.writeShort(types.indexOf(item.myType));
+          out.writeShort(item.myFlags);
+        }
+
+        int start = 0;
+        for (int i = 0; i < types.size(); i++) {
+          int count = itemsByType.get(types.get(i)).size();
+          out.writeInt(typeNames[i]);
+          out.writeInt(start);
+          out.writeInt(count);
+          start += count;
+        }
+
+        for (ResourceType type : types) {
+          List<ItemRecord> items = itemsByType.get(type);
+          // The sort is stable, so items with the same name stay in file order.
+          items.sort((item1, item2) -> item1.myNameString.compareTo(item2.myNameString));
+          for (ItemRecord item : items) {
+            out.writeInt(item.myIndex);
+          }
+        }
+      }
+      catch (IOException e) {
+        FileUtil.delete(tempFile);
+        throw e;
+      }
+      FileUtil.rename(tempFile, file);
+    }
+
+    private int addString(@NotNull String string) {
+      if (myStringIndices.containsKey(string)) {
+        return myStringIndices.get(string);
+      }
+      int index = myStrings.size();
+      myStrings.add(string);
+      myStringIndices.put(string, index);
+      return index;
+    }
+
+    private static final class FileRecord {
+      private final int myPath;
+      private final int myFirstItem;
+      private final long myTimestamp;
+      private final long myLength;
+      private int myItemCount;
+
+      private FileRecord(int path, int firstItem, long timestamp, long length) {
+        myPath = path;
+        myFirstItem = firstItem;
+        myTimestamp = timestamp;
+        myLength = length;
+      }
+    }
+
+    private static final class ItemRecord {
+      @NotNull private final ResourceType myType;
+      private final int myName;
+      @NotNull private final String myNameString;
+      private final int myFile;
+      private final int myValue;
+      private final int myFlags;
+      private int myIndex;
+
+      private ItemRecord(@NotNull ResourceType type, int name, @NotNull String nameString, int file, int value, int flags) {
+        myType = type;
+        myName = name;
+        myNameString = nameString;
+        myFile = file;
+        myValue = value;
+        myFlags = flags;
+      }
+    }
+  }
+}
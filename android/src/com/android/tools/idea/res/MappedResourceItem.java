@@ -0,0 +1,202 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.ide.common.rendering.api.*;
+import com.android.ide.common.resources.ResourceFile;
+import com.android.ide.common.resources.ResourceItem;
+import com.android.ide.common.resources.ResourceMergerItem;
+import com.android.ide.common.resources.configuration.DensityQualifier;
+import com.android.ide.common.resources.configuration.FolderConfiguration;
+import com.android.ide.common.util.PathString;
+import com.android.resources.ResourceType;
+import com.android.utils.XmlUtils;
+import com.google.common.base.MoreObjects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import java.io.File;
+import java.util.Collections;
+
+/**
+ * A {@link ResourceItem} loaded from a {@link MappedResourceCache} by {@link ResourceFolderRepository}.
+ * <p>
+ * Only the name and type of the item are read when the repository is loaded. The value is parsed from the XML stored in the cache the
+ * first time it is requested, using the same parser as the files scanned by the repository.
+ */
+public class MappedResourceItem implements ResourceItem {
+  @NotNull private final MappedResourceCache myCache;
+  private final int myIndex;
+  @NotNull private final String myName;
+  @NotNull private final ResourceType myType;
+  @NotNull private final ResourceNamespace myNamespace;
+  @Nullable private MappedResourceFile mySourceFile;
+  @Nullable private volatile ResourceValue myResourceValue;
+
+  public MappedResourceItem(@NotNull MappedResourceCache cache, int index, @NotNull ResourceNamespace namespace) {
+    myCache = cache;
+    myIndex = index;
+    myName = cache.getItemName(index);
+    myType = cache.getItemType(index);
+    myNamespace = namespace;
+  }
+
+  @NotNull
+  MappedResourceCache getCache() {
+    return myCache;
+  }
+
+  int getIndex() {
+    return myIndex;
+  }
+
+  @Nullable
+  public MappedResourceFile getSourceFile() {
+    return mySourceFile;
+  }
+
+  public void setSourceFile(@Nullable MappedResourceFile sourceFile) {
+    mySourceFile = sourceFile;
+  }
+
+  @Override
+  @NotNull
+  public String getName() {
+    return myName;
+  }
+
+  @Override
+  @NotNull
+  public ResourceType getType() {
+    return myType;
+  }
+
+  @Override
+  @Nullable
+  public String getLibraryName() {
+    return null;
+  }
+
+  @Override
+  @NotNull
+  public ResourceNamespace getNamespace() {
+    return myNamespace;
+  }
+
+  @Override
+  @NotNull
+  public ResourceReference getReferenceToSelf() {
+    return new ResourceReference(myNamespace, myType, myName);
+  }
+
+  @Override
+  @NotNull
+  public FolderConfiguration getConfiguration() {
+    MappedResourceFile source = mySourceFile;
+    assert source != null : "getConfiguration called on a MappedResourceItem with no source";
+    return source.getFolderConfiguration();
+  }
+
+  @Override
+  @NotNull
+  public String getKey() {
+    String qualifiers = getConfiguration().getQualifierString();
+    if (!qualifiers.isEmpty()) {
+      return myType.getName() + '-' + qualifiers + '/' + myName;
+    }
+
+    return myType.getName() + '/' + myName;
+  }
+
+  @Override
+  @Nullable
+  public ResourceValue getResourceValue() {
+    ResourceValue value = myResourceValue;
+    if (value == null) {
+      value = createResourceValue();
+      myResourceValue = value;
+    }
+    return value;
+  }
+
+  @Override
+  @Nullable
+  public PathString getSource() {
+    MappedResourceFile source = mySourceFile;
+    return source == null ? null : new PathString(source.getFile());
+  }
+
+  @Override
+  public boolean isFileBased() {
+    return (myCache.getItemFlags(myIndex) & MappedResourceCache.FLAG_FILE_BASED) != 0;
+  }
+
+  @Nullable
+  private ResourceValue createResourceValue() {
+    MappedResourceFile source = mySourceFile;
+    assert source != null : "getResourceValue called on a MappedResourceItem with no source";
+    File file = source.getFile();
+
+    if (isFileBased()) {
+      String path = file.getAbsolutePath();
+      DensityQualifier densityQualifier =
+        myType == ResourceType.DRAWABLE || myType == ResourceType.MIPMAP ? source.getFolderConfiguration().getDensityQualifier() : null;
+      if (densityQualifier != null && densityQualifier.getValue() != null) {
+        return new DensityBasedResourceValueImpl(myNamespace, myType, myName, path, densityQualifier.getValue(), null);
+      }
+      return new ResourceValueImpl(myNamespace, myType, myName, path, null);
+    }
+
+    // Values are parsed by a ResourceMergerItem, like the ones created by the initial scan of the repository.
+    Node node = parseValue(myCache.getItemValue(myIndex));
+    ResourceMergerItem item = new ResourceMergerItem(myName, myNamespace, myType, node, null);
+    new ResourceFile(file, Collections.singletonList(item), source.getFolderConfiguration());
+    return item.getResourceValue();
+  }
+
+  /**
+   * Returns the element stored by {@link ResourceFolderRepository} in the cache, which is wrapped in a {@code <resources>} element
+   * declaring the namespaces of the original file.
+   */
+  @Nullable
+  private static Node parseValue(@Nullable String xml) {
+    if (xml == null) {
+      return null;
+    }
+    Document document = XmlUtils.parseDocumentSilently(xml, true);
+    if (document == null) {
+      return null;
+    }
+    for (Node child = document.getDocumentElement().getFirstChild(); child != null; child = child.getNextSibling()) {
+      if (child.getNodeType() == Node.ELEMENT_NODE) {
+        return child;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    return MoreObjects.toStringHelper(this)
+      .add("name", myName)
+      .add("namespace", myNamespace)
+      .add("type", myType)
+      .add("source", mySourceFile == null ? null : mySourceFile.getFile())
+      .toString();
+  }
+}
@@ -29,9 +29,11 @@ import com.android.resources.ResourceType;
 import com.android.sdklib.IAndroidTarget;
 import com.android.tools.idea.configurations.ConfigurationManager;
 import com.android.tools.idea.databinding.DataBindingUtil;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.log.LogWrapper;
 import com.android.tools.idea.model.MergedManifest;
 import com.android.utils.ILogger;
+import com.android.utils.XmlUtils;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Table;
@@ -45,7 +47,6 @@ import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
-import com.intellij.openapi.vfs.VfsUtil;
 import com.intellij.openapi.vfs.VfsUtilCore;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
@@ -62,12 +63,20 @@ import org.jetbrains.android.util.AndroidResourceUtil;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
 
 import javax.annotation.concurrent.GuardedBy;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import static com.android.SdkConstants.*;
 import static com.android.resources.ResourceFolderType.*;
@@ -96,6 +105,15 @@ import static com.android.tools.lint.detector.api.Lint.stripIdPrefix;
 public final class ResourceFolderRepository extends LocalResourceRepository implements SingleNamespaceResourceRepository {
   private static final Logger LOG = Logger.getInstance(ResourceFolderRepository.class);
 
+  /**
+   * Pool used by the parallel initial scans. It is shared by all the repositories, so that loading several of them at the same time
+   * doesn't use more threads than there are cores.
+   */
+  private static final ForkJoinPool ourScanPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  /** Base name of the {@link MappedResourceCache} files in the cache directory of the repository. */
+  private static final String CACHE_FILE_NAME = "resources";
+
   private final Module myModule;
   private final AndroidFacet myFacet;
   private final PsiListener myListener;
@@ -134,8 +152,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     myResourceDir = resourceDir;
     myNamespace = namespace;
 
-    ResourceMerger merger = loadPreviousStateIfExists();
-    myInitialScanState = new InitialScanState(merger, VfsUtilCore.virtualToIoFile(myResourceDir));
+    loadPreviousStateIfExists();
+    myInitialScanState = new InitialScanState(createFreshResourceMerger(), VfsUtilCore.virtualToIoFile(myResourceDir));
     scanRemainingFiles();
     Application app = ApplicationManager.getApplication();
 
@@ -181,7 +199,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   /**
-   * Saves the non-Psi XML state as a single blob for faster loading the second time
+   * Saves the items of the non-Psi XML files as a {@link MappedResourceCache} for faster loading the second time
    * by {@link #loadPreviousStateIfExists}.
    */
   @VisibleForTesting
@@ -192,103 +210,128 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       return;
     }
 
-    try {
-      ResourcePreprocessor preprocessor = NoOpResourcePreprocessor.INSTANCE;
-      File tempDirectory = FileUtil.createTempDirectory("resource", "tmp", false);
-      try {
-        MergeConsumer<ResourceMergerItem> consumer =
-            MergedResourceWriter.createWriterWithoutPngCruncher(blobRoot, null, null, preprocessor, tempDirectory);
-        myInitialScanState.myResourceMerger.writeBlobToWithTimestamps(blobRoot, consumer);
-      } finally {
-        FileUtil.delete(tempDirectory);
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    for (Map.Entry<VirtualFile, ResourceItemSource<? extends ResourceItem>> entry : sources.entrySet()) {
+      VirtualFile virtualFile = entry.getKey();
+      ResourceItemSource<? extends ResourceItem> source = entry.getValue();
+      String relativePath = VfsUtilCore.getRelativePath(virtualFile, myResourceDir);
+      if (relativePath == null) {
+        continue;
+      }
+      File file = VfsUtilCore.virtualToIoFile(virtualFile);
+      if (source instanceof MappedResourceFile) {
+        writer.addFile(relativePath, file.lastModified(), file.length());
+        for (MappedResourceItem item : (MappedResourceFile)source) {
+          MappedResourceCache cache = item.getCache();
+          writer.addItem(item.getType(), item.getName(), cache.getItemValue(item.getIndex()), cache.getItemFlags(item.getIndex()));
+        }
+      }
+      else if (source instanceof ResourceFileAdapter && isCachedFile(virtualFile, source.getFolderType())) {
+        writer.addFile(relativePath, file.lastModified(), file.length());
+        for (ResourceMergerItem item : (ResourceFileAdapter)source) {
+          Node node = item.getValue();
+          writer.addItem(item.getType(), item.getName(), node == null ? null : toValueXml(node),
+                         item.isFileBased() ? MappedResourceCache.FLAG_FILE_BASED : 0);
+        }
       }
     }
-    catch (MergingException | IOException e) {
-      LOG.error("Failed to saveStateToFile", e);
-      // Delete the blob root just in case it's in an inconsistent state.
-      FileUtil.delete(blobRoot);
+
+    try {
+      FileUtil.createDirectory(blobRoot);
+      // The items loaded from the previous file still map it, so the cache is written to a new file rather than replacing it.
+      writer.writeGeneration(blobRoot, CACHE_FILE_NAME);
+    }
+    catch (IOException e) {
+      LOG.warn("Failed to saveStateToFile", e);
+    }
+  }
+
+  /**
+   * Returns true if the items of the file are saved by {@link #saveStateToFile}, i.e. if the initial scan skips the file when it is
+   * already in {@link #sources}. Density-based files are always scanned, see {@link #scanFileResourceFile}.
+   */
+  private static boolean isCachedFile(@NotNull VirtualFile file, @Nullable ResourceFolderType folderType) {
+    if (folderType == VALUES) {
+      return true;
+    }
+    return folderType != null && folderType != DRAWABLE && folderType != MIPMAP &&
+           FolderTypeRelationship.isIdGeneratingFolderType(folderType) && file.getFileType() == StdFileTypes.XML;
+  }
+
+  /**
+   * Returns the XML of a value element, wrapped in a {@code <resources>} element declaring the namespaces of the original document so that
+   * it can be parsed on its own by {@link MappedResourceItem}.
+   */
+  @NotNull
+  private static String toValueXml(@NotNull Node node) {
+    StringBuilder xml = new StringBuilder("<").append(TAG_RESOURCES);
+    Document document = node.getOwnerDocument();
+    Element root = document == null ? null : document.getDocumentElement();
+    if (root != null) {
+      NamedNodeMap attributes = root.getAttributes();
+      for (int i = 0; i < attributes.getLength(); i++) {
+        Node attribute = attributes.item(i);
+        if (attribute.getNodeName().startsWith(XMLNS)) {
+          xml.append(' ').append(attribute.getNodeName()).append("=\"")
+            .append(XmlUtils.toXmlAttributeValue(attribute.getNodeValue())).append('"');
+        }
+      }
     }
+    return xml.append('>').append(XmlUtils.toXml(node)).append("</").append(TAG_RESOURCES).append('>').toString();
   }
 
   /**
-   * Reloads ResourceFile and ResourceItems which have not changed since the last {@link #saveStateToFile}.
-   * Some Resource file and items may not be covered, so {@link #scanRemainingFiles} should be run
+   * Loads the items of the files which have not changed since the last {@link #saveStateToFile}. The values of the items are only parsed
+   * when they are requested. Some Resource files and items may not be covered, so {@link #scanRemainingFiles} should be run
    * to load the rest of the items.
-   *
-   * @return the loaded ResourceMerger -- this can be used to save state again, if the cache isn't fresh
    */
-  private ResourceMerger loadPreviousStateIfExists() {
+  private void loadPreviousStateIfExists() {
     if (namespacesUsed()) {
       // TODO(b/76409654): figure out how to store the state in namespaced projects.
-      return createFreshResourceMerger();
+      return;
     }
 
     File blobRoot = ResourceFolderRepositoryFileCacheService.get().getResourceDir(myModule.getProject(), myResourceDir);
-    if (blobRoot == null || !blobRoot.exists()) {
-      return createFreshResourceMerger();
-    }
-    ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    // This load may fail if the data is in an inconsistent state or the xml contains illegal
-    // resource names, which the Psi parser would otherwise allow, so load failures are not
-    // strictly an error.
-    // loadFromBlob will check timestamps for stale data and skip.
-    try {
-      if (!merger.loadFromBlob(blobRoot, false)) {
-        LOG.warn("failed to loadPreviousStateIfExists " + blobRoot);
-        return createFreshResourceMerger();
-      }
-    }
-    catch (MergingException e) {
-      LOG.warn("failed to loadPreviousStateIfExists " + blobRoot, e);
-      return createFreshResourceMerger();
-    }
-    // This temp resourceFiles set is just to avoid calling VfsUtil.findFileByIoFile repeatedly.
-    Set<ResourceFile> resourceFiles = new HashSet<>();
-    List<ResourceSet> resourceSets = merger.getDataSets();
-    if (resourceSets.size() != 1) {
-      LOG.error("Expecting exactly one resource set, but found " + resourceSets.size());
-      return createFreshResourceMerger();
-    }
-    ResourceSet dataSet = resourceSets.get(0);
-    List<File> sourceFiles = dataSet.getSourceFiles();
-    if (sourceFiles.size() != 1) {
-      LOG.error("Expecting exactly source files (res/ directories), but found " + sourceFiles.size());
-      return createFreshResourceMerger();
+    if (blobRoot == null) {
+      return;
     }
-    File myResourceDirFile = VfsUtilCore.virtualToIoFile(myResourceDir);
-    // Check that the dataSet we're loading actually corresponds to this resource directory.
-    // This could happen if there's a hash collision in naming the cache directory.
-    if (!FileUtil.filesEqual(sourceFiles.get(0), myResourceDirFile)) {
-      LOG.warn(String.format("source file %1$s, does not match resource dir %2$s", sourceFiles.get(0), myResourceDirFile));
-      return createFreshResourceMerger();
+    // The cache may be missing or in an inconsistent state, so load failures are not strictly an error.
+    MappedResourceCache cache = MappedResourceCache.openLatest(blobRoot, CACHE_FILE_NAME);
+    if (cache == null) {
+      return;
     }
 
     // Items to be inserted into the repo, while holding ITEM_MAP_LOCK. The loop below does too much I/O to hold the lock the whole time.
     Map<ResourceType, ListMultimap<String, ResourceItem>> result = new HashMap<>();
 
-    for (ResourceMergerItem item: dataSet.getDataMap().values()) {
-      ResourceFile file = item.getSourceFile();
-      if (file != null) {
-        if (!resourceFiles.contains(file)) {
-          VirtualFile vFile = VfsUtil.findFileByIoFile(file.getFile(), false);
-          if (vFile == null) {
-            // Cannot handle this item, mark it ignored so that it doesn't persist.
-            item.setIgnoredFromDiskMerge(true);
-            continue;
-          }
-          resourceFiles.add(file);
-          sources.put(vFile, new ResourceFileAdapter(file));
-        }
+    for (int i = 0; i < cache.getFileCount(); i++) {
+      VirtualFile virtualFile = myResourceDir.findFileByRelativePath(cache.getFilePath(i));
+      VirtualFile folder = virtualFile == null ? null : virtualFile.getParent();
+      if (folder == null) {
+        continue;
+      }
+      // Skip the stale files, they are parsed again by the scan.
+      File file = VfsUtilCore.virtualToIoFile(virtualFile);
+      if (file.lastModified() != cache.getFileTimestamp(i) || file.length() != cache.getFileLength(i)) {
+        continue;
+      }
+      ResourceFolderType folderType = getFolderType(folder.getName());
+      FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForFolder(folder.getName());
+      if (folderType == null || folderConfiguration == null) {
+        continue;
+      }
+
+      MappedResourceFile source = new MappedResourceFile(cache, i, file, virtualFile, folderType, folderConfiguration);
+      int firstItem = cache.getFirstItem(i);
+      for (int index = firstItem; index < firstItem + cache.getItemCount(i); index++) {
+        MappedResourceItem item = new MappedResourceItem(cache, index, myNamespace);
+        source.addItem(item);
         addToResult(result, item);
-      } else {
-        // Cannot handle this item, mark it ignored to that it doesn't persist.
-        item.setIgnoredFromDiskMerge(true);
       }
+      sources.put(virtualFile, source);
     }
 
     commitToRepository(result);
-
-    return merger;
   }
 
   private boolean namespacesUsed() {
@@ -300,6 +343,16 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     result.computeIfAbsent(item.getType(), t -> LinkedListMultimap.create()).put(item.getName(), item);
   }
 
+  /**
+   * Appends the items of {@code items} after the ones already in {@code result}, keeping their order.
+   */
+  private static void addAllToResult(Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                     Map<ResourceType, ListMultimap<String, ResourceItem>> items) {
+    for (Map.Entry<ResourceType, ListMultimap<String, ResourceItem>> entry : items.entrySet()) {
+      result.computeIfAbsent(entry.getKey(), t -> LinkedListMultimap.create()).putAll(entry.getValue());
+    }
+  }
+
   /**
    * Inserts the computed resources into this repository, while holding the global repository lock.
    */
@@ -313,13 +366,17 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
   private ResourceMerger createFreshResourceMerger() {
     ResourceMerger merger = new ResourceMerger(0 /* minSdk */);
-    ResourceSet myData = new ResourceSet(myResourceDir.getName(), myNamespace, getLibraryName(), false /* validateEnabled */);
-    File resourceDir = VfsUtilCore.virtualToIoFile(myResourceDir);
-    myData.addSource(resourceDir);
-    merger.addDataSet(myData);
+    merger.addDataSet(createResourceSet());
     return merger;
   }
 
+  private ResourceSet createResourceSet() {
+    ResourceSet resourceSet = new ResourceSet(myResourceDir.getName(), myNamespace, getLibraryName(), false /* validateEnabled */);
+    File resourceDir = VfsUtilCore.virtualToIoFile(myResourceDir);
+    resourceSet.addSource(resourceDir);
+    return resourceSet;
+  }
+
   /**
    * Determine if it's unnecessary to write or update the file-backed cache.
    * If only a few items are reparsed, then the cache is fresh enough.
@@ -347,11 +404,19 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     final File myResourceDir;
     final Collection<PsiFileResourceQueueEntry> myPsiFileResourceQueue = new ArrayList<>();
     final Collection<PsiValueResourceQueueEntry> myPsiValueResourceQueue = new ArrayList<>();
+    /** Sources of the scanned files, added to the repository once the scan is done */
+    final Map<VirtualFile, ResourceItemSource<? extends ResourceItem>> myScannedSources = new HashMap<>();
 
     InitialScanState(ResourceMerger merger, File resourceDir) {
+      this(merger, merger.getDataSets().get(0), resourceDir);
+    }
+
+    /**
+     * Creates the state of the scan of a single resource folder, which loads its files into a separate resource set.
+     */
+    private InitialScanState(ResourceMerger merger, ResourceSet resourceSet, File resourceDir) {
       myResourceMerger = merger;
-      assert myResourceMerger.getDataSets().size() == 1;
-      myResourceSet = myResourceMerger.getDataSets().get(0);
+      myResourceSet = resourceSet;
       myResourceSet.setShouldParseResourceIds(true);
       myResourceSet.setDontNormalizeQualifiers(true);
       myResourceSet.setTrackSourcePositions(false);
@@ -380,6 +445,26 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       return myResourceSet.loadFile(myResourceDir, file, myILogger);
     }
 
+    @NotNull
+    InitialScanState createFolderScan(@NotNull ResourceSet resourceSet) {
+      return new InitialScanState(myResourceMerger, resourceSet, myResourceDir);
+    }
+
+    /**
+     * Adds the results of a scan created by {@link #createFolderScan} to this one.
+     */
+    void mergeFolderScan(@NotNull InitialScanState folderScan) {
+      numXml += folderScan.numXml;
+      numXmlReparsed += folderScan.numXmlReparsed;
+      myPsiFileResourceQueue.addAll(folderScan.myPsiFileResourceQueue);
+      myPsiValueResourceQueue.addAll(folderScan.myPsiValueResourceQueue);
+      myScannedSources.putAll(folderScan.myScannedSources);
+    }
+
+    void addScannedSource(@NotNull VirtualFile file, @NotNull ResourceItemSource<? extends ResourceItem> source) {
+      myScannedSources.put(file, source);
+    }
+
     public void queuePsiFileResourceScan(PsiFileResourceQueueEntry data) {
       myPsiFileResourceQueue.add(data);
     }
@@ -429,7 +514,14 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     ApplicationManager.getApplication().runReadAction(() -> getPsiDirsForListener(myResourceDir));
 
     Map<ResourceType, ListMultimap<String, ResourceItem>> result = new HashMap<>();
-    scanResFolder(result, myResourceDir);
+    if (StudioFlags.RESOURCE_FOLDER_PARALLEL_SCAN.get()) {
+      scanResFolderInParallel(result, myResourceDir);
+    }
+    else {
+      scanResFolder(result, myResourceDir);
+    }
+    sources.putAll(myInitialScanState.myScannedSources);
+    myInitialScanState.myScannedSources.clear();
     ApplicationManager.getApplication().runReadAction(() -> scanQueuedPsiResources(result));
     commitToRepository(result);
   }
@@ -495,21 +587,70 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   private void scanResFolder(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> result,
                              @NotNull VirtualFile resDir) {
     for (VirtualFile subDir : resDir.getChildren()) {
-      if (subDir.isValid() && subDir.isDirectory()) {
-        String name = subDir.getName();
-        ResourceFolderType folderType = getFolderType(name);
-        if (folderType != null) {
-          FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForFolder(name);
-          if (folderConfiguration == null) {
-            continue;
-          }
-          String qualifiers = getQualifiers(name);
-          if (folderType == VALUES) {
-            scanValueResFolder(result, subDir, qualifiers, folderConfiguration);
-          }
-          else {
-            scanFileResourceFolder(result, subDir, folderType, qualifiers, folderConfiguration);
-          }
+      scanResSubFolder(result, myInitialScanState, subDir);
+    }
+  }
+
+  /**
+   * Scans the subfolders of the resource directory in parallel, each into its own result map and {@link InitialScanState}. The results
+   * are then merged in the order of the folders, so that the items end up in the same order as after {@link #scanResFolder}.
+   * <p>
+   * The files that need to be parsed as PSI are queued as usual, and scanned afterwards by the calling thread.
+   */
+  private void scanResFolderInParallel(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                       @NotNull VirtualFile resDir) {
+    VirtualFile[] subDirs = resDir.getChildren();
+    List<Map<ResourceType, ListMultimap<String, ResourceItem>>> folderResults = new ArrayList<>(subDirs.length);
+    List<InitialScanState> folderScans = new ArrayList<>(subDirs.length);
+    for (VirtualFile ignored : subDirs) {
+      folderResults.add(new HashMap<>());
+      // ResourceSet is not thread safe, so each folder loads its files into a separate one.
+      folderScans.add(myInitialScanState.createFolderScan(createResourceSet()));
+    }
+
+    ForkJoinTask<?> task = ourScanPool.submit(
+      () -> IntStream.range(0, subDirs.length).parallel().forEach(i -> scanResSubFolder(folderResults.get(i), folderScans.get(i), subDirs[i])));
+    try {
+      task.get();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException(e);
+    }
+    catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error)cause;
+      }
+      throw new RuntimeException(cause);
+    }
+
+    for (int i = 0; i < subDirs.length; i++) {
+      addAllToResult(result, folderResults.get(i));
+      myInitialScanState.mergeFolderScan(folderScans.get(i));
+    }
+  }
+
+  private void scanResSubFolder(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                @NotNull InitialScanState state,
+                                @NotNull VirtualFile subDir) {
+    if (subDir.isValid() && subDir.isDirectory()) {
+      String name = subDir.getName();
+      ResourceFolderType folderType = getFolderType(name);
+      if (folderType != null) {
+        FolderConfiguration folderConfiguration = FolderConfiguration.getConfigForFolder(name);
+        if (folderConfiguration == null) {
+          return;
+        }
+        String qualifiers = getQualifiers(name);
+        if (folderType == VALUES) {
+          scanValueResFolder(result, state, subDir, qualifiers, folderConfiguration);
+        }
+        else {
+          scanFileResourceFolder(result, state, subDir, folderType, qualifiers, folderConfiguration);
         }
       }
     }
@@ -521,6 +662,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   private void scanFileResourceFolder(@NotNull Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                      @NotNull InitialScanState state,
                                       @NotNull VirtualFile directory,
                                       ResourceFolderType folderType,
                                       String qualifiers,
@@ -536,7 +678,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
         FileType fileType = file.getFileType();
         boolean idGeneratingFile = idGeneratingFolder && fileType == StdFileTypes.XML;
         if (PsiProjectListener.isRelevantFileType(fileType) || folderType == RAW) {
-          scanFileResourceFile(result, qualifiers, folderType, folderConfiguration, type, idGeneratingFile, file);
+          scanFileResourceFile(result, state, qualifiers, folderType, folderConfiguration, type, idGeneratingFile, file);
         } // TODO: Else warn about files that aren't expected to be found here?
       }
     }
@@ -568,6 +710,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   private void scanFileResourceFile(Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                    InitialScanState state,
                                     String qualifiers,
                                     ResourceFolderType folderType,
                                     FolderConfiguration folderConfiguration,
@@ -577,22 +720,22 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
     ResourceFile resourceFile;
     if (idGenerating) {
       if (sources.containsKey(file)) {
-        myInitialScanState.countCacheHit();
+        state.countCacheHit();
         return;
       }
       try {
-        resourceFile = myInitialScanState.loadFile(VfsUtilCore.virtualToIoFile(file));
+        resourceFile = state.loadFile(VfsUtilCore.virtualToIoFile(file));
         if (resourceFile == null) {
           // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          // Don't count Psi items in myInitialScanState.numXml, because they are never cached.
-          myInitialScanState.queuePsiFileResourceScan(
+          // Don't count Psi items in state.numXml, because they are never cached.
+          state.queuePsiFileResourceScan(
             new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
           return;
         }
         boolean isDensityBasedResource = folderType == DRAWABLE || folderType == MIPMAP;
         // We skip caching density-based resources, so don't count those against cache statistics.
         if (!isDensityBasedResource) {
-          myInitialScanState.countCacheMiss();
+          state.countCacheMiss();
         }
         for (ResourceMergerItem item : resourceFile.getItems()) {
           addToResult(result, item);
@@ -606,7 +749,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       }
       catch (MergingException e) {
         // The file-based parser may not be able handle the file if it is a data-binding file.
-        myInitialScanState.queuePsiFileResourceScan(
+        state.queuePsiFileResourceScan(
           new PsiFileResourceQueueEntry(file, qualifiers, folderType, folderConfiguration));
         return;
       }
@@ -620,7 +763,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       resourceFile = new ResourceFile(VfsUtilCore.virtualToIoFile(file), item, folderConfiguration);
       item.setIgnoredFromDiskMerge(true);
     }
-    sources.put(file, new ResourceFileAdapter(resourceFile));
+    state.addScannedSource(file, new ResourceFileAdapter(resourceFile));
   }
 
   @Nullable
@@ -894,6 +1037,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   private void scanValueResFolder(Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                                  @NotNull InitialScanState state,
                                   @NotNull VirtualFile directory,
                                   String qualifiers,
                                   FolderConfiguration folderConfiguration) {
@@ -902,7 +1046,7 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
 
     for (VirtualFile file : directory.getChildren()) {
       if (file.isValid() && !file.isDirectory()) {
-        scanValueFile(result, qualifiers, file, folderConfiguration);
+        scanValueFile(result, state, qualifiers, file, folderConfiguration);
       }
     }
   }
@@ -967,32 +1111,33 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
   }
 
   private void scanValueFile(Map<ResourceType, ListMultimap<String, ResourceItem>> result,
+                             InitialScanState state,
                              String qualifiers,
                              VirtualFile virtualFile,
                              FolderConfiguration folderConfiguration) {
     FileType fileType = virtualFile.getFileType();
     if (fileType == StdFileTypes.XML) {
       if (sources.containsKey(virtualFile)) {
-        myInitialScanState.countCacheHit();
+        state.countCacheHit();
         return;
       }
       File file = VfsUtilCore.virtualToIoFile(virtualFile);
       try {
-        ResourceFile resourceFile = myInitialScanState.loadFile(file);
+        ResourceFile resourceFile = state.loadFile(file);
         if (resourceFile == null) {
           // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-          myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
+          state.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
           return;
         }
         for (ResourceItem item : resourceFile.getItems()) {
           addToResult(result, item);
         }
-        myInitialScanState.countCacheMiss();
-        sources.put(virtualFile, new ResourceFileAdapter(resourceFile));
+        state.countCacheMiss();
+        state.addScannedSource(virtualFile, new ResourceFileAdapter(resourceFile));
       }
       catch (MergingException e) {
         // The file-based parser failed for some reason. Fall back to Psi in case it is more lax.
-        myInitialScanState.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
+        state.queuePsiValueResourceScan(new PsiValueResourceQueueEntry(virtualFile, qualifiers, folderConfiguration));
       }
     }
   }
@@ -2372,6 +2517,8 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
       // The file may not exist anymore in the filesystem, so VFS won't find it. For the case of ResourceFile, get the File object directly.
       if (source instanceof ResourceFileAdapter) {
         sourceFilename = ((ResourceFileAdapter)source).getResourceFile().getFile().getName();
+      } else if (source instanceof MappedResourceFile) {
+        sourceFilename = ((MappedResourceFile)source).getFile().getName();
       } else {
         VirtualFile virtualFile = source.getVirtualFile();
         sourceFilename = virtualFile == null ? null : virtualFile.getName();
@@ -2466,6 +2613,12 @@ public final class ResourceFolderRepository extends LocalResourceRepository impl
               return item;
             }
           }
+          else if (item instanceof MappedResourceItem) {
+            MappedResourceFile source = ((MappedResourceItem)item).getSourceFile();
+            if (source != null && FileUtil.filesEqual(source.getFile(), ioFile)) {
+              return item;
+            }
+          }
           else {
             ResourceFile resourceFile = ((ResourceMergerItem)item).getSourceFile();
             if (resourceFile != null && FileUtil.filesEqual(resourceFile.getFile(), ioFile)) {
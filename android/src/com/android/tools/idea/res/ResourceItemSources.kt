@@ -26,13 +26,14 @@ import com.google.common.collect.ListMultimap
 import com.intellij.openapi.vfs.VfsUtil
 import com.intellij.openapi.vfs.VirtualFile
 import com.intellij.psi.PsiFile
+import java.io.File
 
 /**
  * Represents a resource file from which [ResourceItem]s are crated by [ResourceFolderRepository].
  *
- * This is a common abstraction for [PsiResourceFile] (used by [PsiResourceItem]) and [ResourceFile] (used by [ResourceMergerItem]), needed
- * by [ResourceFolderRepository] which needs to deal with both types of [ResourceItem]s as it transitions from DOM parsing to PSI parsing
- * of resource files.
+ * This is a common abstraction for [PsiResourceFile] (used by [PsiResourceItem]), [ResourceFile] (used by [ResourceMergerItem]) and
+ * [MappedResourceFile] (used by [MappedResourceItem]), needed by [ResourceFolderRepository] which needs to deal with all types of
+ * [ResourceItem]s as it transitions from the file cache and DOM parsing to PSI parsing of resource files.
  */
 sealed class ResourceItemSource<T : ResourceItem> : Iterable<T> {
   abstract val folderConfiguration: FolderConfiguration
@@ -101,3 +102,31 @@ internal class ResourceFileAdapter(
   override fun removeItem(item: ResourceMergerItem) = resourceFile.removeItem(item)
   override fun isSourceOf(item: ResourceItem): Boolean = (item as? ResourceMergerItem)?.sourceFile == resourceFile
 }
+
+/**
+ * The [ResourceItemSource] of [MappedResourceItem]s, for a file whose items were loaded from a [MappedResourceCache].
+ */
+class MappedResourceFile(
+  val cache: MappedResourceCache,
+  val fileIndex: Int,
+  val file: File,
+  override val virtualFile: VirtualFile,
+  override val folderType: ResourceFolderType?,
+  override val folderConfiguration: FolderConfiguration
+) : ResourceItemSource<MappedResourceItem>() {
+
+  private val _items = ArrayList<MappedResourceItem>()
+
+  override fun iterator(): Iterator<MappedResourceItem> = _items.iterator()
+  override fun isSourceOf(item: ResourceItem): Boolean = (item as? MappedResourceItem)?.sourceFile == this
+
+  override fun addItem(item: MappedResourceItem) {
+    item.sourceFile = this
+    _items.add(item)
+  }
+
+  override fun removeItem(item: MappedResourceItem) {
+    item.sourceFile = null
+    _items.remove(item)
+  }
+}
@@ -3,6 +3,7 @@ package org.jetbrains.android.inspections.lint;
 import com.android.builder.model.LintOptions;
 import com.android.ide.common.repository.GradleVersion;
 import com.android.tools.idea.editors.strings.StringsVirtualFile;
+import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.gradle.project.model.AndroidModuleModel;
 import com.android.tools.idea.lint.*;
 import com.android.tools.lint.client.api.LintBaseline;
@@ -18,6 +19,7 @@ import com.intellij.codeInspection.GlobalInspectionContext;
 import com.intellij.codeInspection.ex.InspectionToolWrapper;
 import com.intellij.codeInspection.ex.Tools;
 import com.intellij.codeInspection.lang.GlobalInspectionContextExtension;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.facet.ProjectFacetManager;
 import com.intellij.notification.NotificationDisplayType;
 import com.intellij.notification.NotificationGroup;
@@ -34,6 +36,7 @@ import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.util.ProgressWrapper;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Key;
+import com.intellij.openapi.util.Pair;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
@@ -236,10 +239,6 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
-    LintRequest request = new LintIdeRequest(client, project, files, modules, false);
-    request.setScope(lintScope);
-    final LintDriver lint = new LintDriver(new LintIdeIssueRegistry(), client, request);
-
     // Baseline analysis?
     myBaseline = null;
     Module severityModule = null;
@@ -263,7 +262,6 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
                 }
               }
               myBaseline = new LintBaseline(client, baselineFile);
-              lint.setBaseline(myBaseline);
               if (!baselineFile.isFile()) {
                 myBaseline.setWriteOnClose(true);
               } else if (AndroidLintLintBaselineInspection.ourUpdateBaselineNextRun) {
@@ -280,7 +278,43 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
       }
     }
 
-    lint.analyze();
+    // Convert the XML files in parallel; the lint run then finds them in the DomPsiConverter cache
+    client.prepareXmlFiles(modules, files, indicator);
+
+    // Groups of modules which do not depend on each other are analyzed in parallel, each by its own client and driver
+    // reporting to its own problem map, so that they share no mutable state. The baseline is shared by all the modules,
+    // so runs with a baseline, like runs on specific files, use a single driver.
+    boolean parallel = files == null && myBaseline == null && StudioFlags.LINT_PARALLEL_BATCH.get();
+    List<List<Module>> groups = parallel ? LintIdeProject.groupIndependentModules(modules) : Collections.singletonList(modules);
+    if (parallel && groups.size() == 1 && modules.size() > 1) {
+      // Typically all the modules depend on a common base module, which must be analyzed by the same driver as its users
+      Logger.getInstance(AndroidLintGlobalInspectionContext.class)
+        .info(String.format("Analyzing %d modules with a single lint driver since they all depend on common modules", modules.size()));
+    }
+    List<Pair<LintDriver, Map<Issue, Map<File, List<ProblemData>>>>> runs = new ArrayList<>();
+    if (groups.size() > 1) {
+      AnalysisScope finalScope = scope;
+      Set<Issue> finalIssues = issues;
+      EnumSet<Scope> finalLintScope = lintScope;
+      JobLauncher.getInstance().invokeConcurrentlyUnderProgress(groups, indicator, true, group -> {
+        Map<Issue, Map<File, List<ProblemData>>> groupProblemMap = new HashMap<>();
+        LintIdeClient groupClient = LintIdeClient.forBatch(project, groupProblemMap, finalScope, finalIssues);
+        LintDriver groupLint = createDriver(groupClient, project, null, group, finalLintScope);
+        groupLint.analyze();
+        synchronized (runs) {
+          runs.add(Pair.create(groupLint, groupProblemMap));
+        }
+        return true;
+      });
+      for (Pair<LintDriver, Map<Issue, Map<File, List<ProblemData>>>> run : runs) {
+        mergeProblems(run.second, problemMap);
+      }
+    } else {
+      LintDriver lint = createDriver(client, project, files, modules, lintScope);
+      lint.setBaseline(myBaseline);
+      lint.analyze();
+      runs.add(Pair.create(lint, problemMap));
+    }
 
     List<Tools> tools = AndroidLintInspectionBase.getDynamicTools();
     AndroidLintInspectionBase.resetDynamicTools();
@@ -304,13 +338,56 @@ class AndroidLintGlobalInspectionContext implements GlobalInspectionContextExten
 
     AndroidLintLintBaselineInspection.clearNextRunState();
 
-    lint.setAnalysisStartTime(startTime);
     LintIdeAnalytics analytics = new LintIdeAnalytics(project);
-    analytics.logSession(AnalysisType.IDE_BATCH, lint, severityModule, null, problemMap);
+    for (Pair<LintDriver, Map<Issue, Map<File, List<ProblemData>>>> run : runs) {
+      run.first.setAnalysisStartTime(startTime);
+      analytics.logSession(AnalysisType.IDE_BATCH, run.first, severityModule, null, run.second);
+    }
 
     myResults = problemMap;
   }
 
+  @NotNull
+  private static LintDriver createDriver(@NotNull LintIdeClient client,
+                                         @NotNull Project project,
+                                         @Nullable List<VirtualFile> files,
+                                         @NotNull List<Module> modules,
+                                         @Nullable EnumSet<Scope> lintScope) {
+    LintRequest request = new LintIdeRequest(client, project, files, modules, false);
+    request.setScope(lintScope);
+    return new LintDriver(new LintIdeIssueRegistry(), client, request);
+  }
+
+  /**
+   * Adds the problems found by the driver of a group of modules to the problems of the whole run. Files which are not
+   * part of a module, like the files of an AAR library used by several groups, are analyzed by each of the drivers, so
+   * a problem already reported by another group is skipped.
+   */
+  private static void mergeProblems(@NotNull Map<Issue, Map<File, List<ProblemData>>> from,
+                                    @NotNull Map<Issue, Map<File, List<ProblemData>>> to) {
+    for (Map.Entry<Issue, Map<File, List<ProblemData>>> issueEntry : from.entrySet()) {
+      Map<File, List<ProblemData>> file2ProblemList = to.computeIfAbsent(issueEntry.getKey(), issue -> new HashMap<>());
+      for (Map.Entry<File, List<ProblemData>> fileEntry : issueEntry.getValue().entrySet()) {
+        List<ProblemData> problems = file2ProblemList.computeIfAbsent(fileEntry.getKey(), file -> new ArrayList<>());
+        List<ProblemData> otherGroupProblems = new ArrayList<>(problems);
+        for (ProblemData problem : fileEntry.getValue()) {
+          if (!containsProblem(otherGroupProblems, problem)) {
+            problems.add(problem);
+          }
+        }
+      }
+    }
+  }
+
+  private static boolean containsProblem(@NotNull List<ProblemData> problems, @NotNull ProblemData problem) {
+    for (ProblemData other : problems) {
+      if (other.getTextRange().equals(problem.getTextRange()) && other.getMessage().equals(problem.getMessage())) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   @Nullable
   public Map<Issue, Map<File, List<ProblemData>>> getResults() {
     return myResults;
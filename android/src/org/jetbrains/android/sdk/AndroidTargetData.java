@@ -231,7 +231,7 @@ public class AndroidTargetData {
         return null;
       }
 
-      myFrameworkResources = FrameworkResourceRepository.create(resFolder, withLocale, true);
+      myFrameworkResources = FrameworkResourceRepository.getOrCreate(resFolder, withLocale);
     }
     return myFrameworkResources;
   }
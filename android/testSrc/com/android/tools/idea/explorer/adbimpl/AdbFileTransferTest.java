@@ -0,0 +1,204 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import com.android.tools.idea.explorer.fs.FileTransferProgress;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.ide.PooledThreadExecutor;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.awt.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.idea.explorer.adbimpl.AdbFileTransfer.DOWNLOAD_CHUNK_SIZE;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+
+public class AdbFileTransferTest {
+  private static final long TIMEOUT_MILLISECONDS = 30_000;
+  private static final String REMOTE_PATH = "/sdcard/big-file.bin";
+  private static final String REMOTE_TEMP_PATH = "/data/local/tmp/temp-chunk";
+  private static final long REMOTE_SIZE = 2L * DOWNLOAD_CHUNK_SIZE + 1000;
+  private static final String REMOTE_MODIFICATION_TIME = "2018-01-10 12:34";
+
+  @ClassRule
+  public static DebugLoggerFactoryRule ourLoggerFactoryRule = new DebugLoggerFactoryRule();
+
+  @Rule
+  public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @NotNull private final List<Long> myCopiedChunks = Collections.synchronizedList(new ArrayList<>());
+  private AdbFileTransfer myFileTransfer;
+  private Path myLocalPath;
+
+  @Before
+  public void setUp() throws Exception {
+    MockDdmlibDevice device = new MockDdmlibDevice();
+    AdbFileOperations fileOperations = mock(AdbFileOperations.class);
+    doAnswer(invocation -> Futures.immediateFuture(REMOTE_TEMP_PATH)).when(fileOperations).createTempFile(anyString());
+    doAnswer(invocation -> Futures.immediateFuture(null)).when(fileOperations).deleteFile(anyString());
+    doAnswer(invocation -> {
+      String destination = invocation.getArgument(1);
+      long blockIndex = invocation.getArgument(2);
+      int blockSize = invocation.getArgument(3);
+      myCopiedChunks.add(blockIndex);
+      device.addRemoteFile(destination, Math.min(blockSize, REMOTE_SIZE - blockIndex * blockSize));
+      return Futures.immediateFuture(null);
+    }).when(fileOperations).copyFileBlockRunAs(anyString(), anyString(), anyLong(), anyInt(), any());
+
+    myFileTransfer = new AdbFileTransfer(device.getIDevice(), fileOperations, MoreExecutors.directExecutor(),
+                                         PooledThreadExecutor.INSTANCE);
+    myLocalPath = myTemporaryFolder.getRoot().toPath().resolve("big-file.bin");
+  }
+
+  @Test
+  public void testDownloadFileInChunks() throws Exception {
+    // Act
+    waitForFuture(myFileTransfer.downloadFileInChunks(REMOTE_PATH, REMOTE_SIZE, REMOTE_MODIFICATION_TIME, myLocalPath,
+                                                      new EmptyProgress(), null));
+
+    // Assert
+    assertThat(myCopiedChunks).containsExactly(0L, 1L, 2L).inOrder();
+    assertThat(Files.size(myLocalPath)).isEqualTo(REMOTE_SIZE);
+    assertThat(Files.exists(getPartialPath())).isFalse();
+    assertThat(Files.exists(getPartialInfoPath())).isFalse();
+  }
+
+  @Test
+  public void testDownloadFileInChunksResumesAfterLastCompleteChunk() throws Exception {
+    // Prepare: one complete chunk and part of the next one of the same remote file
+    Files.write(getPartialPath(), new byte[DOWNLOAD_CHUNK_SIZE + 100]);
+    Files.write(getPartialInfoPath(), Arrays.asList(Long.toString(REMOTE_SIZE), REMOTE_MODIFICATION_TIME), StandardCharsets.UTF_8);
+
+    // Act
+    waitForFuture(myFileTransfer.downloadFileInChunks(REMOTE_PATH, REMOTE_SIZE, REMOTE_MODIFICATION_TIME, myLocalPath,
+                                                      new EmptyProgress(), null));
+
+    // Assert
+    assertThat(myCopiedChunks).containsExactly(1L, 2L).inOrder();
+    assertThat(Files.size(myLocalPath)).isEqualTo(REMOTE_SIZE);
+  }
+
+  @Test
+  public void testDownloadFileInChunksRestartsWhenRemoteFileChanged() throws Exception {
+    // Prepare: a partial download of an older version of the remote file
+    Files.write(getPartialPath(), new byte[DOWNLOAD_CHUNK_SIZE + 100]);
+    Files.write(getPartialInfoPath(), Arrays.asList(Long.toString(REMOTE_SIZE), "2018-01-09 08:00"), StandardCharsets.UTF_8);
+
+    // Act
+    waitForFuture(myFileTransfer.downloadFileInChunks(REMOTE_PATH, REMOTE_SIZE, REMOTE_MODIFICATION_TIME, myLocalPath,
+                                                      new EmptyProgress(), null));
+
+    // Assert
+    assertThat(myCopiedChunks).containsExactly(0L, 1L, 2L).inOrder();
+    assertThat(Files.size(myLocalPath)).isEqualTo(REMOTE_SIZE);
+  }
+
+  @Test
+  public void testDownloadFileInChunksRestartsWithoutDownloadInfo() throws Exception {
+    // Prepare: a partial download that can't be matched with the remote file
+    Files.write(getPartialPath(), new byte[DOWNLOAD_CHUNK_SIZE + 100]);
+
+    // Act
+    waitForFuture(myFileTransfer.downloadFileInChunks(REMOTE_PATH, REMOTE_SIZE, REMOTE_MODIFICATION_TIME, myLocalPath,
+                                                      new EmptyProgress(), null));
+
+    // Assert
+    assertThat(myCopiedChunks).containsExactly(0L, 1L, 2L).inOrder();
+    assertThat(Files.size(myLocalPath)).isEqualTo(REMOTE_SIZE);
+  }
+
+  @Test
+  public void testArchiveGroupsFitInCommandLine() {
+    // Prepare
+    String directory = "/data/data/com.example.rpaquay.myapplication/files";
+    List<String> fileNames = new ArrayList<>();
+    for (int i = 0; i < 1000; i++) {
+      fileNames.add(String.format("file with spaces %04d.txt", i));
+    }
+
+    // Act
+    List<List<String>> groups = AdbFileTransfer.getArchiveGroups(directory, fileNames);
+
+    // Assert
+    assertThat(groups.size()).isGreaterThan(1);
+    List<String> allNames = new ArrayList<>();
+    for (List<String> group : groups) {
+      assertThat(group).isNotEmpty();
+      int length = AdbPathUtil.getEscapedPath(directory).length();
+      for (String fileName : group) {
+        length += AdbPathUtil.getEscapedPath(fileName).length() + 1;
+      }
+      assertThat(length).isAtMost(AdbFileOperations.MAX_ARCHIVE_COMMAND_LENGTH);
+      allNames.addAll(group);
+    }
+    assertThat(allNames).containsExactlyElementsIn(fileNames).inOrder();
+  }
+
+  @Test
+  public void testArchiveGroupsOfFewFiles() {
+    // Act
+    List<List<String>> groups = AdbFileTransfer.getArchiveGroups("/sdcard", Arrays.asList("a.txt", "b.txt"));
+
+    // Assert
+    assertThat(groups).containsExactly(Arrays.asList("a.txt", "b.txt"));
+  }
+
+  @NotNull
+  private Path getPartialPath() {
+    return myLocalPath.resolveSibling(myLocalPath.getFileName() + AdbFileTransfer.PARTIAL_DOWNLOAD_SUFFIX);
+  }
+
+  @NotNull
+  private Path getPartialInfoPath() {
+    return myLocalPath.resolveSibling(myLocalPath.getFileName() + AdbFileTransfer.PARTIAL_DOWNLOAD_INFO_SUFFIX);
+  }
+
+  private static <V> V waitForFuture(@NotNull ListenableFuture<V> future) throws Exception {
+    assert !EventQueue.isDispatchThread();
+    return future.get(TIMEOUT_MILLISECONDS, TimeUnit.MILLISECONDS);
+  }
+
+  private static class EmptyProgress implements FileTransferProgress {
+    @Override
+    public void progress(long currentBytes, long totalBytes) {
+    }
+
+    @Override
+    public boolean isCancelled() {
+      return false;
+    }
+  }
+}
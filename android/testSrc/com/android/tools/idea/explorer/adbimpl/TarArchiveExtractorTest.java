@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.explorer.adbimpl;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+public class TarArchiveExtractorTest {
+  @Rule
+  public TemporaryFolder myTemporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void testExtractFilesAndDirectories() throws IOException {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    writeEntry(archive, "foo.txt", '0', "Hello");
+    writeEntry(archive, "bar/", '5', "");
+    writeEntry(archive, "bar/empty.txt", '0', "");
+    writeEntry(archive, "link.txt", '2', "");
+    writeEnd(archive);
+    Path directory = myTemporaryFolder.getRoot().toPath();
+
+    int fileCount = TarArchiveExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), directory);
+
+    assertThat(fileCount).isEqualTo(2);
+    assertThat(new String(Files.readAllBytes(directory.resolve("foo.txt")), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    assertThat(Files.size(directory.resolve("bar").resolve("empty.txt"))).isEqualTo(0L);
+    assertThat(Files.exists(directory.resolve("link.txt"))).isFalse();
+  }
+
+  @Test
+  public void testExtractLongFileName() throws IOException {
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      name.append("long-name-");
+    }
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    writeEntry(archive, "././@LongLink", 'L', name + "\0");
+    writeEntry(archive, name.substring(0, 99), '0', "Contents");
+    writeEnd(archive);
+    Path directory = myTemporaryFolder.getRoot().toPath();
+
+    int fileCount = TarArchiveExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), directory);
+
+    assertThat(fileCount).isEqualTo(1);
+    assertThat(new String(Files.readAllBytes(directory.resolve(name.toString())), StandardCharsets.UTF_8)).isEqualTo("Contents");
+  }
+
+  @Test
+  public void testRejectEntryOutsideOfDirectory() throws IOException {
+    ByteArrayOutputStream archive = new ByteArrayOutputStream();
+    writeEntry(archive, "../foo.txt", '0', "Hello");
+    writeEnd(archive);
+    Path directory = myTemporaryFolder.newFolder("extract").toPath();
+
+    try {
+      TarArchiveExtractor.extract(new ByteArrayInputStream(archive.toByteArray()), directory);
+      fail("Extracting a file outside of the directory should fail");
+    }
+    catch (IOException expected) {
+      assertThat(Files.exists(directory.resolveSibling("foo.txt"))).isFalse();
+    }
+  }
+
+  private static void writeEntry(@NotNull ByteArrayOutputStream archive, @NotNull String name, char type, @NotNull String contents)
+    throws IOException {
+    byte[] data = contents.getBytes(StandardCharsets.UTF_8);
+    byte[] header = new byte[512];
+    putString(header, 0, name);
+    putString(header, 100, "0000644");
+    putString(header, 124, String.format("%011o", data.length));
+    header[156] = (byte)type;
+    putString(header, 257, "ustar");
+    archive.write(header);
+    archive.write(data);
+    archive.write(new byte[(512 - data.length % 512) % 512]);
+  }
+
+  private static void writeEnd(@NotNull ByteArrayOutputStream archive) throws IOException {
+    archive.write(new byte[1024]);
+  }
+
+  private static void putString(@NotNull byte[] header, int offset, @NotNull String value) {
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    System.arraycopy(bytes, 0, header, offset, bytes.length);
+  }
+}
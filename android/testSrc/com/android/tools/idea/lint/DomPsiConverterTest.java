@@ -18,12 +18,14 @@ package com.android.tools.idea.lint;
 import com.android.ide.common.xml.XmlPrettyPrinter;
 import com.android.utils.XmlUtils;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Computable;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlFile;
+import com.intellij.psi.xml.XmlTag;
 import org.jetbrains.android.AndroidTestCase;
 import org.w3c.dom.Document;
 import org.w3c.dom.NodeList;
@@ -60,6 +62,27 @@ public class DomPsiConverterTest extends AndroidTestCase {
     assertEquals("@drawable/icon", elementsByTagName.item(0).getAttributes().getNamedItemNS(ANDROID_URI, "icon").getNodeValue());
   }
 
+  public void testCache() {
+    VirtualFile file = myFixture.copyFileToProject("AndroidManifest.xml", "AndroidManifest.xml");
+    PsiFile psiFile = PsiManager.getInstance(getProject()).findFile(file);
+    assertTrue(psiFile instanceof XmlFile);
+    XmlFile xmlFile = (XmlFile)psiFile;
+    Document domDocument = DomPsiConverter.convert(xmlFile);
+    assertNotNull(domDocument);
+    assertSame(domDocument, DomPsiConverter.convert(xmlFile));
+
+    // Modifying the file discards the cached document
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      XmlTag rootTag = xmlFile.getRootTag();
+      assertNotNull(rootTag);
+      rootTag.setAttribute("versionName", ANDROID_URI, "2.0");
+    });
+    Document modifiedDocument = DomPsiConverter.convert(xmlFile);
+    assertNotNull(modifiedDocument);
+    assertNotSame(domDocument, modifiedDocument);
+    assertEquals("2.0", modifiedDocument.getDocumentElement().getAttributeNS(ANDROID_URI, "versionName"));
+  }
+
   public void testAsyncAccess() throws InterruptedException {
     VirtualFile file = myFixture.copyFileToProject("AndroidManifest.xml", "AndroidManifest.xml");
     assertNotNull(file);
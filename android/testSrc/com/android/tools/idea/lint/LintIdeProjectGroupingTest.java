@@ -0,0 +1,62 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.lint;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMultimap;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class LintIdeProjectGroupingTest {
+  @Test
+  public void testIndependentModulesAreSeparated() {
+    ImmutableMultimap<String, String> dependencies = ImmutableMultimap.of("app1", "lib1", "app2", "lib2");
+    List<List<String>> groups = LintIdeProject.groupIndependent(Arrays.asList("app1", "app2", "lib1"), dependencies::get);
+    assertThat(groups).containsExactly(ImmutableList.of("app1", "lib1"), ImmutableList.of("app2")).inOrder();
+  }
+
+  @Test
+  public void testTransitiveDependenciesJoinGroups() {
+    // app1 and app2 only meet through the dependencies of their libraries, which are not analyzed themselves
+    ImmutableMultimap<String, String> dependencies = ImmutableMultimap.<String, String>builder()
+      .put("app1", "lib1")
+      .put("lib1", "base")
+      .put("app2", "lib2")
+      .put("lib2", "base")
+      .put("app3", "lib3")
+      .build();
+    List<List<String>> groups = LintIdeProject.groupIndependent(Arrays.asList("app1", "app3", "app2"), dependencies::get);
+    assertThat(groups).containsExactly(ImmutableList.of("app1", "app2"), ImmutableList.of("app3")).inOrder();
+  }
+
+  @Test
+  public void testCommonBaseModuleGivesSingleGroup() {
+    ImmutableMultimap<String, String> dependencies = ImmutableMultimap.of("app1", "base", "app2", "base", "app3", "base");
+    List<List<String>> groups = LintIdeProject.groupIndependent(Arrays.asList("app1", "app2", "app3"), dependencies::get);
+    assertThat(groups).containsExactly(ImmutableList.of("app1", "app2", "app3"));
+  }
+
+  @Test
+  public void testDependencyCycles() {
+    ImmutableMultimap<String, String> dependencies = ImmutableMultimap.of("a", "b", "b", "a", "c", "c");
+    List<List<String>> groups = LintIdeProject.groupIndependent(Arrays.asList("a", "b", "c"), dependencies::get);
+    assertThat(groups).containsExactly(ImmutableList.of("a", "b"), ImmutableList.of("c")).inOrder();
+  }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatMessage;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogcatBufferTest {
+  private static final LogCatHeader FIRST = new LogCatHeader(LogLevel.INFO, 1493, 1595, "com.example.first", "FirstTag", Instant.ofEpochMilli(1534635551439L));
+  private static final LogCatHeader SECOND = new LogCatHeader(LogLevel.ERROR, 1600, 1601, "com.example.second", "SecondTag", Instant.ofEpochMilli(1534635552000L));
+
+  @Test
+  public void messagesAreReturnedInOrder() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    buffer.addMessage(new LogCatMessage(FIRST, "First Line1"));
+    buffer.addMessage(new LogCatMessage(FIRST, "First Line2 ü"));
+    buffer.addMessage(new LogCatMessage(SECOND, "Second Line1"));
+
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertEquals(3, messages.size());
+    assertEquals(FIRST.toString(), messages.get(0).getHeader().toString());
+    assertEquals("First Line1", messages.get(0).getMessage());
+    assertEquals("First Line2 ü", messages.get(1).getMessage());
+    assertEquals(SECOND.toString(), messages.get(2).getHeader().toString());
+    assertEquals("Second Line1", messages.get(2).getMessage());
+
+    // Lines of the same entry share their header, which the formatted receivers rely on.
+    assertSame(messages.get(0).getHeader(), messages.get(1).getHeader());
+    assertNotSame(messages.get(1).getHeader(), messages.get(2).getHeader());
+  }
+
+  @Test
+  public void oldestLinesAreDroppedWhenFull() {
+    LogcatBuffer buffer = new LogcatBuffer(25);
+    buffer.addMessage(new LogCatMessage(FIRST, "0123456789"));
+    buffer.addMessage(new LogCatMessage(FIRST, "abcdefghij"));
+    // The text of this line wraps around the end of the ring.
+    buffer.addMessage(new LogCatMessage(SECOND, "ABCDEFGHIJ"));
+
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertEquals(2, messages.size());
+    assertEquals("abcdefghij", messages.get(0).getMessage());
+    assertEquals("ABCDEFGHIJ", messages.get(1).getMessage());
+
+    buffer.addMessage(new LogCatMessage(SECOND, "klmnopqrst"));
+    messages = buffer.getMessages();
+    assertEquals(2, messages.size());
+    assertEquals("ABCDEFGHIJ", messages.get(0).getMessage());
+    assertEquals("klmnopqrst", messages.get(1).getMessage());
+  }
+
+  @Test
+  public void bufferGrows() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    for (int i = 0; i < 10000; i++) {
+      buffer.addMessage(new LogCatMessage(i % 2 == 0 ? FIRST : SECOND, "Line " + i));
+    }
+
+    List<LogCatMessage> messages = buffer.getMessages();
+    assertEquals(10000, messages.size());
+    assertEquals("Line 9999", messages.get(9999).getMessage());
+    assertEquals(5000, buffer.getMessages(new SelectedProcessFilter(1600), null).size());
+  }
+
+  @Test
+  public void filtersSelectLinesWithIndexes() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    for (int i = 0; i < 100; i++) {
+      buffer.addMessage(new LogCatMessage(FIRST, "First " + i));
+      buffer.addMessage(new LogCatMessage(SECOND, "Second " + i));
+    }
+
+    assertEquals(100, buffer.getMessages(new SelectedProcessFilter(1493), null).size());
+    assertEquals(0, buffer.getMessages(new SelectedProcessFilter(42), null).size());
+    assertEquals(100, buffer.getMessages(null, LogLevel.WARN).size());
+    assertEquals(200, buffer.getMessages(null, LogLevel.VERBOSE).size());
+
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("tag")
+      .setTagPattern(Pattern.compile("^Second"))
+      .setMessagePattern(Pattern.compile("9$"))
+      .build();
+    List<String> lines = getLines(buffer.getMessages(filter, null));
+    assertEquals(10, lines.size());
+    assertEquals("Second 9", lines.get(0));
+    assertEquals("Second 99", lines.get(9));
+
+    filter = new DefaultAndroidLogcatFilter.Builder("package")
+      .setPackagePattern(Pattern.compile("first"))
+      .setLogLevel(LogLevel.ERROR)
+      .build();
+    assertEquals(0, buffer.getMessages(filter, null).size());
+  }
+
+  @Test
+  public void multiLineEntriesAreSelectedWhole() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    buffer.addMessage(new LogCatMessage(FIRST, "java.lang.RuntimeException"));
+    buffer.addMessage(new LogCatMessage(FIRST, "\tat com.example.Foo.bar(Foo.java:42)"));
+    buffer.addMessage(new LogCatMessage(SECOND, "Unrelated"));
+
+    DefaultAndroidLogcatFilter filter = new DefaultAndroidLogcatFilter.Builder("message")
+      .setMessagePattern(Pattern.compile("Foo\\.java"))
+      .build();
+    List<String> lines = getLines(buffer.getMessages(filter, null));
+    assertEquals(2, lines.size());
+    assertEquals("java.lang.RuntimeException", lines.get(0));
+  }
+
+  @Test
+  public void copiesAreNotAffectedByNewLines() {
+    LogcatBuffer buffer = new LogcatBuffer(25);
+    buffer.addMessage(new LogCatMessage(FIRST, "0123456789"));
+    LogcatBuffer copy = buffer.copy();
+
+    buffer.addMessage(new LogCatMessage(SECOND, "abcdefghij"));
+    buffer.addMessage(new LogCatMessage(SECOND, "ABCDEFGHIJ"));
+    assertEquals(Arrays.asList("abcdefghij", "ABCDEFGHIJ"), getLines(buffer.getMessages()));
+    assertEquals(Collections.singletonList("0123456789"), getLines(copy.getMessages()));
+    assertEquals(1, copy.getMessages(new SelectedProcessFilter(1493), null).size());
+  }
+
+  @Test
+  public void messagesAreProcessedInBatches() {
+    LogcatBuffer buffer = new LogcatBuffer(-1);
+    for (int i = 0; i < 5; i++) {
+      LogCatHeader header = new LogCatHeader(LogLevel.INFO, 1493, 1595, "com.example.first", "FirstTag", Instant.ofEpochMilli(i));
+      buffer.addMessage(new LogCatMessage(header, "Line " + i));
+    }
+    // Lines of the same entry share their header and stay in the same batch.
+    buffer.addMessage(new LogCatMessage(SECOND, "Entry line 1"));
+    buffer.addMessage(new LogCatMessage(SECOND, "Entry line 2"));
+
+    List<List<String>> batches = new ArrayList<>();
+    assertTrue(buffer.processMessages(null, null, 2, batch -> batches.add(getLines(batch))));
+    assertEquals(Arrays.asList(Arrays.asList("Line 0", "Line 1"),
+                               Arrays.asList("Line 2", "Line 3"),
+                               Arrays.asList("Line 4", "Entry line 1", "Entry line 2")), batches);
+
+    batches.clear();
+    assertFalse(buffer.processMessages(null, null, 2, batch -> !batches.add(getLines(batch))));
+    assertEquals(1, batches.size());
+  }
+
+  @Test
+  public void stringsOfEvictedLinesAreDropped() {
+    LogcatBuffer buffer = new LogcatBuffer(20);
+    buffer.addMessage(new LogCatMessage(FIRST, "0123456789"));
+    buffer.addMessage(new LogCatMessage(SECOND, "abcdefghij"));
+    assertEquals(4, buffer.getInternedStringCount());
+
+    for (int i = 0; i < 100; i++) {
+      LogCatHeader header = new LogCatHeader(LogLevel.INFO, 1, 1, "com.example.app" + i, "Tag" + i, Instant.ofEpochMilli(i));
+      buffer.addMessage(new LogCatMessage(header, "0123456789"));
+    }
+    // Only the tags and package names of the last two lines are kept.
+    assertEquals(4, buffer.getInternedStringCount());
+    assertEquals(1, buffer.getMessages(new DefaultAndroidLogcatFilter.Builder("tag").setTagPattern(Pattern.compile("Tag99")).build(),
+                                       null).size());
+    assertEquals("com.example.app98", buffer.getMessages().get(0).getHeader().getAppName());
+  }
+
+  @NotNull
+  private static List<String> getLines(@NotNull List<LogCatMessage> messages) {
+    List<String> lines = new ArrayList<>(messages.size());
+    for (LogCatMessage message : messages) {
+      lines.add(message.getMessage());
+    }
+    return lines;
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.logcat;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.Log.LogLevel;
+import com.android.ddmlib.logcat.LogCatHeader;
+import com.android.ddmlib.logcat.LogCatTimestamp;
+import org.junit.Test;
+
+import java.time.Instant;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class LogcatHeaderParserTest {
+  private final IDevice myDevice = AndroidLogcatReceiverTest.createMockDevice();
+
+  @Test
+  public void parseEpochHeader() {
+    LogCatHeader header = LogcatHeaderParser.parseHeader("[ 1534635551.439 1493:1595 W/EDMNativeHelper     ]", myDevice);
+
+    assertNotNull(header);
+    assertEquals(LogLevel.WARN, header.getLogLevel());
+    assertEquals(1493, header.getPid());
+    assertEquals(1595, header.getTid());
+    assertEquals("dummy.client.name", header.getAppName());
+    assertEquals("EDMNativeHelper", header.getTag());
+    assertEquals(Instant.ofEpochMilli(1534635551439L), header.getTimestampInstant());
+  }
+
+  @Test
+  public void parseLongHeader() {
+    LogCatHeader header = LogcatHeaderParser.parseHeader("[ 08-18 16:39:11.439 1493:1595 W/EDMNativeHelper     ]", myDevice);
+
+    assertNotNull(header);
+    assertEquals(LogLevel.WARN, header.getLogLevel());
+    assertEquals("EDMNativeHelper", header.getTag());
+    assertEquals(LogCatTimestamp.fromString("08-18 16:39:11.439").toString(), header.getTimestamp().toString());
+  }
+
+  @Test
+  public void parseUnusualHeaders() {
+    // Hexadecimal thread ids, spaces before the thread id, fatal log levels and tags with spaces and colons.
+    LogCatHeader header = LogcatHeaderParser.parseHeader("[ 1534635551.439 11698:  0x1ef F/Tag With: Spaces  ]", myDevice);
+
+    assertNotNull(header);
+    assertEquals(LogLevel.ASSERT, header.getLogLevel());
+    assertEquals(11698, header.getPid());
+    assertEquals(495, header.getTid());
+    assertEquals("com.android.chattylogger", header.getAppName());
+    assertEquals("Tag With: Spaces", header.getTag());
+    assertEquals(Instant.ofEpochSecond(1534635551L, 439_000_000L), header.getTimestampInstant());
+  }
+
+  @Test
+  public void parseRejectsMessages() {
+    assertNull(LogcatHeaderParser.parseHeader("", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("EDMNativeHelperService is published", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[]", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[ 1534635551.439 1493:1595 W/EDMNativeHelper", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[ 1534635551.439 1493:1595 X/EDMNativeHelper ]", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[ 1534635551.439 1493:1595 W/ ]", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[ 1534635551 1493:1595 W/EDMNativeHelper ]", myDevice));
+    assertNull(LogcatHeaderParser.parseHeader("[ 08-18 16:39 1493:1595 W/EDMNativeHelper ]", myDevice));
+  }
+}
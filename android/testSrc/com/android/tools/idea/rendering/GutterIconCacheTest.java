@@ -26,12 +26,18 @@ import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.*;
 
 import static com.google.common.truth.Truth.assertThat;
 
 public class GutterIconCacheTest extends AndroidTestCase {
   private Path mySampleSvgPath;
   private VirtualFile mySampleSvgFile;
+  private Path myVectorPath;
+  private VirtualFile myVectorFile;
 
   @Override
   protected void setUp() throws Exception {
@@ -42,6 +48,14 @@ public class GutterIconCacheTest extends AndroidTestCase {
 
     String contents = "<svg viewBox=\"0 0 50 50\"><rect width=\"50\" height=\"50\" fill=\"blue\"/></svg>";
     mySampleSvgFile = TestFileUtils.writeFileAndRefreshVfs(mySampleSvgPath, contents);
+
+    myVectorPath = FileSystems.getDefault().getPath(myModule.getProject().getBasePath(),
+                                                    "app", "src", "main", "res", "drawable", "GutterIconCacheTest_vector.xml");
+    String vector = "<vector xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                    "    android:width=\"24dp\" android:height=\"24dp\" android:viewportWidth=\"24\" android:viewportHeight=\"24\">\n" +
+                    "  <path android:fillColor=\"#FF0000FF\" android:pathData=\"M0,0h24v24h-24z\"/>\n" +
+                    "</vector>";
+    myVectorFile = TestFileUtils.writeFileAndRefreshVfs(myVectorPath, vector);
   }
 
   public void testIsIconUpToDate_entryInvalidNotCached() {
@@ -99,4 +113,42 @@ public class GutterIconCacheTest extends AndroidTestCase {
     // Modifying the image should have invalidated the cache entry.
     assertThat(GutterIconCache.getInstance().isIconUpToDate(mySampleSvgPath.toString())).isFalse();
   }
+
+  public void testGetIconAsync_decodesInBackground() {
+    List<Runnable> pendingDecodes = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(pendingDecodes::add);
+    String path = myVectorPath.toString();
+
+    // The placeholder is returned until the icon is decoded, and the icon is only decoded once
+    assertThat(cache.getIconAsync(path, null)).isSameAs(GutterIconCache.LOADING_PLACEHOLDER);
+    assertThat(cache.getIconAsync(path, null)).isSameAs(GutterIconCache.LOADING_PLACEHOLDER);
+    assertThat(pendingDecodes).hasSize(1);
+
+    pendingDecodes.remove(0).run();
+    Icon icon = cache.getIconAsync(path, null);
+    assertThat(icon).isNotNull();
+    assertThat(icon).isNotSameAs(GutterIconCache.LOADING_PLACEHOLDER);
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+    assertThat(pendingDecodes).isEmpty();
+  }
+
+  public void testGetIconAsync_returnsStaleIconWhileDecoding() {
+    List<Runnable> pendingDecodes = new ArrayList<>();
+    GutterIconCache cache = new GutterIconCache(pendingDecodes::add);
+    String path = myVectorPath.toString();
+    Icon icon = cache.getIcon(path, null);
+    assertThat(icon).isNotNull();
+
+    Document document = FileDocumentManager.getInstance().getDocument(myVectorFile);
+    ApplicationManager.getApplication().runWriteAction(() -> document.setText(document.getText() + "<!-- -->"));
+
+    assertThat(cache.getIconAsync(path, null)).isSameAs(icon);
+    assertThat(pendingDecodes).hasSize(1);
+    pendingDecodes.remove(0).run();
+    assertThat(cache.isIconUpToDate(path)).isTrue();
+
+    // The unsaved changes don't invalidate the new entry again
+    assertThat(cache.getIconAsync(path, null)).isNotSameAs(icon);
+    assertThat(pendingDecodes).isEmpty();
+  }
 }
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.android.tools.idea.rendering.RenderExecutor.Priority.*;
+
+public class RenderExecutorTest extends TestCase {
+  private RenderExecutor myExecutor;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myExecutor = new RenderExecutor(2, 1000);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myExecutor.shutdownNow();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testPendingActionsRunByPriority() throws Exception {
+    Object layoutLibrary = new Object();
+    CountDownLatch blocker = block(layoutLibrary);
+
+    List<String> order = Collections.synchronizedList(new ArrayList<>());
+    myExecutor.submit(() -> order.add("low"), layoutLibrary, LOW, null);
+    myExecutor.submit(() -> order.add("normal"), layoutLibrary, NORMAL, null);
+    myExecutor.submit(() -> order.add("high 1"), layoutLibrary, HIGH, null);
+    ListenableFuture<Boolean> last = myExecutor.submit(() -> order.add("high 2"), layoutLibrary, HIGH, null);
+    blocker.countDown();
+
+    last.get(5, TimeUnit.SECONDS);
+    myExecutor.submit(() -> null, layoutLibrary, LOW, null).get(5, TimeUnit.SECONDS);
+    assertEquals(Arrays.asList("high 1", "high 2", "normal", "low"), order);
+    assertEquals(2, myExecutor.getStatistics().getCompletedCount(HIGH));
+  }
+
+  public void testPendingActionIsSuperseded() throws Exception {
+    Object layoutLibrary = new Object();
+    Object key = new Object();
+    CountDownLatch blocker = block(layoutLibrary);
+
+    ListenableFuture<String> first = myExecutor.submit(() -> "first", layoutLibrary, NORMAL, key);
+    ListenableFuture<String> second = myExecutor.submit(() -> "second", layoutLibrary, NORMAL, key);
+    blocker.countDown();
+
+    assertEquals("second", second.get(5, TimeUnit.SECONDS));
+    assertTrue(first.isCancelled());
+    try {
+      first.get();
+      fail("The superseded action should not complete");
+    }
+    catch (CancellationException expected) {
+    }
+    assertEquals(1, myExecutor.getStatistics().getSupersededCount());
+  }
+
+  public void testRunningActionIsNotSuperseded() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocker = new CountDownLatch(1);
+    Object layoutLibrary = new Object();
+    Object key = new Object();
+    ListenableFuture<String> first = myExecutor.submit(() -> {
+      started.countDown();
+      blocker.await();
+      return "first";
+    }, layoutLibrary, NORMAL, key);
+    started.await();
+
+    ListenableFuture<String> second = myExecutor.submit(() -> "second", layoutLibrary, NORMAL, key);
+    blocker.countDown();
+
+    assertEquals("first", first.get(5, TimeUnit.SECONDS));
+    assertEquals("second", second.get(5, TimeUnit.SECONDS));
+  }
+
+  public void testLayoutLibrariesRenderInParallel() throws Exception {
+    // Both actions have to be running at the same time to complete.
+    CountDownLatch bothRunning = new CountDownLatch(2);
+    ListenableFuture<Boolean> first = myExecutor.submit(() -> {
+      bothRunning.countDown();
+      return bothRunning.await(5, TimeUnit.SECONDS);
+    }, new Object(), NORMAL, null);
+    ListenableFuture<Boolean> second = myExecutor.submit(() -> {
+      bothRunning.countDown();
+      return bothRunning.await(5, TimeUnit.SECONDS);
+    }, new Object(), NORMAL, null);
+
+    assertTrue(first.get(10, TimeUnit.SECONDS));
+    assertTrue(second.get(10, TimeUnit.SECONDS));
+  }
+
+  public void testExclusiveActionsWaitForOtherActions() throws Exception {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocker = new CountDownLatch(1);
+    ListenableFuture<Object> running = myExecutor.submit(() -> {
+      started.countDown();
+      blocker.await();
+      return null;
+    }, new Object(), NORMAL, null);
+    started.await();
+
+    ListenableFuture<Boolean> exclusive = myExecutor.submit(() -> running.isDone(), null, NORMAL, null);
+    assertFalse(exclusive.isDone());
+    blocker.countDown();
+    assertTrue(exclusive.get(5, TimeUnit.SECONDS));
+  }
+
+  public void testCanRunInline() throws Exception {
+    Object layoutLibrary = new Object();
+    Object otherLayoutLibrary = new Object();
+    // Assign the instances to different workers
+    myExecutor.submit(() -> null, layoutLibrary, NORMAL, null).get(5, TimeUnit.SECONDS);
+    myExecutor.submit(() -> null, otherLayoutLibrary, NORMAL, null).get(5, TimeUnit.SECONDS);
+    assertFalse(myExecutor.canRunInline(layoutLibrary));
+    assertFalse(myExecutor.canRunInline(null));
+
+    ListenableFuture<List<Boolean>> fromInstance = myExecutor.submit(
+      () -> Arrays.asList(myExecutor.canRunInline(layoutLibrary), myExecutor.canRunInline(otherLayoutLibrary),
+                          myExecutor.canRunInline(null), myExecutor.holdsSharedLock()), layoutLibrary, NORMAL, null);
+    assertEquals(Arrays.asList(true, false, false, true), fromInstance.get(5, TimeUnit.SECONDS));
+
+    ListenableFuture<List<Boolean>> fromExclusive = myExecutor.submit(
+      () -> Arrays.asList(myExecutor.canRunInline(layoutLibrary), myExecutor.canRunInline(otherLayoutLibrary),
+                          myExecutor.canRunInline(null), myExecutor.holdsSharedLock()), null, NORMAL, null);
+    assertEquals(Arrays.asList(true, true, true, false), fromExclusive.get(5, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Keeps the worker of the layoutlib busy until the returned latch is released.
+   */
+  private CountDownLatch block(Object layoutLibrary) throws InterruptedException {
+    CountDownLatch started = new CountDownLatch(1);
+    CountDownLatch blocker = new CountDownLatch(1);
+    myExecutor.submit(() -> {
+      started.countDown();
+      blocker.await();
+      return null;
+    }, layoutLibrary, NORMAL, null);
+    started.await();
+    return blocker;
+  }
+}
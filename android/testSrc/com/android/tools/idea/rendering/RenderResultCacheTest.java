@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.rendering;
+
+import com.android.ide.common.rendering.api.Result;
+import com.android.tools.idea.configurations.Configuration;
+import com.android.tools.idea.rendering.imagepool.ImagePool;
+import com.android.tools.idea.rendering.imagepool.ImagePoolFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.command.WriteCommandAction;
+import com.intellij.openapi.editor.Document;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiFile;
+import org.jetbrains.android.AndroidTestCase;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.image.BufferedImage;
+
+public class RenderResultCacheTest extends AndroidTestCase {
+  private static final String LAYOUT = "<LinearLayout xmlns:android=\"http://schemas.android.com/apk/res/android\"\n" +
+                                       "    android:layout_height=\"match_parent\"\n" +
+                                       "    android:layout_width=\"match_parent\" />";
+
+  private ImagePool myImagePool;
+  private PsiFile myFile;
+  private Configuration myConfiguration;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myImagePool = ImagePoolFactory.createImagePool();
+    myFile = myFixture.addFileToProject("res/layout/layout.xml", LAYOUT);
+    myConfiguration = RenderTestUtil.getConfiguration(myModule, myFile.getVirtualFile());
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      myImagePool.dispose();
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testCachedResultIsCopied() {
+    RenderResultCache cache = new RenderResultCache(myImagePool, 1024 * 1024);
+    RenderResult result = createResult(10, 20);
+    cache.put(createKey("options"), result);
+    result.dispose();
+
+    RenderResult cached = ReadAction.compute(() -> cache.get(createKey("options")));
+    assertNotNull(cached);
+    assertTrue(cached.hasImage());
+    assertEquals(10, cached.getRenderedImage().getWidth());
+    assertEquals(20, cached.getRenderedImage().getHeight());
+    assertNull(cached.getRenderTask());
+
+    // Disposing the returned copy doesn't affect the cache
+    cached.dispose();
+    assertNotNull(ReadAction.compute(() -> cache.get(createKey("options"))));
+    assertNull(ReadAction.compute(() -> cache.get(createKey("other options"))));
+  }
+
+  public void testKeyDependsOnContentAndConfiguration() {
+    RenderResultCache.Key key = createKey("options");
+    assertEquals(key, createKey("options"));
+    assertFalse(key.equals(createKey("other options")));
+
+    String theme = myConfiguration.getTheme();
+    myConfiguration.setTheme("@android:style/Theme.Holo");
+    RenderResultCache.Key otherTheme = createKey("options");
+    assertFalse(key.equals(otherTheme));
+    myConfiguration.setTheme(theme);
+    assertEquals(key, createKey("options"));
+
+    Document document = PsiDocumentManager.getInstance(getProject()).getDocument(myFile);
+    assertNotNull(document);
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> {
+      document.insertString(0, "<!-- comment -->");
+      PsiDocumentManager.getInstance(getProject()).commitDocument(document);
+    });
+    assertFalse(key.equals(createKey("options")));
+  }
+
+  public void testFailedResultsAreNotCached() {
+    RenderResultCache cache = new RenderResultCache(myImagePool, 1024 * 1024);
+    cache.put(createKey("options"), RenderResult.createBlank(myFile));
+    assertEquals(0, cache.size());
+  }
+
+  public void testLeastRecentlyUsedResultsAreEvicted() {
+    // Room for two 10x10 images
+    RenderResultCache cache = new RenderResultCache(myImagePool, 2 * 10 * 10 * 4);
+    cache.put(createKey("first"), createResult(10, 10));
+    cache.put(createKey("second"), createResult(10, 10));
+    // Makes "second" the least recently used
+    assertNotNull(ReadAction.compute(() -> cache.get(createKey("first"))));
+    cache.put(createKey("third"), createResult(10, 10));
+
+    assertEquals(2, cache.size());
+    assertNotNull(ReadAction.compute(() -> cache.get(createKey("first"))));
+    assertNull(ReadAction.compute(() -> cache.get(createKey("second"))));
+    assertNotNull(ReadAction.compute(() -> cache.get(createKey("third"))));
+
+    // Results larger than the cache are not kept
+    cache.put(createKey("large"), createResult(100, 100));
+    assertNull(ReadAction.compute(() -> cache.get(createKey("large"))));
+    assertEquals(2, cache.size());
+  }
+
+  public void testResultsOfDeletedFilesAreReleased() {
+    RenderResultCache cache = new RenderResultCache(myImagePool, 1024 * 1024);
+    RenderResultCache.Key key = createKey("options");
+    cache.put(key, createResult(10, 10));
+    assertEquals(1, cache.size());
+
+    WriteCommandAction.runWriteCommandAction(getProject(), () -> myFile.delete());
+    assertNull(ReadAction.compute(() -> cache.get(key)));
+    assertEquals(0, cache.size());
+  }
+
+  @NotNull
+  private RenderResultCache.Key createKey(@NotNull String options) {
+    return ReadAction.compute(() -> RenderResultCache.Key.create(myFacet, myFile, myConfiguration, options));
+  }
+
+  @NotNull
+  private RenderResult createResult(int width, int height) {
+    return new RenderResult(myFile,
+                            myModule,
+                            new RenderLogger(null, myModule),
+                            null,
+                            Result.Status.SUCCESS.createResult(),
+                            ImmutableList.of(),
+                            ImmutableList.of(),
+                            myImagePool.create(width, height, BufferedImage.TYPE_INT_ARGB),
+                            ImmutableMap.of(),
+                            ImmutableMap.of());
+  }
+}
@@ -32,6 +32,9 @@ import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static com.google.common.truth.Truth.assertThat;
 
@@ -112,6 +115,38 @@ public class FrameworkResourceRepositoryTest extends AndroidTestCase {
     }
   }
 
+  public void testLocaleResourcesLoadedOnDemand() throws Exception {
+    FrameworkResourceRepository fromSourceFiles = FrameworkResourceRepository.create(myResourceFolder, true, true);
+    fromSourceFiles.waitUntilPersistentCacheCreated();
+    FrameworkResourceRepository fromCache = FrameworkResourceRepository.create(myResourceFolder, true, true);
+    assertTrue(fromCache.isLoadedFromCache());
+
+    assertThat(fromCache.getResourceTypes(ResourceNamespace.ANDROID)).contains(ResourceType.STRING);
+    List<ResourceItem> items = fromCache.getResources(ResourceNamespace.ANDROID, ResourceType.STRING, "ok");
+    assertThat(items.size()).isEqualTo(fromSourceFiles.getResources(ResourceNamespace.ANDROID, ResourceType.STRING, "ok").size());
+    assertThat(items.stream().anyMatch(item -> item.getConfiguration().getLocaleQualifier() != null)).isTrue();
+    assertTrue(fromCache.isPublic(ResourceType.STRING, "ok"));
+  }
+
+  public void testGetOrCreateSharesRepositories() {
+    FrameworkResourceRepository withLocale = FrameworkResourceRepository.getOrCreate(myResourceFolder, true);
+    assertSame(withLocale, FrameworkResourceRepository.getOrCreate(myResourceFolder, true));
+    // The repository with locale-specific resources can also be used when they are not needed.
+    assertSame(withLocale, FrameworkResourceRepository.getOrCreate(myResourceFolder, false));
+  }
+
+  public void testGetOrCreateConcurrentlyCreatesOneRepository() throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<FrameworkResourceRepository> first = executor.submit(() -> FrameworkResourceRepository.getOrCreate(myResourceFolder, true));
+      Future<FrameworkResourceRepository> second = executor.submit(() -> FrameworkResourceRepository.getOrCreate(myResourceFolder, true));
+      assertSame(first.get(), second.get());
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
   private static void compareContents(@NotNull ResourceRepository expected, @NotNull ResourceRepository actual) {
     List<ResourceItem> expectedItems = new ArrayList<>(expected.getAllResources());
     List<ResourceItem> actualItems = new ArrayList<>(actual.getAllResources());
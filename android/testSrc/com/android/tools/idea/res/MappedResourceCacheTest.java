@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.res;
+
+import com.android.resources.ResourceType;
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+
+public class MappedResourceCacheTest extends TestCase {
+  private File myDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myDirectory = FileUtil.createTempDirectory("mapped", "cache");
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      FileUtil.delete(myDirectory);
+    }
+    finally {
+      super.tearDown();
+    }
+  }
+
+  public void testWriteAndRead() throws Exception {
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    writer.addFile("values/strings.xml", 1234L, 56L);
+    writer.addItem(ResourceType.STRING, "hello", "<resources><string name=\"hello\">Hello</string></resources>", 0);
+    writer.addItem(ResourceType.STRING, "app_name", "<resources><string name=\"app_name\">Ünïcödé</string></resources>", 0);
+    writer.addFile("layout/main.xml", 789L, 10L);
+    writer.addItem(ResourceType.LAYOUT, "main", null, MappedResourceCache.FLAG_FILE_BASED);
+    writer.addItem(ResourceType.ID, "hello", null, 0);
+    File file = new File(myDirectory, "resources.bin");
+    writer.write(file);
+
+    MappedResourceCache cache = MappedResourceCache.open(file);
+    assertNotNull(cache);
+    assertEquals(2, cache.getFileCount());
+    assertEquals(4, cache.getItemCount());
+
+    assertEquals("values/strings.xml", cache.getFilePath(0));
+    assertEquals(1234L, cache.getFileTimestamp(0));
+    assertEquals(56L, cache.getFileLength(0));
+    assertEquals(0, cache.getFirstItem(0));
+    assertEquals(2, cache.getItemCount(0));
+    assertEquals("layout/main.xml", cache.getFilePath(1));
+    assertEquals(2, cache.getFirstItem(1));
+    assertEquals(2, cache.getItemCount(1));
+
+    // Items keep the order in which they were added.
+    assertEquals("hello", cache.getItemName(0));
+    assertEquals(ResourceType.STRING, cache.getItemType(0));
+    assertEquals("app_name", cache.getItemName(1));
+    assertEquals("<resources><string name=\"app_name\">Ünïcödé</string></resources>", cache.getItemValue(1));
+    assertEquals(0, cache.getItemFile(1));
+    assertEquals(ResourceType.LAYOUT, cache.getItemType(2));
+    assertNull(cache.getItemValue(2));
+    assertEquals(MappedResourceCache.FLAG_FILE_BASED, cache.getItemFlags(2));
+    assertEquals(1, cache.getItemFile(3));
+    assertEquals(0, cache.getItemFlags(3));
+  }
+
+  public void testFindItems() throws Exception {
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    writer.addFile("values/strings.xml", 0, 0);
+    for (String name : new String[]{"delta", "alpha", "charlie", "bravo"}) {
+      writer.addItem(ResourceType.STRING, name, null, 0);
+    }
+    writer.addFile("values-fr/strings.xml", 0, 0);
+    writer.addItem(ResourceType.STRING, "bravo", null, 0);
+    writer.addItem(ResourceType.COLOR, "bravo", null, 0);
+    File file = new File(myDirectory, "resources.bin");
+    writer.write(file);
+
+    MappedResourceCache cache = MappedResourceCache.open(file);
+    assertNotNull(cache);
+    assertEquals(5, cache.getItemCount(ResourceType.STRING));
+    assertEquals(1, cache.getItemCount(ResourceType.COLOR));
+    assertEquals(0, cache.getItemCount(ResourceType.DIMEN));
+
+    assertEquals(1, cache.findItems(ResourceType.STRING, "alpha").length);
+    assertEquals(1, cache.findItems(ResourceType.STRING, "alpha")[0]);
+    int[] bravo = cache.findItems(ResourceType.STRING, "bravo");
+    assertEquals(2, bravo.length);
+    assertEquals(3, bravo[0]);
+    assertEquals(4, bravo[1]);
+    assertEquals(0, cache.findItems(ResourceType.STRING, "echo").length);
+    assertEquals(0, cache.findItems(ResourceType.DIMEN, "alpha").length);
+    assertEquals(5, cache.findItems(ResourceType.COLOR, "bravo")[0]);
+  }
+
+  public void testDeclareStyleableRoundTrip() throws Exception {
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    writer.addFile("values/attrs.xml", 0, 0);
+    writer.addItem(ResourceType.ATTR, "customText", null, 0);
+    writer.addItem(ResourceType.STYLEABLE, "CustomView",
+                   "<resources><declare-styleable name=\"CustomView\"><attr name=\"customText\" format=\"string\"/>" +
+                   "</declare-styleable></resources>", 0);
+    File file = new File(myDirectory, "resources.bin");
+    writer.write(file);
+
+    MappedResourceCache cache = MappedResourceCache.open(file);
+    assertNotNull(cache);
+    assertEquals(ResourceType.ATTR, cache.getItemType(0));
+    assertEquals(ResourceType.STYLEABLE, cache.getItemType(1));
+    assertEquals(1, cache.getItemCount(ResourceType.STYLEABLE));
+    assertEquals(1, cache.findItems(ResourceType.STYLEABLE, "CustomView")[0]);
+  }
+
+  public void testGenerations() throws Exception {
+    assertNull(MappedResourceCache.openLatest(myDirectory, "resources"));
+
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    writer.addFile("values/strings.xml", 0, 0);
+    writer.addItem(ResourceType.STRING, "first", null, 0);
+    File firstFile = writer.writeGeneration(myDirectory, "resources");
+    // Keeps the first file mapped while the next one is written, like the items loaded from it.
+    MappedResourceCache first = MappedResourceCache.openLatest(myDirectory, "resources");
+    assertNotNull(first);
+
+    writer = new MappedResourceCache.Writer();
+    writer.addFile("values/strings.xml", 0, 0);
+    writer.addItem(ResourceType.STRING, "second", null, 0);
+    File secondFile = writer.writeGeneration(myDirectory, "resources");
+    assertFalse(firstFile.equals(secondFile));
+
+    MappedResourceCache second = MappedResourceCache.openLatest(myDirectory, "resources");
+    assertNotNull(second);
+    assertEquals("second", second.getItemName(0));
+    assertEquals("first", first.getItemName(0));
+
+    // An invalid latest file falls back to the previous valid one.
+    FileUtil.writeToFile(new File(myDirectory, "resources.99.bin"), "not a cache");
+    MappedResourceCache latestValid = MappedResourceCache.openLatest(myDirectory, "resources");
+    assertNotNull(latestValid);
+    assertEquals("second", latestValid.getItemName(0));
+  }
+
+  public void testInvalidFiles() throws Exception {
+    assertNull(MappedResourceCache.open(new File(myDirectory, "missing.bin")));
+
+    File file = new File(myDirectory, "resources.bin");
+    FileUtil.writeToFile(file, "not a cache");
+    assertNull(MappedResourceCache.open(file));
+
+    MappedResourceCache.Writer writer = new MappedResourceCache.Writer();
+    writer.addFile("values/strings.xml", 0, 0);
+    writer.addItem(ResourceType.STRING, "hello", null, 0);
+    writer.write(file);
+    byte[] content = FileUtil.loadFileBytes(file);
+    byte[] truncated = new byte[content.length - 4];
+    System.arraycopy(content, 0, truncated, 0, truncated.length);
+    FileUtil.writeToFile(file, truncated);
+    assertNull(MappedResourceCache.open(file));
+  }
+}
@@ -22,6 +22,7 @@ import com.android.ide.common.resources.configuration.FolderConfiguration;
 import com.android.resources.Density;
 import com.android.resources.ResourceFolderType;
 import com.android.resources.ResourceType;
+import com.android.tools.idea.flags.StudioFlags;
 import com.google.common.collect.Collections2;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.command.WriteCommandAction;
@@ -51,6 +52,7 @@ import org.picocontainer.MutablePicoContainer;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
@@ -3809,6 +3811,60 @@ public class ResourceFolderRepositoryTest extends AndroidTestCase {
     assertEquals(Density.XHIGH, densityValue.getResourceDensity());
   }
 
+  public void testParallelScanMatchesSequentialScan() {
+    myFixture.copyFileToProject(LAYOUT1, "res/layout/layout.xml");
+    myFixture.copyFileToProject(LAYOUT1, "res/layout-xlarge-land/layout.xml");
+    myFixture.copyFileToProject(DRAWABLE, "res/drawable/logo.png");
+    myFixture.copyFileToProject(DRAWABLE, "res/drawable-hdpi/logo.png");
+    myFixture.copyFileToProject(VALUES1, "res/values/myvalues.xml");
+    myFixture.copyFileToProject(STRINGS, "res/values/strings.xml");
+    myFixture.copyFileToProject(STRINGS, "res/values-fr/not_really_french_strings.xml");
+    myFixture.copyFileToProject(XLIFF, "res/values/xliff.xml");
+
+    List<String> sequentialItems;
+    StudioFlags.RESOURCE_FOLDER_PARALLEL_SCAN.override(false);
+    try {
+      sequentialItems = describeItems(createRepository());
+    }
+    finally {
+      StudioFlags.RESOURCE_FOLDER_PARALLEL_SCAN.clearOverride();
+    }
+
+    myRegistry.reset();
+    StudioFlags.RESOURCE_FOLDER_PARALLEL_SCAN.override(true);
+    try {
+      ResourceFolderRepository resources = createRepository();
+      assertEquals(sequentialItems, describeItems(resources));
+      assertEquals(5, resources.myInitialScanState.numXml);
+      assertEquals(resources.myInitialScanState.numXml, resources.myInitialScanState.numXmlReparsed);
+
+      // The files parsed by the parallel scan are saved too.
+      resources.saveStateToFile();
+      myRegistry.reset();
+      ResourceFolderRepository fromBlob = createRepository();
+      assertTrue(fromBlob.hasFreshFileCache());
+      assertEquals(0, fromBlob.myInitialScanState.numXmlReparsed);
+      assertTrue(fromBlob.equalFilesItems(resources));
+    }
+    finally {
+      StudioFlags.RESOURCE_FOLDER_PARALLEL_SCAN.clearOverride();
+    }
+  }
+
+  /**
+   * Lists the items of the repository in order, with the files that define them.
+   */
+  @NotNull
+  private static List<String> describeItems(@NotNull ResourceFolderRepository resources) {
+    List<String> items = new ArrayList<>();
+    for (ResourceType type : ResourceType.values()) {
+      for (ResourceItem item : resources.getResources(RES_AUTO, type).values()) {
+        items.add(type + "/" + item.getName() + " " + item.getSource());
+      }
+    }
+    return items;
+  }
+
   /**
    * Checks that we handle PSI invalidation behaviour for PsiResourceItem.
    * When getting out of dumb mode, if the file has been modified during the dumb mode,
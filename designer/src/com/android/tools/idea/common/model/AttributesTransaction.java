@@ -34,6 +34,8 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import static com.android.SdkConstants.ANDROID_URI;
+import static com.android.SdkConstants.ATTR_ID;
 import static com.android.SdkConstants.ATTR_LAYOUT_RESOURCE_PREFIX;
 
 /**
@@ -156,6 +158,10 @@ public class AttributesTransaction implements NlAttributesHolder {
     finally {
       myLock.writeLock().unlock();
     }
+    if (ATTR_ID.equals(name) && ANDROID_URI.equals(namespace)) {
+      // The component id is looked up through the transaction, see NlComponent#getId
+      myModel.invalidateComponentIndex();
+    }
   }
 
   @Override
@@ -187,6 +193,9 @@ public class AttributesTransaction implements NlAttributesHolder {
     isValid = false;
 
     myComponent.myCurrentTransaction = null;
+    if (myPendingAttributes.containsKey(attributeKey(ANDROID_URI, ATTR_ID))) {
+      myModel.invalidateComponentIndex();
+    }
     boolean hadPendingChanges = !myPendingAttributes.isEmpty();
     myPendingAttributes.clear();
     myOriginalValues.clear();
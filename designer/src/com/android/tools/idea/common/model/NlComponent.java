@@ -174,6 +174,7 @@ public class NlComponent implements NlAttributesHolder {
       });
     }
     myTag = tag;
+    myModel.invalidateComponentIndex();
   }
 
   @Nullable
@@ -204,6 +205,7 @@ public class NlComponent implements NlAttributesHolder {
       }
     }
     component.setParent(this);
+    myModel.invalidateComponentIndex();
   }
 
   public void removeChild(@NotNull NlComponent component) {
@@ -218,9 +220,11 @@ public class NlComponent implements NlAttributesHolder {
       children.remove(component);
     }
     component.setParent(null);
+    myModel.invalidateComponentIndex();
   }
 
   public void setChildren(@Nullable List<NlComponent> components) {
+    myModel.invalidateComponentIndex();
     synchronized (children) {
       cachedChildrenCopy = null;
       children.clear();
@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.common.model;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.psi.xml.XmlTag;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Immutable snapshot of the components of an {@link NlModel}, indexed by id, by {@link XmlTag} and by
+ * the offsets of their tags in the file.
+ * <p>
+ * The index is only valid for the component hierarchy and the PSI it was built from. {@link NlModel} discards
+ * it when components are added, removed or moved, or when the PSI changes, and builds a new one on the next lookup.
+ * Must be built with read access.
+ */
+final class NlComponentIndex {
+  static final NlComponentIndex EMPTY = new NlComponentIndex(null, -1, -1);
+
+  private final long myStructureVersion;
+  private final long myPsiModificationCount;
+
+  /** All the components, in the same order as {@link NlModel#flattenComponents()} */
+  @NotNull private final List<NlComponent> myComponents = new ArrayList<>();
+  @NotNull private final Map<String, NlComponent> myIdToComponent = new HashMap<>();
+  @NotNull private final Map<XmlTag, ImmutableList<NlComponent>> myTagToComponents = Maps.newIdentityHashMap();
+
+  /**
+   * Valid tags of the file, with or without a component, sorted by start offset. Tags can only be nested, so the tag containing
+   * an offset is the last tag starting before the offset, or one of the tags containing that one, see {@link #myTagParents}.
+   */
+  @NotNull private final XmlTag[] myTags;
+  @NotNull private final int[] myTagStarts;
+  @NotNull private final int[] myTagEnds;
+  /** Index in {@link #myTags} of the innermost tag containing each tag, or -1 */
+  @NotNull private final int[] myTagParents;
+
+  NlComponentIndex(@Nullable NlComponent root, long structureVersion, long psiModificationCount) {
+    myStructureVersion = structureVersion;
+    myPsiModificationCount = psiModificationCount;
+
+    Map<XmlTag, List<NlComponent>> tagToComponents = Maps.newIdentityHashMap();
+    if (root != null) {
+      addComponent(root, tagToComponents);
+    }
+    for (Map.Entry<XmlTag, List<NlComponent>> entry : tagToComponents.entrySet()) {
+      myTagToComponents.put(entry.getKey(), ImmutableList.copyOf(entry.getValue()));
+    }
+
+    // Tags without a component are indexed too, so that offsets inside them are not attributed to the enclosing component
+    Set<XmlTag> allTags = Sets.newIdentityHashSet();
+    allTags.addAll(tagToComponents.keySet());
+    if (root != null) {
+      addSubTags(root.getTag(), allTags);
+    }
+    List<XmlTag> tags = new ArrayList<>(allTags.size());
+    List<TextRange> ranges = new ArrayList<>(allTags.size());
+    for (XmlTag tag : allTags) {
+      if (tag.isValid()) {
+        tags.add(tag);
+        ranges.add(tag.getTextRange());
+      }
+    }
+    Integer[] order = new Integer[tags.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    // Outer tags before inner tags starting at the same offset
+    Arrays.sort(order, Comparator.<Integer>comparingInt(i -> ranges.get(i).getStartOffset())
+      .thenComparing(Comparator.<Integer>comparingInt(i -> ranges.get(i).getEndOffset()).reversed()));
+
+    myTags = new XmlTag[order.length];
+    myTagStarts = new int[order.length];
+    myTagEnds = new int[order.length];
+    myTagParents = new int[order.length];
+    Deque<Integer> enclosing = new ArrayDeque<>();
+    for (int i = 0; i < order.length; i++) {
+      TextRange range = ranges.get(order[i]);
+      myTags[i] = tags.get(order[i]);
+      myTagStarts[i] = range.getStartOffset();
+      myTagEnds[i] = range.getEndOffset();
+      while (!enclosing.isEmpty() && myTagEnds[enclosing.peek()] <= myTagStarts[i]) {
+        enclosing.pop();
+      }
+      myTagParents[i] = enclosing.isEmpty() ? -1 : enclosing.peek();
+      enclosing.push(i);
+    }
+  }
+
+  private void addComponent(@NotNull NlComponent component, @NotNull Map<XmlTag, List<NlComponent>> tagToComponents) {
+    myComponents.add(component);
+    String id = component.getId();
+    if (id != null) {
+      myIdToComponent.putIfAbsent(id, component);
+    }
+    tagToComponents.computeIfAbsent(component.getTag(), tag -> new ArrayList<>(1)).add(component);
+
+    for (NlComponent child : component.getChildren()) {
+      addComponent(child, tagToComponents);
+    }
+  }
+
+  private static void addSubTags(@NotNull XmlTag tag, @NotNull Set<XmlTag> tags) {
+    if (!tag.isValid()) {
+      return;
+    }
+    for (XmlTag subTag : tag.getSubTags()) {
+      tags.add(subTag);
+      addSubTags(subTag, tags);
+    }
+  }
+
+  boolean isUpToDate(long structureVersion, long psiModificationCount) {
+    return myStructureVersion == structureVersion && myPsiModificationCount == psiModificationCount;
+  }
+
+  @NotNull
+  List<NlComponent> getComponents() {
+    return myComponents;
+  }
+
+  @Nullable
+  NlComponent findById(@NotNull String id) {
+    return myIdToComponent.get(id);
+  }
+
+  @NotNull
+  ImmutableList<NlComponent> findByTag(@NotNull XmlTag tag) {
+    ImmutableList<NlComponent> components = myTagToComponents.get(tag);
+    return components != null ? components : ImmutableList.of();
+  }
+
+  /**
+   * Returns the components of the innermost tag containing the {@code offset}. This is an empty list if that tag has
+   * no component, e.g. {@code <requestFocus/>}, even if an enclosing tag has one.
+   */
+  @NotNull
+  ImmutableList<NlComponent> findByOffset(int offset) {
+    int low = 0;
+    int high = myTagStarts.length - 1;
+    int index = -1;
+    while (low <= high) {
+      int middle = (low + high) >>> 1;
+      if (myTagStarts[middle] <= offset) {
+        index = middle;
+        low = middle + 1;
+      }
+      else {
+        high = middle - 1;
+      }
+    }
+
+    while (index != -1 && myTagEnds[index] <= offset) {
+      index = myTagParents[index];
+    }
+    return index != -1 ? findByTag(myTags[index]) : ImmutableList.of();
+  }
+}
@@ -66,7 +66,7 @@ import com.intellij.openapi.util.Disposer;
 import com.intellij.openapi.util.ModificationTracker;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.PsiManager;
 import com.intellij.psi.xml.XmlAttribute;
 import com.intellij.psi.xml.XmlFile;
 import com.intellij.psi.xml.XmlTag;
@@ -113,6 +113,13 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
   // Variable to track what triggered the latest render (if known)
   private ChangeType myModificationTrigger;
 
+  /**
+   * Incremented when components are added, removed or moved, or when their tag or id may have changed,
+   * see {@link #invalidateComponentIndex()}.
+   */
+  private final AtomicLong myComponentStructureVersion = new AtomicLong();
+  @NotNull private volatile NlComponentIndex myComponentIndex = NlComponentIndex.EMPTY;
+
   @NotNull
   public static NlModel create(@Nullable Disposable parent,
                                @NotNull AndroidFacet facet,
@@ -507,6 +514,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     public void update(@Nullable XmlTag newRoot, @NotNull List<TagSnapshotTreeNode> roots) {
       if (newRoot == null) {
         myModel.myRootComponent = null;
+        myModel.invalidateComponentIndex();
         return;
       }
 
@@ -552,6 +560,7 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
       for (TagSnapshotTreeNode root : roots) {
         updateHierarchy(root);
       }
+      myModel.invalidateComponentIndex();
     }
 
     private void mapOldToNew(@NotNull XmlTag newRootTag) {
@@ -786,34 +795,74 @@ public class NlModel implements Disposable, ResourceChangeListener, Modification
     }
   }
 
+  /**
+   * Marks the component lookup index as out of date. Called when components are added, removed or moved, or when their tag or
+   * their id may change without a PSI change.
+   */
+  void invalidateComponentIndex() {
+    myComponentStructureVersion.incrementAndGet();
+  }
+
+  /**
+   * Returns the component lookup index, building a new one if the component hierarchy or the PSI changed since the last lookup.
+   */
+  @NotNull
+  private NlComponentIndex getComponentIndex() {
+    Project project = getProject();
+    long structureVersion = myComponentStructureVersion.get();
+    if (project.isDisposed()) {
+      return ApplicationManager.getApplication().runReadAction(
+        (Computable<NlComponentIndex>)() -> new NlComponentIndex(myRootComponent, -1, -1));
+    }
+
+    long psiModificationCount = PsiManager.getInstance(project).getModificationTracker().getModificationCount();
+    NlComponentIndex index = myComponentIndex;
+    if (!index.isUpToDate(structureVersion, psiModificationCount)) {
+      index = ApplicationManager.getApplication().runReadAction(
+        (Computable<NlComponentIndex>)() -> new NlComponentIndex(myRootComponent, structureVersion, psiModificationCount));
+      myComponentIndex = index;
+    }
+    return index;
+  }
+
+  /**
+   * Returns the components of the innermost tag at the given offset, or an empty list if that tag is not a component.
+   */
   @NotNull
   public ImmutableList<NlComponent> findByOffset(int offset) {
-    XmlTag tag = PsiTreeUtil.findElementOfClassAtOffset(getFile(), offset, XmlTag.class, false);
-    return (tag != null) ? findViewsByTag(tag) : ImmutableList.of();
+    return getComponentIndex().findByOffset(offset);
   }
 
   @Nullable
   public NlComponent findViewByTag(@NotNull XmlTag tag) {
-    return myRootComponent != null ? myRootComponent.findViewByTag(tag) : null;
+    ImmutableList<NlComponent> components = findViewsByTag(tag);
+    return !components.isEmpty() ? components.get(0) : null;
   }
 
   @Nullable
   public NlComponent find(@NotNull String id) {
-    return flattenComponents().filter(c -> id.equals(c.getId())).findFirst().orElse(null);
+    NlComponent component = getComponentIndex().findById(id);
+    if (component != null && !id.equals(component.getId())) {
+      // The id was changed without going through the PSI, e.g. by a component delegate
+      invalidateComponentIndex();
+      component = getComponentIndex().findById(id);
+    }
+    return component;
   }
 
   @Nullable
   public NlComponent find(@NotNull Predicate<NlComponent> condition) {
-    return flattenComponents().filter(condition).findFirst().orElse(null);
+    for (NlComponent component : getComponentIndex().getComponents()) {
+      if (condition.test(component)) {
+        return component;
+      }
+    }
+    return null;
   }
 
   @NotNull
   private ImmutableList<NlComponent> findViewsByTag(@NotNull XmlTag tag) {
-    if (myRootComponent == null) {
-      return ImmutableList.of();
-    }
-
-    return myRootComponent.findViewsByTag(tag);
+    return getComponentIndex().findByTag(tag);
   }
 
   @Nullable
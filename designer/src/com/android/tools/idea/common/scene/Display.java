@@ -51,7 +51,7 @@ public class Display {
       scene.buildDisplayList(myDisplayList, mTime, sceneContext);
       myDisplayListVersion = scene.getDisplayListVersion();
       if (needsRebuild) {
-        scene.needsRebuildList();
+        scene.needsRebuildChangedComponents();
       }
     }
     draw(sceneContext, g, myDisplayList);
@@ -93,6 +93,11 @@ public class Scene implements SelectionListener, Disposable {
   public static final int IMMEDIATE_LAYOUT = 1;
   public static final int ANIMATED_LAYOUT = 2;
   private long myDisplayListVersion = 1;
+  /**
+   * Version of the commands cached by the {@link SceneComponent}s, incremented when all of them need to be rebuilt.
+   * See {@link SceneComponent#getCachedDisplayList(SceneContext)}.
+   */
+  private long myCachedDisplayListVersion = 1;
   private Target myOverTarget;
   private Target mySnapTarget;
   private SceneComponent myCurrentComponent;
@@ -128,10 +133,10 @@ public class Scene implements SelectionListener, Disposable {
     mySceneManager = sceneManager;
 
     SelectionModel selectionModel = myDesignSurface.getSelectionModel();
-    myHoverListener = new SceneHitListener(selectionModel);
-    myHitListener = new SceneHitListener(selectionModel);
-    myFindListener = new SceneHitListener(selectionModel);
-    mySnapListener = new SceneHitListener(selectionModel);
+    myHoverListener = new SceneHitListener(this, selectionModel);
+    myHitListener = new SceneHitListener(this, selectionModel);
+    myFindListener = new SceneHitListener(this, selectionModel);
+    mySnapListener = new SceneHitListener(this, selectionModel);
     selectionModel.addListener(this);
 
     myIsLiveRenderingEnabled = renderSettings.getUseLiveRendering();
@@ -330,6 +335,7 @@ public class Scene implements SelectionListener, Disposable {
     if (myRoot != null) {
       markSelection(myRoot, model);
     }
+    invalidateHitListeners();
   }
 
   /**
@@ -407,7 +413,7 @@ public class Scene implements SelectionListener, Disposable {
     if (myRoot != null) {
       needsToRebuildDisplayList = myRoot.layout(sceneContext, time);
       if (needsToRebuildDisplayList) {
-        needsRebuildList();
+        needsRebuildChangedComponents();
       }
     }
     return needsToRebuildDisplayList;
@@ -464,12 +470,12 @@ public class Scene implements SelectionListener, Disposable {
       if (myOverTarget != null) {
         myOverTarget.setMouseHovered(false);
         myOverTarget = null;
-        needsRebuildList();
+        needsRebuildChangedComponents();
       }
       if (closestTarget != null) {
         closestTarget.setMouseHovered(true);
         myOverTarget = closestTarget;
-        needsRebuildList();
+        needsRebuildChangedComponents();
       }
     }
     if (closestTarget != null) {
@@ -479,12 +485,12 @@ public class Scene implements SelectionListener, Disposable {
         if (mySnapTarget != null) {
           mySnapTarget.setMouseHovered(false);
           mySnapTarget = null;
-          needsRebuildList();
+          needsRebuildChangedComponents();
         }
         if (snapTarget != null) {
           snapTarget.setMouseHovered(true);
           mySnapTarget = closestTarget;
-          needsRebuildList();
+          needsRebuildChangedComponents();
         }
       }
     }
@@ -501,7 +507,8 @@ public class Scene implements SelectionListener, Disposable {
         closestComponent.setDrawState(SceneComponent.DrawState.HOVER);
         myCurrentComponent = closestComponent;
       }
-      needsRebuildList();
+      // setDrawState() already discarded the commands of the components that changed
+      needsRebuildChangedComponents();
     }
     transform.setToolTip(tooltip);
     setCursor(transform, x, y);
@@ -602,6 +609,7 @@ public class Scene implements SelectionListener, Disposable {
     myLastMouseX = x;
     myLastMouseY = y;
     myFilterType = FilterType.NONE;
+    invalidateHitListeners();
     if (myRoot == null) {
       return;
     }
@@ -702,6 +710,7 @@ public class Scene implements SelectionListener, Disposable {
       }
     }
     myFilterType = FilterType.NONE;
+    invalidateHitListeners();
     myNewSelectedComponentsOnRelease.clear();
     if (myHitComponent != null && closestComponent == myHitComponent) {
       myNewSelectedComponentsOnRelease.add(myHitComponent);
@@ -761,10 +770,31 @@ public class Scene implements SelectionListener, Disposable {
     return myDisplayListVersion;
   }
 
+  long getCachedDisplayListVersion() {
+    return myCachedDisplayListVersion;
+  }
+
   // TODO: reduce visibility? Probably the modified SceneComponents should do this rather than
   // requiring it to be done explicitly by the code that's modifying them.
   public void needsRebuildList() {
     myDisplayListVersion++;
+    myCachedDisplayListVersion++;
+  }
+
+  /**
+   * Rebuild the display list, only regenerating the commands of the given component. Use this instead of
+   * {@link #needsRebuildList()} when a change only affects how a single component is drawn.
+   */
+  public void needsRebuildList(@NotNull SceneComponent component) {
+    component.invalidateDisplayList();
+    myDisplayListVersion++;
+  }
+
+  /**
+   * Rebuild the display list, reusing the commands cached by the components that did not change.
+   */
+  void needsRebuildChangedComponents() {
+    myDisplayListVersion++;
   }
 
   //endregion
@@ -845,6 +875,18 @@ public class Scene implements SelectionListener, Disposable {
 
   public void setFilterType(@NotNull FilterType filterType) {
     myFilterType = filterType;
+    invalidateHitListeners();
+  }
+
+  /**
+   * Discards the hit regions kept by the hit listeners. They are otherwise only added again when the display list
+   * version or the transform changes.
+   */
+  private void invalidateHitListeners() {
+    myHoverListener.invalidate();
+    myHitListener.invalidate();
+    myFindListener.invalidate();
+    mySnapListener.invalidate();
   }
 
   @Nullable
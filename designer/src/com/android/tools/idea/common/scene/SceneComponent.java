@@ -16,14 +16,17 @@
 package com.android.tools.idea.common.scene;
 
 import com.android.annotations.VisibleForTesting;
+import com.android.tools.adtui.common.SwingCoordinate;
 import com.android.tools.idea.common.model.AndroidDpCoordinate;
 import com.android.tools.idea.common.model.Coordinates;
 import com.android.tools.idea.common.model.NlComponent;
 import com.android.tools.idea.common.scene.decorator.SceneDecorator;
 import com.android.tools.idea.common.scene.draw.DisplayList;
+import com.android.tools.idea.common.scene.draw.DrawCommand;
 import com.android.tools.idea.common.scene.target.*;
 import com.android.tools.idea.flags.StudioFlags;
 import com.android.tools.idea.uibuilder.api.ViewGroupHandler;
+import com.android.tools.idea.uibuilder.handlers.constraint.drawing.ColorSet;
 import com.android.tools.idea.uibuilder.model.NlComponentHelperKt;
 import com.android.tools.idea.uibuilder.scene.decorator.DecoratorUtilities;
 import com.android.tools.idea.uibuilder.scene.target.Notch;
@@ -36,6 +39,7 @@ import org.jetbrains.annotations.Nullable;
 import javax.annotation.concurrent.GuardedBy;
 import java.awt.*;
 import java.awt.geom.Rectangle2D;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -95,6 +99,13 @@ public class SceneComponent {
 
   @Nullable private Notch.Provider myNotchProvider = null;
 
+  /**
+   * Commands drawing this component, without its targets and children, for the last {@link SceneContext}s used.
+   * Several contexts are kept since a Scene can be painted in more than one view, e.g. design and blueprint.
+   */
+  private final ArrayList<CachedDisplayList> myCachedDisplayLists = new ArrayList<>(MAX_CACHED_DISPLAY_LISTS);
+  private static final int MAX_CACHED_DISPLAY_LISTS = 2;
+
   @AndroidDpCoordinate
   public int getCenterX() {
     return myCurrentLeft + (myCurrentRight - myCurrentLeft) / 2;
@@ -418,7 +429,7 @@ public class SceneComponent {
         NlComponentHelperKt.setX(myNlComponent, Coordinates.dpToPx(myScene.getDesignSurface(), dx));
         NlComponentHelperKt.setY(myNlComponent, Coordinates.dpToPx(myScene.getDesignSurface(), dy));
       }
-      myScene.needsRebuildList();
+      myScene.needsRebuildList(this);
     }
   }
 
@@ -442,7 +453,7 @@ public class SceneComponent {
         NlComponentHelperKt.setY(myNlComponent, Coordinates.dpToPx(myScene.getDesignSurface(), dy));
       }
       else {
-        myScene.needsRebuildList();
+        myScene.needsRebuildList(this);
       }
     }
   }
@@ -459,7 +470,7 @@ public class SceneComponent {
         NlComponentHelperKt.setW(myNlComponent, Coordinates.dpToPx(myScene.getDesignSurface(), width));
         NlComponentHelperKt.setH(myNlComponent, Coordinates.dpToPx(myScene.getDesignSurface(), height));
       }
-      myScene.needsRebuildList();
+      myScene.needsRebuildList(this);
     }
   }
 
@@ -523,6 +534,9 @@ public class SceneComponent {
   }
 
   public void setToolLocked(boolean locked) {
+    if (myIsToolLocked != locked) {
+      invalidateDisplayList();
+    }
     myIsToolLocked = locked;
   }
 
@@ -537,6 +551,7 @@ public class SceneComponent {
       myDrawState = DrawState.SELECTED;
     }
     if (oldState != myDrawState) {
+      invalidateDisplayList();
       DecoratorUtilities.setTimeChange(myNlComponent, DecoratorUtilities.VIEW, DecoratorUtilities.mapState(drawState));
     }
   }
@@ -563,8 +578,10 @@ public class SceneComponent {
   }
 
   public void setDragging(boolean dragging) {
-    if (!getNlComponent().isRoot()) {
+    if (!getNlComponent().isRoot() && myDragging != dragging) {
       myDragging = dragging;
+      // Dragging changes which targets are hittable, see SceneHitListener
+      myScene.needsRebuildChangedComponents();
     }
   }
 
@@ -709,6 +726,7 @@ public class SceneComponent {
     child.removeFromParent();
     child.setParent(this);
     myChildren.add(child);
+    invalidateDisplayList();
   }
 
   public void removeFromParent() {
@@ -721,6 +739,7 @@ public class SceneComponent {
   private void remove(@NotNull SceneComponent component) {
     if (myChildren.remove(component)) {
       component.myParent = null;
+      invalidateDisplayList();
     }
   }
 
@@ -753,6 +772,9 @@ public class SceneComponent {
     animating |= myAnimatedDrawHeight.isAnimating();
 
     needsRebuildDisplayList |= animating;
+    if (needsRebuildDisplayList) {
+      invalidateDisplayList();
+    }
 
     ImmutableList<Target> targets = getTargets();
     int num = targets.size();
@@ -808,6 +830,43 @@ public class SceneComponent {
     myDecorator.buildList(list, time, sceneContext, this);
   }
 
+  /**
+   * Returns the commands drawing this component that were built for the given {@link SceneContext}, or null if
+   * the component changed since, or if the commands were not built yet.
+   */
+  @Nullable
+  public List<DrawCommand> getCachedDisplayList(@NotNull SceneContext sceneContext) {
+    long version = myScene.getCachedDisplayListVersion();
+    for (int i = 0; i < myCachedDisplayLists.size(); i++) {
+      CachedDisplayList cached = myCachedDisplayLists.get(i);
+      if (cached.isValidFor(sceneContext, version)) {
+        return cached.myCommands;
+      }
+    }
+    return null;
+  }
+
+  public void setCachedDisplayList(@NotNull SceneContext sceneContext, @NotNull List<DrawCommand> commands) {
+    long version = myScene.getCachedDisplayListVersion();
+    myCachedDisplayLists.removeIf(cached -> cached.mySceneContext.get() == sceneContext || cached.myVersion != version);
+    if (myCachedDisplayLists.size() >= MAX_CACHED_DISPLAY_LISTS) {
+      myCachedDisplayLists.remove(0);
+    }
+    myCachedDisplayLists.add(new CachedDisplayList(sceneContext, version, new ArrayList<>(commands)));
+  }
+
+  /**
+   * Discards the cached commands drawing this component, and the ones of its parent since layouts can draw
+   * decorations depending on their children.
+   */
+  public void invalidateDisplayList() {
+    myCachedDisplayLists.clear();
+    SceneComponent parent = myParent;
+    if (parent != null) {
+      parent.myCachedDisplayLists.clear();
+    }
+  }
+
   //endregion
   /////////////////////////////////////////////////////////////////////////////
 
@@ -921,4 +980,40 @@ public class SceneComponent {
   public void setModelUpdateAuthorized(boolean modelUpdateAuthorized) {
     myIsModelUpdateAuthorized = modelUpdateAuthorized;
   }
+
+  /**
+   * Commands built for a {@link SceneContext}. They are only valid while the context has the same scale, offset and
+   * colors, since the commands are in Swing coordinates.
+   */
+  private static class CachedDisplayList {
+    @NotNull private final WeakReference<SceneContext> mySceneContext;
+    private final long myVersion;
+    private final double myScale;
+    @SwingCoordinate private final int mySwingX;
+    @SwingCoordinate private final int mySwingY;
+    @Nullable private final ColorSet myColorSet;
+    private final boolean myShowOnlySelection;
+    @NotNull private final List<DrawCommand> myCommands;
+
+    CachedDisplayList(@NotNull SceneContext sceneContext, long version, @NotNull List<DrawCommand> commands) {
+      mySceneContext = new WeakReference<>(sceneContext);
+      myVersion = version;
+      myScale = sceneContext.getScale();
+      mySwingX = sceneContext.getSwingXDip(0);
+      mySwingY = sceneContext.getSwingYDip(0);
+      myColorSet = sceneContext.getColorSet();
+      myShowOnlySelection = sceneContext.showOnlySelection();
+      myCommands = commands;
+    }
+
+    boolean isValidFor(@NotNull SceneContext sceneContext, long version) {
+      return mySceneContext.get() == sceneContext &&
+             myVersion == version &&
+             myScale == sceneContext.getScale() &&
+             mySwingX == sceneContext.getSwingXDip(0) &&
+             mySwingY == sceneContext.getSwingYDip(0) &&
+             myColorSet == sceneContext.getColorSet() &&
+             myShowOnlySelection == sceneContext.showOnlySelection();
+    }
+  }
 }
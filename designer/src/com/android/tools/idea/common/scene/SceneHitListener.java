@@ -29,15 +29,28 @@ import java.util.List;
  * Hit listener implementation (used for hover / click detection)
  */
 class SceneHitListener implements ScenePicker.HitElementListener {
+  @NotNull private final Scene myScene;
   @NotNull private SelectionModel mySelectionModel;
   private ScenePicker myPicker = new ScenePicker();
+  /**
+   * State the regions currently held by {@link #myPicker} were added for. While the scene display list version and
+   * the transform are unchanged the regions (and the picker grid) are reused across queries.
+   */
+  private boolean myPickerValid = false;
+  private long myPickerDisplayListVersion;
+  @Nullable private SceneContext myPickerTransform;
+  private double myPickerScale;
+  private int myPickerOriginX;
+  private int myPickerOriginY;
+  @Nullable private SceneComponent myPickerRoot;
   double myClosestComponentDistance = Double.MAX_VALUE;
   double myClosestTargetDistance = Double.MAX_VALUE;
   ArrayList<SceneComponent> myHitComponents = new ArrayList<>();
   @NotNull final ArrayList<Target> myHitTargets = new ArrayList<>();
   Target mySkipTarget = null;
 
-  SceneHitListener(@NotNull SelectionModel selectionModel) {
+  SceneHitListener(@NotNull Scene scene, @NotNull SelectionModel selectionModel) {
+    myScene = scene;
     mySelectionModel = selectionModel;
     myPicker.setSelectListener(this);
   }
@@ -54,11 +67,41 @@ class SceneHitListener implements ScenePicker.HitElementListener {
     myHitTargets.clear();
     myClosestComponentDistance = Double.MAX_VALUE;
     myClosestTargetDistance = Double.MAX_VALUE;
-    myPicker.reset();
-    root.addHit(transform, myPicker);
+    if (!isPickerValid(transform, root)) {
+      myPicker.reset();
+      root.addHit(transform, myPicker);
+      myPickerValid = true;
+      myPickerDisplayListVersion = myScene.getDisplayListVersion();
+      myPickerTransform = transform;
+      myPickerScale = transform.getScale();
+      myPickerOriginX = transform.getSwingXDip(0);
+      myPickerOriginY = transform.getSwingYDip(0);
+      myPickerRoot = root;
+    }
     myPicker.find(transform.getSwingXDip(x), transform.getSwingYDip(y));
   }
 
+  /**
+   * Discards the hit regions, forcing the next {@link #find} to add them again. Used when something that does not
+   * change the display list (e.g. the filter type or the selection) changes which targets are hittable.
+   */
+  void invalidate() {
+    myPickerValid = false;
+    myPickerTransform = null;
+    myPickerRoot = null;
+  }
+
+  @SuppressWarnings("FloatingPointEquality")  // The scale is only compared with a previously read value.
+  private boolean isPickerValid(@NotNull SceneContext transform, @NotNull SceneComponent root) {
+    return myPickerValid
+           && myPickerDisplayListVersion == myScene.getDisplayListVersion()
+           && myPickerTransform == transform
+           && myPickerRoot == root
+           && myPickerScale == transform.getScale()
+           && myPickerOriginX == transform.getSwingXDip(0)
+           && myPickerOriginY == transform.getSwingYDip(0);
+  }
+
   @SuppressWarnings("FloatingPointEquality")  // The values are directly assigned with no math, so this should be fine.
   @Override
   public void over(Object over, double dist) {
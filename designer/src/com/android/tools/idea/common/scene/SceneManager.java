@@ -49,6 +49,8 @@ abstract public class SceneManager implements Disposable {
   @SuppressWarnings("NullableProblems")
   @NotNull private SceneView mySceneView;
   @NotNull private final HitProvider myHitProvider = new DefaultHitProvider();
+  /** Modification count of the model when {@link #update()} last discarded the commands cached by all the components */
+  private long myCachedDisplayListModelVersion = -1;
 
   public SceneManager(@NotNull NlModel model, @NotNull DesignSurface surface, @NotNull RenderSettings renderSettings) {
     myModel = model;
@@ -131,7 +133,16 @@ abstract public class SceneManager implements Disposable {
     oldComponents.removeIf(component -> component instanceof TemporarySceneComponent);
     oldComponents.forEach(scene::removeComponent);
 
-    scene.needsRebuildList();
+    long modelVersion = getModel().getModificationCount();
+    if (modelVersion != myCachedDisplayListModelVersion) {
+      // Attribute edits (e.g. text, textAlignment or layout_width) change how components are drawn without moving them
+      myCachedDisplayListModelVersion = modelVersion;
+      scene.needsRebuildList();
+    }
+    else {
+      // Components that moved, were resized or changed their children discarded their cached commands
+      scene.needsRebuildChangedComponents();
+    }
   }
 
   @NotNull
@@ -24,6 +24,12 @@ public class ScenePicker {
   private final static int MAX_DATA_SIZE = 10;
   private final static int INITAL_OBJECT_STORE = 30;
   private final static double EPSILON = 0.00001;
+  /**
+   * Number of objects from which {@link #find(int, int)} uses a grid of cells instead of checking every object
+   */
+  private final static int GRID_THRESHOLD = 32;
+  private final static int GRID_MAX_CELLS = 64;
+  private final static int GRID_MIN_CELL_SIZE = 32;
   private double[] mObjectData = new double[100];
   private int mObjectDataUsed = 0;
   private int[] mObjectOffset = new int[INITAL_OBJECT_STORE];
@@ -33,6 +39,19 @@ public class ScenePicker {
   HitElementListener mHitElementListener;
 
   private int mObjectCount = 0;
+
+  // Grid of cells covering the bounding rectangles of all the objects, built on the first find() after objects are added.
+  // The indexes of the objects overlapping each cell are stored in increasing order in mGridObjects, from
+  // mGridCellStart[cell] to mGridCellStart[cell + 1].
+  private boolean mGridValid = false;
+  private int mGridX;
+  private int mGridY;
+  private int mGridCellWidth;
+  private int mGridCellHeight;
+  private int mGridColumns;
+  private int mGridRows;
+  private int[] mGridCellStart = new int[1];
+  private int[] mGridObjects = new int[INITAL_OBJECT_STORE];
   private final static int OBJECT_LINE = 0;
   private final static int OBJECT_POINT = 1;
   private final static int OBJECT_CURVE = 2;
@@ -60,19 +79,110 @@ public class ScenePicker {
    * @param y location y
    */
   public void find(int x, int y) {
+    if (mObjectCount < GRID_THRESHOLD) {
+      for (int i = 0; i < mObjectCount; i++) {
+        find(i, x, y);
+      }
+      return;
+    }
+
+    if (!mGridValid) {
+      buildGrid();
+    }
+    if (x < mGridX || y < mGridY) {
+      return;
+    }
+    int column = (x - mGridX) / mGridCellWidth;
+    int row = (y - mGridY) / mGridCellHeight;
+    if (column >= mGridColumns || row >= mGridRows) {
+      return;
+    }
+    int cell = row * mGridColumns + column;
+    // Objects are listed in the order they were added, so the listener is notified in the same order as a full scan
+    for (int j = mGridCellStart[cell]; j < mGridCellStart[cell + 1]; j++) {
+      find(mGridObjects[j], x, y);
+    }
+  }
+
+  private void find(int i, int x, int y) {
+    int p = i * 4;
+    int x1 = mRect[p++];
+    int y1 = mRect[p++];
+    int x2 = mRect[p++];
+    int y2 = mRect[p];
+    if (inRect(x, y, x1, y1, x2, y2)) {
+      SelectionEngine selector = myEngines[mTypes[i]];
+      if (selector.inRange(i, x, y)) {
+        mHitElementListener.over(mObjects[i], selector.distance());
+      }
+    }
+  }
+
+  /**
+   * Builds the grid of cells used by {@link #find(int, int)}. The cell size adapts to the area covered by the objects,
+   * so that the grid has at most {@link #GRID_MAX_CELLS} columns and rows.
+   */
+  private void buildGrid() {
+    int minX = Integer.MAX_VALUE;
+    int minY = Integer.MAX_VALUE;
+    int maxX = Integer.MIN_VALUE;
+    int maxY = Integer.MIN_VALUE;
+    for (int i = 0; i < mObjectCount; i++) {
+      int p = i * 4;
+      minX = Math.min(minX, mRect[p]);
+      minY = Math.min(minY, mRect[p + 1]);
+      maxX = Math.max(maxX, mRect[p + 2]);
+      maxY = Math.max(maxY, mRect[p + 3]);
+    }
+    mGridX = minX;
+    mGridY = minY;
+    mGridCellWidth = (int)Math.max(GRID_MIN_CELL_SIZE, ((long)maxX - minX + GRID_MAX_CELLS) / GRID_MAX_CELLS);
+    mGridCellHeight = (int)Math.max(GRID_MIN_CELL_SIZE, ((long)maxY - minY + GRID_MAX_CELLS) / GRID_MAX_CELLS);
+    mGridColumns = (int)(((long)maxX - minX) / mGridCellWidth) + 1;
+    mGridRows = (int)(((long)maxY - minY) / mGridCellHeight) + 1;
+
+    int cellCount = mGridColumns * mGridRows;
+    if (mGridCellStart.length < cellCount + 1) {
+      mGridCellStart = new int[cellCount + 1];
+    }
+    else {
+      Arrays.fill(mGridCellStart, 0, cellCount + 1, 0);
+    }
+
+    // Count the objects of each cell, then turn the counts into start positions
+    for (int i = 0; i < mObjectCount; i++) {
+      int p = i * 4;
+      int column1 = (mRect[p] - mGridX) / mGridCellWidth;
+      int row1 = (mRect[p + 1] - mGridY) / mGridCellHeight;
+      int column2 = (mRect[p + 2] - mGridX) / mGridCellWidth;
+      int row2 = (mRect[p + 3] - mGridY) / mGridCellHeight;
+      for (int row = row1; row <= row2; row++) {
+        for (int column = column1; column <= column2; column++) {
+          mGridCellStart[row * mGridColumns + column + 1]++;
+        }
+      }
+    }
+    for (int cell = 0; cell < cellCount; cell++) {
+      mGridCellStart[cell + 1] += mGridCellStart[cell];
+    }
+    if (mGridObjects.length < mGridCellStart[cellCount]) {
+      mGridObjects = new int[mGridCellStart[cellCount]];
+    }
+
+    int[] next = Arrays.copyOf(mGridCellStart, cellCount);
     for (int i = 0; i < mObjectCount; i++) {
       int p = i * 4;
-      int x1 = mRect[p++];
-      int y1 = mRect[p++];
-      int x2 = mRect[p++];
-      int y2 = mRect[p];
-      if (inRect(x, y, x1, y1, x2, y2)) {
-        SelectionEngine selector = myEngines[mTypes[i]];
-        if (selector.inRange(i, x, y)) {
-          mHitElementListener.over(mObjects[i], selector.distance());
+      int column1 = (mRect[p] - mGridX) / mGridCellWidth;
+      int row1 = (mRect[p + 1] - mGridY) / mGridCellHeight;
+      int column2 = (mRect[p + 2] - mGridX) / mGridCellWidth;
+      int row2 = (mRect[p + 3] - mGridY) / mGridCellHeight;
+      for (int row = row1; row <= row2; row++) {
+        for (int column = column1; column <= column2; column++) {
+          mGridObjects[next[row * mGridColumns + column]++] = i;
         }
       }
     }
+    mGridValid = true;
   }
 
   /**
@@ -114,6 +224,7 @@ public class ScenePicker {
   public void reset() {
     mObjectCount = 0;
     mObjectDataUsed = 0;
+    mGridValid = false;
     Arrays.fill(mObjects, null);// delete references
   }
 
@@ -219,6 +330,7 @@ public class ScenePicker {
     protected int mDataOffset;
 
     protected void addRect(int x1, int y1, int x2, int y2) {
+      mGridValid = false;
       int off = mObjectCount * 4;
       mRect[off++] = x1;
       mRect[off++] = y1;
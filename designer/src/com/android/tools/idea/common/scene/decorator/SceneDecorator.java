@@ -18,6 +18,7 @@ package com.android.tools.idea.common.scene.decorator;
 import com.android.tools.idea.common.scene.SceneComponent;
 import com.android.tools.idea.common.scene.SceneContext;
 import com.android.tools.idea.common.scene.draw.DisplayList;
+import com.android.tools.idea.common.scene.draw.DrawCommand;
 import com.android.tools.idea.common.scene.draw.DrawComponentBackground;
 import com.android.tools.idea.common.scene.draw.DrawComponentFrame;
 import com.android.tools.idea.common.surface.SceneLayer;
@@ -62,11 +63,42 @@ public class SceneDecorator {
       buildListChildren(list, time, sceneContext, component);
       return;
     }
-    buildListComponent(list, time, sceneContext, component);
+    buildCachedListComponent(list, time, sceneContext, component);
     buildListTargets(list, time, sceneContext, component);
     buildListChildren(list, time, sceneContext, component);
   }
 
+  /**
+   * Adds the commands of {@link #buildListComponent}, reusing the ones built previously if the component did not change.
+   * The commands are rebuilt after {@link SceneComponent#invalidateDisplayList()} or
+   * {@link com.android.tools.idea.common.scene.Scene#needsRebuildList()} are called.
+   */
+  private void buildCachedListComponent(@NotNull DisplayList list,
+                                        long time,
+                                        @NotNull SceneContext sceneContext,
+                                        @NotNull SceneComponent component) {
+    if (!canCacheListComponent()) {
+      buildListComponent(list, time, sceneContext, component);
+      return;
+    }
+    List<DrawCommand> commands = component.getCachedDisplayList(sceneContext);
+    if (commands != null) {
+      list.getCommands().addAll(commands);
+      return;
+    }
+    int start = list.getCommands().size();
+    buildListComponent(list, time, sceneContext, component);
+    component.setCachedDisplayList(sceneContext, list.getCommands().subList(start, list.getCommands().size()));
+  }
+
+  /**
+   * Returns true if the commands built by {@link #buildListComponent} only depend on the component itself, its children
+   * and the {@link SceneContext}, so they can be reused until the component changes.
+   */
+  protected boolean canCacheListComponent() {
+    return true;
+  }
+
   public void buildListComponent(@NotNull DisplayList list,
                                  long time,
                                  @NotNull SceneContext sceneContext,
@@ -31,6 +31,9 @@ val HIGHLIGHTED_FRAME_THICKNESS = JBUI.scale(2f)
 
 
 abstract class NavBaseDecorator : SceneDecorator() {
+  // Navigation components can draw depending on other components, for example the destination of an action
+  override fun canCacheListComponent() = false
+
   override fun addFrame(list: DisplayList, sceneContext: SceneContext, component: SceneComponent) {
   }
 
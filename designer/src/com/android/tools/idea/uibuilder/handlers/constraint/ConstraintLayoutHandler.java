@@ -595,7 +595,7 @@ public class ConstraintLayoutHandler extends ViewGroupHandler implements Compone
       NlUsageTrackerManager.getInstance(editor.getScene().getDesignSurface())
                            .logAction(LayoutEditorEvent.LayoutEditorEventType.INFER_CONSTRAINS);
       try {
-        Scout.inferConstraintsAndCommit(component);
+        Scout.inferConstraintsAndCommitInBackground(component);
         ensureLayersAreShown(editor, 1000);
       }
       catch (Exception e) {
@@ -249,6 +249,7 @@ public class PreviewProvider implements Disposable {
       RenderLogger logger = renderService.createLogger(facet);
       myRenderTask = renderService.taskBuilder(facet, configuration)
                                   .withLogger(logger)
+                                  .withPriority(RenderExecutor.Priority.LOW)
                                   .build();
     }
 
@@ -45,7 +45,9 @@ import com.android.tools.idea.common.surface.SceneView;
 import com.android.tools.idea.configurations.Configuration;
 import com.android.tools.idea.configurations.ConfigurationListener;
 import com.android.tools.idea.rendering.Locale;
+import com.android.tools.idea.rendering.RenderExecutor;
 import com.android.tools.idea.rendering.RenderResult;
+import com.android.tools.idea.rendering.RenderResultCache;
 import com.android.tools.idea.rendering.RenderService;
 import com.android.tools.idea.rendering.RenderSettings;
 import com.android.tools.idea.rendering.RenderTask;
@@ -70,6 +72,7 @@ import com.google.common.util.concurrent.Futures;
 import com.google.wireless.android.sdk.stats.LayoutEditorEvent;
 import com.google.wireless.android.sdk.stats.LayoutEditorRenderResult;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.util.ProgressIndicatorBase;
 import com.intellij.openapi.project.DumbService;
@@ -89,6 +92,7 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
@@ -691,6 +695,9 @@ public class LayoutlibSceneManager extends SceneManager {
     catch (InterruptedException | ExecutionException e) {
       Logger.getInstance(NlModel.class).warn("Unable to run layout()", e);
     }
+    catch (CancellationException ignored) {
+      // A newer layout replaced this one before it started.
+    }
   }
 
   @Nullable
@@ -826,7 +833,8 @@ public class LayoutlibSceneManager extends SceneManager {
       }
 
       RenderService.RenderTaskBuilder renderTaskBuilder = renderService.taskBuilder(facet, configuration)
-                                                                       .withPsiFile(getModel().getFile());
+                                                                       .withPsiFile(getModel().getFile())
+                                                                       .withPriority(RenderExecutor.Priority.HIGH);
       myRenderTask = setupRenderTaskBuilder(renderTaskBuilder).build();
       if (myRenderTask != null) {
         myRenderTask.getLayoutlibCallback()
@@ -956,6 +964,11 @@ public class LayoutlibSceneManager extends SceneManager {
 
     getModel().resetLastChange();
     long renderStartTimeMs = System.currentTimeMillis();
+    // Animation frames depend on the elapsed time, which is not part of the key
+    RenderResultCache.Key cacheKey = myElapsedFrameTimeMs == -1 ? createRenderResultCacheKey() : null;
+    if (cacheKey != null && renderFromCache(cacheKey)) {
+      return;
+    }
     boolean inflated = inflate(false);
     long elapsedFrameTimeMs = myElapsedFrameTimeMs;
 
@@ -971,11 +984,22 @@ public class LayoutlibSceneManager extends SceneManager {
       futureResult = myRenderTask.render();
     }
 
-    RenderResult result = Futures.getUnchecked(futureResult);
+    RenderResult result;
+    try {
+      result = Futures.getUnchecked(futureResult);
+    }
+    catch (CancellationException e) {
+      // A newer render of the same task replaced this one before it started, and will update the result.
+      return;
+    }
     // When the layout was inflated in this same call, we do not have to update the hierarchy again
     if (result != null && !inflated) {
       updateHierarchy(result);
     }
+    // Only cache the result if the inputs didn't change while rendering
+    if (result != null && cacheKey != null && cacheKey.equals(createRenderResultCacheKey())) {
+      RenderService.getInstance(getModel().getProject()).getRenderResultCache().put(cacheKey, result);
+    }
     myRenderResultLock.writeLock().lock();
     try {
       updateCachedRenderResult(result);
@@ -1005,6 +1029,60 @@ public class LayoutlibSceneManager extends SceneManager {
     fireRenderListeners();
   }
 
+  @Nullable
+  private RenderResultCache.Key createRenderResultCacheKey() {
+    NlModel model = getModel();
+    // Everything that setupRenderTaskBuilder and inflate pass to the task, besides the model and its configuration
+    String options = String.join("|", getClass().getName(),
+                                 String.valueOf(myRenderSettings.getQuality()),
+                                 String.valueOf(myRenderSettings.getShowDecorations()),
+                                 getDesignSurface().getAdaptiveIconShape().getPathDescription());
+    return ReadAction.compute(() -> {
+      if (model.getModule().isDisposed() || !model.getFile().isValid()) {
+        return null;
+      }
+      return RenderResultCache.Key.create(model.getFacet(), model.getFile(), model.getConfiguration(), options);
+    });
+  }
+
+  /**
+   * Shows the result previously rendered for the same inputs, if the layout has not been inflated yet. This happens when a layout is
+   * opened again, and avoids going through layoutlib for it. The layout is inflated on the next render that doesn't match the cache.
+   *
+   * @return whether a cached result was found
+   */
+  private boolean renderFromCache(@NotNull RenderResultCache.Key cacheKey) {
+    NlModel model = getModel();
+    RenderResult result;
+    synchronized (myRenderingTaskLock) {
+      if (myRenderTask != null) {
+        return false;
+      }
+      result = ReadAction.compute(() -> RenderService.getInstance(model.getProject()).getRenderResultCache().get(cacheKey));
+      if (result == null) {
+        return false;
+      }
+      myRenderedVersion = ResourceNotificationManager.getInstance(model.getProject())
+        .getCurrentVersion(model.getFacet(), model.getFile(), model.getConfiguration());
+    }
+
+    updateHierarchy(result);
+    myRenderResultLock.writeLock().lock();
+    try {
+      updateCachedRenderResult(result);
+    }
+    finally {
+      myRenderResultLock.writeLock().unlock();
+    }
+    UIUtil.invokeLaterIfNeeded(() -> {
+      if (!Disposer.isDisposed(this)) {
+        update();
+      }
+    });
+    fireRenderListeners();
+    return true;
+  }
+
   public void setElapsedFrameTimeMs(long ms) {
     myElapsedFrameTimeMs = ms;
   }
@@ -21,6 +21,10 @@ public class RectangleGenerator {
       this.mParent = parent;
     }
 
+    public void setParent(FakeWidget parent) {
+      mParent = parent;
+    }
+
     @Override
     public void setX(int x) {
       mX = x;
@@ -48,6 +52,31 @@ public class RectangleGenerator {
     public void setHeight(int height) {
       mHeight = height;
     }
+
+    @Override
+    public boolean isGuideline() {
+      return false;
+    }
+
+    @Override
+    public boolean isVerticalGuideline() {
+      return false;
+    }
+
+    @Override
+    public boolean isHorizontalGuideline() {
+      return false;
+    }
+
+    @Override
+    public boolean hasBaseline() {
+      return false;
+    }
+
+    @Override
+    public boolean hasConnection(Direction dir) {
+      return false;
+    }
   }
 
   ArrayList<ScoutWidget> recs;
@@ -17,12 +17,25 @@ package com.android.tools.idea.uibuilder.scout;
 
 import com.android.tools.idea.common.command.NlWriteCommandAction;
 import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.common.model.NlModel;
 import com.android.tools.idea.uibuilder.handlers.constraint.ConstraintComponentUtilities;
+import com.intellij.notification.Notification;
+import com.intellij.notification.NotificationType;
+import com.intellij.notification.Notifications;
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.psi.xml.XmlFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 import static com.android.SdkConstants.*;
 
@@ -43,6 +56,9 @@ public class Scout {
     ATTR_ORIENTATION
   };
 
+  // How many times inferConstraintsAndCommitInBackground starts over when the layout is modified while it computes
+  private static final int MAX_BACKGROUND_INFER_ATTEMPTS = 3;
+
   public enum Arrange {
     AlignVerticallyTop, AlignVerticallyMiddle, AlignVerticallyBottom, AlignHorizontallyLeft,
     AlignHorizontallyCenter, AlignHorizontallyRight, DistributeVertically,
@@ -220,6 +236,24 @@ public class Scout {
    * @param rejectOverlaps if true will not infer if views overlap
    */
   private static void inferConstraints(NlComponent root, boolean rejectOverlaps, boolean fromConvert) {
+    List<Inference> inferences = new ArrayList<>();
+    prepareInferences(root, rejectOverlaps, fromConvert, inferences);
+    ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+    for (Inference inference : inferences) {
+      inference.compute(AppExecutorUtil.getAppExecutorService(), indicator);
+      inference.apply();
+    }
+  }
+
+  /**
+   * Reads the widgets of the root and of its nested ConstraintLayouts from the model, and adds an {@link Inference}
+   * for each of them to {@code inferences}, nested layouts first.
+   *
+   * @param root
+   * @param rejectOverlaps if true will not infer if views overlap
+   */
+  private static void prepareInferences(NlComponent root, boolean rejectOverlaps, boolean fromConvert,
+                                        @NotNull List<Inference> inferences) {
     if (root == null) {
       return;
     }
@@ -236,7 +270,7 @@ public class Scout {
     for (NlComponent constraintWidget : root.getChildren()) {
       if (ConstraintComponentUtilities.isConstraintLayout(constraintWidget)) {
         if (!constraintWidget.getChildren().isEmpty()) {
-          inferConstraints(constraintWidget);
+          prepareInferences(constraintWidget, true, false, inferences);
         }
       }
     }
@@ -249,9 +283,34 @@ public class Scout {
 
     NlComponent[] widgets = list.toArray(new NlComponent[list.size()]);
     ScoutWidget[] scoutWidgets = ScoutWidget.create(widgets, fromConvert);
-    ScoutWidget.computeConstraints(scoutWidgets);
-    if (fromConvert) {
-      postInferCleanupFromConvert(scoutWidgets);
+    inferences.add(new Inference(scoutWidgets, fromConvert));
+  }
+
+  /**
+   * Inference of the constraints of the children of one ConstraintLayout. The widgets are read from the model when
+   * the inference is created, {@link #compute} does not access the model and can run on any thread, and
+   * {@link #apply} sets the attributes of the components via a transaction.
+   */
+  private static class Inference {
+    @NotNull private final ScoutWidget[] myWidgets;
+    private final boolean myFromConvert;
+    @NotNull private final ScoutProbabilities myTable = new ScoutProbabilities();
+
+    private Inference(@NotNull ScoutWidget[] widgets, boolean fromConvert) {
+      myWidgets = widgets;
+      myFromConvert = fromConvert;
+      myTable.readWidgets(widgets);
+    }
+
+    private void compute(@NotNull Executor executor, @Nullable ProgressIndicator indicator) {
+      myTable.computeTables(executor, indicator);
+    }
+
+    private void apply() {
+      myTable.applyConstraints(myWidgets);
+      if (myFromConvert) {
+        postInferCleanupFromConvert(myWidgets);
+      }
     }
   }
 
@@ -299,6 +358,71 @@ public class Scout {
     evalResult(component);
   }
 
+  /**
+   * Same as {@link #inferConstraintsAndCommit(NlComponent)}, but computes the inference tables in a cancellable
+   * background task. The constraints are only applied and committed if the layout was not modified in the meantime;
+   * otherwise the inference starts over from the modified layout, up to {@link #MAX_BACKGROUND_INFER_ATTEMPTS} times,
+   * after which the user is told to run it again.
+   * Must be called on the UI thread.
+   *
+   * @param component the root element to infer from
+   */
+  public static void inferConstraintsAndCommitInBackground(@NotNull NlComponent component) {
+    inferConstraintsAndCommitInBackground(component, 1);
+  }
+
+  private static void inferConstraintsAndCommitInBackground(@NotNull NlComponent component, int attempt) {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    List<Inference> inferences = new ArrayList<>();
+    prepareInferences(component, false, false, inferences);
+    if (inferences.isEmpty()) {
+      return;
+    }
+    NlModel model = component.getModel();
+    Project project = model.getProject();
+    // Only edits of this layout invalidate the widgets, edits of other files do not
+    XmlFile file = model.getFile();
+    long fileModificationStamp = file.getModificationStamp();
+    long modelModificationCount = model.getModificationCount();
+
+    ProgressManager.getInstance().run(new Task.Backgroundable(project, "Inferring Constraints", true) {
+      @Override
+      public void run(@NotNull ProgressIndicator indicator) {
+        indicator.setIndeterminate(false);
+        for (int i = 0; i < inferences.size(); i++) {
+          indicator.setFraction((double)i / inferences.size());
+          inferences.get(i).compute(AppExecutorUtil.getAppExecutorService(), indicator);
+        }
+      }
+
+      @Override
+      public void onSuccess() {
+        if (file.getModificationStamp() != fileModificationStamp || model.getModificationCount() != modelModificationCount) {
+          // The widgets the tables were computed from are out of date
+          if (project.isDisposed() || !file.isValid() || !component.getTag().isValid()) {
+            return;
+          }
+          if (attempt < MAX_BACKGROUND_INFER_ATTEMPTS) {
+            inferConstraintsAndCommitInBackground(component, attempt + 1);
+          }
+          else {
+            Notifications.Bus.notify(new Notification("Android", "Infer Constraints",
+                                                      "The layout kept changing while constraints were inferred, so none were added. " +
+                                                      "Run Infer Constraints again.", NotificationType.WARNING), project);
+          }
+          return;
+        }
+        for (Inference inference : inferences) {
+          inference.apply();
+        }
+        ArrayList<NlComponent> list = new ArrayList<>(component.getChildren());
+        list.add(0, component);
+        commit(list, "Infering constraints");
+        evalResult(component);
+      }
+    });
+  }
+
   /**
    * Evaluates the current constraint set
    *
@@ -16,8 +16,19 @@
 
 package com.android.tools.idea.uibuilder.scout;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Inference Probability tables
@@ -48,12 +59,32 @@ public class ScoutProbabilities {
     float[][][][] mBinaryProbability; // probability of a left_right/up_down
     int len;
 
+    // Properties of the widgets read from the model by readWidgets(), so that computeTables() never accesses it
+    private ScoutWidget[] mWidgets;
+    private boolean[] mGuideline;
+    private boolean[] mVerticalGuideline;
+    private boolean[] mHorizontalGuideline;
+    private boolean[] mHasBaseline;
+    private boolean[] mBaselineConnected;
+    private float[][] mDistance;
+
     /**
      * This calculates a constraint tables
      *
      * @param list ordered list of widgets root must be list[0]
      */
     public void computeConstraints(ScoutWidget[] list) {
+        readWidgets(list);
+        computeTables(MoreExecutors.directExecutor(), null);
+    }
+
+    /**
+     * First step of {@link #computeConstraints(ScoutWidget[])}: reads the properties of the widgets used to
+     * estimate the probabilities. Needs read access to the model.
+     *
+     * @param list ordered list of widgets root must be list[0]
+     */
+    public void readWidgets(ScoutWidget[] list) {
         if (list.length < 2) {
             throw new IllegalArgumentException("list must contain more than 1 widget");
         }
@@ -68,79 +99,160 @@ public class ScoutProbabilities {
             }
         }
 
-
         len = list.length;
+        mWidgets = list;
+        mGuideline = new boolean[len];
+        mVerticalGuideline = new boolean[len];
+        mHorizontalGuideline = new boolean[len];
+        mHasBaseline = new boolean[len];
+        mBaselineConnected = new boolean[len];
+        for (int i = 0; i < len; i++) {
+            mGuideline[i] = list[i].isGuideline();
+            mVerticalGuideline[i] = list[i].isVerticalGuideline();
+            mHorizontalGuideline[i] = list[i].isHorizontalGuideline();
+            mHasBaseline[i] = list[i].hasBaseline();
+            mBaselineConnected[i] = mHasBaseline[i] && list[i].hasConnection(Direction.BASELINE);
+        }
+        mDistance = new float[len][len];
+        for (int i = 0; i < len; i++) {
+            for (int j = 0; j < len; j++) {
+                mDistance[i][j] = ScoutWidget.distance(list[i], list[j]);
+            }
+        }
+    }
 
+    /**
+     * Second step of {@link #computeConstraints(ScoutWidget[])}: fills the tables of each widget in an independent
+     * task. The tasks are run by the {@code executor} and by the calling thread, which returns when all of them
+     * are done. They only use what {@link #readWidgets(ScoutWidget[])} read, so they can run on any thread.
+     *
+     * @param executor  runs the tasks in parallel with the calling thread
+     * @param indicator if not null, the computation stops with a {@link ProcessCanceledException} once it is canceled
+     */
+    public void computeTables(Executor executor, ProgressIndicator indicator) {
         mProbability = new float[len][][];
         mMargin = new float[len][][];
+        mBinaryProbability = new float[len][][][];
+        mBinaryBias = new float[len][][][];
+        mBinaryProbability[0] = new float[2][len * 2][len * 2];
+        mBinaryBias[0] = new float[2][len * 2][len * 2];
+
+        // Each worker takes the next widget until all the widgets are done
+        AtomicInteger nextWidget = new AtomicInteger(1);
+        Runnable worker = () -> {
+            float[] result = new float[2]; // estimation function return 2 values probability & margin
+            for (int i = nextWidget.getAndIncrement(); i < len; i = nextWidget.getAndIncrement()) {
+                if (indicator != null) {
+                    indicator.checkCanceled();
+                }
+                computeWidgetTables(i, result);
+            }
+        };
+        int workerCount = Math.min(Runtime.getRuntime().availableProcessors(), len - 1) - 1;
+        List<FutureTask<Void>> workers = new ArrayList<>(workerCount);
+        for (int i = 0; i < workerCount; i++) {
+            FutureTask<Void> task = new FutureTask<>(worker, null);
+            workers.add(task);
+            executor.execute(task);
+        }
+        try {
+            worker.run();
+        }
+        catch (RuntimeException e) {
+            nextWidget.set(len); // stop the other workers
+            throw e;
+        }
+        for (FutureTask<Void> task : workers) {
+            // Workers that did not start yet have nothing left to do
+            if (task.cancel(false)) {
+                continue;
+            }
+            try {
+                task.get();
+            }
+            catch (CancellationException ignored) {
+            }
+            catch (InterruptedException e) {
+                nextWidget.set(len);
+                Thread.currentThread().interrupt();
+                throw new ProcessCanceledException(e);
+            }
+            catch (ExecutionException e) {
+                nextWidget.set(len);
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new RuntimeException(e.getCause());
+            }
+        }
 
-        // calculate probability for normal connections
-        float[] result = new float[2]; // estimation function return 2 values probability & margin
+        if (DEBUG) {
+            printTable(mWidgets);
+        }
+    }
 
-        for (int i = 1; i < len; i++) { // for all non root widgets
+    /**
+     * Fills the tables of the widget {@code i}, which are independent from the tables of the other widgets
+     */
+    private void computeWidgetTables(int i, float[] result) {
+        // calculate probability for normal connections
+        if (!mGuideline[i]) {
             Direction[] all = Direction.getAllDirections();
-            if (list[i].isGuideline()) {
-                continue;
-            }
-            mProbability[i] = new float[all.length][];
-            mMargin[i] = new float[all.length][];
+            float[][] probability = new float[all.length][];
+            float[][] margin = new float[all.length][];
             for (int dir = 0; dir < all.length; dir++) { // for all possible connections
                 Direction direction = Direction.get(dir);
                 int connectTypes = direction.connectTypes();
 
                 // create the multidimensional array on the fly
                 // to account for the variying size of the probability space
-                mProbability[i][dir] = new float[len * connectTypes];
-                mMargin[i][dir] = new float[len * connectTypes];
+                probability[dir] = new float[len * connectTypes];
+                margin[dir] = new float[len * connectTypes];
 
                 // fill in all candidate connections
-                for (int candidate = 0; candidate < mMargin[i][dir].length; candidate++) {
+                for (int candidate = 0; candidate < margin[dir].length; candidate++) {
                     int widgetNumber = candidate / connectTypes;
                     int opposite = candidate % connectTypes;
                     Direction connectTo = (opposite == 0) ? direction : direction.getOpposite();
 
-                    estimateProbability(list[i], direction, list[widgetNumber],
-                            connectTo, list, result);
-                    mProbability[i][dir][candidate] = result[RESULT_PROBABILITY];
-                    mMargin[i][dir][candidate] = result[RESULT_MARGIN];
+                    estimateProbability(i, direction, widgetNumber, connectTo, result);
+                    probability[dir][candidate] = result[RESULT_PROBABILITY];
+                    margin[dir][candidate] = result[RESULT_MARGIN];
                 }
             }
+            mProbability[i] = probability;
+            mMargin[i] = margin;
         }
 
         // calculate probability for "centered" connections
-        mBinaryProbability = new float[len][2][len * 2][len * 2];
-        mBinaryBias = new float[len][2][len * 2][len * 2];
+        float[][][] binaryProbability = new float[2][len * 2][len * 2];
+        float[][][] binaryBias = new float[2][len * 2][len * 2];
         Direction[][] directions =
                 { { Direction.TOP, Direction.BOTTOM}, { Direction.LEFT, Direction.RIGHT} };
-        for (int i = 1; i < len; i++) {
-            for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
-                Direction[] sides = directions[horizontal];
-                for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
-                    for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
-
-                        // candidates are 2 per widget (left/right or above/below)
-                        int widget1Number = candidate1 / 2;
-                        int widget2Number = candidate2 / 2;
-
-                        // pick the sides to connect
-                        Direction widget1Side = sides[candidate1 & 0x1];
-                        Direction widget2Side = sides[candidate2 & 0x1];
-
-                        estimateBinaryProbability(list[i], horizontal,
-                                list[widget1Number], widget1Side,
-                                list[widget2Number], widget2Side,
-                                list, result);
-                        mBinaryProbability[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_PROBABILITY];
-                        mBinaryBias[i][horizontal][candidate1][candidate2] =
-                                result[RESULT_MARGIN];
-                    }
+        for (int horizontal = 0; horizontal < 2; horizontal++) { // vert=0 or horizantal=1
+            Direction[] sides = directions[horizontal];
+            for (int candidate1 = 0; candidate1 < len * 2; candidate1++) {
+                for (int candidate2 = 0; candidate2 < len * 2; candidate2++) {
+
+                    // candidates are 2 per widget (left/right or above/below)
+                    int widget1Number = candidate1 / 2;
+                    int widget2Number = candidate2 / 2;
+
+                    // pick the sides to connect
+                    Direction widget1Side = sides[candidate1 & 0x1];
+                    Direction widget2Side = sides[candidate2 & 0x1];
+
+                    estimateBinaryProbability(i, horizontal,
+                            widget1Number, widget1Side,
+                            widget2Number, widget2Side,
+                            result);
+                    binaryProbability[horizontal][candidate1][candidate2] =
+                            result[RESULT_PROBABILITY];
+                    binaryBias[horizontal][candidate1][candidate2] =
+                            result[RESULT_MARGIN];
                 }
             }
         }
-        if (DEBUG) {
-            printTable(list);
-        }
+        mBinaryProbability[i] = binaryProbability;
+        mBinaryBias[i] = binaryBias;
     }
 
     /**
@@ -544,46 +656,45 @@ public class ScoutProbabilities {
     /**
      * This defines the "probability" of a constraint between two widgets.
      *
-     * @param from    source widget
-     * @param fromDir direction on that widget
-     * @param to      destination widget
-     * @param toDir   destination side to connect
-     * @param result  populates results with probability and offset
+     * @param fromIndex source widget
+     * @param fromDir   direction on that widget
+     * @param toIndex   destination widget
+     * @param toDir     destination side to connect
+     * @param result    populates results with probability and offset
      */
-    private static void estimateProbability(ScoutWidget from, Direction fromDir,
-            ScoutWidget to, Direction toDir,
-            ScoutWidget[] list,
+    private void estimateProbability(int fromIndex, Direction fromDir,
+            int toIndex, Direction toDir,
             float[] result) {
         result[RESULT_PROBABILITY] = 0;
         result[RESULT_MARGIN] = 0;
+        ScoutWidget from = mWidgets[fromIndex];
+        ScoutWidget to = mWidgets[toIndex];
 
         if (from == to) { // 0 probability of connecting to yourself
             return;
         }
-        if (from.isGuideline()) {
+        if (mGuideline[fromIndex]) {
             return;
         }
 
-        if (to.isGuideline()) {
+        if (mGuideline[toIndex]) {
             if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) &&
-                to.isVerticalGuideline()) {
+                mVerticalGuideline[toIndex]) {
                 return;
             }
             if ((toDir == Direction.RIGHT || toDir == Direction.LEFT) &&
-                to.isHorizontalGuideline()) {
+                mHorizontalGuideline[toIndex]) {
                 return;
             }
         }
 
         // if it already has a baseline do not connect to it
-        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
-                return;
-            }
+        if ((toDir == Direction.TOP || toDir == Direction.BOTTOM) & mBaselineConnected[fromIndex]) {
+            return;
         }
 
         if (fromDir == Direction.BASELINE) { // if baseline 0  probability of connecting to non baseline
-            if (!from.hasBaseline() || !to.hasBaseline()) { // no base line
+            if (!mHasBaseline[fromIndex] || !mHasBaseline[toIndex]) { // no base line
                 return;
             }
         }
@@ -592,7 +703,7 @@ public class ScoutProbabilities {
         float toLocation = to.getLocation(toDir);
         float positionDiff =
                 (fromDir.reverse()) ? fromLocation - toLocation : toLocation - fromLocation;
-        float distance = 2 * ScoutWidget.distance(from, to);
+        float distance = 2 * mDistance[fromIndex][toIndex];
         if (to.isRoot()) {
             distance = Math.abs(distance - ROOT_MARGIN_DISCOUNT);
         }
@@ -615,34 +726,34 @@ public class ScoutProbabilities {
      * This defines the constraint between a widget and two widgets to the left and right of it.
      * Currently only encourages probability between widget and root for center purposes.
      *
-     * @param from        source widget
+     * @param fromIndex   source widget
      * @param orientation horizontal or vertical connections (1 is horizontal)
-     * @param to1         connect to on one side
+     * @param to1Index    connect to on one side
      * @param toDir1      direction on that widget
-     * @param to2         connect to on other side
+     * @param to2Index    connect to on other side
      * @param toDir2      direction on that widget
      * @param result      populates results with probability and offset
      */
-    private static void estimateBinaryProbability(
-            ScoutWidget from, int orientation, // 0 = north/south 1 = east/west
-            ScoutWidget to1, Direction toDir1,
-            ScoutWidget to2, Direction toDir2,
-            ScoutWidget[] list,
+    private void estimateBinaryProbability(
+            int fromIndex, int orientation, // 0 = north/south 1 = east/west
+            int to1Index, Direction toDir1,
+            int to2Index, Direction toDir2,
             float[] result) {
 
         result[RESULT_PROBABILITY] = 0;
         result[RESULT_MARGIN] = 0;
+        ScoutWidget from = mWidgets[fromIndex];
+        ScoutWidget to1 = mWidgets[to1Index];
+        ScoutWidget to2 = mWidgets[to2Index];
         if (from == to1 || from == to2) { // cannot center on yourself
             return;
         }
-        if (from.isGuideline()) {
+        if (mGuideline[fromIndex]) {
             return;
         }
         // if it already has a baseline do not connect to it
-        if ((orientation == Direction.ORIENTATION_VERTICAL) & from.hasBaseline()) {
-            if (from.hasConnection(Direction.BASELINE)) {
-                return;
-            }
+        if ((orientation == Direction.ORIENTATION_VERTICAL) & mBaselineConnected[fromIndex]) {
+            return;
         }
         // distance normalizing scale factor
         float scale = 0.5f *
@@ -674,8 +785,8 @@ public class ScoutProbabilities {
             }
         }
 
-        float distance1 = ScoutWidget.distance(from, to1) / scale;
-        float distance2 = ScoutWidget.distance(from, to2) / scale;
+        float distance1 = mDistance[fromIndex][to1Index] / scale;
+        float distance2 = mDistance[fromIndex][to2Index] / scale;
         float diff = Math.abs(positionDiff1 - positionDiff2);
         float probability = ((diff < SLOPE_CENTER_CONNECTION) ? 1 : 0); // favor close distance
         probability = probability / (1+ distance1 + distance2);
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scout.test;
+
+import com.android.tools.idea.uibuilder.scout.RectangleGenerator;
+import com.android.tools.idea.uibuilder.scout.ScoutProbabilities;
+import com.android.tools.idea.uibuilder.scout.ScoutWidget;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures the time taken to compute the Scout inference tables of randomly generated layouts,
+ * on the calling thread only and in parallel on a thread pool.
+ */
+public class ScoutProbabilitiesBenchmark {
+  private static final int[] WIDGET_COUNTS = {5, 10, 20, 40};
+  private static final int WARMUP_ITERATIONS = 5;
+  private static final int ITERATIONS = 20;
+
+  public static void main(String[] args) {
+    ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      RectangleGenerator rectGenerator = new RectangleGenerator();
+      for (int count : WIDGET_COUNTS) {
+        ScoutWidget[] widgets = generate(rectGenerator, count);
+        double sequential = measure(widgets, MoreExecutors.directExecutor());
+        double parallel = measure(widgets, pool);
+        System.out.println(String.format("%3d widgets: sequential %8.2f ms, parallel %8.2f ms, speedup %.2fx",
+                                         widgets.length - 1, sequential, parallel, sequential / parallel));
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+  private static ScoutWidget[] generate(RectangleGenerator rectGenerator, int count) {
+    ArrayList<ScoutWidget> recs = rectGenerator.random(count, 20, 4000, 4000);
+    RectangleGenerator.FakeWidget root = (RectangleGenerator.FakeWidget)recs.get(0);
+    for (int i = 1; i < recs.size(); i++) {
+      ((RectangleGenerator.FakeWidget)recs.get(i)).setParent(root);
+    }
+    return recs.toArray(new ScoutWidget[recs.size()]);
+  }
+
+  /**
+   * Returns the average time in milliseconds taken to compute the tables of the widgets
+   */
+  private static double measure(ScoutWidget[] widgets, Executor executor) {
+    ScoutProbabilities table = new ScoutProbabilities();
+    table.readWidgets(widgets);
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      table.computeTables(executor, null);
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ITERATIONS; i++) {
+      table.computeTables(executor, null);
+    }
+    return (System.nanoTime() - start) * 1E-6 / ITERATIONS;
+  }
+}
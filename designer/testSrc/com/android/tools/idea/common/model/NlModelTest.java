@@ -160,6 +160,34 @@ public class NlModelTest extends LayoutTestCase {
     assertThat(reference.getNamespace().getXmlNamespaceUri()).isEqualTo(ANDROID_URI);
   }
 
+  public void testFindByIdTagAndOffset() {
+    ModelBuilder modelBuilder = createDefaultModelBuilder(true);
+    NlModel model = modelBuilder.build();
+    NlComponent root = model.getComponents().get(0);
+    NlComponent text = model.find("myText1");
+    NlComponent button = model.find("myText2");
+    assertThat(text).isNotNull();
+    assertThat(button).isNotNull();
+    assertThat(model.find("unknown")).isNull();
+    assertThat(model.find(component -> BUTTON.equals(component.getTagName()))).isSameAs(button);
+
+    assertThat(model.findViewByTag(text.getTag())).isSameAs(text);
+    assertThat(model.findViewByTag(root.getTag())).isSameAs(root);
+
+    int textOffset = text.getTag().getTextRange().getStartOffset();
+    assertThat(model.findByOffset(textOffset)).containsExactly(text);
+    assertThat(model.findByOffset(text.getTag().getTextRange().getEndOffset() - 1)).containsExactly(text);
+    assertThat(model.findByOffset(button.getTag().getTextRange().getEndOffset())).containsExactly(root);
+    assertThat(model.findByOffset(root.getTag().getTextRange().getEndOffset())).isEmpty();
+
+    // Removing a component updates the lookups
+    ComponentDescriptor parent = modelBuilder.findByPath(LINEAR_LAYOUT);
+    parent.removeChild(modelBuilder.findByPath(LINEAR_LAYOUT, TEXT_VIEW));
+    modelBuilder.updateModel(model);
+    assertThat(model.find("myText1")).isNull();
+    assertThat(model.find("myText2")).isSameAs(button);
+  }
+
   public void testRemoveLastChild() {
     ModelBuilder modelBuilder = createDefaultModelBuilder(false);
     NlModel model = modelBuilder.build();
@@ -17,6 +17,8 @@ package com.android.tools.idea.common.scene
 
 import com.android.SdkConstants.*
 import com.android.tools.idea.common.fixtures.ModelBuilder
+import com.android.tools.idea.common.model.NlModel
+import com.android.tools.idea.common.scene.draw.DisplayList
 import com.android.tools.idea.common.scene.target.CommonDragTarget
 import com.android.tools.idea.flags.StudioFlags
 import com.android.tools.idea.uibuilder.LayoutTestUtilities
@@ -73,6 +75,70 @@ open class SceneComponentTest: SceneTest() {
     StudioFlags.NELE_DRAG_PLACEHOLDER.clearOverride()
   }
 
+  fun testCachedDisplayListIsReused() {
+    val context = SceneContext.get()
+    val child = myScene.getSceneComponent("child")!!
+
+    myScene.buildDisplayList(DisplayList(), 0, context)
+    val commands = child.getCachedDisplayList(context)
+    assertNotNull(commands)
+
+    myScene.buildDisplayList(DisplayList(), 0, context)
+    assertSame(commands, child.getCachedDisplayList(context))
+  }
+
+  fun testCachedDisplayListIsDiscardedWhenDrawStateChanges() {
+    val context = SceneContext.get()
+    val parent = myScene.getSceneComponent("parent")!!
+    val child = myScene.getSceneComponent("child")!!
+    myScene.buildDisplayList(DisplayList(), 0, context)
+
+    child.setDrawState(SceneComponent.DrawState.HOVER)
+
+    assertNull(child.getCachedDisplayList(context))
+    assertNull(parent.getCachedDisplayList(context))
+    myScene.buildDisplayList(DisplayList(), 0, context)
+    assertNotNull(child.getCachedDisplayList(context))
+  }
+
+  fun testCachedDisplayListIsDiscardedWhenComponentMoves() {
+    val context = SceneContext.get()
+    val parent = myScene.getSceneComponent("parent")!!
+    val child = myScene.getSceneComponent("child")!!
+    myScene.buildDisplayList(DisplayList(), 0, context)
+    val version = myScene.displayListVersion
+
+    child.setPosition(100, 100)
+
+    assertNull(child.getCachedDisplayList(context))
+    assertNull(parent.getCachedDisplayList(context))
+    assertTrue(myScene.displayListVersion > version)
+  }
+
+  fun testCachedDisplayListIsDiscardedWhenModelChanges() {
+    val context = SceneContext.get()
+    val child = myScene.getSceneComponent("child")!!
+    myScene.buildDisplayList(DisplayList(), 0, context)
+    assertNotNull(child.getCachedDisplayList(context))
+
+    myModel.notifyModified(NlModel.ChangeType.EDIT)
+    mySceneManager.update()
+
+    assertNull(child.getCachedDisplayList(context))
+  }
+
+  fun testHitRegionsFollowMovedComponent() {
+    val context = SceneContext.get()
+    val child = myScene.getSceneComponent("child")!!
+    assertEquals(child, myScene.findComponent(context, 10, 10))
+    assertNull(myScene.findComponent(context, 5010, 5010))
+
+    // The hit regions kept since the previous query must be added again once the component moved
+    child.setPosition(5000, 5000)
+
+    assertEquals(child, myScene.findComponent(context, 5010, 5010))
+  }
+
   override fun createModel(): ModelBuilder {
     return model("scene_component_test.xml",
         component(LINEAR_LAYOUT)
@@ -19,6 +19,10 @@ import junit.framework.TestCase;
 
 import java.awt.*;
 import java.awt.geom.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * Test ScenePicker
@@ -378,4 +382,45 @@ public class ScenePickerTest extends TestCase {
       scenePicker.find((int)x, (int)y);
     }
   }
+
+  public void testManyObjects() {
+    ScenePicker scenePicker = new ScenePicker();
+    scenePicker.reset();
+    // A container with 300 widgets of 50x20 in rows of 15, and a line across all of them
+    scenePicker.addRect("root", 0, 0, 0, 1500, 1000);
+    for (int i = 0; i < 300; i++) {
+      int x = (i % 15) * 100;
+      int y = (i / 15) * 50;
+      scenePicker.addRect(i, 4, x, y, x + 50, y + 20);
+    }
+    scenePicker.addLine("line", 4, 0, 0, 1500, 1000, 1);
+
+    List<Object> found = new ArrayList<>();
+    scenePicker.setSelectListener((obj, dist) -> found.add(obj));
+
+    scenePicker.find(30, 20);
+    assertEquals(Arrays.asList("root", 0, "line"), found);
+
+    found.clear();
+    scenePicker.find(1440, 960);
+    assertEquals(Arrays.asList("root", 299, "line"), found);
+
+    found.clear();
+    scenePicker.find(1053, 10);
+    assertEquals(Arrays.asList("root", 10), found);
+
+    found.clear();
+    scenePicker.find(1480, 10);
+    assertEquals(Collections.singletonList("root"), found);
+
+    found.clear();
+    scenePicker.find(1600, 1200);
+    assertTrue(found.isEmpty());
+
+    // Objects added after a search are found by the next one
+    scenePicker.addCircle("circle", 0, 1480, 10, 5);
+    found.clear();
+    scenePicker.find(1480, 10);
+    assertEquals(Arrays.asList("root", "circle"), found);
+  }
 }
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.idea.uibuilder.scout;
+
+import com.android.tools.idea.common.fixtures.ComponentDescriptor;
+import com.android.tools.idea.common.fixtures.ModelBuilder;
+import com.android.tools.idea.common.model.NlComponent;
+import com.android.tools.idea.uibuilder.scene.SceneTest;
+import com.google.common.util.concurrent.MoreExecutors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.android.SdkConstants.CONSTRAINT_LAYOUT;
+import static com.android.SdkConstants.TEXT_VIEW;
+
+/**
+ * Checks that computing the tables of {@link ScoutProbabilities} in parallel gives the same tables as computing them on one thread.
+ */
+public class ScoutProbabilitiesTest extends SceneTest {
+  private static final int WIDGET_COUNT = 12;
+
+  @Override
+  @NotNull
+  public ModelBuilder createModel() {
+    ComponentDescriptor[] children = new ComponentDescriptor[WIDGET_COUNT];
+    for (int i = 0; i < WIDGET_COUNT; i++) {
+      children[i] = component(TEXT_VIEW)
+        .id("@+id/textview" + i)
+        .withBounds(100 + (i % 3) * 600, 100 + (i / 3) * 400, 200 + i * 10, 40)
+        .width((100 + i * 5) + "dp")
+        .height("20dp");
+    }
+    return model("constraint.xml",
+                 component(CONSTRAINT_LAYOUT.defaultName())
+                   .id("@+id/content_main")
+                   .withBounds(0, 0, 2000, 2000)
+                   .width("1000dp")
+                   .height("1000dp")
+                   .children(children));
+  }
+
+  public void testComputeTablesInParallelMatchesSequential() throws Exception {
+    NlComponent root = myModel.getComponents().get(0);
+    List<NlComponent> list = new ArrayList<>(root.getChildren());
+    list.add(0, root);
+    ScoutWidget[] widgets = ScoutWidget.create(list.toArray(new NlComponent[list.size()]), false);
+
+    ScoutProbabilities sequential = new ScoutProbabilities();
+    sequential.readWidgets(widgets);
+    sequential.computeTables(MoreExecutors.directExecutor(), null);
+
+    ExecutorService pool = Executors.newFixedThreadPool(4);
+    try {
+      ScoutProbabilities parallel = new ScoutProbabilities();
+      parallel.readWidgets(widgets);
+      parallel.computeTables(pool, null);
+
+      assertTrue(Arrays.deepEquals(sequential.mProbability, parallel.mProbability));
+      assertTrue(Arrays.deepEquals(sequential.mMargin, parallel.mMargin));
+      assertTrue(Arrays.deepEquals(sequential.mBinaryProbability, parallel.mBinaryProbability));
+      assertTrue(Arrays.deepEquals(sequential.mBinaryBias, parallel.mBinaryBias));
+    }
+    finally {
+      pool.shutdownNow();
+    }
+  }
+}
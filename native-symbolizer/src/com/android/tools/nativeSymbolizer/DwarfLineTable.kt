@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.nio.ByteBuffer
+
+/**
+ * The rows of a .debug_line section (DWARF versions 2 to 4), sorted by address so that the source location of an address is found with
+ * a binary search.
+ *
+ * Files of the compilation directory (directory index 0) are reported by their name only, since the directory is in .debug_info.
+ * Units of other versions are skipped.
+ *
+ * More info about the format: http://dwarfstd.org/doc/DWARF4.pdf, section 6.2.
+ */
+internal class DwarfLineTable private constructor(private val addresses: LongArray,
+                                                  private val fileIndices: IntArray,
+                                                  private val lines: IntArray,
+                                                  private val files: List<String>) {
+
+  class Location(val file: String, val line: Int)
+
+  companion object {
+    /**
+     * File index of the rows ending a sequence, after which there is no code until the next row.
+     */
+    private const val END_OF_SEQUENCE = -1
+
+    fun parse(buffer: ByteBuffer, offset: Int, size: Int): DwarfLineTable {
+      val rows = RowList()
+      // Rows with an invalid file index point to the first file, which is unknown.
+      val files = mutableListOf("")
+      var unitStart = offset
+      while (unitStart < offset + size) {
+        val next = LineProgram(buffer, unitStart, files, rows).run()
+        if (next <= unitStart) {
+          break
+        }
+        unitStart = next
+      }
+      return rows.sortedTable(files)
+    }
+  }
+
+  fun lookup(address: Long): Location? {
+    // Index of the last row at or before the address.
+    var low = 0
+    var high = addresses.size
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (addresses[mid] <= address) low = mid + 1 else high = mid
+    }
+    val index = low - 1
+    if (index < 0 || fileIndices[index] == END_OF_SEQUENCE) {
+      return null
+    }
+    return Location(files[fileIndices[index]], lines[index])
+  }
+
+  private class RowList {
+    var addresses = LongArray(1024)
+    var fileIndices = IntArray(1024)
+    var lines = IntArray(1024)
+    var size = 0
+
+    fun add(address: Long, fileIndex: Int, line: Int) {
+      if (size == addresses.size) {
+        addresses = addresses.copyOf(size * 2)
+        fileIndices = fileIndices.copyOf(size * 2)
+        lines = lines.copyOf(size * 2)
+      }
+      addresses[size] = address
+      fileIndices[size] = fileIndex
+      lines[size] = line
+      size++
+    }
+
+    fun sortedTable(files: List<String>): DwarfLineTable {
+      // Sequences are sorted by address, and the end of a sequence goes before the start of the next one at the same address.
+      // Rows of a sequence are already sorted, and the sort is stable.
+      val order = (0 until size).sortedWith(compareBy<Int> { addresses[it] }.thenBy { if (fileIndices[it] == END_OF_SEQUENCE) 0 else 1 })
+      val sortedAddresses = LongArray(size)
+      val sortedFileIndices = IntArray(size)
+      val sortedLines = IntArray(size)
+      order.forEachIndexed { i, row ->
+        sortedAddresses[i] = addresses[row]
+        sortedFileIndices[i] = fileIndices[row]
+        sortedLines[i] = lines[row]
+      }
+      return DwarfLineTable(sortedAddresses, sortedFileIndices, sortedLines, files)
+    }
+  }
+
+  /**
+   * Runs the line number program of one unit, adding its rows to the list and its files to the shared file list.
+   */
+  private class LineProgram(private val buffer: ByteBuffer, private var pos: Int, private val files: MutableList<String>,
+                            private val rows: RowList) {
+    /**
+     * Sequences of functions removed by the linker start at address 0, where they would hide the code actually there.
+     */
+    private val sequence = RowList()
+
+    /**
+     * @return the offset of the next unit.
+     */
+    fun run(): Int {
+      var length = buffer.getInt(pos).toLong() and 0xFFFFFFFFL
+      pos += 4
+      val is64BitDwarf = length == 0xFFFFFFFFL
+      if (is64BitDwarf) {
+        length = buffer.getLong(pos)
+        pos += 8
+      }
+      val end = (pos + length).toInt()
+      val version = buffer.getShort(pos).toInt()
+      pos += 2
+      if (version < 2 || version > 4) {
+        return end
+      }
+      val headerLength = if (is64BitDwarf) buffer.getLong(pos) else buffer.getInt(pos).toLong() and 0xFFFFFFFFL
+      pos += if (is64BitDwarf) 8 else 4
+      val programStart = (pos + headerLength).toInt()
+      val minInstructionLength = readUnsignedByte()
+      if (version >= 4) {
+        // Maximum operations per instruction, only used by VLIW architectures.
+        pos++
+      }
+      // Whether rows start as statements, which doesn't matter for locations.
+      pos++
+      val lineBase = buffer.get(pos++).toInt()
+      val lineRange = readUnsignedByte()
+      val opcodeBase = readUnsignedByte()
+      val opcodeLengths = IntArray(opcodeBase) { if (it == 0) 0 else readUnsignedByte() }
+      if (lineRange == 0) {
+        return end
+      }
+
+      val directories = mutableListOf("")
+      while (true) {
+        val directory = readString()
+        if (directory.isEmpty()) break
+        directories.add(directory)
+      }
+      // File indices of this unit start at 1, and are mapped to indices in the shared list.
+      val unitFiles = mutableListOf(0)
+      while (true) {
+        val name = readString()
+        if (name.isEmpty()) break
+        unitFiles.add(addFile(directories, name, readUleb().toInt()))
+        readUleb()
+        readUleb()
+      }
+
+      pos = programStart
+      var address = 0L
+      var file = 1
+      var line = 1
+      while (pos < end) {
+        val opcode = readUnsignedByte()
+        when {
+          opcode >= opcodeBase -> {
+            val adjusted = opcode - opcodeBase
+            address += (adjusted / lineRange) * minInstructionLength
+            line += lineBase + adjusted % lineRange
+            sequence.add(address, unitFiles.getOrElse(file) { 0 }, line)
+          }
+          opcode == 0 -> {
+            val length = readUleb().toInt()
+            val next = pos + length
+            when (readUnsignedByte()) {
+              // DW_LNE_end_sequence
+              1 -> {
+                sequence.add(address, END_OF_SEQUENCE, 0)
+                endSequence()
+                address = 0
+                file = 1
+                line = 1
+              }
+              // DW_LNE_set_address
+              2 -> address = if (length - 1 == 8) buffer.getLong(pos) else buffer.getInt(pos).toLong() and 0xFFFFFFFFL
+              // DW_LNE_define_file
+              3 -> unitFiles.add(addFile(directories, readString(), readUleb().toInt()))
+            }
+            pos = next
+          }
+          // DW_LNS_copy
+          opcode == 1 -> sequence.add(address, unitFiles.getOrElse(file) { 0 }, line)
+          // DW_LNS_advance_pc
+          opcode == 2 -> address += readUleb() * minInstructionLength
+          // DW_LNS_advance_line
+          opcode == 3 -> line += readSleb().toInt()
+          // DW_LNS_set_file
+          opcode == 4 -> file = readUleb().toInt()
+          // DW_LNS_const_add_pc
+          opcode == 8 -> address += ((255 - opcodeBase) / lineRange) * minInstructionLength
+          // DW_LNS_fixed_advance_pc
+          opcode == 9 -> {
+            address += buffer.getShort(pos).toInt() and 0xFFFF
+            pos += 2
+          }
+          // Other standard opcodes only change state that isn't needed for locations, e.g. columns.
+          else -> repeat(opcodeLengths[opcode]) { readUleb() }
+        }
+      }
+      return end
+    }
+
+    private fun endSequence() {
+      if (sequence.size > 0 && sequence.addresses[0] != 0L) {
+        for (i in 0 until sequence.size) {
+          rows.add(sequence.addresses[i], sequence.fileIndices[i], sequence.lines[i])
+        }
+      }
+      sequence.size = 0
+    }
+
+    private fun addFile(directories: List<String>, name: String, directoryIndex: Int): Int {
+      val directory = directories.getOrElse(directoryIndex) { "" }
+      val path = when {
+        directory.isEmpty() || name.startsWith("/") || (name.length > 1 && name[1] == ':') -> name
+        directory.endsWith("/") || directory.endsWith("\\") -> directory + name
+        else -> "$directory/$name"
+      }
+      files.add(path)
+      return files.size - 1
+    }
+
+    private fun readUnsignedByte(): Int = buffer.get(pos++).toInt() and 0xFF
+
+    private fun readString(): String {
+      val start = pos
+      while (buffer.get(pos).toInt() != 0) {
+        pos++
+      }
+      val bytes = ByteArray(pos - start)
+      for (i in bytes.indices) {
+        bytes[i] = buffer.get(start + i)
+      }
+      pos++
+      return String(bytes, Charsets.UTF_8)
+    }
+
+    private fun readUleb(): Long {
+      var result = 0L
+      var shift = 0
+      while (true) {
+        val b = readUnsignedByte()
+        result = result or ((b and 0x7F).toLong() shl shift)
+        shift += 7
+        if (b and 0x80 == 0) return result
+      }
+    }
+
+    private fun readSleb(): Long {
+      var result = 0L
+      var shift = 0
+      var b: Int
+      do {
+        b = readUnsignedByte()
+        result = result or ((b and 0x7F).toLong() shl shift)
+        shift += 7
+      }
+      while (b and 0x80 != 0)
+      if (shift < 64 && b and 0x40 != 0) {
+        result = result or (-1L shl shift)
+      }
+      return result
+    }
+  }
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.io.RandomAccessFile
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.nio.channels.FileChannel
+
+/**
+ * Function symbols of an ELF file (from .symtab, or .dynsym for stripped files) sorted by address, and its DWARF line table if it has one.
+ *
+ * The file is memory mapped while the index is built. The addresses and names of the symbols, and the line table, are copied to the heap,
+ * so the mapping is released once the index is built, however long the index is kept. Names are only decoded when a symbol is looked
+ * up. Lookups are binary searches, so an index is meant to be built once per file and kept for all of its addresses.
+ *
+ * More info about the format: http://refspecs.linuxbase.org/elf/gabi4+/ch4.sheader.html
+ */
+internal class ElfSymbolIndex private constructor(private val starts: LongArray,
+                                                  private val ends: LongArray,
+                                                  private val names: ByteArray,
+                                                  private val nameStarts: IntArray,
+                                                  private val lineTable: DwarfLineTable?) {
+
+  class Entry(val name: String, val sourceFile: String, val lineNumber: Int)
+
+  companion object {
+    private const val SHT_SYMTAB = 2
+    private const val SHT_DYNSYM = 11
+    private const val SHF_COMPRESSED = 0x800L
+    private const val SHN_UNDEF = 0
+    private const val STT_FUNC = 2
+    private const val STT_GNU_IFUNC = 10
+    private const val STB_LOCAL = 0
+    private const val EM_ARM = 40
+
+    /**
+     * @throws IOException if the file can't be read or is not an ELF file.
+     */
+    @Throws(IOException::class)
+    fun load(file: File): ElfSymbolIndex {
+      val buffer = RandomAccessFile(file, "r").use { it.channel.map(FileChannel.MapMode.READ_ONLY, 0, it.length()) }
+      if (buffer.limit() < 52 || buffer.getInt(0) != 0x7f454c46) {
+        throw IOException("Not an ELF file: $file")
+      }
+      val is64Bit = when (buffer.get(4).toInt()) {
+        1 -> false
+        2 -> true
+        else -> throw IOException("Unknown ELF class in $file")
+      }
+      buffer.order(if (buffer.get(5).toInt() == 2) ByteOrder.BIG_ENDIAN else ByteOrder.LITTLE_ENDIAN)
+      return ElfReader(buffer, is64Bit).buildIndex()
+    }
+  }
+
+  /**
+   * @return the function containing the address, and its source location if the file has a line table, or null if there is none.
+   */
+  fun lookup(address: Long): Entry? {
+    // Index of the last symbol starting at or before the address.
+    var low = 0
+    var high = starts.size
+    while (low < high) {
+      val mid = (low + high) ushr 1
+      if (starts[mid] <= address) low = mid + 1 else high = mid
+    }
+    val index = low - 1
+    if (index < 0 || address >= ends[index]) {
+      return null
+    }
+    val location = lineTable?.lookup(address)
+    val name = String(names, nameStarts[index], nameStarts[index + 1] - nameStarts[index], Charsets.UTF_8)
+    return Entry(name, location?.file ?: "", location?.line ?: 0)
+  }
+
+  private class Section(val type: Int, val flags: Long, val offset: Long, val size: Long, val link: Int, val entrySize: Long, val nameOffset: Int)
+
+  private class ElfReader(private val buffer: ByteBuffer, private val is64Bit: Boolean) {
+    private val sections: List<Section>
+    private val isArm = buffer.getShort(18).toInt() == EM_ARM
+
+    init {
+      val sectionsOffset = readWord(if (is64Bit) 0x28 else 0x20)
+      val sectionSize = buffer.getShort(if (is64Bit) 0x3A else 0x2E).toInt() and 0xFFFF
+      val sectionCount = buffer.getShort(if (is64Bit) 0x3C else 0x30).toInt() and 0xFFFF
+      if (sectionsOffset <= 0 || sectionsOffset + sectionSize.toLong() * sectionCount > buffer.limit()) {
+        throw IOException("Invalid ELF section headers")
+      }
+      sections = (0 until sectionCount).map { readSection((sectionsOffset + it * sectionSize).toInt()) }
+    }
+
+    fun buildIndex(): ElfSymbolIndex {
+      // Stripped files only have the dynamic symbols, which are also in .symtab otherwise.
+      val symbolTable = sections.firstOrNull { it.type == SHT_SYMTAB } ?: sections.firstOrNull { it.type == SHT_DYNSYM }
+      val symbols = if (symbolTable == null) SymbolList(0) else readSymbols(symbolTable)
+
+      // Sort by address. For symbols at the same address (aliases), the preferred one is placed first and the others are dropped.
+      val order = (0 until symbols.size).sortedWith(
+        compareBy<Int> { symbols.starts[it] }.thenBy { symbols.isLocal[it] }.thenByDescending { symbols.sizes[it] })
+      val starts = LongArray(order.size)
+      val ends = LongArray(order.size)
+      val nameOffsets = IntArray(order.size)
+      var count = 0
+      for (symbol in order) {
+        if (count > 0 && starts[count - 1] == symbols.starts[symbol]) {
+          continue
+        }
+        starts[count] = symbols.starts[symbol]
+        ends[count] = symbols.starts[symbol] + symbols.sizes[symbol]
+        nameOffsets[count] = symbols.nameOffsets[symbol]
+        count++
+      }
+      // Symbols without a size extend to the next one.
+      for (i in 0 until count) {
+        if (ends[i] == starts[i]) {
+          ends[i] = if (i + 1 < count) starts[i + 1] else Long.MAX_VALUE
+        }
+      }
+
+      val lineSection = findSection(".debug_line")
+      val lineTable = if (lineSection != null && lineSection.flags and SHF_COMPRESSED == 0L) {
+        DwarfLineTable.parse(buffer.duplicate().order(buffer.order()), lineSection.offset.toInt(), lineSection.size.toInt())
+      }
+      else {
+        null
+      }
+      // Copy the names of the kept symbols out of the mapped string table, one after the other.
+      val nameStarts = IntArray(count + 1)
+      for (i in 0 until count) {
+        nameStarts[i + 1] = nameStarts[i] + stringLength(nameOffsets[i])
+      }
+      val names = ByteArray(nameStarts[count])
+      val source = buffer.duplicate()
+      for (i in 0 until count) {
+        if (nameStarts[i + 1] > nameStarts[i]) {
+          source.position(nameOffsets[i])
+          source.get(names, nameStarts[i], nameStarts[i + 1] - nameStarts[i])
+        }
+      }
+      return ElfSymbolIndex(starts.copyOf(count), ends.copyOf(count), names, nameStarts, lineTable)
+    }
+
+    /**
+     * @return the length of the null-terminated string at the offset, or 0 if the offset is outside of the file.
+     */
+    private fun stringLength(offset: Int): Int {
+      if (offset < 0) {
+        return 0
+      }
+      var end = offset
+      while (end < buffer.limit() && buffer.get(end).toInt() != 0) {
+        end++
+      }
+      return end - offset
+    }
+
+    private fun readSymbols(table: Section): SymbolList {
+      val strings = sections.getOrNull(table.link) ?: throw IOException("Invalid ELF symbol table")
+      val entrySize = if (table.entrySize > 0) table.entrySize.toInt() else if (is64Bit) 24 else 16
+      val symbolCount = (table.size / entrySize).toInt()
+      val symbols = SymbolList(symbolCount)
+      var count = 0
+      for (i in 0 until symbolCount) {
+        val offset = (table.offset + i.toLong() * entrySize).toInt()
+        val info: Int
+        val sectionIndex: Int
+        var start: Long
+        val size: Long
+        if (is64Bit) {
+          info = buffer.get(offset + 4).toInt()
+          sectionIndex = buffer.getShort(offset + 6).toInt() and 0xFFFF
+          start = buffer.getLong(offset + 8)
+          size = buffer.getLong(offset + 16)
+        }
+        else {
+          start = buffer.getInt(offset + 4).toLong() and 0xFFFFFFFFL
+          size = buffer.getInt(offset + 8).toLong() and 0xFFFFFFFFL
+          info = buffer.get(offset + 12).toInt()
+          sectionIndex = buffer.getShort(offset + 14).toInt() and 0xFFFF
+        }
+        val type = info and 0xF
+        if ((type != STT_FUNC && type != STT_GNU_IFUNC) || sectionIndex == SHN_UNDEF || start == 0L) {
+          continue
+        }
+        if (isArm) {
+          // The lowest bit marks Thumb functions.
+          start = start and 1L.inv()
+        }
+        symbols.starts[count] = start
+        symbols.sizes[count] = size
+        symbols.nameOffsets[count] = (strings.offset + (buffer.getInt(offset).toLong() and 0xFFFFFFFFL)).toInt()
+        symbols.isLocal[count] = (info and 0xFF) ushr 4 == STB_LOCAL
+        count++
+      }
+      symbols.size = count
+      return symbols
+    }
+
+    private fun findSection(name: String): Section? {
+      val names = sections.getOrNull(buffer.getShort(if (is64Bit) 0x3E else 0x32).toInt() and 0xFFFF) ?: return null
+      val nameBytes = name.toByteArray(Charsets.UTF_8)
+      return sections.firstOrNull { section ->
+        val start = (names.offset + section.nameOffset).toInt()
+        start + nameBytes.size < buffer.limit() &&
+        nameBytes.indices.all { buffer.get(start + it) == nameBytes[it] } &&
+        buffer.get(start + nameBytes.size).toInt() == 0
+      }
+    }
+
+    private fun readSection(offset: Int): Section {
+      return if (is64Bit) {
+        Section(type = buffer.getInt(offset + 4), flags = buffer.getLong(offset + 8), offset = buffer.getLong(offset + 24),
+                size = buffer.getLong(offset + 32), link = buffer.getInt(offset + 40), entrySize = buffer.getLong(offset + 56),
+                nameOffset = buffer.getInt(offset))
+      }
+      else {
+        Section(type = buffer.getInt(offset + 4), flags = readWord(offset + 8), offset = readWord(offset + 16), size = readWord(offset + 20),
+                link = buffer.getInt(offset + 24), entrySize = readWord(offset + 36), nameOffset = buffer.getInt(offset))
+      }
+    }
+
+    private fun readWord(offset: Int): Long = if (is64Bit) buffer.getLong(offset) else buffer.getInt(offset).toLong() and 0xFFFFFFFFL
+  }
+
+  private class SymbolList(capacity: Int) {
+    val starts = LongArray(capacity)
+    val sizes = LongArray(capacity)
+    val nameOffsets = IntArray(capacity)
+    val isLocal = BooleanArray(capacity)
+    var size = 0
+  }
+}
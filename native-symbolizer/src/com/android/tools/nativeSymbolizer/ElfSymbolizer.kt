@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.ConcurrentHashMap
+
+/**
+ * Implementation of NativeSymbolizer that reads the symbol files in process, without going through an external symbolizer for each
+ * address.
+ *
+ * The first lookup in a symbol file builds an [ElfSymbolIndex] of its functions and line table, which is kept until [stop] (or until the
+ * file changes), so that each following lookup is a binary search. Indices hold copies of the symbols, not the mapped files.
+ *
+ * Addresses that can't be resolved this way (e.g. files in an unsupported format, or names that can't be demangled) are passed on to
+ * the fallback symbolizer, if there is one.
+ */
+class ElfSymbolizer(private val symLocator: SymbolFilesLocator,
+                    private val fallback: NativeSymbolizer? = null) : NativeSymbolizer {
+
+  private val indices = ConcurrentHashMap<File, CachedIndex>()
+
+  override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? {
+    var needsFallback = false
+    for (symFile in symLocator.findSymbolFiles(abiArch, module)) {
+      val index = getIndex(symFile)
+      if (index == null) {
+        needsFallback = true
+        continue
+      }
+      val entry = index.lookup(offset) ?: continue
+      val name = if (entry.name.startsWith("_Z")) ItaniumDemangler.demangle(entry.name) else entry.name
+      if (name == null) {
+        needsFallback = true
+        continue
+      }
+      return Symbol(name, module, entry.sourceFile, entry.lineNumber)
+    }
+    return if (needsFallback) fallback?.symbolize(abiArch, module, offset) else null
+  }
+
+  private fun getIndex(file: File): ElfSymbolIndex? {
+    val lastModified = file.lastModified()
+    val length = file.length()
+    val cached = indices[file]
+    if (cached != null && cached.lastModified == lastModified && cached.length == length) {
+      return cached.index
+    }
+    val index = try {
+      ElfSymbolIndex.load(file)
+    }
+    catch (e: IOException) {
+      getLogger().warn("Can't read symbols of $file", e)
+      null
+    }
+    catch (e: RuntimeException) {
+      // Truncated or corrupted files make the reads go out of bounds.
+      getLogger().warn("Can't read symbols of $file", e)
+      null
+    }
+    indices[file] = CachedIndex(index, lastModified, length)
+    return index
+  }
+
+  override fun stop() {
+    indices.clear()
+    fallback?.stop()
+  }
+
+  private class CachedIndex(val index: ElfSymbolIndex?, val lastModified: Long, val length: Long)
+}
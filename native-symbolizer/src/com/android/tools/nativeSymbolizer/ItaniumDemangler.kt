@@ -0,0 +1,511 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+/**
+ * Demangles C++ symbol names of the Itanium C++ ABI, used by clang and gcc for Android, the way llvm-symbolizer shows them.
+ * E.g. "_Z4SwapP7_JNIEnvP8_jobjectS2_" is shown as "Swap(_JNIEnv*, _jobject*, _jobject*)".
+ *
+ * Only the part of the grammar used by the functions of native libraries is supported: nested, local and template names, constructors,
+ * destructors and operators, substitutions and most types. Names using anything else (e.g. expressions in template arguments) are not
+ * demangled.
+ *
+ * More info about the mangling: https://itanium-cxx-abi.github.io/cxx-abi/abi.html#mangling
+ */
+internal class ItaniumDemangler private constructor(private val mangled: String) {
+  private var pos = 0
+  private val substitutions = mutableListOf<TypeName>()
+  private var templateArgs = listOf<TypeName>()
+
+  companion object {
+    /**
+     * @return the demangled name, or null if the name is not mangled or can't be demangled.
+     */
+    fun demangle(name: String): String? {
+      if (!name.startsWith("_Z")) {
+        return null
+      }
+      // Functions cloned by the compiler have a suffix, e.g. "_Z3foov.cold" or "_Z3foov.localalias.0".
+      val suffixStart = name.indexOf('.')
+      val symbol = if (suffixStart < 0) name else name.substring(0, suffixStart)
+      val demangled = try {
+        ItaniumDemangler(symbol).parseMangledName()
+      }
+      catch (e: DemangleException) {
+        return null
+      }
+      return if (suffixStart < 0) demangled else "$demangled (${name.substring(suffixStart)})"
+    }
+
+    private val BUILTIN_TYPES = mapOf(
+      'v' to "void", 'w' to "wchar_t", 'b' to "bool", 'c' to "char", 'a' to "signed char", 'h' to "unsigned char", 's' to "short",
+      't' to "unsigned short", 'i' to "int", 'j' to "unsigned int", 'l' to "long", 'm' to "unsigned long", 'x' to "long long",
+      'y' to "unsigned long long", 'n' to "__int128", 'o' to "unsigned __int128", 'f' to "float", 'd' to "double", 'e' to "long double",
+      'g' to "__float128", 'z' to "...")
+
+    private val EXTENDED_BUILTIN_TYPES = mapOf(
+      'n' to "std::nullptr_t", 'i' to "char32_t", 's' to "char16_t", 'u' to "char8_t", 'a' to "auto", 'c' to "decltype(auto)",
+      'h' to "half", 'f' to "decimal32", 'd' to "decimal64", 'e' to "decimal128")
+
+    private val OPERATORS = mapOf(
+      "nw" to " new", "na" to " new[]", "dl" to " delete", "da" to " delete[]", "ps" to "+", "ng" to "-", "ad" to "&", "de" to "*",
+      "co" to "~", "pl" to "+", "mi" to "-", "ml" to "*", "dv" to "/", "rm" to "%", "an" to "&", "or" to "|", "eo" to "^", "aS" to "=",
+      "pL" to "+=", "mI" to "-=", "mL" to "*=", "dV" to "/=", "rM" to "%=", "aN" to "&=", "oR" to "|=", "eO" to "^=", "ls" to "<<",
+      "rs" to ">>", "lS" to "<<=", "rS" to ">>=", "eq" to "==", "ne" to "!=", "lt" to "<", "gt" to ">", "le" to "<=", "ge" to ">=",
+      "ss" to "<=>", "nt" to "!", "aa" to "&&", "oo" to "||", "pp" to "++", "mm" to "--", "cm" to ",", "pm" to "->*", "pt" to "->",
+      "cl" to "()", "ix" to "[]", "qu" to "?")
+
+    private val STD_SUBSTITUTIONS = mapOf(
+      'a' to "std::allocator", 'b' to "std::basic_string", 's' to "std::string", 'i' to "std::istream", 'o' to "std::ostream",
+      'd' to "std::iostream")
+  }
+
+  private class DemangleException : Exception()
+
+  /**
+   * A type, split around where a declarator goes. E.g. a function type is "void " and "(int)", so that a pointer to it is "void (*)(int)".
+   */
+  private class TypeName(val left: String, val right: String = "", val parenthesized: Boolean = false) {
+    override fun toString() = left + right
+
+    fun withDeclarator(declarator: String) = when {
+      right.isEmpty() -> TypeName(left + declarator)
+      parenthesized -> TypeName(left + declarator, right, true)
+      else -> TypeName("$left($declarator", ")$right", true)
+    }
+  }
+
+  private class Name(val text: String, val isTemplate: Boolean = false, val isCtorDtorOrConversion: Boolean = false,
+                     val qualifiers: String = "")
+
+  private fun parseMangledName(): String {
+    expect("_Z")
+    val result = parseEncoding()
+    if (pos != mangled.length) {
+      fail()
+    }
+    return result
+  }
+
+  private fun parseEncoding(): String {
+    if (peek() == 'T' || peek() == 'G') {
+      return parseSpecialName()
+    }
+    val name = parseName()
+    if (pos == mangled.length || peek() == 'E') {
+      // Not a function, e.g. a static variable.
+      return name.text
+    }
+    val returnType = if (name.isTemplate && !name.isCtorDtorOrConversion) "${parseType()} " else ""
+    val parameters = mutableListOf<TypeName>()
+    while (pos < mangled.length && peek() != 'E') {
+      parameters.add(parseType())
+    }
+    val parameterList = if (parameters.size == 1 && parameters[0].toString() == "void") "" else parameters.joinToString(", ")
+    return "$returnType${name.text}($parameterList)${name.qualifiers}"
+  }
+
+  private fun parseSpecialName(): String {
+    return when {
+      consume("TV") -> "vtable for ${parseType()}"
+      consume("TT") -> "VTT for ${parseType()}"
+      consume("TI") -> "typeinfo for ${parseType()}"
+      consume("TS") -> "typeinfo name for ${parseType()}"
+      consume("Th") -> {
+        parseNumber()
+        expect("_")
+        "non-virtual thunk to ${parseEncoding()}"
+      }
+      consume("Tv") -> {
+        parseNumber()
+        expect("_")
+        parseNumber()
+        expect("_")
+        "virtual thunk to ${parseEncoding()}"
+      }
+      consume("GV") -> "guard variable for ${parseName().text}"
+      else -> fail()
+    }
+  }
+
+  private fun parseName(): Name {
+    when (peek()) {
+      'N' -> return parseNestedName()
+      'Z' -> return parseLocalName()
+    }
+    if (peek() == 'S' && peek(1) != 't') {
+      // A substituted template name, which is always followed by its arguments.
+      val template = parseSubstitution()
+      if (peek() != 'I') fail()
+      return Name(template.toString() + parseTemplateArgs(), isTemplate = true)
+    }
+    val name = (if (consume("St")) "std::" else "") + parseUnqualifiedName("").text
+    if (peek() == 'I') {
+      substitutions.add(TypeName(name))
+      return Name(name + parseTemplateArgs(), isTemplate = true)
+    }
+    return Name(name)
+  }
+
+  private fun parseNestedName(): Name {
+    expect("N")
+    val qualifiers = parseCvQualifiers()
+    val refQualifier = when {
+      consume("R") -> " &"
+      consume("O") -> " &&"
+      else -> ""
+    }
+    var soFar = ""
+    var lastComponent = ""
+    var isTemplate = false
+    var isCtorDtorOrConversion = false
+    while (!consume("E")) {
+      var substitutable = true
+      when {
+        peek() == 'S' && peek(1) != 't' -> {
+          soFar = parseSubstitution().toString()
+          lastComponent = soFar.substringAfterLast("::")
+          substitutable = false
+        }
+        peek() == 'T' -> {
+          soFar = parseTemplateParam().toString()
+          substitutable = false
+        }
+        peek() == 'I' -> {
+          if (soFar.isEmpty()) fail()
+          soFar += parseTemplateArgs()
+          isTemplate = true
+        }
+        else -> {
+          if (consume("St")) {
+            soFar = "std"
+          }
+          val component = parseUnqualifiedName(lastComponent)
+          soFar = if (soFar.isEmpty()) component.text else "$soFar::${component.text}"
+          lastComponent = component.text
+          isTemplate = false
+          isCtorDtorOrConversion = component.isCtorDtorOrConversion
+        }
+      }
+      if (substitutable && peek() != 'E') {
+        substitutions.add(TypeName(soFar))
+      }
+    }
+    return Name(soFar, isTemplate, isCtorDtorOrConversion, qualifiers + refQualifier)
+  }
+
+  private fun parseLocalName(): Name {
+    expect("Z")
+    val savedTemplateArgs = templateArgs
+    val function = parseEncoding()
+    templateArgs = savedTemplateArgs
+    expect("E")
+    if (consume("s")) {
+      parseDiscriminator()
+      return Name("$function::string literal")
+    }
+    val entity = parseName()
+    parseDiscriminator()
+    return Name("$function::${entity.text}", entity.isTemplate, entity.isCtorDtorOrConversion, entity.qualifiers)
+  }
+
+  private fun parseDiscriminator() {
+    if (consume("__")) {
+      parseNumber()
+      expect("_")
+    }
+    else if (consume("_")) {
+      parseNumber()
+    }
+  }
+
+  /**
+   * @param enclosing the name of the enclosing class, used for constructors and destructors.
+   */
+  private fun parseUnqualifiedName(enclosing: String): Name {
+    val c = peek()
+    val name = when {
+      c.isDigit() -> Name(parseSourceName())
+      c == 'L' -> {
+        // Internal linkage, which isn't shown.
+        pos++
+        return parseUnqualifiedName(enclosing)
+      }
+      c == 'C' && (peek(1) in '1'..'5' || peek(1) == 'I') -> {
+        pos += 2
+        Name(enclosing.substringBefore('<'), isCtorDtorOrConversion = true)
+      }
+      c == 'D' && peek(1) in "0124" -> {
+        pos += 2
+        Name("~" + enclosing.substringBefore('<'), isCtorDtorOrConversion = true)
+      }
+      c == 'U' && peek(1) == 't' -> {
+        pos += 2
+        val number = if (peek() == '_') 1 else parseNumber() + 2
+        expect("_")
+        Name("{unnamed type#$number}")
+      }
+      c == 'U' && peek(1) == 'l' -> {
+        pos += 2
+        val parameters = mutableListOf<TypeName>()
+        while (!consume("E")) {
+          parameters.add(parseType())
+        }
+        val number = if (peek() == '_') 1 else parseNumber() + 2
+        expect("_")
+        val parameterList = if (parameters.size == 1 && parameters[0].toString() == "void") "" else parameters.joinToString(", ")
+        Name("{lambda($parameterList)#$number}")
+      }
+      c == 'c' && peek(1) == 'v' -> {
+        pos += 2
+        Name("operator ${parseType()}", isCtorDtorOrConversion = true)
+      }
+      c == 'l' && peek(1) == 'i' -> {
+        pos += 2
+        Name("operator\"\" ${parseSourceName()}")
+      }
+      c.isLowerCase() -> {
+        if (pos + 2 > mangled.length) fail()
+        val operator = OPERATORS[mangled.substring(pos, pos + 2)] ?: fail()
+        pos += 2
+        Name("operator$operator")
+      }
+      else -> fail()
+    }
+    // ABI tags, e.g. "B5cxx11".
+    var text = name.text
+    while (consume("B")) {
+      text += "[abi:${parseSourceName()}]"
+    }
+    return Name(text, name.isTemplate, name.isCtorDtorOrConversion, name.qualifiers)
+  }
+
+  private fun parseSourceName(): String {
+    val length = parseNumber()
+    if (length <= 0 || pos + length > mangled.length) fail()
+    val name = mangled.substring(pos, pos + length)
+    pos += length
+    return if (name.startsWith("_GLOBAL__N")) "(anonymous namespace)" else name
+  }
+
+  private fun parseTemplateArgs(): String {
+    expect("I")
+    val args = mutableListOf<TypeName>()
+    while (!consume("E")) {
+      args.add(parseTemplateArg())
+    }
+    templateArgs = args
+    return "<${args.joinToString(", ")}>"
+  }
+
+  private fun parseTemplateArg(): TypeName {
+    return when {
+      consume("L") -> {
+        if (consume("_Z")) {
+          val name = parseEncoding()
+          expect("E")
+          return TypeName(name)
+        }
+        val type = parseType().toString()
+        val negative = consume("n")
+        val value = (if (negative) "-" else "") + parseNumber()
+        expect("E")
+        TypeName(when (type) {
+                   "bool" -> if (value == "0") "false" else "true"
+                   "int" -> value
+                   "unsigned int" -> "${value}u"
+                   "long" -> "${value}l"
+                   "unsigned long" -> "${value}ul"
+                   else -> "($type)$value"
+                 })
+      }
+      consume("J") -> {
+        val pack = mutableListOf<TypeName>()
+        while (!consume("E")) {
+          pack.add(parseTemplateArg())
+        }
+        TypeName(pack.joinToString(", "))
+      }
+      else -> parseType()
+    }
+  }
+
+  private fun parseTemplateParam(): TypeName {
+    expect("T")
+    val index = if (peek() == '_') 0 else parseNumber() + 1
+    expect("_")
+    val param = templateArgs.getOrNull(index) ?: fail()
+    substitutions.add(param)
+    return param
+  }
+
+  private fun parseSubstitution(): TypeName {
+    expect("S")
+    STD_SUBSTITUTIONS[peek()]?.let {
+      pos++
+      return TypeName(it)
+    }
+    if (consume("_")) {
+      return substitutions.getOrNull(0) ?: fail()
+    }
+    var index = 0
+    while (peek() != '_') {
+      val c = peek()
+      index = index * 36 + when (c) {
+        in '0'..'9' -> c - '0'
+        in 'A'..'Z' -> c - 'A' + 10
+        else -> fail()
+      }
+      pos++
+    }
+    pos++
+    return substitutions.getOrNull(index + 1) ?: fail()
+  }
+
+  private fun parseCvQualifiers(): String {
+    var qualifiers = ""
+    if (consume("r")) qualifiers += " restrict"
+    if (consume("V")) qualifiers += " volatile"
+    if (consume("K")) qualifiers += " const"
+    return qualifiers
+  }
+
+  private fun parseType(): TypeName {
+    val c = peek()
+    BUILTIN_TYPES[c]?.let {
+      pos++
+      return TypeName(it)
+    }
+    val type = when (c) {
+      'u' -> {
+        pos++
+        TypeName(parseSourceName())
+      }
+      'D' -> {
+        if (consume("Dp")) {
+          // Pack expansion, shown as its pattern.
+          parseType()
+        }
+        else {
+          val builtin = EXTENDED_BUILTIN_TYPES[peek(1)] ?: fail()
+          pos += 2
+          return TypeName(builtin)
+        }
+      }
+      'r', 'V', 'K' -> {
+        val qualifiers = parseCvQualifiers()
+        val qualified = parseType()
+        if (qualified.right.isEmpty()) TypeName(qualified.left + qualifiers) else TypeName(qualified.left, qualified.right + qualifiers)
+      }
+      'P' -> {
+        pos++
+        parseType().withDeclarator("*")
+      }
+      'R' -> {
+        pos++
+        parseType().withDeclarator("&")
+      }
+      'O' -> {
+        pos++
+        parseType().withDeclarator("&&")
+      }
+      'F' -> parseFunctionType()
+      'A' -> {
+        pos++
+        val size = if (peek() == '_') "" else parseNumber().toString()
+        expect("_")
+        val element = parseType()
+        TypeName(element.left, " [$size]${element.right}", element.parenthesized)
+      }
+      'M' -> {
+        pos++
+        val enclosing = parseType()
+        parseType().withDeclarator("$enclosing::*")
+      }
+      'T' -> {
+        val param = parseTemplateParam()
+        if (peek() != 'I') {
+          return param
+        }
+        TypeName(param.toString() + parseTemplateArgs())
+      }
+      'S' -> {
+        if (peek(1) == 't') {
+          TypeName(parseName().text)
+        }
+        else {
+          val substitution = parseSubstitution()
+          if (peek() != 'I') {
+            return substitution
+          }
+          TypeName(substitution.toString() + parseTemplateArgs())
+        }
+      }
+      'N', 'Z' -> TypeName(parseName().text)
+      else -> if (c.isDigit()) TypeName(parseName().text) else fail()
+    }
+    substitutions.add(type)
+    return type
+  }
+
+  private fun parseFunctionType(): TypeName {
+    expect("F")
+    consume("Y")
+    val returnType = parseType()
+    val parameters = mutableListOf<TypeName>()
+    var refQualifier = ""
+    while (!consume("E")) {
+      when {
+        peek() == 'R' && peek(1) == 'E' -> {
+          pos++
+          refQualifier = " &"
+        }
+        peek() == 'O' && peek(1) == 'E' -> {
+          pos++
+          refQualifier = " &&"
+        }
+        else -> parameters.add(parseType())
+      }
+    }
+    val parameterList = if (parameters.size == 1 && parameters[0].toString() == "void") "" else parameters.joinToString(", ")
+    return TypeName("$returnType ", "($parameterList)$refQualifier")
+  }
+
+  private fun parseNumber(): Int {
+    val start = pos
+    while (pos < mangled.length && mangled[pos].isDigit()) {
+      pos++
+    }
+    if (start == pos) fail()
+    return mangled.substring(start, pos).toIntOrNull() ?: fail()
+  }
+
+  private fun peek(offset: Int = 0): Char = if (pos + offset < mangled.length) mangled[pos + offset] else '\u0000'
+
+  private fun consume(prefix: String): Boolean {
+    if (!mangled.startsWith(prefix, pos)) {
+      return false
+    }
+    pos += prefix.length
+    return true
+  }
+
+  private fun expect(prefix: String) {
+    if (!consume(prefix)) fail()
+  }
+
+  private fun fail(): Nothing = throw DemangleException()
+}
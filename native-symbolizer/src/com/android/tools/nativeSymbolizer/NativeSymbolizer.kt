@@ -51,7 +51,7 @@ fun createNativeSymbolizer(project: Project): NativeSymbolizer {
     log.debug("Native symbolizer paths for $arch is [$dirs]")
   }
   val symLocator = SymbolFilesLocator(symDirMap)
-  return LlvmSymbolizer(symbolizerPath, symLocator)
+  return ElfSymbolizer(symLocator, LlvmSymbolizer(symbolizerPath, symLocator))
 }
 
 /**
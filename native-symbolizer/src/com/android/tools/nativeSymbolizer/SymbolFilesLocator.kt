@@ -25,19 +25,32 @@ import com.intellij.openapi.module.Module
 import com.intellij.openapi.module.ModuleManager
 import com.intellij.openapi.project.Project
 import java.io.File
+import java.util.concurrent.ConcurrentHashMap
 
 /**
  * Given a map of possible symbols locations finds symbol files
  * for a (device module + CPU arch) pairs.
  */
 class SymbolFilesLocator(private val cpuToSymbolDirs: Map<String, Set<File>>) {
+  // Lookups are done for every native frame, and there are far fewer distinct modules than frames.
+  // Only modules with symbol files are cached: the files of the others may appear with the next build of the project.
+  private val cache = ConcurrentHashMap<Pair<String, String>, List<File>>()
 
   fun findSymbolFiles(cpuArch: String, module: String): List<File> {
-    // TODO (ezemetsov): Add a cache
+    val baseModuleName = File(File(module).name).nameWithoutExtension
+    val key = Pair(cpuArch, baseModuleName)
+    cache[key]?.let { return it }
+    val files = findSymbolFilesInDirs(cpuArch, baseModuleName)
+    if (files.isNotEmpty()) {
+      cache[key] = files
+    }
+    return files
+  }
+
+  private fun findSymbolFilesInDirs(cpuArch: String, baseModuleName: String): List<File> {
     // Just look in all dirs from the map and find files with the same
     // basename as a given device module.
     val symDirs = cpuToSymbolDirs.getOrDefault(cpuArch, setOf<File>()).toList()
-    val baseModuleName = File(File(module).name).nameWithoutExtension
     val symNameCandidates = arrayListOf(baseModuleName + ".so", baseModuleName + ".dwo")
     val result = mutableListOf<File>()
     for (dir in symDirs) {
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.android.testutils.TestUtils
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Assert
+import org.junit.Test
+import java.io.File
+import java.nio.file.Paths
+
+class ElfSymbolizerTest {
+
+  val testDataDir = TestUtils.getWorkspaceFile("tools/adt/idea/native-symbolizer/testData/bin/").absolutePath
+  val LIB_FILE_NAME = "libnative-lib.so"
+  val EXPECTED_SYMBOLS_FILE_NAME = "symbols.txt"
+  val architectures = listOf("arm", "arm64", "x86", "x86_64")
+
+  @Test
+  fun testSymbolizeAll() {
+    val symLocator = SymbolFilesLocator(architectures.associate { Pair(it, setOf(File(testDataDir, it))) })
+    val symbolizer = ElfSymbolizer(symLocator)
+    for (arch in architectures) {
+      checkSymbols(symbolizer, arch, Paths.get(testDataDir, arch, EXPECTED_SYMBOLS_FILE_NAME).toFile())
+    }
+  }
+
+  @Test
+  fun testSymbolizeBinariesBuiltOnWindows() {
+    val arch = "arm64"
+    val symDir = Paths.get(testDataDir, "win").toFile()
+    val symbolizer = ElfSymbolizer(SymbolFilesLocator(mapOf(Pair(arch, setOf(symDir)))))
+    checkSymbols(symbolizer, arch, File(symDir, EXPECTED_SYMBOLS_FILE_NAME))
+  }
+
+  @Test
+  fun testUnknownSymbols() {
+    val symLocator = SymbolFilesLocator(architectures.associate { Pair(it, setOf(File(testDataDir, it))) })
+    val symbolizer = ElfSymbolizer(symLocator)
+    Assert.assertNull(symbolizer.symbolize("arm", "/p/libnotexists.so", 12345))
+    Assert.assertNull(symbolizer.symbolize("arm", LIB_FILE_NAME, 0xffffffffff))
+  }
+
+  @Test
+  fun testFallbackIsUsedForUnreadableFiles() {
+    val symDir = FileUtil.createTempDirectory("elf-symbolizer", "not-elf", true)
+    File(symDir, LIB_FILE_NAME).writeText("not an ELF file")
+    val fallbackSymbol = Symbol("fallback", LIB_FILE_NAME)
+    val fallback = object : NativeSymbolizer {
+      override fun symbolize(abiArch: String, module: String, offset: Long): Symbol? = fallbackSymbol
+      override fun stop() {}
+    }
+    val symbolizer = ElfSymbolizer(SymbolFilesLocator(mapOf(Pair("arm", setOf(symDir)))), fallback)
+    Assert.assertSame(fallbackSymbol, symbolizer.symbolize("arm", LIB_FILE_NAME, 1))
+  }
+
+  @Test
+  fun testDemangle() {
+    Assert.assertEquals("foo(int, char const*)", ItaniumDemangler.demangle("_Z3fooiPKc"))
+    Assert.assertEquals("ns::Klass::method() const", ItaniumDemangler.demangle("_ZNK2ns5Klass6methodEv"))
+    Assert.assertEquals("std::vector<int, std::allocator<int>>::size() const",
+                        ItaniumDemangler.demangle("_ZNKSt6vectorIiSaIiEE4sizeEv"))
+    Assert.assertEquals("std::string::append(char const*, unsigned int) (.part.18)",
+                        ItaniumDemangler.demangle("_ZNSs6appendEPKcj.part.18"))
+    Assert.assertNull(ItaniumDemangler.demangle("_Znot_mangled"))
+  }
+
+  private fun checkSymbols(symbolizer: NativeSymbolizer, arch: String, expectedSymbolsFile: File) {
+    Assert.assertTrue(expectedSymbolsFile.exists())
+    for (line in expectedSymbolsFile.readLines()) {
+      val symParts = line.split('|')
+      val offset = symParts[0].toLong(16)
+      val name = symParts[1]
+      val sourceFile = symParts[2]
+      val lineNumber = symParts[3].toInt()
+      val module = "/data/app/com.someapp.name-abcd09876abds==/lib/arm64/" + LIB_FILE_NAME
+
+      // +1 to get an address within the function, rather than function start address
+      val symbol = symbolizer.symbolize(arch, module, offset + 1)!!
+      Assert.assertEquals(name, symbol.name)
+      Assert.assertEquals(sourceFile, symbol.sourceFile.replace('\\', '/'))
+      Assert.assertTrue(symbol.lineNumber >= lineNumber)
+    }
+  }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.nativeSymbolizer
+
+import com.intellij.openapi.util.io.FileUtil
+import org.junit.Assert
+import org.junit.Test
+import java.io.File
+
+class SymbolFilesLocatorTest {
+
+  @Test
+  fun testSymbolFilesAddedAfterAFailedLookupAreFound() {
+    val symDir = FileUtil.createTempDirectory("symbol-files-locator", "added", true)
+    val symLocator = SymbolFilesLocator(mapOf(Pair("arm", setOf(symDir))))
+    Assert.assertTrue(symLocator.findSymbolFiles("arm", "/data/app/libnative-lib.so").isEmpty())
+
+    val symFile = File(symDir, "libnative-lib.so")
+    symFile.writeText("")
+    Assert.assertEquals(listOf(symFile), symLocator.findSymbolFiles("arm", "/data/app/libnative-lib.so"))
+  }
+}
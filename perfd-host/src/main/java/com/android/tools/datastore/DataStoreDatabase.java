@@ -15,21 +15,33 @@
  */
 package com.android.tools.datastore;
 
+import com.android.tools.datastore.database.GroupCommitWriter;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.function.Consumer;
 
 public class DataStoreDatabase {
   public enum Characteristic {
     // TODO handle potential db file name clashes
     DURABLE,
-    PERFORMANT
+    PERFORMANT,
+    // Like DURABLE, but an existing file is re-opened instead of deleted so sessions survive restarts. The file is WAL-journaled and
+    // memory-mapped, and tables are only recreated when their schema version changes (see DataStoreTable#getSchemaVersion). Old sessions
+    // are pruned by the DataStoreService, see SessionRetention.
+    PERSISTENT
   }
 
+  // Table that records, per DataStoreTable subclass, the schema version its tables were created with. Only PERSISTENT databases have it.
+  public static final String SCHEMA_VERSIONS_TABLE = "DataStore_SchemaVersions";
+
+  private static final long PERSISTENT_MMAP_SIZE_BYTES = 256L * 1024 * 1024;
+
   @NotNull
   private LogService.Logger getLogger() {
     return myLogService.getLogger(DataStoreDatabase.class);
@@ -39,8 +51,11 @@ public class DataStoreDatabase {
 
   private final Connection myConnection;
 
+  @Nullable private GroupCommitWriter myWriter;
+
   /**
-   * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE}.
+   * @param dbPath the path to the backing DB file, if {@link Characteristic#DURABLE} or {@link Characteristic#PERSISTENT}. Unused if
+   *               {@link Characteristic#PERFORMANT}.
    */
   @SuppressWarnings("JDBCResourceOpenedButNotSafelyClosed")
   public DataStoreDatabase(@NotNull String dbPath, @NotNull Characteristic characteristic, @NotNull LogService logService) {
@@ -80,12 +95,31 @@ public class DataStoreDatabase {
           }
           connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", dbFile.getPath()));
           break;
+        case PERSISTENT:
+          File persistentFile = new File(dbPath);
+          File persistentParent = persistentFile.getParentFile();
+          if (persistentParent != null) {
+            if (!persistentParent.mkdirs() && !persistentParent.exists()) {
+              getLogger().error("Unable to create parent directory");
+            }
+          }
+          connection = DriverManager.getConnection(String.format("jdbc:sqlite:%s", persistentFile.getPath()));
+          try (Statement statement = connection.createStatement()) {
+            // Lets SessionRetention hand the pages of deleted sessions back to the file system. Only takes effect on a new file.
+            statement.execute("PRAGMA auto_vacuum=INCREMENTAL");
+            // WAL keeps readers off the writer's path, and mmap lets SQLite page table data in only when a session's data is queried.
+            statement.execute("PRAGMA journal_mode=WAL");
+            statement.execute("PRAGMA synchronous=NORMAL");
+            statement.execute(String.format("PRAGMA mmap_size=%d", PERSISTENT_MMAP_SIZE_BYTES));
+            statement.execute(String.format("CREATE TABLE IF NOT EXISTS %s (TableName TEXT PRIMARY KEY, Version INTEGER)",
+                                            SCHEMA_VERSIONS_TABLE));
+          }
+          break;
         default:
           throw new RuntimeException("Characteristic not handled!");
       }
 
-      // Performance optimization.
-      // TODO: Create a timer and commit the database transaction every X seconds.
+      // Performance optimization. Commits happen on disconnect, or periodically if group commit is enabled.
       connection.setAutoCommit(false);
     }
     catch (ClassNotFoundException e) {
@@ -100,7 +134,25 @@ public class DataStoreDatabase {
     myConnection = connection;
   }
 
+  /**
+   * Routes all table writes on this database through a single {@link GroupCommitWriter}, which batches them and commits the
+   * transaction on a size or time threshold. Must be called before any table is initialized with {@link #getConnection()}.
+   */
+  public void enableGroupCommit(int queueCapacity, int commitWriteCount, long commitIntervalMs) {
+    if (myConnection != null && myWriter == null) {
+      myWriter = GroupCommitWriter.start(myConnection, queueCapacity, commitWriteCount, commitIntervalMs);
+    }
+  }
+
+  @Nullable
+  public GroupCommitWriter getGroupCommitWriter() {
+    return myWriter;
+  }
+
   public void disconnect() {
+    if (myWriter != null) {
+      myWriter.stop();
+    }
     try {
       myConnection.commit();
     }
@@ -18,6 +18,10 @@ package com.android.tools.datastore;
 import com.android.annotations.VisibleForTesting;
 import com.android.tools.analytics.UsageTracker;
 import com.android.tools.datastore.database.DataStoreTable;
+import com.android.tools.datastore.database.GroupCommitWriter;
+import com.android.tools.datastore.database.SessionRetention;
+import com.android.tools.datastore.poller.PollRunner;
+import com.android.tools.datastore.poller.PollScheduler;
 import com.android.tools.datastore.service.*;
 import com.android.tools.nativeSymbolizer.NativeSymbolizer;
 import com.android.tools.nativeSymbolizer.NopSymbolizer;
@@ -31,6 +35,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
+import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
@@ -39,6 +44,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.DURABLE;
+import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERSISTENT;
 
 /**
  * Primary class that initializes the Datastore. This class currently manages connections to perfd and sets up the DataStore service.
@@ -54,8 +60,35 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   private static final long REPORT_INITIAL_DELAY = TimeUnit.MINUTES.toMillis(15);
   private static final long REPORT_PERIOD = TimeUnit.HOURS.toMillis(1);
 
+  /**
+   * Opt-in for routing all database writes through a {@link GroupCommitWriter} per database instead of executing them on the
+   * poller threads.
+   */
+  private static final String GROUP_COMMIT_PROPERTY = "profiler.datastore.groupcommit";
+
+  /**
+   * Opt-in for keeping the shared database, and therefore the recorded sessions, across restarts.
+   */
+  private static final String PERSISTENT_SESSIONS_PROPERTY = "profiler.datastore.persistent";
+
+  /**
+   * Sessions of a persistent database are deleted at startup once they are older than this many days, or, oldest first, for as long as
+   * the persistent databases use more than the given number of megabytes.
+   */
+  private static final String RETENTION_DAYS_PROPERTY = "profiler.datastore.retention.days";
+  private static final String RETENTION_SIZE_MB_PROPERTY = "profiler.datastore.retention.mb";
+  private static final int DEFAULT_RETENTION_DAYS = 30;
+  private static final int DEFAULT_RETENTION_SIZE_MB = 2048;
+
+  /**
+   * Opt-in for running all {@link PollRunner}s on a shared {@link PollScheduler} instead of one fetch executor thread each.
+   */
+  private static final String POLL_SCHEDULER_PROPERTY = "profiler.datastore.pollscheduler";
+  private static final int POLL_SCHEDULER_MIN_THREAD_COUNT = 2;
+
   public static class BackingNamespace {
-    public static final BackingNamespace DEFAULT_SHARED_NAMESPACE = new BackingNamespace("default.sql", DURABLE);
+    public static final BackingNamespace DEFAULT_SHARED_NAMESPACE =
+      new BackingNamespace("default.sql", Boolean.getBoolean(PERSISTENT_SESSIONS_PROPERTY) ? PERSISTENT : DURABLE);
 
     @NotNull public final String myNamespace;
     @NotNull public final DataStoreDatabase.Characteristic myCharacteristic;
@@ -92,6 +125,7 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
   private final Server myServer;
   private final List<ServicePassThrough> myServices = new ArrayList<>();
   private final Consumer<Runnable> myFetchExecutor;
+  @Nullable private final PollScheduler myPollScheduler;
   @NotNull
   private Consumer<Throwable> myNoPiiExceptionHanlder;
 
@@ -122,12 +156,29 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
                           @NotNull LogService logService,
                           @Nullable ServerInterceptor interceptor) {
     myLogService = logService;
-    myFetchExecutor = fetchExecutor;
+    if (Boolean.getBoolean(POLL_SCHEDULER_PROPERTY)) {
+      PollScheduler scheduler = new PollScheduler(POLL_SCHEDULER_MIN_THREAD_COUNT);
+      myPollScheduler = scheduler;
+      // One-off fetches (e.g. heap dump downloads) still go to the given executor.
+      myFetchExecutor = runnable -> {
+        if (runnable instanceof PollRunner) {
+          scheduler.schedule((PollRunner)runnable);
+        }
+        else {
+          fetchExecutor.accept(runnable);
+        }
+      };
+    }
+    else {
+      myPollScheduler = null;
+      myFetchExecutor = fetchExecutor;
+    }
     myInterceptor = interceptor;
     myDatastoreDirectory = datastoreDirectory;
     myServerBuilder = InProcessServerBuilder.forName(serviceName).directExecutor();
     myNoPiiExceptionHanlder = (t) -> getLogger().error(t);
     createPollers();
+    pruneSessions();
     myServer = myServerBuilder.build();
     try {
       myServer.start();
@@ -164,12 +215,57 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
     registerService(new EnergyService(this, myFetchExecutor, myLogService));
   }
 
+  /**
+   * Applies the retention limits to the sessions kept by persistent databases. Runs once the services have initialized their tables, so
+   * that sessions left alive by the previous run are ended, and before any device is connected.
+   */
+  private void pruneSessions() {
+    DataStoreDatabase sharedDatabase = myDatabases.get(BackingNamespace.DEFAULT_SHARED_NAMESPACE);
+    if (sharedDatabase == null || sharedDatabase.getConnection() == null ||
+        BackingNamespace.DEFAULT_SHARED_NAMESPACE.myCharacteristic != PERSISTENT) {
+      return;
+    }
+    List<Connection> connections = new ArrayList<>();
+    myDatabases.forEach((namespace, database) -> {
+      if (namespace.myCharacteristic == PERSISTENT && database.getConnection() != null) {
+        connections.add(database.getConnection());
+      }
+    });
+    try {
+      List<Long> deleted = SessionRetention.pruneSessions(
+        sharedDatabase.getConnection(), connections,
+        TimeUnit.DAYS.toMillis(Integer.getInteger(RETENTION_DAYS_PROPERTY, DEFAULT_RETENTION_DAYS)),
+        Integer.getInteger(RETENTION_SIZE_MB_PROPERTY, DEFAULT_RETENTION_SIZE_MB) * 1024L * 1024L,
+        System.currentTimeMillis());
+      if (!deleted.isEmpty()) {
+        getLogger().info(String.format("Deleted %d sessions past the retention limits", deleted.size()));
+      }
+    }
+    catch (SQLException ex) {
+      getLogger().error(ex);
+    }
+  }
+
+  /**
+   * Notifies the registered services that a session was deleted.
+   */
+  public void onSessionDeleted(long sessionId) {
+    for (ServicePassThrough service : myServices) {
+      service.onSessionDeleted(sessionId);
+    }
+  }
+
   @VisibleForTesting
   @NotNull
   public DataStoreDatabase createDatabase(@NotNull String dbPath,
                                           @NotNull DataStoreDatabase.Characteristic characteristic,
                                           Consumer<Throwable> noPiiExceptionHandler) {
-    return new DataStoreDatabase(dbPath, characteristic, myLogService, noPiiExceptionHandler);
+    DataStoreDatabase database = new DataStoreDatabase(dbPath, characteristic, myLogService, noPiiExceptionHandler);
+    if (Boolean.getBoolean(GROUP_COMMIT_PROPERTY)) {
+      database.enableGroupCommit(GroupCommitWriter.DEFAULT_QUEUE_CAPACITY, GroupCommitWriter.DEFAULT_COMMIT_WRITE_COUNT,
+                                 GroupCommitWriter.DEFAULT_COMMIT_INTERVAL_MS);
+    }
+    return database;
   }
 
   /**
@@ -239,6 +335,9 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
       client.shutdownNow();
     }
     myConnectedClients.clear();
+    if (myPollScheduler != null) {
+      myPollScheduler.shutdown();
+    }
     myDatabases.forEach((name, db) -> db.disconnect());
     DataStoreTable.removeDataStoreErrorCallback(this);
   }
@@ -365,6 +464,36 @@ public class DataStoreService implements DataStoreTable.DataStoreTableErrorCallb
         .setAndroidProfilerDbStats(dbStats);
 
       UsageTracker.log(event);
+      logWriterStats();
+      logPollerStats();
+    }
+
+    private void logPollerStats() {
+      if (myPollScheduler == null) {
+        return;
+      }
+      for (PollScheduler.PollStats stats : myPollScheduler.getStats()) {
+        getLogger().info(String.format("%s: %d polls, delay %d ms, avg/max latency %d/%d ms, avg/max lag %d/%d ms",
+                                       stats.getName(), stats.getPollCount(), TimeUnit.NANOSECONDS.toMillis(stats.getCurrentDelayNs()),
+                                       TimeUnit.NANOSECONDS.toMillis(stats.getAverageLatencyNs()),
+                                       TimeUnit.NANOSECONDS.toMillis(stats.getMaxLatencyNs()),
+                                       TimeUnit.NANOSECONDS.toMillis(stats.getAverageLagNs()),
+                                       TimeUnit.NANOSECONDS.toMillis(stats.getMaxLagNs())));
+      }
+    }
+
+    private void logWriterStats() {
+      myDatabases.forEach((namespace, db) -> {
+        GroupCommitWriter writer = db.getGroupCommitWriter();
+        if (writer != null) {
+          getLogger().info(String.format("%s writer: queue depth %d (max %d), avg batch size %.1f, %d commits, " +
+                                         "avg/max commit latency %d/%d us",
+                                         namespace.myNamespace, writer.getQueueDepth(), writer.getMaxQueueDepth(),
+                                         writer.getAverageBatchSize(), writer.getCommitCount(),
+                                         TimeUnit.NANOSECONDS.toMicros(writer.getAverageCommitLatencyNs()),
+                                         TimeUnit.NANOSECONDS.toMicros(writer.getMaxCommitLatencyNs())));
+        }
+      });
     }
 
     private void collectReport(AndroidProfilerDbStats.Builder dbStats) {
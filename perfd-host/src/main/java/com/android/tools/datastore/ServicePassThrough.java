@@ -43,4 +43,10 @@ public interface ServicePassThrough {
    * @param connection {@link Connection} to the backing store
    */
   void setBackingStore(@NotNull DataStoreService.BackingNamespace namespace, @NotNull Connection connection);
+
+  /**
+   * Called when a session is deleted, to release the data the service keeps for it outside of its backing store.
+   */
+  default void onSessionDeleted(long sessionId) {
+  }
 }
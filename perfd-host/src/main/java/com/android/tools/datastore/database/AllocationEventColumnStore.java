@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.annotations.VisibleForTesting;
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import gnu.trove.TIntLongHashMap;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-memory, columnar alternative to the Memory_AllocationEvents table for a single session. Allocation events are appended to
+ * time-partitioned segments of primitive columns, and frees are resolved through an open-addressing tag -> slot index instead of
+ * a per-tag SQL UPDATE. Queries equivalent to QUERY_SNAPSHOT, QUERY_ALLOC_BY_ALLOC_TIME and QUERY_ALLOC_BY_FREE_TIME are answered
+ * by scanning segments, skipping the ones whose time bounds cannot match.
+ *
+ * All public methods are synchronized, as the store is written by the JVMTI poller and read from the gRPC threads.
+ */
+final class AllocationEventColumnStore {
+  @VisibleForTesting static final int SEGMENT_CAPACITY = 1 << 16;
+
+  private final List<Segment> mySegments = new ArrayList<>();
+  private final TIntObjectHashMap<Segment> mySegmentsById = new TIntObjectHashMap<>();
+  // Maps an object tag to (segment id << 32 | row), see {@link #encodeSlot(int, int)}.
+  private final TIntLongHashMap myTagIndex = new TIntLongHashMap();
+  private int myNextSegmentId;
+  private int myRowCount;
+  private int myCountLimit;
+
+  AllocationEventColumnStore(int countLimit) {
+    myCountLimit = countLimit;
+  }
+
+  synchronized void setCountLimit(int countLimit) {
+    myCountLimit = countLimit;
+  }
+
+  synchronized int getRowCount() {
+    return myRowCount;
+  }
+
+  /**
+   * Mirrors INSERT OR IGNORE semantics: an allocation whose tag is already known is dropped.
+   */
+  synchronized void insertAllocation(long timestamp, @NotNull AllocationEvent.Allocation allocation) {
+    if (myTagIndex.containsKey(allocation.getTag())) {
+      return;
+    }
+    Segment tail = mySegments.isEmpty() ? null : mySegments.get(mySegments.size() - 1);
+    if (tail == null || tail.myCount == SEGMENT_CAPACITY) {
+      if (tail != null) {
+        tail.seal();
+      }
+      tail = new Segment(myNextSegmentId++, SEGMENT_CAPACITY);
+      mySegments.add(tail);
+      mySegmentsById.put(tail.myId, tail);
+    }
+    int row = tail.append(timestamp, allocation);
+    myTagIndex.put(allocation.getTag(), encodeSlot(tail.myId, row));
+    myRowCount++;
+  }
+
+  /**
+   * Mirrors UPDATE_ALLOC semantics: frees of unknown (or already pruned) tags are ignored.
+   */
+  synchronized void insertFree(long timestamp, int tag) {
+    if (!myTagIndex.containsKey(tag)) {
+      return;
+    }
+    long slot = myTagIndex.get(tag);
+    Segment segment = mySegmentsById.get(slotSegmentId(slot));
+    segment.setFreeTime(slotRow(slot), timestamp);
+  }
+
+  /**
+   * Removes freed allocations, oldest segments first, once the row count exceeds the limit. To avoid compacting on every batch once
+   * the store is at capacity, pruning goes an extra eighth of the limit below it.
+   *
+   * @return the number of rows pruned.
+   */
+  synchronized int prune() {
+    if (myRowCount <= myCountLimit) {
+      return 0;
+    }
+    int toPrune = myRowCount - myCountLimit + myCountLimit / 8;
+    int pruned = 0;
+    for (int i = 0; i < mySegments.size() && pruned < toPrune; i++) {
+      Segment segment = mySegments.get(i);
+      if (segment.myFreedCount == 0) {
+        continue;
+      }
+      pruned += segment.compact(toPrune - pruned, myTagIndex);
+      if (segment.myCount == 0 && i < mySegments.size() - 1) {
+        mySegments.remove(i);
+        mySegmentsById.remove(segment.myId);
+        i--;
+      }
+    }
+    myRowCount -= pruned;
+    return pruned;
+  }
+
+  /**
+   * Adds the allocations alive at endTime (AllocTime < endTime AND FreeTime > endTime) to the builder.
+   *
+   * @return the latest allocation time added, or Long.MIN_VALUE if none.
+   */
+  synchronized long querySnapshot(long endTime, @NotNull BatchAllocationSample.Builder builder) {
+    long timestamp = Long.MIN_VALUE;
+    for (Segment segment : mySegments) {
+      if (segment.myCount == 0 || segment.myMinAllocTime >= endTime) {
+        continue;
+      }
+      if (segment.myFreedCount == segment.myCount && segment.myMaxFreeTime <= endTime) {
+        continue;
+      }
+      for (int row = 0; row < segment.myCount; row++) {
+        if (segment.myAllocTime[row] < endTime && segment.myFreeTime[row] > endTime) {
+          builder.addEvents(AllocationEvent.newBuilder().setAllocData(segment.toAllocation(row)).setTimestamp(segment.myAllocTime[row]));
+          timestamp = Math.max(timestamp, segment.myAllocTime[row]);
+        }
+      }
+    }
+    return timestamp;
+  }
+
+  /**
+   * Adds allocation events with AllocTime in [startTime, endTime) to the builder.
+   *
+   * @return the latest allocation time added, or Long.MIN_VALUE if none.
+   */
+  synchronized long queryAllocations(long startTime, long endTime, @NotNull BatchAllocationSample.Builder builder) {
+    long timestamp = Long.MIN_VALUE;
+    for (Segment segment : mySegments) {
+      if (segment.myCount == 0 || segment.myMaxAllocTime < startTime || segment.myMinAllocTime >= endTime) {
+        continue;
+      }
+      for (int row = 0; row < segment.myCount; row++) {
+        long allocTime = segment.myAllocTime[row];
+        if (allocTime >= startTime && allocTime < endTime) {
+          builder.addEvents(AllocationEvent.newBuilder().setAllocData(segment.toAllocation(row)).setTimestamp(allocTime));
+          timestamp = Math.max(timestamp, allocTime);
+        }
+      }
+    }
+    return timestamp;
+  }
+
+  /**
+   * Adds free events with FreeTime in [startTime, endTime) to the builder.
+   *
+   * @return the latest free time added, or Long.MIN_VALUE if none.
+   */
+  synchronized long queryFrees(long startTime, long endTime, @NotNull BatchAllocationSample.Builder builder) {
+    long timestamp = Long.MIN_VALUE;
+    for (Segment segment : mySegments) {
+      if (segment.myFreedCount == 0 || segment.myMaxFreeTime < startTime || segment.myMinFreeTime >= endTime) {
+        continue;
+      }
+      for (int row = 0; row < segment.myCount; row++) {
+        long freeTime = segment.myFreeTime[row];
+        if (freeTime >= startTime && freeTime < endTime) {
+          builder.addEvents(AllocationEvent.newBuilder().setFreeData(segment.toDeallocation(row)).setTimestamp(freeTime));
+          timestamp = Math.max(timestamp, freeTime);
+        }
+      }
+    }
+    return timestamp;
+  }
+
+  /**
+   * @return the latest allocation or free time in the store, or 0 if it is empty.
+   */
+  synchronized long getLatestTimestamp() {
+    long latest = 0;
+    for (Segment segment : mySegments) {
+      if (segment.myCount > 0) {
+        latest = Math.max(latest, segment.myMaxAllocTime);
+      }
+      if (segment.myFreedCount > 0) {
+        latest = Math.max(latest, segment.myMaxFreeTime);
+      }
+    }
+    return latest;
+  }
+
+  private static long encodeSlot(int segmentId, int row) {
+    return ((long)segmentId << 32) | (row & 0xFFFFFFFFL);
+  }
+
+  private static int slotSegmentId(long slot) {
+    return (int)(slot >>> 32);
+  }
+
+  private static int slotRow(long slot) {
+    return (int)slot;
+  }
+
+  /**
+   * A run of allocations in arrival order (and therefore roughly in AllocTime order), stored as one primitive array per column.
+   * Once a segment is no longer the tail it is sealed, and compaction trims its arrays down to the rows it still holds.
+   */
+  private static final class Segment {
+    private final int myId;
+    private int myCount;
+    private int myFreedCount;
+    private int[] myTag;
+    private int[] myClassTag;
+    private long[] myAllocTime;
+    private long[] myFreeTime;
+    private long[] mySize;
+    private int[] myLength;
+    private int[] myThreadId;
+    private int[] myStackId;
+    private int[] myHeapId;
+    private long myMinAllocTime = Long.MAX_VALUE;
+    private long myMaxAllocTime = Long.MIN_VALUE;
+    private long myMinFreeTime = Long.MAX_VALUE;
+    private long myMaxFreeTime = Long.MIN_VALUE;
+    private boolean mySealed;
+
+    private Segment(int id, int capacity) {
+      myId = id;
+      myTag = new int[capacity];
+      myClassTag = new int[capacity];
+      myAllocTime = new long[capacity];
+      myFreeTime = new long[capacity];
+      mySize = new long[capacity];
+      myLength = new int[capacity];
+      myThreadId = new int[capacity];
+      myStackId = new int[capacity];
+      myHeapId = new int[capacity];
+    }
+
+    private int append(long timestamp, @NotNull AllocationEvent.Allocation allocation) {
+      int row = myCount++;
+      myTag[row] = allocation.getTag();
+      myClassTag[row] = allocation.getClassTag();
+      myAllocTime[row] = timestamp;
+      myFreeTime[row] = Long.MAX_VALUE;
+      mySize[row] = allocation.getSize();
+      myLength[row] = allocation.getLength();
+      myThreadId[row] = allocation.getThreadId();
+      myStackId[row] = allocation.getStackId();
+      myHeapId[row] = allocation.getHeapId();
+      myMinAllocTime = Math.min(myMinAllocTime, timestamp);
+      myMaxAllocTime = Math.max(myMaxAllocTime, timestamp);
+      return row;
+    }
+
+    private void setFreeTime(int row, long timestamp) {
+      if (myFreeTime[row] == Long.MAX_VALUE) {
+        myFreedCount++;
+      }
+      myFreeTime[row] = timestamp;
+      myMinFreeTime = Math.min(myMinFreeTime, timestamp);
+      myMaxFreeTime = Math.max(myMaxFreeTime, timestamp);
+    }
+
+    private void seal() {
+      mySealed = true;
+    }
+
+    /**
+     * Drops up to maxCount freed rows, shifting the remaining rows down and re-pointing their tags in the index.
+     *
+     * @return the number of rows dropped.
+     */
+    private int compact(int maxCount, @NotNull TIntLongHashMap tagIndex) {
+      int dropped = 0;
+      int write = 0;
+      for (int read = 0; read < myCount; read++) {
+        if (dropped < maxCount && myFreeTime[read] != Long.MAX_VALUE) {
+          tagIndex.remove(myTag[read]);
+          dropped++;
+          continue;
+        }
+        if (write != read) {
+          myTag[write] = myTag[read];
+          myClassTag[write] = myClassTag[read];
+          myAllocTime[write] = myAllocTime[read];
+          myFreeTime[write] = myFreeTime[read];
+          mySize[write] = mySize[read];
+          myLength[write] = myLength[read];
+          myThreadId[write] = myThreadId[read];
+          myStackId[write] = myStackId[read];
+          myHeapId[write] = myHeapId[read];
+          tagIndex.put(myTag[write], encodeSlot(myId, write));
+        }
+        write++;
+      }
+      myCount = write;
+      if (mySealed) {
+        trimToCount();
+      }
+      recomputeBounds();
+      return dropped;
+    }
+
+    private void trimToCount() {
+      myTag = Arrays.copyOf(myTag, myCount);
+      myClassTag = Arrays.copyOf(myClassTag, myCount);
+      myAllocTime = Arrays.copyOf(myAllocTime, myCount);
+      myFreeTime = Arrays.copyOf(myFreeTime, myCount);
+      mySize = Arrays.copyOf(mySize, myCount);
+      myLength = Arrays.copyOf(myLength, myCount);
+      myThreadId = Arrays.copyOf(myThreadId, myCount);
+      myStackId = Arrays.copyOf(myStackId, myCount);
+      myHeapId = Arrays.copyOf(myHeapId, myCount);
+    }
+
+    private void recomputeBounds() {
+      myFreedCount = 0;
+      myMinAllocTime = Long.MAX_VALUE;
+      myMaxAllocTime = Long.MIN_VALUE;
+      myMinFreeTime = Long.MAX_VALUE;
+      myMaxFreeTime = Long.MIN_VALUE;
+      for (int row = 0; row < myCount; row++) {
+        myMinAllocTime = Math.min(myMinAllocTime, myAllocTime[row]);
+        myMaxAllocTime = Math.max(myMaxAllocTime, myAllocTime[row]);
+        if (myFreeTime[row] != Long.MAX_VALUE) {
+          myFreedCount++;
+          myMinFreeTime = Math.min(myMinFreeTime, myFreeTime[row]);
+          myMaxFreeTime = Math.max(myMaxFreeTime, myFreeTime[row]);
+        }
+      }
+    }
+
+    @NotNull
+    private AllocationEvent.Allocation toAllocation(int row) {
+      return AllocationEvent.Allocation.newBuilder()
+        .setTag(myTag[row]).setClassTag(myClassTag[row]).setSize(mySize[row]).setLength(myLength[row])
+        .setThreadId(myThreadId[row]).setStackId(myStackId[row]).setHeapId(myHeapId[row]).build();
+    }
+
+    @NotNull
+    private AllocationEvent.Deallocation toDeallocation(int row) {
+      return AllocationEvent.Deallocation.newBuilder()
+        .setTag(myTag[row]).setClassTag(myClassTag[row]).setSize(mySize[row]).setLength(myLength[row])
+        .setThreadId(myThreadId[row]).setStackId(myStackId[row]).setHeapId(myHeapId[row]).build();
+    }
+  }
+}
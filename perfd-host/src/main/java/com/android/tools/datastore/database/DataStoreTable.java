@@ -15,7 +15,10 @@
  */
 package com.android.tools.datastore.database;
 
+import com.android.tools.datastore.DataStoreDatabase;
+import com.android.tools.profiler.proto.Common;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.*;
 import java.util.*;
@@ -30,6 +33,10 @@ public abstract class DataStoreTable<T extends Enum> {
   private static final Set<DataStoreTableErrorCallback> ERROR_CALLBACKS = ConcurrentHashMap.newKeySet();
 
   private Connection myConnection;
+  @Nullable private GroupCommitWriter myWriter;
+  // True if the connection is to a persistent database whose tables were created by this table class at its current schema version,
+  // in which case existing tables and their data are kept.
+  private boolean myReopened;
   private final ThreadLocal<Map<T, PreparedStatement>> myStatementMap = new ThreadLocal<>();
 
   public interface DataStoreTableErrorCallback {
@@ -43,6 +50,62 @@ public abstract class DataStoreTable<T extends Enum> {
    */
   public void initialize(@NotNull Connection connection) {
     myConnection = connection;
+    myWriter = GroupCommitWriter.getWriter(connection);
+    myReopened = checkSchemaVersion(connection);
+  }
+
+  /**
+   * Version of the tables created in {@link #initialize(Connection)}. Subclasses must bump it whenever they change their schema, so that
+   * a persistent database created by an older version drops and recreates their tables instead of reusing them.
+   */
+  protected int getSchemaVersion() {
+    return 1;
+  }
+
+  /**
+   * @return true if this table's data was kept from a previous run of a persistent database.
+   */
+  protected boolean isReopened() {
+    return myReopened;
+  }
+
+  /**
+   * @return true if the tables of this class exist in a persistent database at the current schema version. Otherwise, records the current
+   * version so the tables created next are kept on the following run.
+   */
+  private boolean checkSchemaVersion(@NotNull Connection connection) {
+    String tableKey = getClass().getName();
+    try (Statement statement = connection.createStatement();
+         ResultSet tables = statement.executeQuery(String.format("SELECT name FROM sqlite_master WHERE type='table' AND name='%s'",
+                                                                 DataStoreDatabase.SCHEMA_VERSIONS_TABLE))) {
+      if (!tables.next()) {
+        return false;
+      }
+    }
+    catch (SQLException ex) {
+      onError(ex);
+      return false;
+    }
+
+    try (PreparedStatement query = connection.prepareStatement(
+      String.format("SELECT Version FROM %s WHERE TableName = ?", DataStoreDatabase.SCHEMA_VERSIONS_TABLE))) {
+      query.setString(1, tableKey);
+      try (ResultSet result = query.executeQuery()) {
+        if (result.next() && result.getInt(1) == getSchemaVersion()) {
+          return true;
+        }
+      }
+      try (PreparedStatement update = connection.prepareStatement(
+        String.format("INSERT OR REPLACE INTO %s (TableName, Version) VALUES (?, ?)", DataStoreDatabase.SCHEMA_VERSIONS_TABLE))) {
+        update.setString(1, tableKey);
+        update.setInt(2, getSchemaVersion());
+        update.execute();
+      }
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+    return false;
   }
 
   /**
@@ -51,6 +114,18 @@ public abstract class DataStoreTable<T extends Enum> {
    */
   public abstract void prepareStatements();
 
+  /**
+   * Called when a session stops being profiled. Tables that keep data of live sessions outside of the database should move it there.
+   */
+  public void onSessionEnded(@NotNull Common.Session session) {
+  }
+
+  /**
+   * Called when a session is deleted. Tables that keep data of sessions outside of the database should release it.
+   */
+  public void onSessionDeleted(long sessionId) {
+  }
+
   public static void addDataStoreErrorCallback(@NotNull DataStoreTableErrorCallback callback) {
     ERROR_CALLBACKS.add(callback);
   }
@@ -97,9 +172,14 @@ public abstract class DataStoreTable<T extends Enum> {
   }
 
   protected void createTable(@NotNull String table, String... columns) throws SQLException {
-    myConnection.createStatement().execute(String.format("DROP TABLE IF EXISTS %s ", table));
     StringBuilder statement = new StringBuilder();
-    statement.append(String.format("CREATE TABLE %s", table));
+    if (myReopened) {
+      statement.append(String.format("CREATE TABLE IF NOT EXISTS %s", table));
+    }
+    else {
+      myConnection.createStatement().execute(String.format("DROP TABLE IF EXISTS %s ", table));
+      statement.append(String.format("CREATE TABLE %s", table));
+    }
     executeUniqueStatement(statement, columns);
   }
 
@@ -139,6 +219,16 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    if (myWriter != null) {
+      int queued = 0;
+      while (queued < batchParams.size() && myWriter.enqueue(this, statement, paramConverter.apply(batchParams.get(queued)))) {
+        queued++;
+      }
+      if (queued == batchParams.size()) {
+        return;
+      }
+      batchParams = batchParams.subList(queued, batchParams.size());
+    }
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       batchParams.forEach((object) -> {
@@ -165,6 +255,9 @@ public abstract class DataStoreTable<T extends Enum> {
     if (isClosed()) {
       return;
     }
+    if (myWriter != null && myWriter.enqueue(this, statement, params == null ? new Object[0] : params)) {
+      return;
+    }
     try {
       PreparedStatement stmt = getStatementMap().get(statement);
       applyParams(stmt, params);
@@ -175,6 +268,54 @@ public abstract class DataStoreTable<T extends Enum> {
     }
   }
 
+  /**
+   * A write made of several statements, executed as a whole by {@link #executeWrite(Write)}.
+   */
+  protected interface Write {
+    void run() throws SQLException;
+  }
+
+  /**
+   * Executes a write that cannot be expressed through {@link #execute} or {@link #executeBatch}. Like them, it goes through the
+   * connection's {@link GroupCommitWriter} if there is one, so that it is ordered with the other writes on the connection. The write must
+   * get its statements from {@link #getStatementMap()} when it runs, as it may run on the writer thread.
+   */
+  protected void executeWrite(@NotNull Write write) {
+    if (isClosed()) {
+      return;
+    }
+    if (myWriter != null && myWriter.enqueue(this, write)) {
+      return;
+    }
+    try {
+      write.run();
+    }
+    catch (SQLException ex) {
+      onError(ex);
+    }
+  }
+
+  /**
+   * Called on the {@link GroupCommitWriter} thread to add a queued write to the statement's pending batch.
+   */
+  void addToBatch(@NotNull T statement, @NotNull Object[] params) throws SQLException {
+    PreparedStatement stmt = getStatementMap().get(statement);
+    applyParams(stmt, params);
+    stmt.addBatch();
+  }
+
+  /**
+   * Called on the {@link GroupCommitWriter} thread to execute the writes added by {@link #addToBatch(Enum, Object[])}.
+   */
+  void executePendingBatch(@NotNull T statement) throws SQLException {
+    int[] results = getStatementMap().get(statement).executeBatch();
+    for (int i = 0; i < results.length; i++) {
+      if (results[i] == Statement.EXECUTE_FAILED) {
+        throw new SQLException(String.format("Failed to execute batch element %d with result %d", i, results[i]));
+      }
+    }
+  }
+
   protected ResultSet executeQuery(@NotNull T statement, Object... params) throws SQLException {
     if (isClosed()) {
       return new EmptyResultSet();
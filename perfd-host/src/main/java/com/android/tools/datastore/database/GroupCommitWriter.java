@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.annotations.VisibleForTesting;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Single writer stage for a database {@link Connection}. Writes issued through {@link DataStoreTable#execute} and
+ * {@link DataStoreTable#executeBatch} by any poller thread are put on a bounded queue instead of being executed on the caller's thread.
+ * The writer thread drains the queue, turns consecutive writes to the same statement into one {@code executeBatch} call (so the relative
+ * order of writes is preserved) and commits the transaction once either the number of uncommitted writes or the time since the last
+ * commit exceeds its threshold.
+ *
+ * Writes are applied as soon as they are dequeued; only the commit is deferred. Since readers share the connection, they see uncommitted
+ * data, so the staleness of a read is bounded by the queue latency rather than by the commit interval.
+ *
+ * Tables that write several statements at once go through {@link DataStoreTable#executeWrite} instead, which queues the whole write so
+ * that every write on the connection is applied by the writer thread. Once the writer is stopped, and for writes issued by the writer
+ * thread itself, {@link #enqueue} refuses the write and the table executes it on the caller's thread.
+ */
+public final class GroupCommitWriter {
+  private static final Map<Connection, GroupCommitWriter> WRITERS = new ConcurrentHashMap<>();
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 4096;
+  public static final int DEFAULT_COMMIT_WRITE_COUNT = 2048;
+  public static final long DEFAULT_COMMIT_INTERVAL_MS = 1000;
+
+  @NotNull private final Connection myConnection;
+  @NotNull private final BlockingQueue<WriteRequest> myQueue;
+  private final int myCommitWriteCount;
+  private final long myCommitIntervalNs;
+  @NotNull private final Thread myThread;
+  @NotNull private final CountDownLatch myStopped = new CountDownLatch(1);
+  // Guards myRunning against enqueue, so that no write is queued after the writer thread drained the queue for the last time.
+  @NotNull private final Object myStateLock = new Object();
+  private volatile boolean myRunning = true;
+
+  // Metrics, written by the writer thread and read by anyone.
+  private final AtomicLong myMaxQueueDepth = new AtomicLong();
+  private final AtomicLong myBatchCount = new AtomicLong();
+  private final AtomicLong myBatchedWriteCount = new AtomicLong();
+  private final AtomicLong myCommitCount = new AtomicLong();
+  private final AtomicLong myTotalCommitLatencyNs = new AtomicLong();
+  private final AtomicLong myMaxCommitLatencyNs = new AtomicLong();
+
+  /**
+   * @return the writer started for the given connection, or null if its writes should be executed on the caller's thread.
+   */
+  @Nullable
+  static GroupCommitWriter getWriter(@NotNull Connection connection) {
+    return WRITERS.get(connection);
+  }
+
+  /**
+   * Starts a writer for the connection. Tables initialized with the connection afterwards route their writes through it.
+   */
+  @NotNull
+  public static GroupCommitWriter start(@NotNull Connection connection, int queueCapacity, int commitWriteCount, long commitIntervalMs) {
+    GroupCommitWriter writer = new GroupCommitWriter(connection, queueCapacity, commitWriteCount, commitIntervalMs);
+    WRITERS.put(connection, writer);
+    writer.myThread.start();
+    return writer;
+  }
+
+  private GroupCommitWriter(@NotNull Connection connection, int queueCapacity, int commitWriteCount, long commitIntervalMs) {
+    myConnection = connection;
+    myQueue = new ArrayBlockingQueue<>(queueCapacity);
+    myCommitWriteCount = commitWriteCount;
+    myCommitIntervalNs = TimeUnit.MILLISECONDS.toNanos(commitIntervalMs);
+    myThread = new Thread(this::run, "DataStoreGroupCommitWriter");
+    myThread.setDaemon(true);
+  }
+
+  /**
+   * Queues a write, blocking the caller if the queue is full so that a fast poller is slowed down rather than growing memory.
+   *
+   * @return false if the write was not queued, because the writer is stopped or the caller is the writer thread. The caller must then
+   * execute the write itself.
+   */
+  <T extends Enum> boolean enqueue(@NotNull DataStoreTable<T> table, @NotNull T statement, @NotNull Object[] params) {
+    return enqueue(new WriteRequest(table, statement, params, null));
+  }
+
+  /**
+   * Same as {@link #enqueue(DataStoreTable, Enum, Object[])}, for a write that is applied as a whole rather than batched.
+   */
+  boolean enqueue(@NotNull DataStoreTable<?> table, @NotNull DataStoreTable.Write write) {
+    return enqueue(new WriteRequest(table, null, null, write));
+  }
+
+  private boolean enqueue(@NotNull WriteRequest request) {
+    if (Thread.currentThread() == myThread) {
+      return false;
+    }
+    synchronized (myStateLock) {
+      if (!myRunning) {
+        return false;
+      }
+      try {
+        myQueue.put(request);
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+    long depth = myQueue.size();
+    if (depth > myMaxQueueDepth.get()) {
+      myMaxQueueDepth.set(depth);
+    }
+    return true;
+  }
+
+  /**
+   * Stops the writer after applying and committing every write queued so far.
+   */
+  public void stop() {
+    synchronized (myStateLock) {
+      myRunning = false;
+    }
+    myThread.interrupt();
+    try {
+      myStopped.await();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    WRITERS.remove(myConnection);
+  }
+
+  public int getQueueDepth() {
+    return myQueue.size();
+  }
+
+  public long getMaxQueueDepth() {
+    return myMaxQueueDepth.get();
+  }
+
+  public double getAverageBatchSize() {
+    long batches = myBatchCount.get();
+    return batches == 0 ? 0 : (double)myBatchedWriteCount.get() / batches;
+  }
+
+  public long getCommitCount() {
+    return myCommitCount.get();
+  }
+
+  public long getAverageCommitLatencyNs() {
+    long commits = myCommitCount.get();
+    return commits == 0 ? 0 : myTotalCommitLatencyNs.get() / commits;
+  }
+
+  public long getMaxCommitLatencyNs() {
+    return myMaxCommitLatencyNs.get();
+  }
+
+  private void run() {
+    List<WriteRequest> requests = new ArrayList<>();
+    int uncommittedWrites = 0;
+    long lastCommitNs = System.nanoTime();
+    try {
+      while (myRunning || !myQueue.isEmpty()) {
+        long waitNs = Math.max(myCommitIntervalNs - (System.nanoTime() - lastCommitNs), 0);
+        WriteRequest first = null;
+        try {
+          first = myRunning ? myQueue.poll(waitNs, TimeUnit.NANOSECONDS) : myQueue.poll();
+        }
+        catch (InterruptedException ignored) {
+          // Interrupted by stop(), drain what is left below.
+        }
+        if (first != null) {
+          requests.add(first);
+          myQueue.drainTo(requests, myCommitWriteCount);
+          applyWrites(requests);
+          uncommittedWrites += requests.size();
+          requests.clear();
+        }
+        if (uncommittedWrites > 0 &&
+            (uncommittedWrites >= myCommitWriteCount || System.nanoTime() - lastCommitNs >= myCommitIntervalNs)) {
+          commit();
+          uncommittedWrites = 0;
+          lastCommitNs = System.nanoTime();
+        }
+      }
+      if (uncommittedWrites > 0) {
+        commit();
+      }
+    }
+    finally {
+      myStopped.countDown();
+    }
+  }
+
+  @VisibleForTesting
+  void applyWrites(@NotNull List<WriteRequest> requests) {
+    int start = 0;
+    while (start < requests.size()) {
+      WriteRequest head = requests.get(start);
+      int end = start + 1;
+      while (end < requests.size() && requests.get(end).isSameStatement(head)) {
+        end++;
+      }
+      if (!head.myTable.isClosed()) {
+        try {
+          if (head.myWrite != null) {
+            head.myWrite.run();
+          }
+          else {
+            for (int i = start; i < end; i++) {
+              WriteRequest request = requests.get(i);
+              request.myTable.addToBatch(request.myStatement, request.myParams);
+            }
+            head.myTable.executePendingBatch(head.myStatement);
+          }
+          myBatchCount.incrementAndGet();
+          myBatchedWriteCount.addAndGet(end - start);
+        }
+        catch (SQLException ex) {
+          DataStoreTable.onError(ex);
+        }
+      }
+      start = end;
+    }
+  }
+
+  private void commit() {
+    long startNs = System.nanoTime();
+    try {
+      if (!myConnection.isClosed()) {
+        myConnection.commit();
+      }
+    }
+    catch (SQLException ex) {
+      DataStoreTable.onError(ex);
+      return;
+    }
+    long latencyNs = System.nanoTime() - startNs;
+    myCommitCount.incrementAndGet();
+    myTotalCommitLatencyNs.addAndGet(latencyNs);
+    if (latencyNs > myMaxCommitLatencyNs.get()) {
+      myMaxCommitLatencyNs.set(latencyNs);
+    }
+  }
+
+  @VisibleForTesting
+  static final class WriteRequest {
+    @NotNull private final DataStoreTable myTable;
+    // Either a statement and its params, or a write.
+    @Nullable private final Enum myStatement;
+    @Nullable private final Object[] myParams;
+    @Nullable private final DataStoreTable.Write myWrite;
+
+    WriteRequest(@NotNull DataStoreTable table, @Nullable Enum statement, @Nullable Object[] params, @Nullable DataStoreTable.Write write) {
+      myTable = table;
+      myStatement = statement;
+      myParams = params;
+      myWrite = write;
+    }
+
+    private boolean isSameStatement(@NotNull WriteRequest other) {
+      return myStatement != null && myTable == other.myTable && myStatement == other.myStatement;
+    }
+  }
+}
@@ -23,6 +23,7 @@ import com.android.tools.profiler.proto.MemoryProfiler.*;
 import com.android.tools.profiler.protobuf3jarjar.InvalidProtocolBufferException;
 import gnu.trove.TLongHashSet;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.sql.Connection;
 import java.sql.PreparedStatement;
@@ -31,7 +32,9 @@ import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 import static com.android.tools.datastore.database.MemoryLiveAllocationTable.MemoryStatements.*;
 
@@ -136,18 +139,38 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   private int myAllocationCountLimit = 5000000;
   private final static byte[] EMPTY_BYTE_ARRAY = new byte[0];
 
+  // When enabled, allocation and free events of live sessions are kept in per-session AllocationEventColumnStores instead of
+  // Memory_AllocationEvents. A store is moved to the table when its session ends, and dropped when its session is deleted.
+  private final boolean myUseColumnStore;
+  private final Map<Long, AllocationEventColumnStore> myColumnStores = new ConcurrentHashMap<>();
+  // Sessions which ended or were deleted. Events that still arrive for them, e.g. from a poll that was in flight when the session
+  // ended, go to Memory_AllocationEvents instead of creating a new store that would never be released.
+  private final Set<Long> myEndedSessionIds = ConcurrentHashMap.newKeySet();
+
   @NotNull
   private LogService.Logger getLogger() {
     return myLogService.getLogger(MemoryLiveAllocationTable.class);
   }
 
   public MemoryLiveAllocationTable(@NotNull LogService logService) {
+    this(logService, false);
+  }
+
+  /**
+   * @param useColumnStore if true, allocation and free events are stored in memory in {@link AllocationEventColumnStore}s rather than
+   *                       as rows of the Memory_AllocationEvents table. All other data still goes through the database.
+   */
+  public MemoryLiveAllocationTable(@NotNull LogService logService, boolean useColumnStore) {
     myLogService = logService;
+    myUseColumnStore = useColumnStore;
   }
 
   @Override
   public void initialize(@NotNull Connection connection) {
     super.initialize(connection);
+    // The stores hold the events of the previous connection
+    myColumnStores.clear();
+    myEndedSessionIds.clear();
     try {
       // O+ Allocation Tracking
       createTable("Memory_AllocatedClass", "Session INTEGER NOT NULL", "Tag INTEGER",
@@ -188,6 +211,53 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   @VisibleForTesting
   void setAllocationCountLimit(int allocationCountLimit) {
     myAllocationCountLimit = allocationCountLimit;
+    myColumnStores.values().forEach(store -> store.setCountLimit(allocationCountLimit));
+  }
+
+  /**
+   * @return the store of the session, or null if the session already ended
+   */
+  @Nullable
+  private AllocationEventColumnStore getColumnStore(@NotNull Common.Session session) {
+    if (myEndedSessionIds.contains(session.getSessionId())) {
+      return null;
+    }
+    return myColumnStores.computeIfAbsent(session.getSessionId(), id -> new AllocationEventColumnStore(myAllocationCountLimit));
+  }
+
+  /**
+   * Moves the allocation events of a session that ended from its {@link AllocationEventColumnStore} to Memory_AllocationEvents,
+   * where the queries find them once the store is released. The store keeps answering the queries until it has been moved.
+   * This may take a while for large stores, so callers should not call it from a thread serving requests.
+   */
+  @Override
+  public void onSessionEnded(@NotNull Common.Session session) {
+    long sessionId = session.getSessionId();
+    myEndedSessionIds.add(sessionId);
+    AllocationEventColumnStore store = myColumnStores.get(sessionId);
+    if (store == null) {
+      return;
+    }
+    if (!isClosed()) {
+      // Allocations first, so that the frees update their rows
+      MemoryProfiler.BatchAllocationSample.Builder sampleBuilder = MemoryProfiler.BatchAllocationSample.newBuilder();
+      store.queryAllocations(Long.MIN_VALUE, Long.MAX_VALUE, sampleBuilder);
+      store.queryFrees(Long.MIN_VALUE, Long.MAX_VALUE, sampleBuilder);
+      // The session may have been deleted meanwhile, in which case its events must not be written back.
+      if (sampleBuilder.getEventsCount() > 0 && myColumnStores.get(sessionId) == store) {
+        insertAllocationDataToDatabase(session, sampleBuilder.build());
+      }
+    }
+    myColumnStores.remove(sessionId, store);
+  }
+
+  /**
+   * Releases the {@link AllocationEventColumnStore} of a deleted session.
+   */
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    myEndedSessionIds.add(sessionId);
+    myColumnStores.remove(sessionId);
   }
 
   @Override
@@ -204,6 +274,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
 
   public MemoryProfiler.BatchAllocationSample getSnapshot(Common.Session session, long endTime) {
     MemoryProfiler.BatchAllocationSample.Builder sampleBuilder = MemoryProfiler.BatchAllocationSample.newBuilder();
+    AllocationEventColumnStore store = myColumnStores.get(session.getSessionId());
+    if (store != null) {
+      return sampleBuilder.setTimestamp(store.querySnapshot(endTime, sampleBuilder)).build();
+    }
     try {
       ResultSet allocResult = executeQuery(QUERY_SNAPSHOT, session.getSessionId(), endTime, endTime);
       long timestamp = Long.MIN_VALUE;
@@ -232,6 +306,12 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
 
   public MemoryProfiler.BatchAllocationSample getAllocations(Common.Session session, long startTime, long endTime) {
     MemoryProfiler.BatchAllocationSample.Builder sampleBuilder = MemoryProfiler.BatchAllocationSample.newBuilder();
+    AllocationEventColumnStore store = myColumnStores.get(session.getSessionId());
+    if (store != null) {
+      long timestamp = store.queryAllocations(startTime, endTime, sampleBuilder);
+      timestamp = Math.max(timestamp, store.queryFrees(startTime, endTime, sampleBuilder));
+      return sampleBuilder.setTimestamp(timestamp).build();
+    }
     try {
       // Then get all allocation events that are valid for requestTime.
       ResultSet allocResult = executeQuery(QUERY_ALLOC_BY_ALLOC_TIME, session.getSessionId(), startTime, endTime);
@@ -277,6 +357,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   @NotNull
   public LatestAllocationTimeResponse getLatestDataTimestamp(Common.Session session) {
     LatestAllocationTimeResponse.Builder builder = LatestAllocationTimeResponse.newBuilder();
+    AllocationEventColumnStore store = myColumnStores.get(session.getSessionId());
+    if (store != null) {
+      return builder.setTimestamp(store.getLatestTimestamp()).build();
+    }
     try {
       long latest = 0;
       ResultSet result = executeQuery(QUERY_LATEST_ALLOC_TIME, session.getSessionId());
@@ -465,13 +549,10 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertJniReferenceData(@NotNull Common.Session session, @NotNull BatchJNIGlobalRefEvent batch) {
-    PreparedStatement insertRefStatement = null;
-    PreparedStatement updateRefStatement = null;
-    PreparedStatement insertFrameStatement = null;
-    if (isClosed()) {
-      return;
-    }
-    try {
+    executeWrite(() -> {
+      PreparedStatement insertRefStatement = null;
+      PreparedStatement updateRefStatement = null;
+      PreparedStatement insertFrameStatement = null;
       TreeMap<Long, MemoryMap.MemoryRegion> addressMap = buildAddressMap(batch.getMemoryMap());
       TLongHashSet insertedAddresses = new TLongHashSet();
       for (JNIGlobalReferenceEvent event : batch.getEventsList()) {
@@ -535,10 +616,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       if (batch.getEventsCount() > 0) {
         pruneJniRefRecords(session);
       }
-    }
-    catch (SQLException ex) {
-      onError(ex);
-    }
+    });
   }
 
   public @NotNull
@@ -563,32 +641,37 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void updateSymbolizedNativeFrames(@NotNull Common.Session session, @NotNull List<NativeCallStack.NativeFrame> frames) {
-    if (frames.isEmpty() || isClosed()) {
+    if (frames.isEmpty()) {
       return;
     }
-    try {
+    executeWrite(() -> {
       PreparedStatement updateFramesStatement = getStatementMap().get(UPDATE_NATIVE_FRAME);
       for (NativeCallStack.NativeFrame frame : frames) {
         applyParams(updateFramesStatement, frame.toByteArray(), session.getSessionId(), frame.getAddress());
         updateFramesStatement.addBatch();
       }
       updateFramesStatement.executeBatch();
-    }
-    catch (SQLException ex) {
-      onError(ex);
-    }
+    });
   }
 
   public void insertAllocationData(Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
-    MemoryProfiler.AllocationEvent.EventCase currentCase = null;
-    PreparedStatement currentStatement = null;
-    int allocAndFreeCount = 0;
     // If we don't do a closed check it is possible for this function to assert instead of handling
     // the connection being closed gracefully.
     if (isClosed()) {
       return;
     }
-    try {
+    if (myUseColumnStore) {
+      insertAllocationDataToColumnStore(session, sample);
+      return;
+    }
+    insertAllocationDataToDatabase(session, sample);
+  }
+
+  private void insertAllocationDataToDatabase(Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
+    executeWrite(() -> {
+      MemoryProfiler.AllocationEvent.EventCase currentCase = null;
+      PreparedStatement currentStatement = null;
+      int allocAndFreeCount = 0;
       for (MemoryProfiler.AllocationEvent event : sample.getEventsList()) {
         if (currentCase != event.getEventCase()) {
           if (currentCase != null) {
@@ -644,17 +727,62 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
       if (allocAndFreeCount > 0) {
         pruneAllocations(session);
       }
+    });
+  }
+
+  /**
+   * Same as {@link #insertAllocationData(Common.Session, BatchAllocationSample)}, except that allocation and free events go to the
+   * session's {@link AllocationEventColumnStore}. Class data is still batched into Memory_AllocatedClass.
+   */
+  private void insertAllocationDataToColumnStore(Common.Session session, MemoryProfiler.BatchAllocationSample sample) {
+    AllocationEventColumnStore store = getColumnStore(session);
+    if (store == null) {
+      insertAllocationDataToDatabase(session, sample);
+      return;
     }
-    catch (SQLException ex) {
-      onError(ex);
+    List<MemoryProfiler.AllocationEvent> classEvents = new ArrayList<>();
+    int allocAndFreeCount = 0;
+    for (MemoryProfiler.AllocationEvent event : sample.getEventsList()) {
+      switch (event.getEventCase()) {
+        case CLASS_DATA:
+          classEvents.add(event);
+          break;
+        case ALLOC_DATA:
+          allocAndFreeCount++;
+          store.insertAllocation(event.getTimestamp(), event.getAllocData());
+          break;
+        case FREE_DATA:
+          allocAndFreeCount++;
+          store.insertFree(event.getTimestamp(), event.getFreeData().getTag());
+          break;
+        default:
+          assert false;
+      }
+    }
+
+    if (!classEvents.isEmpty()) {
+      executeWrite(() -> {
+        PreparedStatement classStatement = getStatementMap().get(INSERT_CLASS);
+        for (MemoryProfiler.AllocationEvent event : classEvents) {
+          AllocatedClass klass = event.getClassData();
+          applyParams(classStatement, session.getSessionId(), klass.getClassId(), event.getTimestamp(),
+                      jniToJavaName(klass.getClassName()));
+          classStatement.addBatch();
+        }
+        classStatement.executeBatch();
+      });
+    }
+
+    if (allocAndFreeCount > 0) {
+      int pruneCount = store.prune();
+      if (pruneCount > 0) {
+        getLogger().info(String.format("Allocations have exceed %d entries. Pruned %d.", myAllocationCountLimit, pruneCount));
+      }
     }
   }
 
   public void insertMethodInfo(Common.Session session, List<AllocationStack.StackFrame> methods) {
-    if (isClosed()) {
-      return;
-    }
-    try {
+    executeWrite(() -> {
       PreparedStatement statement = getStatementMap().get(INSERT_METHOD);
       assert statement != null;
       for (AllocationStack.StackFrame method : methods) {
@@ -662,10 +790,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
         statement.addBatch();
       }
       statement.executeBatch();
-    }
-    catch (SQLException ex) {
-      onError(ex);
-    }
+    });
   }
 
   @NotNull
@@ -685,10 +810,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
   }
 
   public void insertStackInfo(Common.Session session, List<EncodedAllocationStack> stacks) {
-    if (isClosed()) {
-      return;
-    }
-    try {
+    executeWrite(() -> {
       PreparedStatement statement = getStatementMap().get(INSERT_ENCODED_STACK);
       assert statement != null;
       for (EncodedAllocationStack stack : stacks) {
@@ -696,17 +818,11 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
         statement.addBatch();
       }
       statement.executeBatch();
-    }
-    catch (SQLException ex) {
-      onError(ex);
-    }
+    });
   }
 
   public void insertThreadInfo(Common.Session session, List<ThreadInfo> threads) {
-    if (isClosed()) {
-      return;
-    }
-    try {
+    executeWrite(() -> {
       PreparedStatement statement = getStatementMap().get(INSERT_THREAD_INFO);
       assert statement != null;
       for (ThreadInfo thread : threads) {
@@ -714,10 +830,7 @@ public class MemoryLiveAllocationTable extends DataStoreTable<MemoryLiveAllocati
         statement.addBatch();
       }
       statement.executeBatch();
-    }
-    catch (SQLException ex) {
-      onError(ex);
-    }
+    });
   }
 
   public void insertOrReplaceAllocationSamplingRateEvent(@NotNull Common.Session session, @NotNull AllocationSamplingRateEvent event) {
@@ -25,6 +25,7 @@ import org.jetbrains.annotations.Nullable;
 import java.sql.Connection;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 /**
  * Class that wraps database access for profiler level services.
@@ -71,12 +72,27 @@ public class ProfilerTable extends DataStoreTable<ProfilerTable.ProfilerStatemen
       createUniqueIndex("Profiler_Devices", "DeviceId");
       createUniqueIndex("Profiler_Bytes", "Id", "Session");
       createUniqueIndex("Profiler_Sessions", "SessionId");
+      if (isReopened()) {
+        endStaleSessions(connection);
+      }
     }
     catch (SQLException ex) {
       onError(ex);
     }
   }
 
+  /**
+   * Sessions that were still alive when the previous run exited can never be resumed, so end them at the last time their device was heard
+   * from (or at their start time if that was never recorded).
+   */
+  private static void endStaleSessions(@NotNull Connection connection) throws SQLException {
+    try (Statement statement = connection.createStatement()) {
+      statement.execute("UPDATE Profiler_Sessions SET EndTime = COALESCE(" +
+                        "(SELECT LastKnownTime FROM Profiler_Devices WHERE Profiler_Devices.DeviceId = Profiler_Sessions.DeviceId), " +
+                        "StartTime) WHERE EndTime = " + Long.MAX_VALUE);
+    }
+  }
+
   @Override
   public void prepareStatements() {
     try {
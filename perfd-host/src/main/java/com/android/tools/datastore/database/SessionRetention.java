@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keeps the sessions of persistent databases from growing without bound. Sessions are deleted oldest first, once they are older than the
+ * maximum age or for as long as the databases use more than the maximum size.
+ *
+ * A session is deleted by removing its rows from every table that has a Session or SessionId column, in every given database, so data
+ * kept in separate namespaces (e.g. live allocations) goes with its session.
+ */
+public final class SessionRetention {
+  private static final String SESSIONS_TABLE = "Profiler_Sessions";
+  private static final String[] SESSION_COLUMNS = {"Session", "SessionId"};
+
+  private SessionRetention() {
+  }
+
+  /**
+   * @param sessionsConnection connection to the database holding the {@link ProfilerTable}'s sessions; it must also be in connections
+   * @param connections        connections to every database holding session data
+   * @return the ids of the deleted sessions, oldest first
+   */
+  @NotNull
+  public static List<Long> pruneSessions(@NotNull Connection sessionsConnection,
+                                         @NotNull Collection<Connection> connections,
+                                         long maxAgeMs,
+                                         long maxSizeBytes,
+                                         long nowMs) throws SQLException {
+    List<Long> deleted = new ArrayList<>();
+    if (!hasTable(sessionsConnection, SESSIONS_TABLE)) {
+      return deleted;
+    }
+
+    // Sessions that are still alive are never deleted. Sessions left alive by a previous run are ended when the table is initialized.
+    List<Long> sessionIds = new ArrayList<>();
+    List<Long> startTimesMs = new ArrayList<>();
+    try (Statement statement = sessionsConnection.createStatement();
+         ResultSet results = statement.executeQuery(String.format("SELECT SessionId, StartTimeEpochMs FROM %s WHERE EndTime != %d " +
+                                                                  "ORDER BY StartTimeEpochMs ASC", SESSIONS_TABLE, Long.MAX_VALUE))) {
+      while (results.next()) {
+        sessionIds.add(results.getLong(1));
+        startTimesMs.add(results.getLong(2));
+      }
+    }
+
+    int index = 0;
+    while (index < sessionIds.size() && startTimesMs.get(index) < nowMs - maxAgeMs) {
+      deleteSession(connections, sessionIds.get(index));
+      deleted.add(sessionIds.get(index++));
+    }
+    while (index < sessionIds.size() && getUsedSizeBytes(connections) > maxSizeBytes) {
+      deleteSession(connections, sessionIds.get(index));
+      deleted.add(sessionIds.get(index++));
+    }
+
+    if (!deleted.isEmpty()) {
+      for (Connection connection : connections) {
+        // Only returns the freed pages to the file system if the database was created with incremental auto-vacuum.
+        try (Statement statement = connection.createStatement()) {
+          statement.execute("PRAGMA incremental_vacuum");
+        }
+        if (!connection.getAutoCommit()) {
+          connection.commit();
+        }
+      }
+    }
+    return deleted;
+  }
+
+  private static void deleteSession(@NotNull Collection<Connection> connections, long sessionId) throws SQLException {
+    for (Connection connection : connections) {
+      for (String[] tableAndColumn : getSessionColumns(connection)) {
+        try (PreparedStatement statement = connection.prepareStatement(
+          String.format("DELETE FROM %s WHERE %s = ?", tableAndColumn[0], tableAndColumn[1]))) {
+          statement.setLong(1, sessionId);
+          statement.execute();
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the name and session column of each table of the database that holds per-session data.
+   */
+  @NotNull
+  private static List<String[]> getSessionColumns(@NotNull Connection connection) throws SQLException {
+    List<String> tables = new ArrayList<>();
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery("SELECT name FROM sqlite_master WHERE type='table'")) {
+      while (results.next()) {
+        tables.add(results.getString(1));
+      }
+    }
+
+    List<String[]> sessionColumns = new ArrayList<>();
+    for (String table : tables) {
+      try (Statement statement = connection.createStatement();
+           ResultSet columns = statement.executeQuery(String.format("PRAGMA table_info(%s)", table))) {
+        while (columns.next()) {
+          String column = columns.getString("name");
+          if (isSessionColumn(column)) {
+            sessionColumns.add(new String[]{table, column});
+            break;
+          }
+        }
+      }
+    }
+    return sessionColumns;
+  }
+
+  private static boolean isSessionColumn(@NotNull String column) {
+    for (String sessionColumn : SESSION_COLUMNS) {
+      if (sessionColumn.equalsIgnoreCase(column)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * @return the size of the pages in use, which unlike the file size goes down as soon as rows are deleted.
+   */
+  private static long getUsedSizeBytes(@NotNull Collection<Connection> connections) throws SQLException {
+    long size = 0;
+    for (Connection connection : connections) {
+      size += (queryLong(connection, "PRAGMA page_count") - queryLong(connection, "PRAGMA freelist_count")) *
+              queryLong(connection, "PRAGMA page_size");
+    }
+    return size;
+  }
+
+  private static long queryLong(@NotNull Connection connection, @NotNull String query) throws SQLException {
+    try (Statement statement = connection.createStatement();
+         ResultSet results = statement.executeQuery(query)) {
+      return results.next() ? results.getLong(1) : 0;
+    }
+  }
+
+  private static boolean hasTable(@NotNull Connection connection, @NotNull String table) throws SQLException {
+    try (PreparedStatement statement = connection.prepareStatement("SELECT name FROM sqlite_master WHERE type='table' AND name = ?")) {
+      statement.setString(1, table);
+      try (ResultSet results = statement.executeQuery()) {
+        return results.next();
+      }
+    }
+  }
+}
@@ -74,6 +74,7 @@ public class CpuDataPoller extends PollRunner {
     CpuProfiler.CpuDataRequest.Builder request = CpuProfiler.CpuDataRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getDataStartNs).setEndTimestamp(Long.MAX_VALUE);
     CpuProfiler.CpuDataResponse response = myPollingService.getData(request.build());
+    reportDataCount(response.getDataCount());
     for (CpuProfiler.CpuUsageData data : response.getDataList()) {
       getDataStartNs = Math.max(getDataStartNs, data.getEndTimestamp());
       myCpuTable.insert(mySession, data);
@@ -84,6 +85,7 @@ public class CpuDataPoller extends PollRunner {
     CpuProfiler.GetThreadsRequest.Builder threadsRequest = CpuProfiler.GetThreadsRequest
       .newBuilder().setSession(mySession).setStartTimestamp(getThreadsStartNs).setEndTimestamp(Long.MAX_VALUE);
     CpuProfiler.GetThreadsResponse threadsResponse = myPollingService.getThreads(threadsRequest.build());
+    reportDataCount(threadsResponse.getThreadsCount());
 
     if (myDataRequestStartTimestampNs == Long.MIN_VALUE) {
       // Store the very first snapshot in the database.
@@ -45,6 +45,15 @@ public class MemoryJvmtiDataPoller extends PollRunner {
       .newBuilder().setSession(mySession).setStartTime(myDataRequestStartTimestampNs).setEndTime(Long.MAX_VALUE);
     MemoryData response = myPollingService.getJvmtiData(dataRequestBuilder.build());
 
+    int dataCount = response.getAllocSamplingRateEventsCount();
+    for (BatchAllocationSample sample : response.getAllocationSamplesList()) {
+      dataCount += sample.getEventsCount();
+    }
+    for (MemoryProfiler.BatchJNIGlobalRefEvent batchJniEvent : response.getJniReferenceEventBatchesList()) {
+      dataCount += batchJniEvent.getEventsCount();
+    }
+    reportDataCount(dataCount);
+
     for (BatchAllocationSample sample : response.getAllocationSamplesList()) {
       myLiveAllocationTable.insertMethodInfo(mySession, sample.getMethodsList());
       myLiveAllocationTable.insertStackInfo(mySession, sample.getStacksList());
@@ -31,12 +31,14 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   private long myPollPeriodNs;
 
-  private boolean myIsRunning = false;
+  private volatile boolean myIsRunning = false;
 
   private CountDownLatch myRunning = new CountDownLatch(1);
 
   private CountDownLatch myIsDone = new CountDownLatch(1);
 
+  // Number of data items reported by the current poll, or -1 if the poller does not report them. See {@link #reportDataCount(int)}.
+  private int myPollDataCount = -1;
 
   public PollRunner(long pollPeriodNs) {
     myPollPeriodNs = pollPeriodNs;
@@ -73,6 +75,48 @@ public abstract class PollRunner implements RunnableFuture<Void> {
 
   public abstract void poll();
 
+  /**
+   * Lets a poller report how many new data items the current {@link #poll()} received. A {@link PollScheduler} uses this to back off
+   * pollers that keep coming back empty and to poll dense ones more often. Can be called several times per poll; counts add up.
+   */
+  protected void reportDataCount(int count) {
+    myPollDataCount = Math.max(myPollDataCount, 0) + count;
+  }
+
+  public long getPollPeriodNs() {
+    return myPollPeriodNs;
+  }
+
+  /**
+   * Runs a single {@link #poll()} on behalf of a {@link PollScheduler}.
+   *
+   * @return the number of data items reported by the poll, or -1 if none were reported.
+   * @throws StatusRuntimeException if the poll failed, in which case the poller is done.
+   */
+  int pollOnce() throws StatusRuntimeException {
+    // Between polls the runner is idle, so stop() must not wait for the next scheduled poll to notice the cancellation. Marking the
+    // runner as running before checking for cancellation guarantees that a stop() either waits for this poll or prevents it.
+    myIsRunning = true;
+    try {
+      if (isCancelled()) {
+        return -1;
+      }
+      myPollDataCount = -1;
+      poll();
+      return myPollDataCount;
+    }
+    finally {
+      myIsRunning = false;
+    }
+  }
+
+  /**
+   * Called by a {@link PollScheduler} once it will no longer call {@link #pollOnce()}.
+   */
+  void markDone() {
+    myIsDone.countDown();
+  }
+
   @Override
   public boolean cancel(boolean mayInterruptIfRunning) {
     myRunning.countDown();
@@ -0,0 +1,232 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import com.android.annotations.VisibleForTesting;
+import io.grpc.StatusRuntimeException;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Multiplexes {@link PollRunner}s onto a small shared pool instead of giving each one its own thread sleeping in
+ * {@link PollRunner#run()}. After every poll the runner is rescheduled with an adaptive delay: pollers whose responses keep coming back
+ * empty (see {@link PollRunner#reportDataCount(int)}) back off up to {@link #MAX_BACKOFF_FACTOR} times their period, and pollers that
+ * receive data are brought back down, to as little as a {@link #MAX_SPEEDUP_FACTOR}th of their period. Pollers that do not report data
+ * counts keep their fixed period.
+ *
+ * The pool is sized from the pollers it runs, so that a poller blocked in a slow call does not delay the others: it has one thread per
+ * {@link #POLLERS_PER_THREAD} pollers, plus one for each poller whose last poll took longer than its period.
+ */
+public class PollScheduler {
+  @VisibleForTesting static final int MAX_BACKOFF_FACTOR = 8;
+  @VisibleForTesting static final int MAX_SPEEDUP_FACTOR = 4;
+  @VisibleForTesting static final int POLLERS_PER_THREAD = 4;
+
+  private final ScheduledThreadPoolExecutor myExecutor;
+  private final Map<PollRunner, PollStats> myStats = new ConcurrentHashMap<>();
+  private final int myMinThreadCount;
+  private final AtomicInteger mySlowPollerCount = new AtomicInteger();
+
+  /**
+   * @param minThreadCount the number of threads the pool keeps however few pollers it runs
+   */
+  public PollScheduler(int minThreadCount) {
+    myMinThreadCount = minThreadCount;
+    AtomicInteger threadIndex = new AtomicInteger();
+    myExecutor = new ScheduledThreadPoolExecutor(minThreadCount, runnable -> {
+      Thread thread = new Thread(runnable, "DataStorePollScheduler-" + threadIndex.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    myExecutor.setRemoveOnCancelPolicy(true);
+  }
+
+  /**
+   * Starts polling the runner. It is polled until it is cancelled (e.g. through {@link PollRunner#stop()}) or a poll throws.
+   */
+  public void schedule(@NotNull PollRunner runner) {
+    PollStats stats = new PollStats(runner.getClass().getSimpleName(), runner.getPollPeriodNs());
+    myStats.put(runner, stats);
+    updatePoolSize();
+    scheduleNext(runner, stats, 0);
+  }
+
+  public void shutdown() {
+    myExecutor.shutdownNow();
+    myStats.keySet().forEach(PollRunner::markDone);
+    myStats.clear();
+  }
+
+  /**
+   * @return a snapshot of the stats of every poller currently scheduled.
+   */
+  @NotNull
+  public List<PollStats> getStats() {
+    return new ArrayList<>(myStats.values());
+  }
+
+  @VisibleForTesting
+  int getPoolSize() {
+    return myExecutor.getCorePoolSize();
+  }
+
+  /**
+   * Grows or shrinks the pool to fit the pollers currently scheduled. Threads above the new size exit once they are idle.
+   */
+  private synchronized void updatePoolSize() {
+    int pollerCount = myStats.size();
+    int threadCount = (pollerCount + POLLERS_PER_THREAD - 1) / POLLERS_PER_THREAD + mySlowPollerCount.get();
+    // More threads than pollers would never be used
+    threadCount = Math.max(myMinThreadCount, Math.min(threadCount, pollerCount));
+    if (threadCount != myExecutor.getCorePoolSize()) {
+      myExecutor.setCorePoolSize(threadCount);
+    }
+  }
+
+  private void scheduleNext(@NotNull PollRunner runner, @NotNull PollStats stats, long delayNs) {
+    long scheduledNs = System.nanoTime() + delayNs;
+    myExecutor.schedule(() -> runPoll(runner, stats, scheduledNs), delayNs, TimeUnit.NANOSECONDS);
+  }
+
+  private void runPoll(@NotNull PollRunner runner, @NotNull PollStats stats, long scheduledNs) {
+    if (runner.isCancelled()) {
+      finish(runner);
+      return;
+    }
+
+    long startNs = System.nanoTime();
+    int dataCount;
+    try {
+      dataCount = runner.pollOnce();
+    }
+    catch (StatusRuntimeException e) {
+      // Same as PollRunner#run: the device went away, stop polling.
+      finish(runner);
+      return;
+    }
+    long endNs = System.nanoTime();
+    if (stats.record(startNs - scheduledNs, endNs - startNs, dataCount)) {
+      mySlowPollerCount.addAndGet(stats.isSlow() ? 1 : -1);
+      updatePoolSize();
+    }
+
+    if (runner.isCancelled()) {
+      finish(runner);
+      return;
+    }
+    scheduleNext(runner, stats, Math.max(stats.getCurrentDelayNs() - (endNs - startNs), 0));
+  }
+
+  private void finish(@NotNull PollRunner runner) {
+    PollStats stats = myStats.remove(runner);
+    if (stats != null) {
+      if (stats.isSlow()) {
+        mySlowPollerCount.decrementAndGet();
+      }
+      updatePoolSize();
+    }
+    runner.markDone();
+  }
+
+  /**
+   * Scheduling state and latency stats of one poller. Only updated from the poller's own (serialized) poll tasks.
+   */
+  public static final class PollStats {
+    @NotNull private final String myName;
+    private final long myPeriodNs;
+    private volatile long myCurrentDelayNs;
+    private volatile long myPollCount;
+    private volatile long myTotalLatencyNs;
+    private volatile long myMaxLatencyNs;
+    private volatile long myTotalLagNs;
+    private volatile long myMaxLagNs;
+    private volatile boolean mySlow;
+
+    private PollStats(@NotNull String name, long periodNs) {
+      myName = name;
+      myPeriodNs = periodNs;
+      myCurrentDelayNs = periodNs;
+    }
+
+    /**
+     * @return true if the poller became slow or stopped being slow.
+     */
+    private boolean record(long lagNs, long latencyNs, int dataCount) {
+      myPollCount++;
+      myTotalLagNs += Math.max(lagNs, 0);
+      myMaxLagNs = Math.max(myMaxLagNs, lagNs);
+      myTotalLatencyNs += latencyNs;
+      myMaxLatencyNs = Math.max(myMaxLatencyNs, latencyNs);
+
+      if (dataCount == 0) {
+        myCurrentDelayNs = Math.min(myCurrentDelayNs * 2, myPeriodNs * MAX_BACKOFF_FACTOR);
+      }
+      else if (dataCount > 0) {
+        // Coming back from a backoff goes straight to the normal period, and repeated data-bearing polls speed up from there.
+        myCurrentDelayNs = myCurrentDelayNs > myPeriodNs ? myPeriodNs : Math.max(myCurrentDelayNs / 2, myPeriodNs / MAX_SPEEDUP_FACTOR);
+      }
+
+      // A poll that takes longer than the period makes the poller slow, and it takes a poll of less than half the period to stop being
+      // slow, so that a poller close to its period does not resize the pool on every poll.
+      boolean slow = mySlow ? latencyNs >= myPeriodNs / 2 : latencyNs > myPeriodNs;
+      if (slow == mySlow) {
+        return false;
+      }
+      mySlow = slow;
+      return true;
+    }
+
+    public boolean isSlow() {
+      return mySlow;
+    }
+
+    @NotNull
+    public String getName() {
+      return myName;
+    }
+
+    public long getCurrentDelayNs() {
+      return myCurrentDelayNs;
+    }
+
+    public long getPollCount() {
+      return myPollCount;
+    }
+
+    public long getAverageLatencyNs() {
+      return myPollCount == 0 ? 0 : myTotalLatencyNs / myPollCount;
+    }
+
+    public long getMaxLatencyNs() {
+      return myMaxLatencyNs;
+    }
+
+    public long getAverageLagNs() {
+      return myPollCount == 0 ? 0 : myTotalLagNs / myPollCount;
+    }
+
+    public long getMaxLagNs() {
+      return myMaxLagNs;
+    }
+  }
+}
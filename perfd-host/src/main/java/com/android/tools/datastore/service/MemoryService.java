@@ -16,6 +16,7 @@
 package com.android.tools.datastore.service;
 
 import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERFORMANT;
+import static com.android.tools.datastore.DataStoreDatabase.Characteristic.PERSISTENT;
 
 import com.android.tools.datastore.DataStoreService;
 import com.android.tools.datastore.DataStoreService.BackingNamespace;
@@ -80,7 +81,13 @@ import java.util.function.Consumer;
 import org.jetbrains.annotations.NotNull;
 
 public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase implements ServicePassThrough {
-  private static final BackingNamespace LIVE_ALLOCATION_NAMESPACE = new BackingNamespace("LiveAllocations", PERFORMANT);
+  // Kept on disk along with the shared namespace when that one is persistent, so that sessions reopened after a restart still have their
+  // live allocations. Events held in column stores are only written to the database when their session ends, so those of sessions still
+  // alive when the datastore exits are lost.
+  private static final BackingNamespace LIVE_ALLOCATION_NAMESPACE = new BackingNamespace(
+    "LiveAllocations", BackingNamespace.DEFAULT_SHARED_NAMESPACE.myCharacteristic == PERSISTENT ? PERSISTENT : PERFORMANT);
+  // Opt-in for keeping live allocation events in memory columns instead of SQLite rows, see AllocationEventColumnStore.
+  private static final String COLUMN_STORE_PROPERTY = "profiler.datastore.allocation.columnstore";
 
   private final Map<Long, PollRunner> myRunners = new HashMap<>();
   private final Map<Long, PollRunner> myJvmtiRunners = new HashMap<>();
@@ -97,7 +104,7 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     myFetchExecutor = fetchExecutor;
     myService = dataStoreService;
     myStatsTable = new MemoryStatsTable();
-    myAllocationsTable = new MemoryLiveAllocationTable(myLogService);
+    myAllocationsTable = new MemoryLiveAllocationTable(myLogService, Boolean.getBoolean(COLUMN_STORE_PROPERTY));
   }
 
   @Override
@@ -142,6 +149,9 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
     if (runner != null) {
       runner.stop();
     }
+    // Moving the allocations of the session to the database can take a while, so don't block the request on it.
+    Common.Session session = request.getSession();
+    myFetchExecutor.accept(() -> myAllocationsTable.onSessionEnded(session));
     // Our polling service can get shutdown if we unplug the device.
     // This should be the only function that gets called as StudioProfilers attempts
     // to stop monitoring the last app it was monitoring.
@@ -444,4 +454,9 @@ public class MemoryService extends MemoryServiceGrpc.MemoryServiceImplBase imple
       myAllocationsTable.initialize(connection);
     }
   }
+
+  @Override
+  public void onSessionDeleted(long sessionId) {
+    myAllocationsTable.onSessionDeleted(sessionId);
+  }
 }
\ No newline at end of file
@@ -189,6 +189,7 @@ public class ProfilerService extends ProfilerServiceGrpc.ProfilerServiceImplBase
   public void deleteSession(DeleteSessionRequest request, StreamObserver<DeleteSessionResponse> responseObserver) {
     // TODO (b\67509712): properly delete all data related to the session.
     myTable.deleteSession(request.getSessionId());
+    myService.onSessionDeleted(request.getSessionId());
     responseObserver.onNext(DeleteSessionResponse.getDefaultInstance());
     responseObserver.onCompleted();
   }
@@ -0,0 +1,93 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.profiler.proto.MemoryProfiler.AllocationEvent;
+import com.android.tools.profiler.proto.MemoryProfiler.BatchAllocationSample;
+import org.junit.Test;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class AllocationEventColumnStoreTest {
+  private static AllocationEvent.Allocation allocation(int tag) {
+    return AllocationEvent.Allocation.newBuilder().setTag(tag).setClassTag(1).setSize(8).setThreadId(2).setStackId(3).build();
+  }
+
+  @Test
+  public void testSnapshotAndRangeQueries() {
+    AllocationEventColumnStore store = new AllocationEventColumnStore(100);
+    store.insertAllocation(1, allocation(1));
+    store.insertAllocation(2, allocation(2));
+    store.insertAllocation(3, allocation(3));
+    store.insertFree(5, 2);
+
+    BatchAllocationSample.Builder snapshot = BatchAllocationSample.newBuilder();
+    assertThat(store.querySnapshot(6, snapshot)).isEqualTo(3);
+    assertThat(snapshot.getEventsCount()).isEqualTo(2);
+    assertThat(snapshot.getEvents(0).getAllocData().getTag()).isEqualTo(1);
+    assertThat(snapshot.getEvents(1).getAllocData().getTag()).isEqualTo(3);
+
+    BatchAllocationSample.Builder allocs = BatchAllocationSample.newBuilder();
+    assertThat(store.queryAllocations(2, 4, allocs)).isEqualTo(3);
+    assertThat(allocs.getEventsCount()).isEqualTo(2);
+
+    BatchAllocationSample.Builder frees = BatchAllocationSample.newBuilder();
+    assertThat(store.queryFrees(0, 10, frees)).isEqualTo(5);
+    assertThat(frees.getEventsCount()).isEqualTo(1);
+    assertThat(frees.getEvents(0).getFreeData().getTag()).isEqualTo(2);
+    assertThat(frees.getEvents(0).getFreeData().getStackId()).isEqualTo(3);
+
+    assertThat(store.getLatestTimestamp()).isEqualTo(5);
+  }
+
+  @Test
+  public void testDuplicateAndUnknownTagsAreIgnored() {
+    AllocationEventColumnStore store = new AllocationEventColumnStore(100);
+    store.insertAllocation(1, allocation(1));
+    store.insertAllocation(2, allocation(1));
+    store.insertFree(3, 42);
+    assertThat(store.getRowCount()).isEqualTo(1);
+    assertThat(store.getLatestTimestamp()).isEqualTo(1);
+  }
+
+  @Test
+  public void testPruneOnlyRemovesFreedAllocationsAcrossSegments() {
+    int count = AllocationEventColumnStore.SEGMENT_CAPACITY + 10;
+    AllocationEventColumnStore store = new AllocationEventColumnStore(count);
+    for (int i = 0; i < count; i++) {
+      store.insertAllocation(i, allocation(i));
+    }
+    // Free every other allocation, then push the store over its limit.
+    for (int i = 0; i < count; i += 2) {
+      store.insertFree(count + i, i);
+    }
+    store.insertAllocation(count, allocation(count));
+    assertThat(store.prune()).isGreaterThan(0);
+    assertThat(store.getRowCount()).isLessThan(count);
+
+    // Live allocations survive and can still be freed through the re-pointed tag index.
+    int lastLiveTag = count - 1;
+    store.insertFree(3 * count, lastLiveTag);
+    BatchAllocationSample.Builder frees = BatchAllocationSample.newBuilder();
+    store.queryFrees(3 * count, 3 * count + 1, frees);
+    assertThat(frees.getEventsCount()).isEqualTo(1);
+    assertThat(frees.getEvents(0).getFreeData().getTag()).isEqualTo(lastLiveTag);
+
+    BatchAllocationSample.Builder snapshot = BatchAllocationSample.newBuilder();
+    store.querySnapshot(Long.MAX_VALUE - 1, snapshot);
+    assertThat(snapshot.getEventsCount()).isEqualTo(count / 2);
+  }
+}
@@ -106,6 +106,62 @@ public class DatabaseTableTest {
     }
   }
 
+  @Test
+  public void testGroupCommitWriterAppliesAllWrites() throws Exception {
+    DataStoreDatabase database = new DataStoreDatabase("", DataStoreDatabase.Characteristic.PERFORMANT, new FakeLogService());
+    database.enableGroupCommit(16, 32, 10);
+    GroupCommitWriter writer = database.getGroupCommitWriter();
+    assertThat(writer).isNotNull();
+    ThreadTestTable table = new ThreadTestTable();
+    table.initialize(database.getConnection());
+
+    for (int i = 0; i < TEST_DATA_COUNT; i++) {
+      table.insertData(i);
+    }
+    // Stopping the writer flushes and commits everything that was queued.
+    writer.stop();
+
+    int count = 0;
+    ResultSet rs = table.readDataRaw();
+    while (rs.next()) {
+      assertThat(rs.getInt(1)).isEqualTo(count);
+      count++;
+    }
+    assertThat(count).isEqualTo(TEST_DATA_COUNT);
+    assertThat(writer.getQueueDepth()).isEqualTo(0);
+    assertThat(writer.getCommitCount()).isAtLeast(1L);
+    assertThat(writer.getAverageBatchSize()).isAtLeast(1.0);
+    database.disconnect();
+  }
+
+  @Test
+  public void testPersistentDatabaseKeepsDataAcrossReopen() throws Exception {
+    File dbFile = File.createTempFile("DatabaseTableTestPersistent", "sql");
+    try {
+      DataStoreDatabase database = new DataStoreDatabase(dbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.PERSISTENT,
+                                                         new FakeLogService());
+      ThreadTestTable table = new ThreadTestTable();
+      table.initialize(database.getConnection());
+      table.insertData(1, 2, 3);
+      database.disconnect();
+
+      DataStoreDatabase reopened = new DataStoreDatabase(dbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.PERSISTENT,
+                                                         new FakeLogService());
+      ThreadTestTable reopenedTable = new ThreadTestTable();
+      reopenedTable.initialize(reopened.getConnection());
+      int count = 0;
+      ResultSet rs = reopenedTable.readDataRaw();
+      while (rs.next()) {
+        count++;
+      }
+      assertThat(count).isEqualTo(3);
+      reopened.disconnect();
+    }
+    finally {
+      dbFile.delete();
+    }
+  }
+
   /**
    * Runnable class that handles querying the database as fast as possible.
    */
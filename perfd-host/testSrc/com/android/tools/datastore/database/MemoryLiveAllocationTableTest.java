@@ -513,6 +513,75 @@ public class MemoryLiveAllocationTableTest extends DatabaseTest<MemoryLiveAlloca
     assertThat(querySample.getTimestamp()).isEqualTo(alloc2.getTimestamp());
   }
 
+  @Test
+  public void testColumnStoreMovedToDatabaseWhenSessionEnds() {
+    MemoryLiveAllocationTable table = new MemoryLiveAllocationTable(new FakeLogService(), true);
+    table.initialize(getDatabase().getConnection());
+
+    AllocationEvent alloc1 = AllocationEvent
+      .newBuilder().setAllocData(
+        AllocationEvent.Allocation
+          .newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1).setHeapId(HEAP0))
+      .setTimestamp(1).build();
+    AllocationEvent dealloc1 = AllocationEvent
+      .newBuilder().setFreeData(
+        AllocationEvent.Deallocation
+          .newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1).setHeapId(HEAP0))
+      .setTimestamp(7).build();
+    table.insertAllocationData(VALID_SESSION, BatchAllocationSample.newBuilder().addEvents(alloc1).addEvents(dealloc1).build());
+    assertThat(table.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE).getEventsCount()).isEqualTo(2);
+
+    // Once the session ends, the events are served from the database.
+    table.onSessionEnded(VALID_SESSION);
+    BatchAllocationSample querySample = table.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE);
+    assertThat(querySample.getEventsCount()).isEqualTo(2);
+    assertThat(querySample.getEvents(0)).isEqualTo(alloc1);
+    assertThat(querySample.getEvents(1)).isEqualTo(dealloc1);
+    assertThat(table.getLatestDataTimestamp(VALID_SESSION).getTimestamp()).isEqualTo(7);
+  }
+
+  @Test
+  public void testEventsAfterSessionEndGoToDatabase() {
+    MemoryLiveAllocationTable table = new MemoryLiveAllocationTable(new FakeLogService(), true);
+    table.initialize(getDatabase().getConnection());
+
+    AllocationEvent alloc1 = AllocationEvent
+      .newBuilder().setAllocData(
+        AllocationEvent.Allocation
+          .newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1).setHeapId(HEAP0))
+      .setTimestamp(1).build();
+    AllocationEvent alloc2 = AllocationEvent
+      .newBuilder().setAllocData(
+        AllocationEvent.Allocation
+          .newBuilder().setTag(KLASS1_INSTANCE2_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1).setHeapId(HEAP0))
+      .setTimestamp(3).build();
+    table.insertAllocationData(VALID_SESSION, BatchAllocationSample.newBuilder().addEvents(alloc1).build());
+    table.onSessionEnded(VALID_SESSION);
+
+    // A poll that was in flight when the session ended doesn't create a new store, which would hide the events of the first one.
+    table.insertAllocationData(VALID_SESSION, BatchAllocationSample.newBuilder().addEvents(alloc2).build());
+    BatchAllocationSample querySample = table.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE);
+    assertThat(querySample.getEventsList()).containsExactly(alloc1, alloc2);
+  }
+
+  @Test
+  public void testColumnStoreDroppedWhenSessionDeleted() {
+    MemoryLiveAllocationTable table = new MemoryLiveAllocationTable(new FakeLogService(), true);
+    table.initialize(getDatabase().getConnection());
+
+    AllocationEvent alloc1 = AllocationEvent
+      .newBuilder().setAllocData(
+        AllocationEvent.Allocation
+          .newBuilder().setTag(KLASS1_INSTANCE1_TAG).setClassTag(CLASS1).setThreadId(THREAD1).setStackId(STACK1).setHeapId(HEAP0))
+      .setTimestamp(1).build();
+    table.insertAllocationData(VALID_SESSION, BatchAllocationSample.newBuilder().addEvents(alloc1).build());
+    assertThat(table.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE).getEventsCount()).isEqualTo(1);
+
+    table.onSessionDeleted(VALID_SESSION.getSessionId());
+    assertThat(table.getAllocations(VALID_SESSION, 0, Long.MAX_VALUE).getEventsCount()).isEqualTo(0);
+    assertThat(table.getLatestDataTimestamp(VALID_SESSION).getTimestamp()).isEqualTo(0);
+  }
+
   @Test
   public void testLatestDataTimestamp() {
     assertThat(getTable().getLatestDataTimestamp(VALID_SESSION).getTimestamp()).isEqualTo(0);
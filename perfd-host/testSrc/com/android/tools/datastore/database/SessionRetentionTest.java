@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.database;
+
+import com.android.tools.datastore.DataStoreDatabase;
+import com.android.tools.datastore.FakeLogService;
+import com.android.tools.profiler.proto.Common;
+import com.android.tools.profiler.proto.Profiler;
+import com.android.tools.profiler.protobuf3jarjar.ByteString;
+import org.jetbrains.annotations.NotNull;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class SessionRetentionTest {
+  private static final long NOW_MS = TimeUnit.DAYS.toMillis(1000);
+  private static final long MAX_AGE_MS = TimeUnit.DAYS.toMillis(30);
+
+  private File myDbFile;
+  private DataStoreDatabase myDatabase;
+  private ProfilerTable myTable;
+
+  @Before
+  public void setUp() throws Exception {
+    myDbFile = File.createTempFile("SessionRetentionTest", "sql");
+    myDbFile.delete();
+    myDatabase = new DataStoreDatabase(myDbFile.getAbsolutePath(), DataStoreDatabase.Characteristic.PERSISTENT, new FakeLogService());
+    myTable = new ProfilerTable();
+    myTable.initialize(myDatabase.getConnection());
+  }
+
+  @After
+  public void tearDown() {
+    myDatabase.disconnect();
+    myDbFile.delete();
+  }
+
+  @Test
+  public void testPruneSessionsOlderThanMaxAge() throws Exception {
+    insertSession(1, NOW_MS - TimeUnit.DAYS.toMillis(40), true);
+    insertSession(2, NOW_MS - TimeUnit.DAYS.toMillis(10), true);
+    insertSession(3, NOW_MS - TimeUnit.DAYS.toMillis(1), true);
+
+    List<Long> deleted = pruneSessions(Long.MAX_VALUE);
+
+    assertThat(deleted).containsExactly(1L);
+    assertThat(getSessionIds()).containsExactly(2L, 3L).inOrder();
+    assertThat(getBytes(1)).isNull();
+    assertThat(getBytes(2)).isNotNull();
+  }
+
+  @Test
+  public void testPruneSessionsOverMaxSizeOldestFirst() throws Exception {
+    insertSession(1, NOW_MS - TimeUnit.DAYS.toMillis(3), true);
+    insertSession(2, NOW_MS - TimeUnit.DAYS.toMillis(2), true);
+    insertSession(3, NOW_MS - TimeUnit.DAYS.toMillis(1), false);
+
+    // No size is small enough for an empty database, so every session that ended is deleted
+    List<Long> deleted = pruneSessions(0);
+
+    assertThat(deleted).containsExactly(1L, 2L).inOrder();
+    assertThat(getSessionIds()).containsExactly(3L);
+    assertThat(getBytes(3)).isNotNull();
+  }
+
+  @Test
+  public void testPruneSessionsWithinLimits() throws Exception {
+    insertSession(1, NOW_MS - TimeUnit.DAYS.toMillis(2), true);
+    insertSession(2, NOW_MS - TimeUnit.DAYS.toMillis(1), true);
+
+    assertThat(pruneSessions(Long.MAX_VALUE)).isEmpty();
+    assertThat(getSessionIds()).containsExactly(1L, 2L).inOrder();
+  }
+
+  @NotNull
+  private List<Long> pruneSessions(long maxSizeBytes) throws Exception {
+    return SessionRetention.pruneSessions(myDatabase.getConnection(), Collections.singletonList(myDatabase.getConnection()), MAX_AGE_MS,
+                                          maxSizeBytes, NOW_MS);
+  }
+
+  private void insertSession(long sessionId, long startTimeEpochMs, boolean ended) {
+    Common.Session session = Common.Session.newBuilder().setSessionId(sessionId).setStartTimestamp(sessionId)
+      .setEndTimestamp(ended ? sessionId + 1 : Long.MAX_VALUE).build();
+    myTable.insertOrUpdateSession(session, "Session" + sessionId, startTimeEpochMs, false, false,
+                                  Common.SessionMetaData.SessionType.FULL);
+    myTable.insertOrUpdateBytes("bytes", session,
+                                Profiler.BytesResponse.newBuilder().setContents(ByteString.copyFromUtf8("contents")).build());
+  }
+
+  @NotNull
+  private List<Long> getSessionIds() {
+    return myTable.getSessions().getSessionsList().stream().map(Common.Session::getSessionId).collect(Collectors.toList());
+  }
+
+  private Profiler.BytesResponse getBytes(long sessionId) {
+    return myTable.getBytes(Profiler.BytesRequest.newBuilder().setId("bytes")
+                              .setSession(Common.Session.newBuilder().setSessionId(sessionId)).build());
+  }
+}
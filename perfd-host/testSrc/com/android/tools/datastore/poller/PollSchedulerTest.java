@@ -0,0 +1,166 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.datastore.poller;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static com.google.common.truth.Truth.assertThat;
+
+public class PollSchedulerTest {
+  private static final long TEST_PERIOD_NS = TimeUnit.MILLISECONDS.toNanos(1);
+
+  private final PollScheduler myScheduler = new PollScheduler(1);
+
+  @After
+  public void tearDown() {
+    myScheduler.shutdown();
+  }
+
+  @Test
+  public void testEmptyPollsBackOff() throws Exception {
+    CountingRunner runner = new CountingRunner(0, 5);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(10, TimeUnit.SECONDS)).isTrue();
+
+    PollScheduler.PollStats stats = myScheduler.getStats().get(0);
+    // The latch fires inside the last poll, before the scheduler records it.
+    assertThat(stats.getPollCount()).isAtLeast(4L);
+    assertThat(stats.getCurrentDelayNs()).isEqualTo(TEST_PERIOD_NS * PollScheduler.MAX_BACKOFF_FACTOR);
+    runner.stop();
+  }
+
+  @Test
+  public void testDensePollsSpeedUp() throws Exception {
+    CountingRunner runner = new CountingRunner(100, 5);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(10, TimeUnit.SECONDS)).isTrue();
+
+    PollScheduler.PollStats stats = myScheduler.getStats().get(0);
+    assertThat(stats.getCurrentDelayNs()).isEqualTo(TEST_PERIOD_NS / PollScheduler.MAX_SPEEDUP_FACTOR);
+    runner.stop();
+  }
+
+  @Test
+  public void testStoppedRunnerIsNotPolledAgain() throws Exception {
+    CountingRunner runner = new CountingRunner(0, 1);
+    myScheduler.schedule(runner);
+    assertThat(runner.myPolled.await(10, TimeUnit.SECONDS)).isTrue();
+    runner.stop();
+    long pollCount = runner.myPollCount;
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(TEST_PERIOD_NS * PollScheduler.MAX_BACKOFF_FACTOR * 4));
+    assertThat(runner.myPollCount).isEqualTo(pollCount);
+    assertThat(myScheduler.getStats()).isEmpty();
+  }
+
+  @Test
+  public void testPoolGrowsAndShrinksWithPollers() throws Exception {
+    List<CountingRunner> runners = new ArrayList<>();
+    for (int i = 0; i < PollScheduler.POLLERS_PER_THREAD * 2 + 1; i++) {
+      CountingRunner runner = new CountingRunner(100, 1);
+      runners.add(runner);
+      myScheduler.schedule(runner);
+    }
+    assertThat(myScheduler.getPoolSize()).isEqualTo(3);
+
+    for (CountingRunner runner : runners) {
+      runner.stop();
+    }
+    waitForStats(0);
+    assertThat(myScheduler.getPoolSize()).isEqualTo(1);
+  }
+
+  @Test
+  public void testSlowPollerGetsItsOwnThread() throws Exception {
+    CountingRunner fastRunner = new CountingRunner(100, 1);
+    SlowRunner slowRunner = new SlowRunner(3);
+    myScheduler.schedule(fastRunner);
+    myScheduler.schedule(slowRunner);
+    assertThat(myScheduler.getPoolSize()).isEqualTo(1);
+
+    assertThat(slowRunner.myPolled.await(10, TimeUnit.SECONDS)).isTrue();
+    // The latch fires inside the poll, before the scheduler records it
+    long deadlineNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (myScheduler.getPoolSize() != 2 && System.nanoTime() < deadlineNs) {
+      Thread.sleep(1);
+    }
+    assertThat(myScheduler.getPoolSize()).isEqualTo(2);
+
+    // The fast poller keeps its period while the slow one blocks a thread
+    long pollCount = fastRunner.myPollCount;
+    Thread.sleep(TimeUnit.NANOSECONDS.toMillis(SlowRunner.POLL_DURATION_NS) * 4);
+    assertThat(fastRunner.myPollCount).isGreaterThan(pollCount + 4);
+
+    slowRunner.stop();
+    waitForStats(1);
+    assertThat(myScheduler.getPoolSize()).isEqualTo(1);
+    fastRunner.stop();
+  }
+
+  private void waitForStats(int count) throws InterruptedException {
+    long deadlineNs = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+    while (myScheduler.getStats().size() != count && System.nanoTime() < deadlineNs) {
+      Thread.sleep(1);
+    }
+    assertThat(myScheduler.getStats()).hasSize(count);
+  }
+
+  private static class SlowRunner extends PollRunner {
+    private static final long POLL_DURATION_NS = TimeUnit.MILLISECONDS.toNanos(20);
+    private final CountDownLatch myPolled;
+
+    SlowRunner(int pollsToWaitFor) {
+      super(TEST_PERIOD_NS);
+      myPolled = new CountDownLatch(pollsToWaitFor);
+    }
+
+    @Override
+    public void poll() {
+      try {
+        Thread.sleep(TimeUnit.NANOSECONDS.toMillis(POLL_DURATION_NS));
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      reportDataCount(1);
+      myPolled.countDown();
+    }
+  }
+
+  private static class CountingRunner extends PollRunner {
+    private final int myDataCount;
+    private final CountDownLatch myPolled;
+    private volatile long myPollCount;
+
+    CountingRunner(int dataCount, int pollsToWaitFor) {
+      super(TEST_PERIOD_NS);
+      myDataCount = dataCount;
+      myPolled = new CountDownLatch(pollsToWaitFor);
+    }
+
+    @Override
+    public void poll() {
+      myPollCount++;
+      reportDataCount(myDataCount);
+      myPolled.countDown();
+    }
+  }
+}
@@ -147,7 +147,10 @@ public class CpuCaptureView {
     @NotNull
     @Override
     protected String getDurationText() {
-      return TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(myStage.getCaptureParser().getParsingElapsedTimeMs()));
+      CpuCaptureParser parser = myStage.getCaptureParser();
+      String elapsed = TimeFormatter.getMultiUnitDurationString(TimeUnit.MILLISECONDS.toMicros(parser.getParsingElapsedTimeMs()));
+      double progress = parser.getParsingProgress();
+      return progress < 0 ? elapsed : String.format("%s (%d%%)", elapsed, (int)(progress * 100));
     }
 
     @Override
@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.capturedetails
 
 import com.android.tools.profilers.ProfilerColors
 import com.android.tools.profilers.cpu.CaptureNode
+import com.android.tools.profilers.cpu.DefaultCaptureNode
 import com.android.tools.profilers.cpu.nodemodel.*
 import com.google.common.truth.Truth.assertThat
 import com.intellij.ui.Graphics2DDelegate
@@ -31,7 +32,7 @@ class CaptureNodeHRendererTest {
 
   @Test
   fun renderIdleCpuTime() {
-    val simpleNode = CaptureNode(AtraceNodeModel("SomeName"))
+    val simpleNode = DefaultCaptureNode(AtraceNodeModel("SomeName"))
     simpleNode.startGlobal = 10
     simpleNode.endGlobal = 20
     simpleNode.startThread = 10
@@ -49,7 +50,7 @@ class CaptureNodeHRendererTest {
 
   @Test
   fun renderUseClampedRenderWindowForSizing() {
-    val simpleNode = CaptureNode(AtraceNodeModel("SomeName")).apply {
+    val simpleNode = DefaultCaptureNode(AtraceNodeModel("SomeName")).apply {
       startGlobal = 10
       endGlobal = 20
       startThread = 10
@@ -81,7 +82,7 @@ class CaptureNodeHRendererTest {
 
   @Test
   fun renderIdleCpuTimeDoesNotHappenOnOtherModels() {
-    val simpleNode = CaptureNode(SingleNameModel("SomeName"))
+    val simpleNode = DefaultCaptureNode(SingleNameModel("SomeName"))
     simpleNode.startGlobal = 10
     simpleNode.endGlobal = 20
     simpleNode.startThread = 10
@@ -98,7 +99,7 @@ class CaptureNodeHRendererTest {
 
   @Test
   fun renderIdleTimeWithNegativeStartFillsIdleTime() {
-    val simpleNode = CaptureNode(AtraceNodeModel("SomeName"))
+    val simpleNode = DefaultCaptureNode(AtraceNodeModel("SomeName"))
     simpleNode.startGlobal = 10
     simpleNode.endGlobal = 110
     simpleNode.startThread = 10
@@ -118,7 +119,7 @@ class CaptureNodeHRendererTest {
 
   @Test
   fun renderInvalidNodeShouldThrowException() {
-    val unsupportedNode = CaptureNode(StubCaptureNodeModel())
+    val unsupportedNode = DefaultCaptureNode(StubCaptureNodeModel())
     val renderer = CaptureNodeHRenderer(CaptureDetails.Type.CALL_CHART)
 
     val fakeGraphics = TestGraphics2D()
@@ -147,7 +148,7 @@ class CaptureNodeHRendererTest {
     val renderer = CaptureNodeHRenderer(CaptureDetails.Type.CALL_CHART)
     val fakeGraphics = TestGraphics2D()
 
-    val simpleNode = CaptureNode(SyscallModel("write"))
+    val simpleNode = DefaultCaptureNode(SyscallModel("write"))
 
     fakeGraphics.paint = Color.RED
     simpleNode.filterType = CaptureNode.FilterType.MATCH
@@ -296,7 +297,7 @@ class CaptureNodeHRendererTest {
   }
 
   private fun checkFittingText(nodeModel: CaptureNodeModel, expectedTexts: List<String>) {
-    val node = CaptureNode(nodeModel)
+    val node = DefaultCaptureNode(nodeModel)
     val textFitPredicate = TestTextFitPredicate()
     val renderer = CaptureNodeHRenderer(CaptureDetails.Type.CALL_CHART, textFitPredicate)
     val graphics = TestGraphics2D()
@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Before;
@@ -58,7 +59,7 @@ public class CpuTreeSorterTest {
 
   @Test
   public void sortedTree() {
-    CaptureNode root = newNode("A", 0, 0);
+    DefaultCaptureNode root = newNode("A", 0, 0);
     root.addChild(newNode("B", 0, 0));
     root.addChild(newNode("C", 0, 0));
 
@@ -72,7 +73,7 @@ public class CpuTreeSorterTest {
 
   @Test
   public void unmatchedNodesAlwaysComesAfterOthers() {
-    CaptureNode root = newNode("Root", 0, 0);
+    DefaultCaptureNode root = newNode("Root", 0, 0);
     root.addChild(newNode("A1", 0, 0));
     root.addChild(newNode("C1", 0, 0));
     root.addChild(newNode("B1", 0, 0));
@@ -91,7 +92,7 @@ public class CpuTreeSorterTest {
 
   @Test
   public void unsortedTree() {
-    CaptureNode root = newNode("A", 0, 0);
+    DefaultCaptureNode root = newNode("A", 0, 0);
     root.addChild(newNode("C", 0, 0));
     root.addChild(newNode("B", 0, 0));
 
@@ -106,7 +107,7 @@ public class CpuTreeSorterTest {
   @Test
   public void sortModifiedModel() {
     // Create a tree model, with method names sorted lexicographically
-    CaptureNode root = newNode("A", 0, 0);
+    DefaultCaptureNode root = newNode("A", 0, 0);
     root.addChild(newNode("B", 0, 0));
     root.addChild(newNode("D", 0, 0));
 
@@ -131,7 +132,7 @@ public class CpuTreeSorterTest {
   @Test
   public void parentIsNotOrdered() {
     // Create a tree model, with method names sorted lexicographically
-    CaptureNode root = newNode("Z", 0, 0);
+    DefaultCaptureNode root = newNode("Z", 0, 0);
     root.addChild(newNode("B", 0, 0));
     root.addChild(newNode("C", 0, 0));
 
@@ -171,13 +172,13 @@ public class CpuTreeSorterTest {
     }
   }
 
-  private static CaptureNode newNode(String method, long start, long end) {
+  private static DefaultCaptureNode newNode(String method, long start, long end) {
     return newNode(method, start, end, CaptureNode.FilterType.MATCH);
   }
 
   @NotNull
-  private static CaptureNode newNode(String method, long start, long end, CaptureNode.FilterType filterType) {
-    CaptureNode node = new CaptureNode(new SingleNameModel(method));
+  private static DefaultCaptureNode newNode(String method, long start, long end, CaptureNode.FilterType filterType) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new SingleNameModel(method));
     node.setStartGlobal(start);
     node.setEndGlobal(start);
     node.setFilterType(filterType);
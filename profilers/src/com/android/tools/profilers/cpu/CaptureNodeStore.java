@@ -0,0 +1,429 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A call tree stored as one array per {@link CaptureNode} field instead of one object (and one children list) per method call, which
+ * takes about half the memory. Used for the trees of traces, where there can be tens of millions of calls.
+ *
+ * Parsers append the nodes to a {@link Builder} as they read the trace, identifying them by their index, so the tree never exists as
+ * {@link CaptureNode} objects. Once built, each node is exposed as a {@link CaptureNode} view reading and writing the arrays of the
+ * store, so the rest of the profilers (e.g. {@link com.android.tools.adtui.chart.hchart.HTreeChart} or the capture details) don't know
+ * the difference. Views only hold the index of their node and are created whenever a node is requested, without being kept by the
+ * store, so views of the same node are equal but not necessarily identical.
+ */
+public final class CaptureNodeStore {
+  /**
+   * The parent of the nodes that are added to a {@link Builder} without one.
+   */
+  public static final int NO_PARENT = -1;
+
+  private static final ClockType[] CLOCK_TYPES = ClockType.values();
+  private static final CaptureNode.FilterType[] FILTER_TYPES = CaptureNode.FilterType.values();
+
+  /**
+   * The distinct models of the tree, indexed by {@link #myModelIds}.
+   */
+  @NotNull private final CaptureNodeModel[] myModels;
+
+  @NotNull private final int[] myParents;
+  /**
+   * The children of node i are the nodes at indexes [myChildOffsets[i], myChildOffsets[i + 1]) of {@link #myChildren}.
+   */
+  @NotNull private final int[] myChildOffsets;
+  @NotNull private final int[] myChildren;
+  @NotNull private final int[] myDepths;
+  @NotNull private final int[] myModelIds;
+  @NotNull private final long[] myStartGlobal;
+  @NotNull private final long[] myEndGlobal;
+  @NotNull private final long[] myStartThread;
+  @NotNull private final long[] myEndThread;
+
+  /**
+   * The {@link ClockType} ordinal in the low nibble, and the {@link CaptureNode.FilterType} ordinal in the high one.
+   */
+  @NotNull private final byte[] myTypes;
+
+  private CaptureNodeStore(@NotNull Builder builder, int root) {
+    int size = builder.mySize;
+    myModels = builder.myModels.toArray(new CaptureNodeModel[0]);
+    myParents = Arrays.copyOf(builder.myParents, size);
+    myModelIds = Arrays.copyOf(builder.myModelIds, size);
+    myStartGlobal = Arrays.copyOf(builder.myStartGlobal, size);
+    myEndGlobal = Arrays.copyOf(builder.myEndGlobal, size);
+    myStartThread = Arrays.copyOf(builder.myStartThread, size);
+    myEndThread = Arrays.copyOf(builder.myEndThread, size);
+    myTypes = new byte[size];
+    Arrays.fill(myTypes, toTypes(ClockType.GLOBAL, CaptureNode.FilterType.MATCH));
+
+    if (myParents[root] != NO_PARENT) {
+      throw new IllegalStateException("The root " + root + " has a parent");
+    }
+    // Lay the children of each node out contiguously, in the order they were added.
+    myChildOffsets = new int[size + 1];
+    for (int index = 0; index < size; index++) {
+      if (index == root) {
+        continue;
+      }
+      if (myParents[index] == NO_PARENT) {
+        throw new IllegalStateException("Node " + index + " isn't in the tree of node " + root);
+      }
+      myChildOffsets[myParents[index] + 1]++;
+    }
+    for (int index = 0; index < size; index++) {
+      myChildOffsets[index + 1] += myChildOffsets[index];
+    }
+    myChildren = new int[size - 1];
+    int[] next = Arrays.copyOf(myChildOffsets, size);
+    for (int index = 0; index < size; index++) {
+      if (index != root) {
+        myChildren[next[myParents[index]]++] = index;
+      }
+    }
+
+    // Call trees can be deep, so the depths are computed without recursion, reusing next as the stack.
+    myDepths = new int[size];
+    int[] stack = next;
+    int stackSize = 0;
+    int visited = 0;
+    stack[stackSize++] = root;
+    while (stackSize > 0) {
+      int index = stack[--stackSize];
+      visited++;
+      for (int i = myChildOffsets[index]; i < myChildOffsets[index + 1]; i++) {
+        myDepths[myChildren[i]] = myDepths[index] + 1;
+        stack[stackSize++] = myChildren[i];
+      }
+    }
+    if (visited != size) {
+      throw new IllegalStateException("The parents of the nodes form a cycle");
+    }
+  }
+
+  private static byte toTypes(@NotNull ClockType clockType, @NotNull CaptureNode.FilterType filterType) {
+    return (byte)(clockType.ordinal() | filterType.ordinal() << 4);
+  }
+
+  @NotNull
+  private CaptureNode getNode(int index) {
+    return new NodeView(index);
+  }
+
+  /**
+   * A {@link CaptureNode} reading and writing the node at {@link #myIndex} of the store.
+   */
+  private final class NodeView extends CaptureNode {
+    private final int myIndex;
+
+    private NodeView(int index) {
+      myIndex = index;
+    }
+
+    @NotNull
+    @Override
+    public List<CaptureNode> getChildren() {
+      return new ChildList(myChildOffsets[myIndex], getChildCount());
+    }
+
+    @NotNull
+    @Override
+    public CaptureNodeModel getData() {
+      return myModels[myModelIds[myIndex]];
+    }
+
+    @Override
+    public int getChildCount() {
+      return myChildOffsets[myIndex + 1] - myChildOffsets[myIndex];
+    }
+
+    @NotNull
+    @Override
+    public CaptureNode getChildAt(int index) {
+      if (index < 0 || index >= getChildCount()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + getChildCount());
+      }
+      return getNode(myChildren[myChildOffsets[myIndex] + index]);
+    }
+
+    @Nullable
+    @Override
+    public CaptureNode getParent() {
+      int parent = myParents[myIndex];
+      return parent == NO_PARENT ? null : getNode(parent);
+    }
+
+    @Override
+    public int getDepth() {
+      return myDepths[myIndex];
+    }
+
+    @Override
+    public void setDepth(int depth) {
+      myDepths[myIndex] = depth;
+    }
+
+    @Override
+    public void setStartGlobal(long startGlobal) {
+      myStartGlobal[myIndex] = startGlobal;
+    }
+
+    @Override
+    public long getStartGlobal() {
+      return myStartGlobal[myIndex];
+    }
+
+    @Override
+    public void setEndGlobal(long endGlobal) {
+      myEndGlobal[myIndex] = endGlobal;
+    }
+
+    @Override
+    public long getEndGlobal() {
+      return myEndGlobal[myIndex];
+    }
+
+    @Override
+    public void setStartThread(long startThread) {
+      myStartThread[myIndex] = startThread;
+    }
+
+    @Override
+    public long getStartThread() {
+      return myStartThread[myIndex];
+    }
+
+    @Override
+    public void setEndThread(long endThread) {
+      myEndThread[myIndex] = endThread;
+    }
+
+    @Override
+    public long getEndThread() {
+      return myEndThread[myIndex];
+    }
+
+    @NotNull
+    @Override
+    public ClockType getClockType() {
+      return CLOCK_TYPES[myTypes[myIndex] & 0xF];
+    }
+
+    @Override
+    public void setClockType(@NotNull ClockType clockType) {
+      myTypes[myIndex] = toTypes(clockType, getFilterType());
+    }
+
+    @NotNull
+    @Override
+    public FilterType getFilterType() {
+      return FILTER_TYPES[myTypes[myIndex] >> 4];
+    }
+
+    @Override
+    public void setFilterType(@NotNull FilterType type) {
+      myTypes[myIndex] = toTypes(getClockType(), type);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof NodeView)) {
+        return false;
+      }
+      NodeView other = (NodeView)obj;
+      return myIndex == other.myIndex && getStore() == other.getStore();
+    }
+
+    @Override
+    public int hashCode() {
+      return myIndex;
+    }
+
+    @NotNull
+    private CaptureNodeStore getStore() {
+      return CaptureNodeStore.this;
+    }
+  }
+
+  /**
+   * The children of a node, viewing the nodes at indexes [first, first + size) of {@link #myChildren}.
+   */
+  private final class ChildList extends AbstractList<CaptureNode> implements RandomAccess {
+    private final int myFirst;
+    private final int mySize;
+
+    private ChildList(int first, int size) {
+      myFirst = first;
+      mySize = size;
+    }
+
+    @Override
+    public CaptureNode get(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+      return getNode(myChildren[myFirst + index]);
+    }
+
+    @Override
+    public int size() {
+      return mySize;
+    }
+  }
+
+  /**
+   * Appends nodes to a {@link CaptureNodeStore}. Nodes are identified by the index returned by {@link #add(CaptureNodeModel, int)}, and
+   * the children of a node are ordered by index. Depths, clock types and filter types aren't stored by the builder: depths are computed
+   * from the parents by {@link #build(int)}, which also sets all the nodes to {@link ClockType#GLOBAL} and
+   * {@link CaptureNode.FilterType#MATCH}, like new {@link CaptureNode}s.
+   */
+  public static final class Builder {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    @NotNull private final Map<CaptureNodeModel, Integer> myModelIndexes = new IdentityHashMap<>();
+    @NotNull private final List<CaptureNodeModel> myModels = new ArrayList<>();
+
+    private int mySize;
+    @NotNull private int[] myParents = new int[INITIAL_CAPACITY];
+    @NotNull private int[] myModelIds = new int[INITIAL_CAPACITY];
+    @NotNull private long[] myStartGlobal = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myEndGlobal = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myStartThread = new long[INITIAL_CAPACITY];
+    @NotNull private long[] myEndThread = new long[INITIAL_CAPACITY];
+
+    /**
+     * Appends a node with all its timestamps set to 0.
+     *
+     * @param parent the index of the parent of the node, or {@link #NO_PARENT}
+     * @return the index of the node
+     */
+    public int add(@NotNull CaptureNodeModel model, int parent) {
+      if (parent != NO_PARENT) {
+        checkIndex(parent);
+      }
+      if (mySize == myParents.length) {
+        int capacity = mySize + (mySize >> 1);
+        myParents = Arrays.copyOf(myParents, capacity);
+        myModelIds = Arrays.copyOf(myModelIds, capacity);
+        myStartGlobal = Arrays.copyOf(myStartGlobal, capacity);
+        myEndGlobal = Arrays.copyOf(myEndGlobal, capacity);
+        myStartThread = Arrays.copyOf(myStartThread, capacity);
+        myEndThread = Arrays.copyOf(myEndThread, capacity);
+      }
+      Integer modelId = myModelIndexes.get(model);
+      if (modelId == null) {
+        modelId = myModels.size();
+        myModels.add(model);
+        myModelIndexes.put(model, modelId);
+      }
+      myParents[mySize] = parent;
+      myModelIds[mySize] = modelId;
+      return mySize++;
+    }
+
+    public int size() {
+      return mySize;
+    }
+
+    @NotNull
+    public CaptureNodeModel getData(int index) {
+      checkIndex(index);
+      return myModels.get(myModelIds[index]);
+    }
+
+    /**
+     * @return the index of the parent of the node, or {@link #NO_PARENT}.
+     */
+    public int getParent(int index) {
+      checkIndex(index);
+      return myParents[index];
+    }
+
+    /**
+     * Moves a node, with its descendants, under another node. E.g. when a trace exits from methods entered before it started.
+     */
+    public void setParent(int index, int parent) {
+      checkIndex(index);
+      if (parent != NO_PARENT) {
+        checkIndex(parent);
+      }
+      myParents[index] = parent;
+    }
+
+    public long getStartGlobal(int index) {
+      checkIndex(index);
+      return myStartGlobal[index];
+    }
+
+    public void setStartGlobal(int index, long startGlobal) {
+      checkIndex(index);
+      myStartGlobal[index] = startGlobal;
+    }
+
+    public long getEndGlobal(int index) {
+      checkIndex(index);
+      return myEndGlobal[index];
+    }
+
+    public void setEndGlobal(int index, long endGlobal) {
+      checkIndex(index);
+      myEndGlobal[index] = endGlobal;
+    }
+
+    public long getStartThread(int index) {
+      checkIndex(index);
+      return myStartThread[index];
+    }
+
+    public void setStartThread(int index, long startThread) {
+      checkIndex(index);
+      myStartThread[index] = startThread;
+    }
+
+    public long getEndThread(int index) {
+      checkIndex(index);
+      return myEndThread[index];
+    }
+
+    public void setEndThread(int index, long endThread) {
+      checkIndex(index);
+      myEndThread[index] = endThread;
+    }
+
+    /**
+     * Stores the nodes added so far, which must all be descendants of the given root. The builder shouldn't be used afterwards.
+     *
+     * @return the view of the root.
+     */
+    @NotNull
+    public CaptureNode build(int root) {
+      checkIndex(root);
+      return new CaptureNodeStore(this, root).getNode(root);
+    }
+
+    private void checkIndex(int index) {
+      if (index < 0 || index >= mySize) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + mySize);
+      }
+    }
+  }
+}
@@ -72,6 +72,12 @@ public class CpuCapture implements ConfigurableDurationData {
     myClockType = mainNode.getClockType();
   }
 
+  /**
+   * Releases the resources held by the capture outside of the heap, e.g. temp files. The capture must not be used afterwards.
+   */
+  public void dispose() {
+  }
+
   public int getMainThreadId() {
     return myMainThreadId;
   }
@@ -38,6 +38,8 @@ import java.nio.BufferUnderflowException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Supplier;
 
 /**
  * Manages the parsing of traces into {@link CpuCapture} objects and provide a way to retrieve them.
@@ -88,6 +90,12 @@ public class CpuCaptureParser {
    */
   private long myParsingStartTimeMs;
 
+  /**
+   * Fraction (from 0 to 1) of the current parsing that is done, or a negative value if the parser doesn't report its progress.
+   * Written by the parsing threads.
+   */
+  private volatile double myParsingProgress = -1;
+
   public CpuCaptureParser(@NotNull IdeProfilerServices services) {
     myServices = services;
     myCaptures = new HashMap<>();
@@ -115,6 +123,22 @@ public class CpuCaptureParser {
     return myTraceFiles.get(traceId);
   }
 
+  /**
+   * Disposes every capture parsed so far and forgets about them. Should be called after {@link #abortParsing()}, once the captures are no
+   * longer used.
+   */
+  public void disposeCaptures() {
+    myCaptures.forEach((id, capture) -> {
+      if (capture != null && capture.isDone() && !capture.isCompletedExceptionally()) {
+        CpuCapture parsed = capture.getNow(null);
+        if (parsed != null) {
+          parsed.dispose();
+        }
+      }
+    });
+    myCaptures.clear();
+  }
+
   /**
    * Abort every capture parsing that might still be in progress.
    */
@@ -135,6 +159,21 @@ public class CpuCaptureParser {
     return System.currentTimeMillis() - myParsingStartTimeMs;
   }
 
+  /**
+   * @return the fraction (from 0 to 1) of the current parsing that is done, or a negative value if it is unknown. Listeners of
+   * {@link CpuProfilerAspect#CAPTURE_ELAPSED_TIME} in {@link CpuProfilerStage} can poll it while {@link #isParsing()}.
+   */
+  public double getParsingProgress() {
+    return myParsingProgress;
+  }
+
+  @NotNull
+  private SimpleperfTraceParser createSimpleperfParser() {
+    SimpleperfTraceParser parser = new SimpleperfTraceParser();
+    parser.setProgressListener(progress -> myParsingProgress = progress);
+    return parser;
+  }
+
   /**
    * Updates {@link #myIsParsing} to false once the given {@link CompletableFuture<CpuCapture>} is done.
    */
@@ -152,6 +191,7 @@ public class CpuCaptureParser {
   @VisibleForTesting // In order to be accessible from com.android.tools.profilers.cpu.capturedetails
   public void updateParsingStateWhenStarting() {
     myParsingStartTimeMs = System.currentTimeMillis();
+    myParsingProgress = -1;
     myIsParsing = true;
     myAspect.changed(CpuProfilerAspect.CAPTURE_PARSING);
   }
@@ -198,12 +238,34 @@ public class CpuCaptureParser {
   }
 
   private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull File traceFile) {
-    CompletableFuture<CpuCapture> future =
-      CompletableFuture.supplyAsync(() -> tryParsingFileWithDifferentParsers(traceFile), myServices.getPoolExecutor());
+    CompletableFuture<CpuCapture> future = supplyCapture(() -> tryParsingFileWithDifferentParsers(traceFile));
     updateParsingStateWhenDone(future);
     return future;
   }
 
+  /**
+   * Same as {@link CompletableFuture#supplyAsync} on {@link IdeProfilerServices#getPoolExecutor()}, except that a capture parsed after its
+   * future was cancelled (see {@link #abortParsing()}) is disposed, since nobody can get it anymore.
+   */
+  @NotNull
+  private CompletableFuture<CpuCapture> supplyCapture(@NotNull Supplier<CpuCapture> parser) {
+    CompletableFuture<CpuCapture> future = new CompletableFuture<>();
+    myServices.getPoolExecutor().execute(() -> {
+      CpuCapture capture;
+      try {
+        capture = parser.get();
+      }
+      catch (Throwable t) {
+        future.completeExceptionally(new CompletionException(t));
+        return;
+      }
+      if (!future.complete(capture) && capture != null) {
+        capture.dispose();
+      }
+    });
+    return future;
+  }
+
   /**
    * Try parsing a given {@link File} into a {@link CpuCapture} using {@link ArtTraceParser}, then {@link SimpleperfTraceParser}
    * (if simpleperf flag is enabled), then {@link AtraceParser} (if atrace flag is enabled). Return null if the file can't be parsed by any
@@ -221,7 +283,7 @@ public class CpuCaptureParser {
 
     try {
       // Then, try parsing the file as a simpleperf trace.
-      SimpleperfTraceParser simpleperfParser = new SimpleperfTraceParser();
+      SimpleperfTraceParser simpleperfParser = createSimpleperfParser();
       return simpleperfParser.parse(traceFile, IMPORTED_TRACE_ID);
     }
     catch (Exception ignored) {
@@ -299,8 +361,7 @@ public class CpuCaptureParser {
 
   private CompletableFuture<CpuCapture> createCaptureFuture(@NotNull Common.Session session, int traceId, ByteString traceBytes,
                                                             CpuProfilerType profilerType) {
-    CompletableFuture<CpuCapture> future =
-      CompletableFuture.supplyAsync(() -> traceBytesToCapture(session, traceId, traceBytes, profilerType), myServices.getPoolExecutor());
+    CompletableFuture<CpuCapture> future = supplyCapture(() -> traceBytesToCapture(session, traceId, traceBytes, profilerType));
     updateParsingStateWhenDone(future);
     return future;
   }
@@ -320,10 +381,10 @@ public class CpuCaptureParser {
         parser = new ArtTraceParser();
       }
       else if (profilerType == CpuProfilerType.SIMPLEPERF) {
-        parser = new SimpleperfTraceParser();
+        parser = createSimpleperfParser();
       }
       else if (profilerType == CpuProfilerType.ATRACE) {
-        parser = new AtraceParser(session.getPid());
+        parser = new AtraceParser(session.getPid(), trace.length() >= AtraceParser.STREAMING_IMPORT_THRESHOLD_BYTES);
       }
       else {
         throw new IllegalStateException("Trace file cannot be parsed. Profiler type (ART, simpleperf, or atrace) needs to be set.");
@@ -472,6 +472,7 @@ public class CpuProfilerStage extends Stage implements CodeNavigator.Listener {
 
     // Asks the parser to interrupt any parsing in progress.
     myCaptureParser.abortParsing();
+    myCaptureParser.disposeCaptures();
     mySelectionModel.clearListeners();
     myUpdatableManager.releaseAll();
   }
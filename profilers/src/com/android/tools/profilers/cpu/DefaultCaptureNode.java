@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.android.tools.profilers.cpu.CaptureNode.FilterType.MATCH;
+
+/**
+ * A {@link CaptureNode} keeping its fields and children itself, used for trees built one node at a time.
+ */
+public class DefaultCaptureNode extends CaptureNode {
+
+  /**
+   * Start time with GLOBAL clock.
+   */
+  private long myStartGlobal;
+
+  /**
+   * End time with GLOBAL clock.
+   */
+  private long myEndGlobal;
+
+  /**
+   * Start time with THREAD clock.
+   */
+  private long myStartThread;
+
+  /**
+   * End time with THREAD clock.
+   */
+  private long myEndThread;
+
+  @NotNull
+  private final List<CaptureNode> myChildren;
+
+  @NotNull
+  private ClockType myClockType;
+
+  /**
+   * The parent of its child is set to it when it is added {@link #addChild(DefaultCaptureNode)}
+   */
+  private CaptureNode myParent;
+
+  /**
+   * see {@link FilterType}.
+   */
+  @NotNull
+  private FilterType myFilterType;
+
+  /**
+   * The shortest distance from the root.
+   */
+  private int myDepth;
+
+  @NotNull
+  private final CaptureNodeModel myData;
+
+  public DefaultCaptureNode(@NotNull CaptureNodeModel model) {
+    myChildren = new ArrayList<>();
+    myClockType = ClockType.GLOBAL;
+    myFilterType = MATCH;
+    myDepth = 0;
+    myData = model;
+  }
+
+  public void addChild(@NotNull DefaultCaptureNode node) {
+    myChildren.add(node);
+    node.myParent = this;
+  }
+
+  @NotNull
+  @Override
+  public List<CaptureNode> getChildren() {
+    return myChildren;
+  }
+
+  @NotNull
+  @Override
+  public CaptureNodeModel getData() {
+    return myData;
+  }
+
+  @Override
+  public int getChildCount() {
+    return myChildren.size();
+  }
+
+  /**
+   * Children can only be added by {@link #addChild(DefaultCaptureNode)}, so they are all {@link DefaultCaptureNode}s.
+   */
+  @NotNull
+  @Override
+  public DefaultCaptureNode getChildAt(int index) {
+    return (DefaultCaptureNode)myChildren.get(index);
+  }
+
+  @Nullable
+  @Override
+  public DefaultCaptureNode getFirstChild() {
+    return myChildren.isEmpty() ? null : getChildAt(0);
+  }
+
+  @Nullable
+  @Override
+  public DefaultCaptureNode getLastChild() {
+    return myChildren.isEmpty() ? null : getChildAt(myChildren.size() - 1);
+  }
+
+  @Nullable
+  @Override
+  public CaptureNode getParent() {
+    return myParent;
+  }
+
+  @Override
+  public int getDepth() {
+    return myDepth;
+  }
+
+  @Override
+  public void setStartGlobal(long startGlobal) {
+    myStartGlobal = startGlobal;
+  }
+
+  @Override
+  public long getStartGlobal() {
+    return myStartGlobal;
+  }
+
+  @Override
+  public void setEndGlobal(long endGlobal) {
+    myEndGlobal = endGlobal;
+  }
+
+  @Override
+  public long getEndGlobal() {
+    return myEndGlobal;
+  }
+
+  @Override
+  public void setStartThread(long startThread) {
+    myStartThread = startThread;
+  }
+
+  @Override
+  public long getStartThread() {
+    return myStartThread;
+  }
+
+  @Override
+  public void setEndThread(long endThread) {
+    myEndThread = endThread;
+  }
+
+  @Override
+  public long getEndThread() {
+    return myEndThread;
+  }
+
+  @Override
+  public void setClockType(@NotNull ClockType clockType) {
+    myClockType = clockType;
+  }
+
+  @NotNull
+  @Override
+  public ClockType getClockType() {
+    return myClockType;
+  }
+
+  @Override
+  public void setDepth(int depth) {
+    myDepth = depth;
+  }
+
+  @NotNull
+  @Override
+  public FilterType getFilterType() {
+    return myFilterType;
+  }
+
+  @Override
+  public void setFilterType(@NotNull FilterType type) {
+    myFilterType = type;
+  }
+}
@@ -22,6 +22,7 @@ import org.jetbrains.annotations.NotNull;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.RandomAccess;
 
 /**
  * Implementers of this class should implement {@link #inMemoryDataList}, which should return all the {@link DataSeries} that would be
@@ -38,7 +39,7 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     if (seriesDataList.isEmpty()) {
       return series;
     }
-    for (int i = 0; i < seriesDataList.size() - 1; i++) {
+    for (int i = getFirstCandidateIndex(seriesDataList, min); i < seriesDataList.size() - 1; i++) {
       SeriesData<T> data = seriesDataList.get(i);
       SeriesData<T> nextData = seriesDataList.get(i + 1);
       // If our series overlaps with the start of the range upto excluding the end. We add the series.
@@ -61,6 +62,29 @@ abstract class InMemoryDataSeries<T> implements DataSeries<T> {
     return series;
   }
 
+  /**
+   * @return the index of the last element whose successor starts after min, i.e. the first element {@link #getDataForXRange} can return.
+   * Large lists (e.g. the CPU tracks of an atrace capture) are binary searched, other lists are scanned from the start.
+   */
+  private static <T> int getFirstCandidateIndex(@NotNull List<SeriesData<T>> seriesDataList, long min) {
+    if (!(seriesDataList instanceof RandomAccess)) {
+      return 0;
+    }
+    int low = 0;
+    int high = seriesDataList.size() - 1;
+    // Find the first element starting after min, the element before it is the one overlapping min.
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (seriesDataList.get(mid).x > min) {
+        high = mid;
+      }
+      else {
+        low = mid + 1;
+      }
+    }
+    return Math.max(low - 1, 0);
+  }
+
   /**
    * Returns all the {@link SeriesData} stored in memory, to be filtered by range in {@link #getDataForXRange(Range)}
    */
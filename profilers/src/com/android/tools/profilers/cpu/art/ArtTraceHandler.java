@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.perflib.vmtrace.*;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureNodeStore;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
@@ -112,34 +113,33 @@ public class ArtTraceHandler implements VmTraceHandler {
         continue;
       }
 
-      CaptureNode topLevelCall = constructor.getTopLevel();
-      assert topLevelCall != null;
+      int topLevelCall = constructor.getTopLevel();
+      CaptureNodeStore.Builder nodes = constructor.getNodes();
       CpuThreadInfo info = new CpuThreadInfo(id, name, name.equals(MAIN_THREAD_NAME));
 
-      long topLevelGlobalStart = topLevelCall.getStartGlobal() + myStartTimeUs;
-      adjustNodesTimeAndDepth(topLevelCall, topLevelGlobalStart, 0);
+      long topLevelGlobalStart = nodes.getStartGlobal(topLevelCall) + myStartTimeUs;
+      adjustNodesTime(nodes, topLevelGlobalStart);
 
-      threadsGraph.put(info, topLevelCall);
+      threadsGraph.put(info, nodes.build(topLevelCall));
     }
+    // The graph is only built once, so the builders of the constructors can be collected.
+    myNodeConstructors.clear();
 
     return threadsGraph;
   }
 
   /**
-   * Adjusts global and thread time from relative to absolute time and the depth of nodes.
+   * Adjusts global and thread time of the nodes from relative to absolute time.
    */
-  private void adjustNodesTimeAndDepth(CaptureNode node, long topLevelStart, int depth) {
-    node.setStartGlobal(myStartTimeUs + node.getStartGlobal());
-    node.setEndGlobal(myStartTimeUs + node.getEndGlobal());
-    node.setDepth(depth);
-    // Timestamps of ClockType.THREAD are stored in a different way: the first event on the thread is considered as the base
-    // and the subsequent events timestamps are stored in 32 bits relative to that base. We sum this timestamps to topLevelStart,
-    // so the first entry timestamp (represented as 0) is aligned (in wall clock time) with the top-level call start timestamp.
-    node.setStartThread(topLevelStart + node.getStartThread());
-    node.setEndThread(topLevelStart + node.getEndThread());
-
-    for (CaptureNode callee : node.getChildren()) {
-      adjustNodesTimeAndDepth(callee, topLevelStart, depth + 1);
+  private void adjustNodesTime(@NotNull CaptureNodeStore.Builder nodes, long topLevelStart) {
+    for (int node = 0; node < nodes.size(); node++) {
+      nodes.setStartGlobal(node, myStartTimeUs + nodes.getStartGlobal(node));
+      nodes.setEndGlobal(node, myStartTimeUs + nodes.getEndGlobal(node));
+      // Timestamps of ClockType.THREAD are stored in a different way: the first event on the thread is considered as the base
+      // and the subsequent events timestamps are stored in 32 bits relative to that base. We sum this timestamps to topLevelStart,
+      // so the first entry timestamp (represented as 0) is aligned (in wall clock time) with the top-level call start timestamp.
+      nodes.setStartThread(node, topLevelStart + nodes.getStartThread(node));
+      nodes.setEndThread(node, topLevelStart + nodes.getEndThread(node));
     }
   }
 
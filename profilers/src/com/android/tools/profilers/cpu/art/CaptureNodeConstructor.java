@@ -16,16 +16,17 @@
 package com.android.tools.profilers.cpu.art;
 
 import com.android.tools.perflib.vmtrace.TraceAction;
-import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureNodeStore;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
-import org.jetbrains.annotations.Nullable;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
 
-import java.util.ArrayList;
-import java.util.List;
+import static com.android.tools.profilers.cpu.CaptureNodeStore.NO_PARENT;
 
 /**
  * {@link CaptureNodeConstructor} helps in constructing per thread call stacks from a sequence of
- * trace events (method entry/exit events).
+ * trace events (method entry/exit events). The nodes are appended to a {@link CaptureNodeStore.Builder}
+ * as the events are read, and identified by their index in it.
  */
 class CaptureNodeConstructor {
   /**
@@ -33,21 +34,28 @@ class CaptureNodeConstructor {
    */
   private final CaptureNodeModel myTopLevelNodeModel;
 
+  private final CaptureNodeStore.Builder myNodes = new CaptureNodeStore.Builder();
+
   /**
    * List of nodes currently assumed to be at stack depth 0 (called from the top level)
    */
-  private final List<CaptureNode> myTopLevelNodes = new ArrayList<>();
+  private final TIntArrayList myTopLevelNodes = new TIntArrayList();
+
+  /**
+   * The current node, i.e it is updated when we enter or exit a method, or {@link CaptureNodeStore#NO_PARENT} when no method is
+   * being executed.
+   */
+  private int myCurrentNode = NO_PARENT;
 
   /**
-   * The current node, i.e it is updated when we enter or exit a method.
+   * The last node we exited from, or {@link CaptureNodeStore#NO_PARENT}. If it's a child of the current node, it's its last one.
    */
-  @Nullable
-  private CaptureNode myCurrentNode;
+  private int myLastExitedNode = NO_PARENT;
 
   /**
    * The single top level node under which the entire constructed call stack nests.
    */
-  private CaptureNode myTopLevelNode;
+  private int myTopLevelNode = NO_PARENT;
 
   CaptureNodeConstructor(CaptureNodeModel captureNodeModel) {
     myTopLevelNodeModel = captureNodeModel;
@@ -62,46 +70,43 @@ class CaptureNodeConstructor {
   }
 
   private void enterMethod(CaptureNodeModel captureNodeModel, int threadTime, int globalTime) {
-    CaptureNode node = new CaptureNode(captureNodeModel);
-    node.setStartGlobal(globalTime);
-    node.setStartThread(threadTime);
+    int node = myNodes.add(captureNodeModel, myCurrentNode);
+    myNodes.setStartGlobal(node, globalTime);
+    myNodes.setStartThread(node, threadTime);
 
-    if (myCurrentNode == null) {
+    if (myCurrentNode == NO_PARENT) {
       myTopLevelNodes.add(node);
-    } else {
-      myCurrentNode.addChild(node);
     }
 
     myCurrentNode = node;
   }
 
   private void exitMethod(CaptureNodeModel captureNodeModel, long threadTime, long globalTime) {
-    if (myCurrentNode != null) {
-      if (myCurrentNode.getData() != captureNodeModel) {
+    if (myCurrentNode != NO_PARENT) {
+      if (myNodes.getData(myCurrentNode) != captureNodeModel) {
         String msg = String
           .format("Error during call stack reconstruction. Attempt to exit from method %s while in method %s",
-                  myCurrentNode.getData().getId(), captureNodeModel.getId());
+                  myNodes.getData(myCurrentNode).getId(), captureNodeModel.getId());
         throw new RuntimeException(msg);
       }
 
-      myCurrentNode.setEndGlobal(globalTime);
-      myCurrentNode.setEndThread(threadTime);
-      myCurrentNode = myCurrentNode.getParent();
+      myNodes.setEndGlobal(myCurrentNode, globalTime);
+      myNodes.setEndThread(myCurrentNode, threadTime);
+      myLastExitedNode = myCurrentNode;
+      myCurrentNode = myNodes.getParent(myCurrentNode);
     } else {
       // We are exiting out of a method that was entered into before tracing was started.
       // In such a case, create this method
-      CaptureNode node = new CaptureNode(captureNodeModel);
+      int node = myNodes.add(captureNodeModel, NO_PARENT);
       // All the previous nodes at the top level are now assumed to have been called from
       // this method. So mark this method as having called all of those methods, and reset
       // the top level to only include this method
-      for (CaptureNode topLevel : myTopLevelNodes) {
-        node.addChild(topLevel);
+      for (int i = 0; i < myTopLevelNodes.size(); i++) {
+        myNodes.setParent(myTopLevelNodes.get(i), node);
       }
-      myTopLevelNodes.clear();
-      myTopLevelNodes.add(node);
 
-      node.setEndGlobal(globalTime);
-      node.setEndThread(threadTime);
+      myNodes.setEndGlobal(node, globalTime);
+      myNodes.setEndThread(node, threadTime);
 
       // We don't know this method's entry times, so we try to guess:
       // If it has at least 1 child, then we know it must've been at least before that child's
@@ -110,14 +115,17 @@ class CaptureNodeConstructor {
       long entryThreadTime = threadTime - 1;
       long entryGlobalTime = globalTime - 1;
 
-      if (node.getChildCount() > 0) {
-        CaptureNode first = node.getFirstChild();
-        assert first != null;
-        entryThreadTime = Math.max(first.getStartThread() - 1, 0);
-        entryGlobalTime = Math.max(first.getStartGlobal() - 1, 0);
+      if (myTopLevelNodes.size() > 0) {
+        int first = myTopLevelNodes.get(0);
+        entryThreadTime = Math.max(myNodes.getStartThread(first) - 1, 0);
+        entryGlobalTime = Math.max(myNodes.getStartGlobal(first) - 1, 0);
       }
-      node.setStartGlobal(entryGlobalTime);
-      node.setStartThread(entryThreadTime);
+      myNodes.setStartGlobal(node, entryGlobalTime);
+      myNodes.setStartThread(node, entryThreadTime);
+
+      myTopLevelNodes.clear();
+      myTopLevelNodes.add(node);
+      myLastExitedNode = node;
     }
   }
 
@@ -126,52 +134,62 @@ class CaptureNodeConstructor {
    * @param captureNodeModel model of the method from which we are exiting
    * @param entryThreadTime method's thread entry time
    * @param entryGlobalTime method's global entry time
-   * @param children from the method that we are exiting
+   * @param lastChild last child of the method that we are exiting, or {@link CaptureNodeStore#NO_PARENT}
    */
-  private void exitMethod(CaptureNodeModel captureNodeModel, long entryThreadTime, long entryGlobalTime,
-                          @Nullable List<CaptureNode> children) {
+  private void exitMethod(CaptureNodeModel captureNodeModel, long entryThreadTime, long entryGlobalTime, int lastChild) {
     long lastExitThreadTime;
     long lastExitGlobalTime;
 
-    if (children == null || children.isEmpty()) {
+    if (lastChild == NO_PARENT) {
       // if the call doesn't have any children, we assume that it just ran for 1us.
       lastExitThreadTime = entryThreadTime + 1;
       lastExitGlobalTime = entryGlobalTime + 1;
     } else {
       // if it did call other methods, we assume that this call exited 1us after
       // its last child exited
-      CaptureNode last = children.get(children.size() - 1);
-      lastExitThreadTime = last.getEndThread() + 1;
-      lastExitGlobalTime = last.getEndGlobal() + 1;
+      lastExitThreadTime = myNodes.getEndThread(lastChild) + 1;
+      lastExitGlobalTime = myNodes.getEndGlobal(lastChild) + 1;
     }
 
     exitMethod(captureNodeModel, lastExitThreadTime, lastExitGlobalTime);
   }
 
   private void fixUpCallStacks() {
-    if (myTopLevelNode != null) {
+    if (myTopLevelNode != NO_PARENT) {
       return;
     }
 
     // If there are any methods still on the call stack, then the trace doesn't have
     // exit trace action for them, so clean those up
     //noinspection WhileLoopSpinsOnField
-    while (myCurrentNode != null) {
-      exitMethod(myCurrentNode.getData(), myCurrentNode.getStartThread(),
-                 myCurrentNode.getStartGlobal(), myCurrentNode.getChildren());
+    while (myCurrentNode != NO_PARENT) {
+      int lastChild =
+        myLastExitedNode != NO_PARENT && myNodes.getParent(myLastExitedNode) == myCurrentNode ? myLastExitedNode : NO_PARENT;
+      exitMethod(myNodes.getData(myCurrentNode), myNodes.getStartThread(myCurrentNode),
+                 myNodes.getStartGlobal(myCurrentNode), lastChild);
     }
 
     // Now that we have parsed the entire call stack, let us move all of it under a single
     // top level call.
-    exitMethod(myTopLevelNodeModel, 0, 0, myTopLevelNodes);
+    exitMethod(myTopLevelNodeModel, 0, 0, myTopLevelNodes.size() > 0 ? myTopLevelNodes.get(myTopLevelNodes.size() - 1) : NO_PARENT);
 
-    // Build calls from their respective builders
     // Now that we've added the top level call, there should be only 1 top level call
     assert myTopLevelNodes.size() == 1;
     myTopLevelNode = myTopLevelNodes.get(0);
   }
 
-  public CaptureNode getTopLevel() {
+  /**
+   * @return the nodes of the call stacks.
+   */
+  @NotNull
+  public CaptureNodeStore.Builder getNodes() {
+    return myNodes;
+  }
+
+  /**
+   * @return the index of the single top level node in {@link #getNodes()}.
+   */
+  public int getTopLevel() {
     fixUpCallStacks();
     return myTopLevelNode;
   }
@@ -33,6 +33,11 @@ public class AtraceCpuCapture extends CpuCapture {
     myParser = parser;
   }
 
+  @Override
+  public void dispose() {
+    myParser.dispose();
+  }
+
   /**
    * @param threadId Thread Id of thread requesting states for. If thread id is not found an empty list is returned.
    * @return Thread state transitions for the given thread. The thread states are computed from the
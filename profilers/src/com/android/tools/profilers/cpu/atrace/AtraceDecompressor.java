@@ -225,10 +225,7 @@ public class AtraceDecompressor implements BufferProducer {
     try {
       String line = getNextLine();
       if (line != null) {
-        // Due to a bug in StreamingLineReader we need to truncate all lines to 1023 characters including the \n appended to the end.
-        // For more details see (b/77846431)
-        byte[] data = String.format("%s\n", line.substring(0, Math.min(1022, line.length()))).getBytes();
-        return new DataSlice(data, 0, data.length);
+        return toDataSlice(line);
       }
     }
     catch (IOException | DataFormatException ex) {
@@ -236,4 +233,15 @@ public class AtraceDecompressor implements BufferProducer {
     }
     return null;
   }
+
+  /**
+   * @return the line in the form expected by the trebuchet importer.
+   */
+  @NotNull
+  static DataSlice toDataSlice(@NotNull String line) {
+    // Due to a bug in StreamingLineReader we need to truncate all lines to 1023 characters including the \n appended to the end.
+    // For more details see (b/77846431)
+    byte[] data = String.format("%s\n", line.substring(0, Math.min(1022, line.length()))).getBytes();
+    return new DataSlice(data, 0, data.length);
+  }
 }
@@ -15,10 +15,12 @@
  */
 package com.android.tools.profilers.cpu.atrace;
 
+import com.android.annotations.VisibleForTesting;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.SeriesData;
 import com.android.tools.profilers.cpu.*;
 import com.android.tools.profilers.cpu.nodemodel.AtraceNodeModel;
+import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
 import trebuchet.model.*;
 import trebuchet.model.base.SliceGroup;
@@ -28,7 +30,6 @@ import trebuchet.util.PrintlnImportFeedback;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 /**
@@ -48,6 +49,10 @@ public class AtraceParser implements TraceParser {
    * The platform RenderThread is hard coded to have this name.
    */
   public static final String RENDER_THREAD_NAME = "RenderThread";
+  /**
+   * Size of a (compressed) capture file from which {@link #AtraceParser(int, boolean)} should be used with a streaming import.
+   */
+  public static final long STREAMING_IMPORT_THRESHOLD_BYTES = 32 * 1024 * 1024;
   /**
    * Map of CpuThreadInfo to capture nodes. The thread info in this map does not contain process information.
    */
@@ -70,9 +75,21 @@ public class AtraceParser implements TraceParser {
    * List of cpu utilization values for a specific process. The values range from 0 -> 100 in increments of CPU count.
    * The value needs to be a long as that is what {@link com.android.tools.adtui.model.RangedContinuousSeries} expects.
    */
-  private final List<SeriesData<Long>> myCpuUtilizationSeries;
+  private List<SeriesData<Long>> myCpuUtilizationSeries;
 
   private int myProcessId;
+  /**
+   * If true, the model only contains the selected process and the CPU scheduling data of all the processes is kept
+   * in {@link #myCpuScheduling} instead.
+   */
+  private final boolean myStreamingImport;
+  private SpilledCpuScheduling myCpuScheduling;
+  /**
+   * The processes of a capture opened with {@link #AtraceParser(File)} for a streamed import, listed without importing the capture.
+   */
+  private List<AtraceProcessFilter.ProcessSummary> myProcessSummaries;
+  private double myBeginTimestampSeconds;
+  private double myEndTimestampSeconds;
   /**
    * The device boot time captured at the beginning of the trace.
    */
@@ -87,10 +104,24 @@ public class AtraceParser implements TraceParser {
    * This constructor parses the atrace model from the file and should be used for getting the list
    * of processes from the capture. After calling this construct the contract expects {@link #setSelectProcess}
    * to be called before parse.
+   * <p>
+   * Captures larger than {@link #STREAMING_IMPORT_THRESHOLD_BYTES} are imported with a streaming import, see
+   * {@link #AtraceParser(int, boolean)}: the processes are listed by scanning the file, and the model of the selected process
+   * is only imported by {@link #parse}.
    */
   public AtraceParser(@NotNull File file) throws IOException {
-    this(INVALID_PROCESS);
-    parseModelIfNeeded(file);
+    this(file, file.length() >= STREAMING_IMPORT_THRESHOLD_BYTES);
+  }
+
+  @VisibleForTesting
+  AtraceParser(@NotNull File file, boolean streamingImport) throws IOException {
+    this(INVALID_PROCESS, streamingImport);
+    if (streamingImport) {
+      myProcessSummaries = AtraceProcessFilter.listProcesses(new AtraceDecompressor(file));
+    }
+    else {
+      parseModelIfNeeded(file);
+    }
   }
 
   /**
@@ -98,23 +129,39 @@ public class AtraceParser implements TraceParser {
    * and expects parse with the proper file to be called.
    */
   public AtraceParser(int processId) {
+    this(processId, false);
+  }
+
+  /**
+   * @param streamingImport if true, the capture is imported with bounded memory: only the data of the given process is imported in the
+   *                        model while the file is decompressed, and the scheduling data of the other processes is spilled to disk. The
+   *                        peak memory then depends on the size of the process data rather than on the size of the capture.
+   *                        Recommended for captures larger than {@link #STREAMING_IMPORT_THRESHOLD_BYTES}.
+   */
+  public AtraceParser(int processId, boolean streamingImport) {
     myProcessId = processId;
+    myStreamingImport = streamingImport;
     myCaptureTreeNodes = new HashMap<>();
     myThreadStateData = new HashMap<>();
     myCpuSchedulingToCpuData = new HashMap<>();
     myCpuUtilizationSeries = new LinkedList<>();
   }
 
+  private static Logger getLogger() {
+    return Logger.getInstance(AtraceParser.class);
+  }
+
   @Override
   public CpuCapture parse(File file, int traceId) throws IOException {
     parseModelIfNeeded(file);
-    double startTimestampUs = convertToUserTimeUs(myModel.getBeginTimestamp());
-    double endTimestampUs = convertToUserTimeUs(myModel.getEndTimestamp());
+    double startTimestampUs = convertToUserTimeUs(myBeginTimestampSeconds);
+    double endTimestampUs = convertToUserTimeUs(myEndTimestampSeconds);
     myRange = new Range(startTimestampUs, endTimestampUs);
     myProcessModel = myModel.getProcesses().get(myProcessId);
     // TODO (b/69910215): Handle case capture does not contain process we are looking for.
     // Throw an exception instead of assert as the caller expects we will throw an exception if we failed to parse.
     if (myProcessModel == null) {
+      dispose();
       throw new IllegalArgumentException(String.format("A process with the id %s was not found while parsing the capture.", myProcessId));
     }
     buildCaptureTreeNodes();
@@ -131,17 +178,48 @@ public class AtraceParser implements TraceParser {
     if (myModel == null) {
       AtraceDecompressor reader = new AtraceDecompressor(file);
       ImportTask task = new ImportTask(new PrintlnImportFeedback());
-      myModel = task.importBuffer(reader);
+      if (myStreamingImport && myProcessId != INVALID_PROCESS) {
+        myCpuScheduling = new SpilledCpuScheduling();
+        AtraceProcessFilter filter = new AtraceProcessFilter(reader, myProcessId, myCpuScheduling);
+        try {
+          myModel = task.importBuffer(filter);
+          // The model only saw the lines of our process, so the capture range comes from the filter.
+          myBeginTimestampSeconds = filter.getFirstTimestampSeconds();
+          myEndTimestampSeconds = filter.getLastTimestampSeconds();
+          myCpuScheduling.finish(myEndTimestampSeconds);
+        }
+        catch (IOException | RuntimeException e) {
+          dispose();
+          throw e;
+        }
+        getLogger().info(String.format("Streamed atrace import kept %d of %d lines for process %d",
+                                       filter.getForwardedLineCount(), filter.getLineCount(), myProcessId));
+      }
+      else {
+        myModel = task.importBuffer(reader);
+        myBeginTimestampSeconds = myModel.getBeginTimestamp();
+        myEndTimestampSeconds = myModel.getEndTimestamp();
+      }
       // We check if we have a parent timestamp. If not this could be from an imported trace.
       // In the case it is 0, we use the first timestamp of our capture as a reference point.
       if (Double.compare(myModel.getParentTimestamp(),0.0) == 0) {
-        myMonoTimeAtBeginningSeconds = myModel.getBeginTimestamp();
+        myMonoTimeAtBeginningSeconds = myBeginTimestampSeconds;
       } else {
-        myMonoTimeAtBeginningSeconds = myModel.getParentTimestamp() - (myModel.getParentTimestampBootTime() - myModel.getBeginTimestamp());
+        myMonoTimeAtBeginningSeconds = myModel.getParentTimestamp() - (myModel.getParentTimestampBootTime() - myBeginTimestampSeconds);
       }
     }
   }
 
+  /**
+   * Deletes the files the CPU scheduling data of a streamed import was spilled to. The capture must not be used afterwards.
+   */
+  void dispose() {
+    if (myCpuScheduling != null) {
+      myCpuScheduling.dispose();
+      myCpuScheduling = null;
+    }
+  }
+
   /**
    * Returns true if there is potentially missing data. While it is never
    * a guarantee if data is missing or not we make a best guess.
@@ -163,14 +241,19 @@ public class AtraceParser implements TraceParser {
    */
   @NotNull
   public CpuThreadSliceInfo[] getProcessList(String hint) {
-    assert myModel != null;
-    CpuThreadSliceInfo[] processList = new CpuThreadSliceInfo[myModel.getProcesses().size()];
-    Stream<ProcessModel> processStream = myModel.getProcesses().values().stream();
-    int index = 0;
+    assert myModel != null || myProcessSummaries != null;
+    Stream<AtraceProcessFilter.ProcessSummary> processStream;
+    if (myProcessSummaries != null) {
+      processStream = myProcessSummaries.stream();
+    }
+    else {
+      processStream = myModel.getProcesses().values().stream().map(
+        process -> new AtraceProcessFilter.ProcessSummary(process.getId(), getMainThreadForProcess(process), process.getThreads().size()));
+    }
     String hintLower = hint.toLowerCase(Locale.getDefault());
     processStream = processStream.sorted((a, b) -> {
-      String aNameLower = getMainThreadForProcess(a).toLowerCase(Locale.getDefault());
-      String bNameLower = getMainThreadForProcess(b).toLowerCase(Locale.getDefault());
+      String aNameLower = a.getName().toLowerCase(Locale.getDefault());
+      String bNameLower = b.getName().toLowerCase(Locale.getDefault());
 
       // If either the left or right names overlap with our hint we want to bubble those elements
       // to the top.
@@ -200,7 +283,7 @@ public class AtraceParser implements TraceParser {
       // If our project names don't match either our hint, or our <> name then we sort the elements within
       // by count of threads.
       // Note: This also applies if we have multiple projects that match our hint, or don't have a name.
-      int threadsGreater = b.getThreads().size() - a.getThreads().size();
+      int threadsGreater = b.getThreadCount() - a.getThreadCount();
       if (threadsGreater != 0) {
         return threadsGreater;
       }
@@ -212,17 +295,13 @@ public class AtraceParser implements TraceParser {
       }
       return name;
     });
-    List<ProcessModel> processes = processStream.collect(Collectors.toList());
-    for (ProcessModel process : processes) {
-      String name = getMainThreadForProcess(process);
-      processList[index++] = new CpuThreadSliceInfo(process.getId(), name, process.getId(), name);
-    }
-    return processList;
+    return processStream.map(process -> new CpuThreadSliceInfo(process.getId(), process.getName(), process.getId(), process.getName()))
+      .toArray(CpuThreadSliceInfo[]::new);
   }
 
   public void setSelectProcess(@NotNull CpuThreadSliceInfo process) {
-    assert myModel != null;
-    assert myModel.getProcesses().containsKey(process.getProcessId());
+    assert myModel != null || myProcessSummaries != null;
+    assert myModel == null || myModel.getProcesses().containsKey(process.getProcessId());
     myProcessId = process.getProcessId();
   }
 
@@ -305,12 +384,12 @@ public class AtraceParser implements TraceParser {
     for (ThreadModel thread : myProcessModel.getThreads()) {
       CpuThreadSliceInfo threadInfo =
         new CpuThreadSliceInfo(thread.getId(), thread.getName(), thread.getProcess().getId(), thread.getProcess().getName());
-      CaptureNode root = new CaptureNode(new AtraceNodeModel(thread.getName()));
+      DefaultCaptureNode root = new DefaultCaptureNode(new AtraceNodeModel(thread.getName()));
       root.setStartGlobal((long)range.getMin());
       root.setEndGlobal((long)range.getMax());
       myCaptureTreeNodes.put(threadInfo, root);
       for (SliceGroup slice : thread.getSlices()) {
-        CaptureNode node = populateCaptureNode(slice, 1);
+        DefaultCaptureNode node = populateCaptureNode(slice, 1);
         root.addChild(node);
       }
     }
@@ -323,8 +402,8 @@ public class AtraceParser implements TraceParser {
    * @param depth to current node. Depth starts at 0
    * @return The {@link CaptureNode} that mirrors the {@link SliceGroup} passed in.
    */
-  private CaptureNode populateCaptureNode(SliceGroup slice, int depth) {
-    CaptureNode node = new CaptureNode(new AtraceNodeModel(slice.getName()));
+  private DefaultCaptureNode populateCaptureNode(SliceGroup slice, int depth) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new AtraceNodeModel(slice.getName()));
     node.setStartGlobal(convertToUserTimeUs(slice.getStartTime()));
     node.setEndGlobal(convertToUserTimeUs(slice.getEndTime()));
     node.setStartThread(convertToUserTimeUs(slice.getStartTime()));
@@ -341,14 +420,14 @@ public class AtraceParser implements TraceParser {
    */
   private void buildThreadStateData() {
     for (ThreadModel thread : myProcessModel.getThreads()) {
-      List<SeriesData<CpuProfilerStage.ThreadState>> states = new ArrayList<>();
+      ThreadStateSeries states = new ThreadStateSeries();
       myThreadStateData.put(thread.getId(), states);
       CpuProfilerStage.ThreadState lastState = CpuProfilerStage.ThreadState.UNKNOWN;
       for (SchedSlice slice : thread.getSchedSlices()) {
         long startTimeUs = convertToUserTimeUs(slice.getStartTime());
         CpuProfilerStage.ThreadState state = getState(slice);
         if (state != lastState) {
-          states.add(new SeriesData<>(startTimeUs, state));
+          states.add(startTimeUs, state);
           lastState = state;
         }
       }
@@ -359,8 +438,13 @@ public class AtraceParser implements TraceParser {
    * Builds a map of CPU ids to a list of {@link CpuThreadInfo} series. While building the CPU map it also builds a CPU utilization series.
    */
   private void buildCpuStateData() {
+    if (myCpuScheduling != null) {
+      myCpuSchedulingToCpuData.putAll(myCpuScheduling.getCpuSliceSeries(this::convertToUserTimeUs));
+      myCpuUtilizationSeries = myCpuScheduling.buildUtilizationSeries(myProcessId, myBeginTimestampSeconds, this::convertToUserTimeUs);
+      return;
+    }
     // Add initial value to start of series for proper visualization.
-    myCpuUtilizationSeries.add(new SeriesData<>(convertToUserTimeUs(myModel.getBeginTimestamp()), 0L));
+    myCpuUtilizationSeries.add(new SeriesData<>(convertToUserTimeUs(myBeginTimestampSeconds), 0L));
     for (CpuModel cpu : myModel.getCpus()) {
       ListIterator<SeriesData<Long>> cpuSeriesIt = myCpuUtilizationSeries.listIterator();
       List<SeriesData<CpuThreadSliceInfo>> processList = new ArrayList<>();
@@ -370,7 +454,8 @@ public class AtraceParser implements TraceParser {
         long sliceEndTimeUs = convertToUserTimeUs(slice.getEndTime());
         long durationUs = sliceEndTimeUs - sliceStartTimeUs;
         if (slice.getStartTime() > lastSlice.getEndTime()) {
-          processList.add(new SeriesData<>(sliceEndTimeUs, CpuThreadSliceInfo.NULL_THREAD));
+          // The CPU is idle from the end of the last slice, which keeps the series sorted.
+          processList.add(new SeriesData<>(convertToUserTimeUs(lastSlice.getEndTime()), CpuThreadSliceInfo.NULL_THREAD));
         }
 
         processList.add(
@@ -385,7 +470,7 @@ public class AtraceParser implements TraceParser {
       }
 
       // We are done with this Cpu so we add a null process at the end to properly render this segment.
-      processList.add(new SeriesData<>(convertToUserTimeUs(myModel.getEndTimestamp()), CpuThreadSliceInfo.NULL_THREAD));
+      processList.add(new SeriesData<>(convertToUserTimeUs(myEndTimestampSeconds), CpuThreadSliceInfo.NULL_THREAD));
       myCpuSchedulingToCpuData.put(cpu.getId(), processList);
     }
 
@@ -502,7 +587,7 @@ public class AtraceParser implements TraceParser {
   }
 
   private long convertToUserTimeUs(double timestampInSeconds) {
-    return (long)secondsToUs((timestampInSeconds - myModel.getBeginTimestamp()) + myMonoTimeAtBeginningSeconds);
+    return (long)secondsToUs((timestampInSeconds - myBeginTimestampSeconds) + myMonoTimeAtBeginningSeconds);
   }
 
   /**
@@ -0,0 +1,386 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.intellij.openapi.diagnostic.Logger;
+import gnu.trove.TIntHashSet;
+import gnu.trove.TIntObjectHashMap;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import trebuchet.io.BufferProducer;
+import trebuchet.io.DataSlice;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Sits between the {@link AtraceDecompressor} and the trebuchet importer of a streamed import, so that the trebuchet model only ever
+ * holds the selected process. Each decompressed line is scanned once:
+ * <ul>
+ *   <li>sched_switch lines of every process are turned into CPU slices and spilled to disk through {@link SpilledCpuScheduling};</li>
+ *   <li>only lines written by the selected process, scheduling events of its threads and clock sync markers are passed on to
+ *   trebuchet.</li>
+ * </ul>
+ * Lines are expected in the ftrace format with the TGID column, "TASK-PID (TGID) [CPU] FLAGS TIMESTAMP: EVENT: ARGS". Lines that
+ * don't follow it (including every line of traces without the TGID column) are passed on unfiltered.
+ *
+ * A thread is only known to be part of the process once it wrote a line itself, so scheduling events targeting one of its threads
+ * before that are dropped.
+ *
+ * {@link #listProcesses} uses the same scanning to list the processes of a capture without importing it, so that a process can be
+ * selected before a streamed import.
+ */
+final class AtraceProcessFilter implements BufferProducer {
+  private static final String SCHED_SWITCH = "sched_switch";
+  private static final String CLOCK_SYNC = "trace_event_clock_sync";
+
+  @NotNull private final AtraceDecompressor myReader;
+  private final int myProcessId;
+  /** Null if the filter only lists the processes, in which case no line is passed on. */
+  @Nullable private final SpilledCpuScheduling myScheduling;
+  private final TIntHashSet myProcessThreads = new TIntHashSet();
+  // Threads of the processes and names of the threads, when listing the processes.
+  private final TIntObjectHashMap<TIntHashSet> myThreadsByProcess = new TIntObjectHashMap<>();
+  private final TIntObjectHashMap<String> myThreadNames = new TIntObjectHashMap<>();
+
+  private double myFirstTimestampSeconds = Double.NaN;
+  private double myLastTimestampSeconds = Double.NaN;
+  private long myLineCount;
+  private long myForwardedLineCount;
+
+  // Fields of the line being scanned.
+  private int myThreadId;
+  private int myThreadProcessId;
+  private int myCpu;
+  @NotNull private String myTaskName = "";
+  @NotNull private String myEvent = "";
+  private int myArgsStart;
+
+  AtraceProcessFilter(@NotNull AtraceDecompressor reader, int processId, @NotNull SpilledCpuScheduling scheduling) {
+    myReader = reader;
+    myProcessId = processId;
+    myScheduling = scheduling;
+  }
+
+  private AtraceProcessFilter(@NotNull AtraceDecompressor reader) {
+    myReader = reader;
+    myProcessId = AtraceParser.INVALID_PROCESS;
+    myScheduling = null;
+  }
+
+  private static Logger getLogger() {
+    return Logger.getInstance(AtraceProcessFilter.class);
+  }
+
+  /**
+   * Reads the whole capture and returns the processes of the threads that wrote a line, keeping only their names and thread counts.
+   */
+  @NotNull
+  static List<ProcessSummary> listProcesses(@NotNull AtraceDecompressor reader) {
+    AtraceProcessFilter filter = new AtraceProcessFilter(reader);
+    try {
+      // Nothing is passed on when listing, so this reads the capture to the end.
+      filter.next();
+    }
+    finally {
+      filter.close();
+    }
+    List<ProcessSummary> processes = new ArrayList<>(filter.myThreadsByProcess.size());
+    for (int processId : filter.myThreadsByProcess.keys()) {
+      // The process is named after its main thread. Processes without a known main thread are shown as "<pid>" like in trebuchet.
+      String name = filter.myThreadNames.get(processId);
+      processes.add(new ProcessSummary(processId, name == null ? "<" + processId + ">" : name,
+                                       filter.myThreadsByProcess.get(processId).size()));
+    }
+    return processes;
+  }
+
+  /**
+   * @return the timestamp of the first event of the whole trace, not only of the lines forwarded to trebuchet.
+   */
+  double getFirstTimestampSeconds() {
+    return myFirstTimestampSeconds;
+  }
+
+  /**
+   * @return the timestamp of the last event of the whole trace, not only of the lines forwarded to trebuchet.
+   */
+  double getLastTimestampSeconds() {
+    return myLastTimestampSeconds;
+  }
+
+  long getLineCount() {
+    return myLineCount;
+  }
+
+  long getForwardedLineCount() {
+    return myForwardedLineCount;
+  }
+
+  @Nullable
+  @Override
+  public DataSlice next() {
+    try {
+      String line;
+      while ((line = myReader.getNextLine()) != null) {
+        myLineCount++;
+        if (accept(line)) {
+          myForwardedLineCount++;
+          return AtraceDecompressor.toDataSlice(line);
+        }
+      }
+    }
+    catch (IOException | DataFormatException ex) {
+      getLogger().error(ex);
+    }
+    return null;
+  }
+
+  @Override
+  public void close() {
+    myReader.close();
+  }
+
+  private boolean accept(@NotNull String line) throws IOException {
+    if (myScheduling == null) {
+      if (!line.isEmpty() && line.charAt(0) != '#' && scanHeader(line)) {
+        addThread(line);
+      }
+      return false;
+    }
+    if (line.isEmpty() || line.charAt(0) == '#' || !scanHeader(line)) {
+      return true;
+    }
+
+    if (myThreadProcessId >= 0) {
+      myScheduling.setThreadInfo(myThreadId, myThreadProcessId, myTaskName);
+      if (myThreadProcessId == myProcessId) {
+        myProcessThreads.add(myThreadId);
+      }
+    }
+    boolean ownLine = myThreadProcessId == myProcessId;
+
+    switch (myEvent) {
+      case SCHED_SWITCH: {
+        int prevThreadId = parseIntArg(line, "prev_pid=");
+        int nextThreadId = parseIntArg(line, "next_pid=");
+        int nextNameStart = line.indexOf("next_comm=", myArgsStart);
+        int nextNameEnd = line.indexOf(" next_pid=", myArgsStart);
+        if (nextThreadId < 0 || nextNameStart < 0 || nextNameEnd < nextNameStart) {
+          return true;
+        }
+        String nextThreadName = line.substring(nextNameStart + "next_comm=".length(), nextNameEnd);
+        myScheduling.setThreadName(nextThreadId, nextThreadName);
+        myScheduling.switchTo(myCpu, myLastTimestampSeconds, nextThreadId, nextThreadName);
+        return ownLine || myProcessThreads.contains(prevThreadId) || myProcessThreads.contains(nextThreadId);
+      }
+      case "sched_wakeup":
+      case "sched_wakeup_new":
+      case "sched_waking":
+      case "sched_blocked_reason":
+        return ownLine || myProcessThreads.contains(parseIntArg(line, "pid="));
+      case "tracing_mark_write":
+        return ownLine || line.startsWith(CLOCK_SYNC, myArgsStart);
+      default:
+        return ownLine;
+    }
+  }
+
+  private void addThread(@NotNull String line) {
+    if (myThreadProcessId >= 0) {
+      TIntHashSet threads = myThreadsByProcess.get(myThreadProcessId);
+      if (threads == null) {
+        threads = new TIntHashSet();
+        myThreadsByProcess.put(myThreadProcessId, threads);
+      }
+      threads.add(myThreadId);
+    }
+    setThreadName(myThreadId, myTaskName);
+
+    if (myEvent.equals(SCHED_SWITCH)) {
+      int nextThreadId = parseIntArg(line, "next_pid=");
+      int nextNameStart = line.indexOf("next_comm=", myArgsStart);
+      int nextNameEnd = line.indexOf(" next_pid=", myArgsStart);
+      if (nextThreadId >= 0 && nextNameStart >= 0 && nextNameEnd > nextNameStart) {
+        setThreadName(nextThreadId, line.substring(nextNameStart + "next_comm=".length(), nextNameEnd));
+      }
+    }
+  }
+
+  private void setThreadName(int threadId, @NotNull String name) {
+    if (!name.isEmpty() && !name.startsWith("<")) {
+      myThreadNames.put(threadId, name);
+    }
+  }
+
+  /**
+   * Scans "TASK-PID (TGID) [CPU] FLAGS TIMESTAMP: EVENT: " into the fields of the current line without splitting it.
+   *
+   * @return false if the line is not in that format.
+   */
+  private boolean scanHeader(@NotNull String line) {
+    // Task names may contain '-', '(' and spaces, so the header is anchored on the CPU field.
+    int cpuStart = line.indexOf('[');
+    int cpuEnd = -1;
+    while (cpuStart >= 0) {
+      cpuEnd = line.indexOf(']', cpuStart);
+      if (cpuEnd > cpuStart + 1 && isDigits(line, cpuStart + 1, cpuEnd)) {
+        break;
+      }
+      cpuStart = line.indexOf('[', cpuStart + 1);
+    }
+    if (cpuStart < 0) {
+      return false;
+    }
+    myCpu = parseInt(line, cpuStart + 1, cpuEnd);
+
+    int tgidEnd = line.lastIndexOf(')', cpuStart);
+    int tgidStart = tgidEnd < 0 ? -1 : line.lastIndexOf('(', tgidEnd);
+    if (tgidStart < 0) {
+      return false;
+    }
+    // Threads whose process is unknown are written as "(-----)".
+    myThreadProcessId = parseInt(line, tgidStart + 1, tgidEnd);
+
+    int dash = line.lastIndexOf('-', tgidStart);
+    if (dash < 0) {
+      return false;
+    }
+    myThreadId = parseInt(line, dash + 1, tgidStart);
+    myTaskName = line.substring(0, dash).trim();
+
+    // Skip the flags, then read the timestamp up to its ':'.
+    int flagsStart = skipSpaces(line, cpuEnd + 1);
+    int timestampStart = skipSpaces(line, line.indexOf(' ', flagsStart));
+    int timestampEnd = line.indexOf(':', timestampStart);
+    int eventEnd = timestampEnd < 0 ? -1 : line.indexOf(':', timestampEnd + 1);
+    if (timestampStart < 0 || eventEnd < 0 || myThreadId < 0) {
+      return false;
+    }
+    double timestampSeconds;
+    try {
+      timestampSeconds = Double.parseDouble(line.substring(timestampStart, timestampEnd));
+    }
+    catch (NumberFormatException e) {
+      return false;
+    }
+    if (Double.isNaN(myFirstTimestampSeconds)) {
+      myFirstTimestampSeconds = timestampSeconds;
+    }
+    myLastTimestampSeconds = timestampSeconds;
+    myEvent = line.substring(skipSpaces(line, timestampEnd + 1), eventEnd);
+    myArgsStart = skipSpaces(line, eventEnd + 1);
+    return myArgsStart >= 0;
+  }
+
+  /**
+   * @return the value of the first "name=value" argument of the current line with the given name, or -1.
+   */
+  private int parseIntArg(@NotNull String line, @NotNull String name) {
+    int start = line.indexOf(name, myArgsStart);
+    // Make sure we matched a whole argument name, e.g. "pid=" and not the end of "prev_pid=".
+    while (start > myArgsStart && line.charAt(start - 1) != ' ') {
+      start = line.indexOf(name, start + 1);
+    }
+    if (start < 0) {
+      return -1;
+    }
+    start += name.length();
+    int end = start;
+    while (end < line.length() && line.charAt(end) != ' ') {
+      end++;
+    }
+    return parseInt(line, start, end);
+  }
+
+  /**
+   * @return the non-negative integer between start and end, ignoring surrounding spaces, or -1 if there isn't one.
+   */
+  private static int parseInt(@NotNull String line, int start, int end) {
+    int value = -1;
+    for (int i = start; i < end; i++) {
+      char c = line.charAt(i);
+      if (c >= '0' && c <= '9') {
+        value = (value < 0 ? 0 : value * 10) + (c - '0');
+      }
+      else if (c != ' ' || value >= 0) {
+        return c == ' ' && isBlank(line, i, end) ? value : -1;
+      }
+    }
+    return value;
+  }
+
+  private static boolean isDigits(@NotNull String line, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isDigit(line.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean isBlank(@NotNull String line, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (line.charAt(i) != ' ') {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * @return the index of the first non-space character at or after start, or -1 if there is none (or start is -1).
+   */
+  private static int skipSpaces(@NotNull String line, int start) {
+    if (start < 0) {
+      return -1;
+    }
+    while (start < line.length() && line.charAt(start) == ' ') {
+      start++;
+    }
+    return start < line.length() ? start : -1;
+  }
+
+  /**
+   * A process of a capture, with the name of its main thread and its number of threads.
+   */
+  static final class ProcessSummary {
+    private final int myId;
+    @NotNull private final String myName;
+    private final int myThreadCount;
+
+    ProcessSummary(int id, @NotNull String name, int threadCount) {
+      myId = id;
+      myName = name;
+      myThreadCount = threadCount;
+    }
+
+    int getId() {
+      return myId;
+    }
+
+    @NotNull
+    String getName() {
+      return myName;
+    }
+
+    int getThreadCount() {
+      return myThreadCount;
+    }
+  }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.android.tools.adtui.model.SeriesData;
+import com.intellij.openapi.util.io.FileUtil;
+import gnu.trove.TIntIntHashMap;
+import gnu.trove.TIntObjectHashMap;
+import gnu.trove.TLongArrayList;
+import gnu.trove.TObjectIntHashMap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+import java.util.function.DoubleToLongFunction;
+
+/**
+ * Per-CPU scheduling data of a streamed atrace import (see {@link AtraceProcessFilter}). Every process' slices are needed to draw the
+ * CPU tracks, so instead of keeping them in memory they are written to one temp file per CPU as fixed size records while the trace is
+ * decompressed, and read back through memory mapped, {@link RandomAccess} lists once the import is done.
+ *
+ * Records are written in the order the CPU track shows them: a slice starting when its thread is switched in, preceded by a
+ * {@link CpuThreadSliceInfo#NULL_THREAD} entry whenever the CPU was idle before it.
+ */
+final class SpilledCpuScheduling {
+  /**
+   * Start and end of the slice in trace seconds, followed by the thread id and the index of the thread name, or -1 for null entries.
+   */
+  private static final int RECORD_SIZE_BYTES = 8 + 8 + 4 + 4;
+  private static final int NO_THREAD = -1;
+
+  private final TIntObjectHashMap<CpuTrack> myTracks = new TIntObjectHashMap<>();
+  private final TIntIntHashMap myProcessIds = new TIntIntHashMap();
+  private final TIntIntHashMap myThreadNames = new TIntIntHashMap();
+  private final List<String> myNames = new ArrayList<>();
+  private final TObjectIntHashMap<String> myNameIndices = new TObjectIntHashMap<>();
+
+  /**
+   * Records that the thread belongs to the given process and, if known, its name.
+   */
+  void setThreadInfo(int threadId, int processId, @NotNull String name) {
+    myProcessIds.put(threadId, processId);
+    setThreadName(threadId, name);
+  }
+
+  void setThreadName(int threadId, @NotNull String name) {
+    // Names that could not be resolved when the line was written show up as "<...>".
+    if (!name.isEmpty() && !name.startsWith("<")) {
+      myThreadNames.put(threadId, getNameIndex(name));
+    }
+  }
+
+  /**
+   * Handles a sched_switch on the given CPU: the slice of the thread running so far ends, and unless the CPU goes idle (thread 0) the
+   * next thread's slice starts.
+   */
+  void switchTo(int cpu, double timestampSeconds, int nextThreadId, @NotNull String nextThreadName) throws IOException {
+    CpuTrack track = myTracks.get(cpu);
+    if (track == null) {
+      track = new CpuTrack(cpu);
+      myTracks.put(cpu, track);
+    }
+    track.endRunningSlice(timestampSeconds);
+    if (nextThreadId != 0) {
+      track.myRunningThreadId = nextThreadId;
+      track.myRunningNameIndex = getNameIndex(nextThreadName);
+      track.myRunningStartSeconds = timestampSeconds;
+    }
+  }
+
+  /**
+   * Ends every running slice at the end of the trace, and maps the per-CPU files for reading. No more data can be added afterwards.
+   */
+  void finish(double endTimestampSeconds) throws IOException {
+    for (Object track : myTracks.getValues()) {
+      ((CpuTrack)track).finish(endTimestampSeconds);
+    }
+  }
+
+  /**
+   * @return the equivalent of {@link AtraceParser#getCpuThreadSliceInfoStates()}, with every list reading from the spilled files.
+   */
+  @NotNull
+  Map<Integer, List<SeriesData<CpuThreadSliceInfo>>> getCpuSliceSeries(@NotNull DoubleToLongFunction toUserTimeUs) {
+    Map<Integer, List<SeriesData<CpuThreadSliceInfo>>> series = new HashMap<>();
+    for (int cpu : myTracks.keys()) {
+      series.put(cpu, new SliceList(myTracks.get(cpu).myRecords, toUserTimeUs));
+    }
+    return series;
+  }
+
+  /**
+   * @return the CPU utilization of the given process, in percent of all the CPUs, as a step series.
+   */
+  @NotNull
+  List<SeriesData<Long>> buildUtilizationSeries(int processId, double beginTimestampSeconds, @NotNull DoubleToLongFunction toUserTimeUs) {
+    // Each slice of the process adds one running CPU at its start and removes it at its end. Starts are encoded as odd and ends as even
+    // entries, so that sorting by (time, kind) processes an end before a start at the same time.
+    TLongArrayList events = new TLongArrayList();
+    for (Object value : myTracks.getValues()) {
+      ByteBuffer records = ((CpuTrack)value).myRecords;
+      for (int offset = 0; offset < records.limit(); offset += RECORD_SIZE_BYTES) {
+        int threadId = records.getInt(offset + 16);
+        if (threadId == NO_THREAD || getProcessId(threadId) != processId) {
+          continue;
+        }
+        events.add(toUserTimeUs.applyAsLong(records.getDouble(offset)) << 1 | 1L);
+        events.add(toUserTimeUs.applyAsLong(records.getDouble(offset + 8)) << 1);
+      }
+    }
+    events.sort();
+
+    long cpuPercent = (long)(100 / (myTracks.size() * 1.0));
+    List<SeriesData<Long>> series = new ArrayList<>();
+    series.add(new SeriesData<>(toUserTimeUs.applyAsLong(beginTimestampSeconds), 0L));
+    long running = 0;
+    for (int i = 0; i < events.size(); i++) {
+      long event = events.get(i);
+      running += (event & 1) == 1 ? 1 : -1;
+      long timeUs = event >> 1;
+      SeriesData<Long> last = series.get(series.size() - 1);
+      if (last.x == timeUs) {
+        last.value = running * cpuPercent;
+      }
+      else {
+        series.add(new SeriesData<>(timeUs, running * cpuPercent));
+      }
+    }
+    return series;
+  }
+
+  /**
+   * Closes and deletes the per-CPU files. The lists returned by {@link #getCpuSliceSeries} must not be used afterwards.
+   */
+  void dispose() {
+    for (Object track : myTracks.getValues()) {
+      ((CpuTrack)track).dispose();
+    }
+    myTracks.clear();
+  }
+
+  private int getProcessId(int threadId) {
+    // Threads never seen with their TGID are kernel threads, which are their own process.
+    return myProcessIds.containsKey(threadId) ? myProcessIds.get(threadId) : threadId;
+  }
+
+  private int getNameIndex(@NotNull String name) {
+    if (myNameIndices.containsKey(name)) {
+      return myNameIndices.get(name);
+    }
+    int index = myNames.size();
+    myNames.add(name);
+    myNameIndices.put(name, index);
+    return index;
+  }
+
+  @NotNull
+  private String getProcessName(int processId) {
+    return myThreadNames.containsKey(processId) ? myNames.get(myThreadNames.get(processId)) : "<" + processId + ">";
+  }
+
+  private static final class CpuTrack {
+    @NotNull private final File myFile;
+    @NotNull private final DataOutputStream myOutput;
+    private int myRunningThreadId = NO_THREAD;
+    private int myRunningNameIndex;
+    private double myRunningStartSeconds;
+    private double myLastEndSeconds = Double.NaN;
+    private ByteBuffer myRecords;
+
+    private CpuTrack(int cpu) throws IOException {
+      myFile = FileUtil.createTempFile(String.format("atrace_cpu_%d", cpu), ".slices", true);
+      myOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)));
+    }
+
+    private void endRunningSlice(double endSeconds) throws IOException {
+      if (myRunningThreadId == NO_THREAD) {
+        return;
+      }
+      if (!Double.isNaN(myLastEndSeconds) && myRunningStartSeconds > myLastEndSeconds) {
+        writeRecord(myLastEndSeconds, myLastEndSeconds, NO_THREAD, NO_THREAD);
+      }
+      writeRecord(myRunningStartSeconds, endSeconds, myRunningThreadId, myRunningNameIndex);
+      myLastEndSeconds = endSeconds;
+      myRunningThreadId = NO_THREAD;
+    }
+
+    private void finish(double endSeconds) throws IOException {
+      endRunningSlice(endSeconds);
+      // A null entry at the end of the trace closes the last segment of the track.
+      writeRecord(endSeconds, endSeconds, NO_THREAD, NO_THREAD);
+      myOutput.close();
+      try (RandomAccessFile file = new RandomAccessFile(myFile, "r")) {
+        // The mapping stays valid after the channel is closed.
+        myRecords = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+      }
+    }
+
+    private void dispose() {
+      try {
+        myOutput.close();
+      }
+      catch (IOException ignored) {
+        // The file is deleted anyway.
+      }
+      myRecords = null;
+      // A file that is still mapped can't be deleted on Windows. It is then deleted on exit, see createTempFile.
+      FileUtil.delete(myFile);
+    }
+
+    private void writeRecord(double startSeconds, double endSeconds, int threadId, int nameIndex) throws IOException {
+      myOutput.writeDouble(startSeconds);
+      myOutput.writeDouble(endSeconds);
+      myOutput.writeInt(threadId);
+      myOutput.writeInt(nameIndex);
+    }
+  }
+
+  /**
+   * Reads the {@link SeriesData} of one CPU track from its mapped records, creating each element when it is requested.
+   */
+  private final class SliceList extends AbstractList<SeriesData<CpuThreadSliceInfo>> implements RandomAccess {
+    @NotNull private final ByteBuffer myRecords;
+    @NotNull private final DoubleToLongFunction myToUserTimeUs;
+
+    private SliceList(@NotNull ByteBuffer records, @NotNull DoubleToLongFunction toUserTimeUs) {
+      myRecords = records;
+      myToUserTimeUs = toUserTimeUs;
+    }
+
+    @Override
+    public SeriesData<CpuThreadSliceInfo> get(int index) {
+      if (index < 0 || index >= size()) {
+        throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+      }
+      int offset = index * RECORD_SIZE_BYTES;
+      long startUs = myToUserTimeUs.applyAsLong(myRecords.getDouble(offset));
+      int threadId = myRecords.getInt(offset + 16);
+      if (threadId == NO_THREAD) {
+        return new SeriesData<>(startUs, CpuThreadSliceInfo.NULL_THREAD);
+      }
+      long endUs = myToUserTimeUs.applyAsLong(myRecords.getDouble(offset + 8));
+      int processId = getProcessId(threadId);
+      CpuThreadSliceInfo info =
+        new CpuThreadSliceInfo(threadId, myNames.get(myRecords.getInt(offset + 20)), processId, getProcessName(processId), endUs - startUs);
+      return new SeriesData<>(startUs, info);
+    }
+
+    @Override
+    public int size() {
+      return myRecords.limit() / RECORD_SIZE_BYTES;
+    }
+  }
+}
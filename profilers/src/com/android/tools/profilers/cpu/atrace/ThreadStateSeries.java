@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.atrace;
+
+import com.android.tools.adtui.model.SeriesData;
+import com.android.tools.profilers.cpu.CpuProfilerStage;
+import gnu.trove.TByteArrayList;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Thread state transitions of one thread, stored as a timestamp and a state ordinal per transition instead of a {@link SeriesData}
+ * object per transition. Elements are created when requested.
+ */
+final class ThreadStateSeries extends AbstractList<SeriesData<CpuProfilerStage.ThreadState>> implements RandomAccess {
+  private static final CpuProfilerStage.ThreadState[] STATES = CpuProfilerStage.ThreadState.values();
+
+  private final TLongArrayList myTimestamps = new TLongArrayList();
+  private final TByteArrayList myStates = new TByteArrayList();
+
+  void add(long timestampUs, @NotNull CpuProfilerStage.ThreadState state) {
+    myTimestamps.add(timestampUs);
+    myStates.add((byte)state.ordinal());
+  }
+
+  @Override
+  public SeriesData<CpuProfilerStage.ThreadState> get(int index) {
+    return new SeriesData<>(myTimestamps.get(index), STATES[myStates.get(index)]);
+  }
+
+  @Override
+  public int size() {
+    return myTimestamps.size();
+  }
+}
@@ -20,7 +20,9 @@ import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.*;
 
@@ -30,6 +32,13 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   private final boolean myIsRoot;
   private boolean myChildrenBuilt;
 
+  /**
+   * Global intervals of the nodes at the top of the call stack (see {@link #update(Range)}), built on the first update after the nodes
+   * changed. Which nodes are at the top depends on the clock type of the capture, so it's rebuilt if that changes.
+   */
+  @Nullable private IntervalSumIndex myOuterNodesIndex;
+  @Nullable private ClockType myOuterNodesClockType;
+
   private BottomUpNode(String id) {
     super(id);
     myIsRoot = false;
@@ -86,6 +95,12 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
     }
   }
 
+  @Override
+  protected void addNode(@NotNull CaptureNode node) {
+    super.addNode(node);
+    myOuterNodesIndex = null;
+  }
+
   private void addPathNode(@NotNull CaptureNode node) {
     myPathNodes.add(node);
   }
@@ -130,10 +145,21 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
   @Override
   public void update(@NotNull Range range) {
     // how much time was spent in this call stack path, and in the functions it called
-    myGlobalTotal = 0;
+    myGlobalTotal = getOuterNodesIndex().getIntersectionLength(range);
     // how much time was spent doing work directly in this call stack path
-    double self = 0;
+    double self = getNodesIntersection(range, ClockType.GLOBAL) - getChildrenIntersection(range, ClockType.GLOBAL);
+    myGlobalChildrenTotal = myGlobalTotal - self;
+  }
 
+  @NotNull
+  private IntervalSumIndex getOuterNodesIndex() {
+    ClockType clockType = myNodes.isEmpty() ? null : myNodes.get(0).getClockType();
+    if (myOuterNodesIndex != null && myOuterNodesClockType == clockType) {
+      return myOuterNodesIndex;
+    }
+
+    TLongArrayList starts = new TLongArrayList();
+    TLongArrayList ends = new TLongArrayList();
     // The node that is at the top of the call stack, e.g if the call stack looks like B [0..30] -> B [1..20],
     // then the second method can't be outerSoFar.
     // It's used to exclude nodes which aren't at the top of the
@@ -146,22 +172,21 @@ public class BottomUpNode extends CpuTreeNode<BottomUpNode> {
       if (outerSoFar == null || node.getEnd() > outerSoFar.getEnd()) {
         if (outerSoFar != null) {
           // |outerSoFar| is at the top of the call stack
-          myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
+          starts.add(outerSoFar.getStartGlobal());
+          ends.add(outerSoFar.getEndGlobal());
         }
         outerSoFar = node;
       }
-
-      self += getIntersection(range, node, ClockType.GLOBAL);
-      for (CaptureNode child : node.getChildren()) {
-        self -= getIntersection(range, child, ClockType.GLOBAL);
-      }
     }
 
     if (outerSoFar != null) {
       // |outerSoFar| is at the top of the call stack
-      myGlobalTotal += getIntersection(range, outerSoFar, ClockType.GLOBAL);
+      starts.add(outerSoFar.getStartGlobal());
+      ends.add(outerSoFar.getEndGlobal());
     }
-    myGlobalChildrenTotal = myGlobalTotal - self;
+    myOuterNodesIndex = new IntervalSumIndex(starts, ends);
+    myOuterNodesClockType = clockType;
+    return myOuterNodesIndex;
   }
 
   @NotNull
@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.AspectModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -189,10 +190,10 @@ public interface CaptureDetails {
      * are combined into one wider bar. It converts it from {@link TopDownNode} as it's similar to FlameChart and
      * building a {@link TopDownNode} instance only on creation gives a performance improvement in every update.
      */
-    private CaptureNode convertToFlameChart(@NotNull TopDownNode topDown, double start, int depth) {
+    private DefaultCaptureNode convertToFlameChart(@NotNull TopDownNode topDown, double start, int depth) {
       assert topDown.getGlobalTotal() > 0;
 
-      CaptureNode node = new CaptureNode(topDown.getNodes().get(0).getData());
+      DefaultCaptureNode node = new DefaultCaptureNode(topDown.getNodes().get(0).getData());
       node.setFilterType(topDown.getNodes().get(0).getFilterType());
       node.setStartGlobal((long)start);
       node.setStartThread((long)start);
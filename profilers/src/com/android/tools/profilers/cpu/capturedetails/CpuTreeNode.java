@@ -19,12 +19,20 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.perflib.vmtrace.ClockType;
 import com.android.tools.profilers.cpu.CaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import gnu.trove.TLongArrayList;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
 import java.util.List;
 
 public abstract class CpuTreeNode<T extends CpuTreeNode> {
+  /**
+   * Below this number of {@link CaptureNode} (the nodes plus their children), ranges are intersected with each node instead of
+   * building a {@link NodeIndex}.
+   */
+  private static final int INDEX_MIN_INTERVALS = 32;
+
   /**
    * References to {@link CaptureNode} that are used to extract information from to represent this CpuTreeNode,
    * such as {@link #getGlobalTotal()}, {@link #getGlobalChildrenTotal()}, etc...
@@ -38,6 +46,12 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   protected double myThreadTotal = 0;
   protected double myThreadChildrenTotal = 0;
 
+  /**
+   * Built on the first query after {@link #myNodes} changed, or null if there are too few nodes to need one.
+   */
+  @Nullable private NodeIndex myIndex;
+  private boolean myIndexUpToDate;
+
   public CpuTreeNode(String id) {
     myId = id;
   }
@@ -48,6 +62,7 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
 
   protected void addNode(@NotNull CaptureNode node) {
     myNodes.add(node);
+    myIndexUpToDate = false;
   }
 
   protected void addNodes(@NotNull List<CaptureNode> nodes) {
@@ -84,19 +99,42 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public void update(@NotNull Range range) {
-    myGlobalTotal = 0.0;
-    myGlobalChildrenTotal = 0;
-    myThreadTotal = 0.0;
-    myThreadChildrenTotal = 0;
+    myGlobalTotal = getNodesIntersection(range, ClockType.GLOBAL);
+    myThreadTotal = getNodesIntersection(range, ClockType.THREAD);
+    myGlobalChildrenTotal = getChildrenIntersection(range, ClockType.GLOBAL);
+    myThreadChildrenTotal = getChildrenIntersection(range, ClockType.THREAD);
+  }
 
+  /**
+   * @return the sum of the intersections of {@link #myNodes} with the range, using the given clock.
+   */
+  protected double getNodesIntersection(@NotNull Range range, @NotNull ClockType type) {
+    NodeIndex index = getIndex();
+    if (index != null) {
+      return index.getNodes(type).getIntersectionLength(range);
+    }
+    double total = 0;
+    for (CaptureNode node : myNodes) {
+      total += getIntersection(range, node, type);
+    }
+    return total;
+  }
+
+  /**
+   * @return the sum of the intersections of the children of {@link #myNodes} with the range, using the given clock.
+   */
+  protected double getChildrenIntersection(@NotNull Range range, @NotNull ClockType type) {
+    NodeIndex index = getIndex();
+    if (index != null) {
+      return index.getChildren(type).getIntersectionLength(range);
+    }
+    double total = 0;
     for (CaptureNode node : myNodes) {
-      myGlobalTotal += getIntersection(range, node, ClockType.GLOBAL);
-      myThreadTotal += getIntersection(range, node, ClockType.THREAD);
       for (CaptureNode child : node.getChildren()) {
-        myGlobalChildrenTotal += getIntersection(range, child, ClockType.GLOBAL);
-        myThreadChildrenTotal += getIntersection(range, child, ClockType.THREAD);
+        total += getIntersection(range, child, type);
       }
     }
+    return total;
   }
 
   protected static double getIntersection(@NotNull Range range, @NotNull CaptureNode node, @NotNull ClockType type) {
@@ -111,6 +149,11 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   }
 
   public boolean inRange(Range range) {
+    NodeIndex index = getIndex();
+    if (index != null) {
+      // CaptureNode#getStart() and #getEnd() follow the clock type of the capture, which is the same for all the nodes.
+      return index.getNodes(myNodes.get(0).getClockType()).intersects(range);
+    }
     return myNodes.stream().anyMatch(node -> node.getStart() < range.getMax() && range.getMin() < node.getEnd());
   }
 
@@ -129,4 +172,59 @@ public abstract class CpuTreeNode<T extends CpuTreeNode> {
   public boolean isUnmatched() {
     return getFilterType() == CaptureNode.FilterType.UNMATCH;
   }
+
+  @Nullable
+  private NodeIndex getIndex() {
+    if (!myIndexUpToDate) {
+      int intervals = myNodes.size();
+      for (CaptureNode node : myNodes) {
+        intervals += node.getChildren().size();
+      }
+      myIndex = intervals < INDEX_MIN_INTERVALS ? null : new NodeIndex(myNodes);
+      myIndexUpToDate = true;
+    }
+    return myIndex;
+  }
+
+  /**
+   * Prefix sums of the intervals of a {@link CpuTreeNode}'s nodes and of their children, in both clocks. With them, updating the totals
+   * of a node merging many {@link CaptureNode}s (e.g. a method called in a loop) takes logarithmic time instead of going through all of
+   * them every time the selection changes.
+   */
+  private static final class NodeIndex {
+    @NotNull private final IntervalSumIndex myGlobalNodes;
+    @NotNull private final IntervalSumIndex myThreadNodes;
+    @NotNull private final IntervalSumIndex myGlobalChildren;
+    @NotNull private final IntervalSumIndex myThreadChildren;
+
+    private NodeIndex(@NotNull List<CaptureNode> nodes) {
+      List<CaptureNode> children = new ArrayList<>();
+      nodes.forEach(node -> children.addAll(node.getChildren()));
+      myGlobalNodes = index(nodes, ClockType.GLOBAL);
+      myThreadNodes = index(nodes, ClockType.THREAD);
+      myGlobalChildren = index(children, ClockType.GLOBAL);
+      myThreadChildren = index(children, ClockType.THREAD);
+    }
+
+    @NotNull
+    private IntervalSumIndex getNodes(@NotNull ClockType type) {
+      return type == ClockType.GLOBAL ? myGlobalNodes : myThreadNodes;
+    }
+
+    @NotNull
+    private IntervalSumIndex getChildren(@NotNull ClockType type) {
+      return type == ClockType.GLOBAL ? myGlobalChildren : myThreadChildren;
+    }
+
+    @NotNull
+    private static IntervalSumIndex index(@NotNull List<CaptureNode> nodes, @NotNull ClockType type) {
+      TLongArrayList starts = new TLongArrayList(nodes.size());
+      TLongArrayList ends = new TLongArrayList(nodes.size());
+      for (CaptureNode node : nodes) {
+        starts.add(type == ClockType.GLOBAL ? node.getStartGlobal() : node.getStartThread());
+        ends.add(type == ClockType.GLOBAL ? node.getEndGlobal() : node.getEndThread());
+      }
+      return new IntervalSumIndex(starts, ends);
+    }
+  }
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import gnu.trove.TLongArrayList;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A fixed set of [start, end] intervals (e.g. the {@link com.android.tools.profilers.cpu.CaptureNode}s merged into a {@link CpuTreeNode})
+ * that answers range queries in logarithmic time.
+ *
+ * The length of the intersection of [s, e] with [a, b] is clamp(e, a, b) - clamp(s, a, b), so the total over all the intervals is the
+ * sum of the clamped ends minus the sum of the clamped starts. Each sum is computed from the sorted values and their prefix sums: values
+ * below a contribute a, values above b contribute b, and the ones in between contribute themselves. This holds whether the intervals
+ * overlap or not, so nested calls (e.g. recursion) are counted once per interval, like a linear scan would.
+ */
+final class IntervalSumIndex {
+  @NotNull private final long[] myStarts;
+  @NotNull private final long[] myStartPrefixSums;
+  @NotNull private final long[] myEnds;
+  @NotNull private final long[] myEndPrefixSums;
+
+  /**
+   * @param starts the interval starts, in the same order as their ends. The arrays are sorted in place.
+   */
+  IntervalSumIndex(@NotNull TLongArrayList starts, @NotNull TLongArrayList ends) {
+    assert starts.size() == ends.size();
+    starts.sort();
+    ends.sort();
+    myStarts = starts.toNativeArray();
+    myEnds = ends.toNativeArray();
+    myStartPrefixSums = prefixSums(myStarts);
+    myEndPrefixSums = prefixSums(myEnds);
+  }
+
+  int size() {
+    return myStarts.length;
+  }
+
+  /**
+   * @return the sum of the lengths of the intersections of every interval with the range.
+   */
+  double getIntersectionLength(@NotNull Range range) {
+    if (range.isEmpty()) {
+      return 0;
+    }
+    double min = range.getMin();
+    double max = range.getMax();
+    int startsBelow = countBelow(myStarts, min);
+    int startsUpToMax = countAtMost(myStarts, max);
+    int endsBelow = countBelow(myEnds, min);
+    int endsUpToMax = countAtMost(myEnds, max);
+
+    // Sum the unclamped values as longs first, so large timestamps cancel out exactly.
+    long inside = (myEndPrefixSums[endsUpToMax] - myEndPrefixSums[endsBelow]) -
+                  (myStartPrefixSums[startsUpToMax] - myStartPrefixSums[startsBelow]);
+    return inside + (double)(endsBelow - startsBelow) * min + (double)(startsUpToMax - endsUpToMax) * max;
+  }
+
+  /**
+   * @return whether any interval starts before the end of the range and ends after its start.
+   */
+  boolean intersects(@NotNull Range range) {
+    // Every interval ending at or before the range start also starts before the range end, so the difference counts the intersecting ones.
+    return countBelow(myStarts, range.getMax()) - countAtMost(myEnds, range.getMin()) > 0;
+  }
+
+  @NotNull
+  private static long[] prefixSums(@NotNull long[] values) {
+    long[] sums = new long[values.length + 1];
+    for (int i = 0; i < values.length; i++) {
+      sums[i + 1] = sums[i] + values[i];
+    }
+    return sums;
+  }
+
+  /**
+   * @return the number of values strictly lower than the given value.
+   */
+  private static int countBelow(@NotNull long[] sortedValues, double value) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedValues[mid] < value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * @return the number of values lower than or equal to the given value.
+   */
+  private static int countAtMost(@NotNull long[] sortedValues, double value) {
+    int low = 0;
+    int high = sortedValues.length;
+    while (low < high) {
+      int mid = (low + high) >>> 1;
+      if (sortedValues[mid] <= value) {
+        low = mid + 1;
+      }
+      else {
+        high = mid;
+      }
+    }
+    return low;
+  }
+}
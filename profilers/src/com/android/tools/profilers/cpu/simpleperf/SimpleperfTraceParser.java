@@ -20,6 +20,7 @@ import com.android.tools.adtui.model.Range;
 import com.android.tools.profiler.proto.CpuProfiler;
 import com.android.tools.profiler.proto.SimpleperfReport;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.CaptureNodeStore;
 import com.android.tools.profilers.cpu.CpuCapture;
 import com.android.tools.profilers.cpu.CpuThreadInfo;
 import com.android.tools.profilers.cpu.TraceParser;
@@ -29,6 +30,7 @@ import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import com.google.common.collect.Lists;
 import com.intellij.openapi.diagnostic.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileInputStream;
@@ -38,7 +40,12 @@ import java.nio.ByteOrder;
 import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleConsumer;
 
 /**
  * Parses a trace file obtained using simpleperf to a map threadId -> {@link CaptureNode}.
@@ -62,6 +69,11 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private static final String DATA_APP_DIR = "/data/app";
 
+  /**
+   * Number of samples a thread processes between two progress reports.
+   */
+  private static final int PROGRESS_INTERVAL_SAMPLES = 10000;
+
   /**
    * Version of the trace file to be parsed. Should be obtained from the file itself.
    */
@@ -116,11 +128,39 @@ public class SimpleperfTraceParser implements TraceParser {
    */
   private String myAppDataFolderPrefix;
 
+  /**
+   * Pool where the call tree of each thread is built. Threads are independent, so their trees are built in parallel.
+   */
+  @NotNull private final ForkJoinPool myPool;
+
+  /**
+   * Maps (file id, symbol id) to the {@link CaptureNodeModel} of the symbol, so that symbols are parsed once and their model is shared by
+   * every node and thread calling them. Filled concurrently by the threads building the call trees.
+   */
+  private final Map<Long, CaptureNodeModel> mySymbolModels = new ConcurrentHashMap<>();
+
+  /**
+   * Receives the fraction (from 0 to 1) of the samples processed so far while building the call trees. Can be called from any thread.
+   */
+  @NotNull private DoubleConsumer myProgressListener = progress -> {};
+
+  private final AtomicLong myProcessedSampleCount = new AtomicLong();
+
   public SimpleperfTraceParser() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  @VisibleForTesting
+  SimpleperfTraceParser(@NotNull ForkJoinPool pool) {
     myFiles = new HashMap<>();
     mySamples = new ArrayList<>();
     myCaptureTrees = new HashMap<>();
     myThreads = new HashMap<>();
+    myPool = pool;
+  }
+
+  public void setProgressListener(@NotNull DoubleConsumer listener) {
+    myProgressListener = listener;
   }
 
   /**
@@ -187,11 +227,9 @@ public class SimpleperfTraceParser implements TraceParser {
     return mySampleCount;
   }
 
-  @NotNull
-  private static CaptureNode createCaptureNode(CaptureNodeModel model, long timestamp) {
-    CaptureNode node = new CaptureNode(model);
-    setNodeStartTime(node, timestamp);
-    node.setDepth(0);
+  private static int addCaptureNode(@NotNull CaptureNodeStore.Builder nodes, CaptureNodeModel model, int parent, long timestamp) {
+    int node = nodes.add(model, parent);
+    setNodeStartTime(nodes, node, timestamp);
     return node;
   }
 
@@ -299,10 +337,25 @@ public class SimpleperfTraceParser implements TraceParser {
     // Split the samples per thread.
     Map<Integer, List<SimpleperfReport.Sample>> threadSamples = splitSamplesPerThread();
 
-    // Process the samples for each thread
+    // Process the samples of each thread in parallel. Biggest threads go first, so that they don't end up last on an otherwise idle pool.
+    List<ThreadTreeTask> tasks = new ArrayList<>();
     for (Map.Entry<Integer, List<SimpleperfReport.Sample>> threadSamplesEntry : threadSamples.entrySet()) {
-      parseThreadSamples(threadSamplesEntry.getKey(), threadSamplesEntry.getValue());
+      tasks.add(new ThreadTreeTask(threadSamplesEntry.getKey(), threadSamplesEntry.getValue()));
     }
+    tasks.sort((a, b) -> b.myThreadSamples.size() - a.myThreadSamples.size());
+    myProcessedSampleCount.set(0);
+    myPool.invoke(new RecursiveAction() {
+      @Override
+      protected void compute() {
+        invokeAll(tasks);
+      }
+    });
+    for (ThreadTreeTask task : tasks) {
+      if (task.myRoot != null) {
+        myCaptureTrees.put(task.myThreadInfo, task.myRoot);
+      }
+    }
+    myProgressListener.accept(1);
   }
 
   /**
@@ -321,24 +374,56 @@ public class SimpleperfTraceParser implements TraceParser {
   }
 
   // TODO: support thread time
-  private static void setNodeEndTime(CaptureNode node, long endTimeNs) {
-    node.setEndGlobal(TimeUnit.NANOSECONDS.toMicros(endTimeNs));
-    node.setEndThread(TimeUnit.NANOSECONDS.toMicros(endTimeNs));
+  private static void setNodeEndTime(@NotNull CaptureNodeStore.Builder nodes, int node, long endTimeNs) {
+    nodes.setEndGlobal(node, TimeUnit.NANOSECONDS.toMicros(endTimeNs));
+    nodes.setEndThread(node, TimeUnit.NANOSECONDS.toMicros(endTimeNs));
   }
 
   // TODO: support thread time
-  private static void setNodeStartTime(CaptureNode node, long startTimeNs) {
-    node.setStartGlobal(TimeUnit.NANOSECONDS.toMicros(startTimeNs));
-    node.setStartThread(TimeUnit.NANOSECONDS.toMicros(startTimeNs));
+  private static void setNodeStartTime(@NotNull CaptureNodeStore.Builder nodes, int node, long startTimeNs) {
+    nodes.setStartGlobal(node, TimeUnit.NANOSECONDS.toMicros(startTimeNs));
+    nodes.setStartThread(node, TimeUnit.NANOSECONDS.toMicros(startTimeNs));
+  }
+
+  private void reportProgress(int processedSamples) {
+    long processed = myProcessedSampleCount.addAndGet(processedSamples);
+    myProgressListener.accept((double)processed / mySamples.size());
   }
 
   /**
-   * Parses the list of samples of a thread into a {@link CaptureNode} tree.
+   * Builds the call tree of one thread.
    */
-  private void parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
+  private final class ThreadTreeTask extends RecursiveAction {
+    private final int myThreadId;
+    @NotNull private final List<SimpleperfReport.Sample> myThreadSamples;
+    private CpuThreadInfo myThreadInfo;
+    private CaptureNode myRoot;
+
+    private ThreadTreeTask(int threadId, @NotNull List<SimpleperfReport.Sample> samples) {
+      myThreadId = threadId;
+      myThreadSamples = samples;
+    }
+
+    @Override
+    protected void compute() {
+      myRoot = parseThreadSamples(myThreadId, myThreadSamples);
+      if (myRoot != null) {
+        SimpleperfReport.Thread thread = myThreads.get(myThreadId);
+        myThreadInfo = new CpuThreadInfo(myThreadId, thread.getThreadName(), myThreadId == thread.getProcessId());
+      }
+    }
+  }
+
+  /**
+   * Parses the list of samples of a thread into a {@link CaptureNode} tree, stored in a {@link CaptureNodeStore}.
+   *
+   * @return the root of the tree, or null if the thread has no samples.
+   */
+  @Nullable
+  private CaptureNode parseThreadSamples(int threadId, List<SimpleperfReport.Sample> threadSamples) {
     if (threadSamples.isEmpty()) {
       getLog().warn(String.format("Warning: No samples read for thread %s (%d)", myThreads.get(threadId), threadId));
-      return;
+      return null;
     }
 
     if (!myThreads.containsKey(threadId)) {
@@ -348,15 +433,15 @@ public class SimpleperfTraceParser implements TraceParser {
     // Add a root node to represent the thread itself.
     long firstTimestamp = threadSamples.get(0).getTime();
     SimpleperfReport.Thread thread = myThreads.get(threadId);
-    CaptureNode root = createCaptureNode(new SingleNameModel(thread.getThreadName()), firstTimestamp);
-    root.setDepth(0);
-    myCaptureTrees.put(new CpuThreadInfo(threadId, thread.getThreadName(), threadId == thread.getProcessId()), root);
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addCaptureNode(nodes, new SingleNameModel(thread.getThreadName()), CaptureNodeStore.NO_PARENT, firstTimestamp);
 
     // Parse the first call chain so we have a value for lastCallchain
     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain = Lists.reverse(threadSamples.get(0).getCallchainList());
     // Node used to traverse the tree. In the first traversal we pass an empty list as previous call chain and root as last visited node.
-    CaptureNode lastVisitedNode = parseCallChain(previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
+    int lastVisitedNode = parseCallChain(nodes, previousCallChain, Collections.emptyList(), threadSamples.get(0).getTime(), root);
 
+    int unreportedSamples = 1;
     // Now parse all the rest of the samples collected for this thread
     for (int i = 1; i < threadSamples.size(); i++) {
       SimpleperfReport.Sample sample = threadSamples.get(i);
@@ -364,41 +449,47 @@ public class SimpleperfTraceParser implements TraceParser {
       // so reversing it makes the traversal easier.
       List<SimpleperfReport.Sample.CallChainEntry> callChain = Lists.reverse(sample.getCallchainList());
       // TODO: when --trace-offcpu is supported, we will need to call updateAncestorsEndTime if sample has a "schedule" out event.
-      lastVisitedNode = parseCallChain(callChain, previousCallChain, sample.getTime(), lastVisitedNode);
+      lastVisitedNode = parseCallChain(nodes, callChain, previousCallChain, sample.getTime(), lastVisitedNode);
       previousCallChain = callChain;
+      if (++unreportedSamples == PROGRESS_INTERVAL_SAMPLES) {
+        reportProgress(unreportedSamples);
+        unreportedSamples = 0;
+      }
     }
+    reportProgress(unreportedSamples);
 
     // Finally, update the end timestamp of the nodes in the last sample of the thread, which should be the last sample's timestamp.
     // TODO: when --trace-offcpu is supported, we need to check if the last sample has a "schedule" out event before updating the end time.
     long lastTimestamp = mySamples.get(mySamples.size() - 1).getTime();
-    updateAncestorsEndTime(lastTimestamp, lastVisitedNode);
+    updateAncestorsEndTime(nodes, lastTimestamp, lastVisitedNode);
     // update the root timestamp
-    setNodeEndTime(root, lastTimestamp);
+    setNodeEndTime(nodes, root, lastTimestamp);
+    return nodes.build(root);
   }
 
   /**
    * Updates the end timestamp of a node and all its ancestors except the root.
    */
-  private static void updateAncestorsEndTime(long endTimestamp, CaptureNode lastVisited) {
-    CaptureNode node = lastVisited;
-    while (node.getParent() != null && node.getEnd() == 0) {
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
-      assert node != null;
+  private static void updateAncestorsEndTime(@NotNull CaptureNodeStore.Builder nodes, long endTimestamp, int lastVisited) {
+    int node = lastVisited;
+    while (nodes.getParent(node) != CaptureNodeStore.NO_PARENT && nodes.getEndGlobal(node) == 0) {
+      setNodeEndTime(nodes, node, endTimestamp);
+      node = nodes.getParent(node);
     }
   }
 
   /**
    * Given a {@link SimpleperfReport.Sample.CallChainEntry} and the previous one, add the new method calls as nodes to the tree and set
    * their start time to the given timestamp. Also, check which methods are not on the call chain anymore and update their end time.
-   * Receives a {@link CaptureNode} as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
-   * last visited node.
+   * Receives the index of a node as a starting point to traverse the tree when adding new nodes or visiting existing ones. Returns the
+   * index of the last visited node.
    */
-  private CaptureNode parseCallChain(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                     List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
-                                     long sampleTimestamp, CaptureNode lastVisitedNode) {
+  private int parseCallChain(@NotNull CaptureNodeStore.Builder nodes,
+                             List<SimpleperfReport.Sample.CallChainEntry> callChain,
+                             List<SimpleperfReport.Sample.CallChainEntry> previousCallChain,
+                             long sampleTimestamp, int lastVisitedNode) {
     // Node used to traverse the tree when adding new nodes or going up to find the divergent node ancestor.
-    CaptureNode traversalNode = lastVisitedNode;
+    int traversalNode = lastVisitedNode;
 
     // Find the node whre the current call chain diverge from the previous one
     int divergenceIndex = 0;
@@ -410,12 +501,12 @@ public class SimpleperfTraceParser implements TraceParser {
     // If there is a divergence, we update the end time of the traversal node and go up in the tree until we find the divergent node parent.
     if (divergenceIndex < previousCallChain.size()) {
       int divergenceCount = previousCallChain.size() - divergenceIndex;
-      traversalNode = findDivergenceAndUpdateEndTime(divergenceCount, sampleTimestamp, traversalNode);
+      traversalNode = findDivergenceAndUpdateEndTime(nodes, divergenceCount, sampleTimestamp, traversalNode);
     }
 
     // We add the new nodes (if any) present in the new call chain as descendants of the parent of the first divergent node.
     if (divergenceIndex < callChain.size()) {
-      traversalNode = addNewNodes(callChain, traversalNode, divergenceIndex, sampleTimestamp);
+      traversalNode = addNewNodes(nodes, callChain, traversalNode, divergenceIndex, sampleTimestamp);
     }
 
     // Finally, return the traversal node.
@@ -426,28 +517,24 @@ public class SimpleperfTraceParser implements TraceParser {
    * Updates the end timestamp of a given node and go up in the tree N times, where N is the divergence count passed as an argument.
    * Returns the parent of the last visited node, meaning nodes that we have changed the end time.
    */
-  private static CaptureNode findDivergenceAndUpdateEndTime(int divergenceCount, long endTimestamp, CaptureNode node) {
+  private static int findDivergenceAndUpdateEndTime(@NotNull CaptureNodeStore.Builder nodes, int divergenceCount, long endTimestamp,
+                                                    int node) {
     for (int i = 0; i < divergenceCount; i++) {
-      assert node != null;
-      setNodeEndTime(node, endTimestamp);
-      node = node.getParent();
+      setNodeEndTime(nodes, node, endTimestamp);
+      node = nodes.getParent(node);
     }
 
     return node;
   }
 
   /**
-   * Given a list of call chain entries and a start index, convert them to {@link CaptureNode} and add them as descendants of a given node.
+   * Given a list of call chain entries and a start index, add them as nodes descending from a given node.
    * Returns the last visited (added) node.
    */
-  private CaptureNode addNewNodes(List<SimpleperfReport.Sample.CallChainEntry> callChain,
-                                  CaptureNode node, int startIndex, long startTimestamp) {
-    assert node != null;
+  private int addNewNodes(@NotNull CaptureNodeStore.Builder nodes, List<SimpleperfReport.Sample.CallChainEntry> callChain,
+                          int node, int startIndex, long startTimestamp) {
     for (int i = startIndex; i < callChain.size(); i++) {
-      CaptureNode child = createCaptureNode(methodModelFromCallchainEntry(callChain.get(i)), startTimestamp);
-      node.addChild(child);
-      child.setDepth(node.getDepth() + 1);
-      node = child;
+      node = addCaptureNode(nodes, methodModelFromCallchainEntry(callChain.get(i)), node, startTimestamp);
     }
     // Return the last added node, as it's the visited one
     return node;
@@ -467,7 +554,9 @@ public class SimpleperfTraceParser implements TraceParser {
     }
     // Otherwise, read the method from the symbol table and parse it into a CaptureNodeModel. User's code symbols come from
     // files located inside the app's directory, therefore we check if the symbol path has the same prefix of such directory.
-    boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
-    return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten);
+    return mySymbolModels.computeIfAbsent((long)callChainEntry.getFileId() << 32 | symbolId, key -> {
+      boolean isUserWritten = symbolFile.getPath().startsWith(myAppDataFolderPrefix);
+      return NodeNameParser.parseNodeName(symbolFile.getSymbol(symbolId), isUserWritten);
+    });
   }
 }
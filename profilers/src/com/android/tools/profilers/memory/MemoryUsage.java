@@ -15,6 +15,7 @@
  */
 package com.android.tools.profilers.memory;
 
+import com.android.tools.adtui.model.CachedLongDataSeries;
 import com.android.tools.adtui.model.LineChartModel;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.adtui.model.RangedContinuousSeries;
@@ -23,9 +24,14 @@ import com.android.tools.profiler.proto.MemoryServiceGrpc;
 import com.android.tools.profilers.StudioProfilers;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 public class MemoryUsage extends LineChartModel {
+  /**
+   * Samples are polled from the device, so they may reach the datastore after the chart already queried the range they belong to.
+   */
+  private static final long LATE_SAMPLE_WINDOW_US = TimeUnit.SECONDS.toMicros(5);
 
   @NotNull private final Range myMemoryRange;
   @NotNull private final RangedContinuousSeries myTotalMemorySeries;
@@ -43,7 +49,8 @@ public class MemoryUsage extends LineChartModel {
                                                       Function<MemorySample, Long> getter) {
     MemoryServiceGrpc.MemoryServiceBlockingStub client = profilers.getClient().getMemoryClient();
     MemoryDataSeries series = new MemoryDataSeries(client, profilers.getSession(), getter);
-    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range, series);
+    return new RangedContinuousSeries(name, profilers.getTimeline().getViewRange(), range,
+                                      new CachedLongDataSeries(series, LATE_SAMPLE_WINDOW_US));
   }
 
   @NotNull
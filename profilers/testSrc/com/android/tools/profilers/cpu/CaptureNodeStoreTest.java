@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu;
+
+import com.android.tools.perflib.vmtrace.ClockType;
+import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
+import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CaptureNodeStoreTest {
+
+  @Test
+  public void builtTreeMatchesAddedNodes() {
+    // A [0..100]
+    // +- B [10..40]
+    // |  +- C [15..20]
+    // |  +- D [25..30]
+    // +- C [50..90]
+    //    +- B [60..70]
+    CaptureNodeModel a = new SingleNameModel("A");
+    CaptureNodeModel b = new SingleNameModel("B");
+    CaptureNodeModel c = new SingleNameModel("C");
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addNode(nodes, a, CaptureNodeStore.NO_PARENT, 0, 100);
+    int first = addNode(nodes, b, root, 10, 40);
+    addNode(nodes, c, first, 15, 20);
+    addNode(nodes, new SingleNameModel("D"), first, 25, 30);
+    int second = addNode(nodes, c, root, 50, 90);
+    addNode(nodes, b, second, 60, 70);
+
+    CaptureNode built = nodes.build(root);
+    assertEquals(6, countNodes(built));
+    assertNull(built.getParent());
+    assertEquals(0, built.getDepth());
+    assertEquals(2, built.getChildCount());
+    assertNode(built.getChildAt(0), "B", 10, 40, 1);
+    assertNode(built.getChildAt(0).getChildAt(0), "C", 15, 20, 2);
+    assertNode(built.getChildAt(0).getChildAt(1), "D", 25, 30, 2);
+    assertNode(built.getChildAt(1), "C", 50, 90, 1);
+    assertNode(built.getChildAt(1).getChildAt(0), "B", 60, 70, 2);
+    assertEquals(built, built.getChildAt(1).getParent());
+    assertEquals(built.getChildAt(0).getChildAt(1), built.getChildren().get(0).getLastChild());
+    // Models are shared, not copied.
+    assertSame(b, built.getChildAt(1).getChildAt(0).getData());
+  }
+
+  @Test
+  public void nodesCanBeMovedUnderNodesAddedLater() {
+    // Like an ART trace exiting from a method entered before tracing started: B and C are wrapped by A once they have been added.
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int b = addNode(nodes, new SingleNameModel("B"), CaptureNodeStore.NO_PARENT, 10, 20);
+    int d = addNode(nodes, new SingleNameModel("D"), b, 12, 18);
+    int c = addNode(nodes, new SingleNameModel("C"), CaptureNodeStore.NO_PARENT, 30, 40);
+    int a = addNode(nodes, new SingleNameModel("A"), CaptureNodeStore.NO_PARENT, 0, 50);
+    nodes.setParent(b, a);
+    nodes.setParent(c, a);
+    assertEquals(b, nodes.getParent(d));
+
+    CaptureNode built = nodes.build(a);
+    assertNode(built, "A", 0, 50, 0);
+    assertEquals(2, built.getChildCount());
+    assertNode(built.getChildAt(0), "B", 10, 20, 1);
+    assertNode(built.getChildAt(0).getChildAt(0), "D", 12, 18, 2);
+    assertNode(built.getChildAt(1), "C", 30, 40, 1);
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void buildingFailsWhenNodesAreOutsideTheTree() {
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addNode(nodes, new SingleNameModel("A"), CaptureNodeStore.NO_PARENT, 0, 100);
+    addNode(nodes, new SingleNameModel("B"), CaptureNodeStore.NO_PARENT, 10, 40);
+    nodes.build(root);
+  }
+
+  @Test
+  public void viewsWriteToTheStore() {
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addNode(nodes, new SingleNameModel("A"), CaptureNodeStore.NO_PARENT, 0, 100);
+    addNode(nodes, new SingleNameModel("B"), root, 10, 40);
+    CaptureNode built = nodes.build(root);
+
+    built.getChildAt(0).setClockType(ClockType.THREAD);
+    built.getChildAt(0).setFilterType(CaptureNode.FilterType.UNMATCH);
+    built.getChildAt(0).setEndGlobal(45);
+
+    CaptureNode child = built.getChildren().get(0);
+    assertEquals(ClockType.THREAD, child.getClockType());
+    assertEquals(CaptureNode.FilterType.UNMATCH, child.getFilterType());
+    assertTrue(child.isUnmatched());
+    assertEquals(45, child.getEndGlobal());
+    assertEquals(20, child.getEnd());
+    // The root isn't affected.
+    assertEquals(ClockType.GLOBAL, built.getClockType());
+    assertEquals(CaptureNode.FilterType.MATCH, built.getFilterType());
+  }
+
+  @Test
+  public void viewsOfTheSameNodeAreEqual() {
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addNode(nodes, new SingleNameModel("A"), CaptureNodeStore.NO_PARENT, 0, 100);
+    addNode(nodes, new SingleNameModel("B"), root, 10, 40);
+    addNode(nodes, new SingleNameModel("C"), root, 50, 90);
+    CaptureNode built = nodes.build(root);
+
+    // Views are created on demand, so they are equal without being the same object.
+    CaptureNode child = built.getChildAt(0);
+    assertEquals(child, built.getChildren().get(0));
+    assertEquals(child.hashCode(), built.getChildren().get(0).hashCode());
+    assertEquals(built, child.getParent());
+    assertNotEquals(child, built.getChildAt(1));
+  }
+
+  @Test
+  public void deepTreesAreBuilt() {
+    // Beyond the initial capacity of the builder, and deep enough to overflow the stack if traversed recursively.
+    CaptureNodeStore.Builder nodes = new CaptureNodeStore.Builder();
+    int root = addNode(nodes, new SingleNameModel("A"), CaptureNodeStore.NO_PARENT, 0, 100000);
+    int node = root;
+    for (int i = 1; i < 100000; i++) {
+      node = addNode(nodes, new SingleNameModel("A"), node, i, 100000);
+    }
+    CaptureNode built = nodes.build(root);
+
+    CaptureNode leaf = built;
+    while (leaf.getChildCount() > 0) {
+      leaf = leaf.getChildAt(0);
+    }
+    assertEquals(99999, leaf.getDepth());
+    assertEquals(99999, leaf.getStartGlobal());
+  }
+
+  private static int addNode(@NotNull CaptureNodeStore.Builder nodes, @NotNull CaptureNodeModel model, int parent, long start, long end) {
+    int node = nodes.add(model, parent);
+    nodes.setStartGlobal(node, start);
+    nodes.setEndGlobal(node, end);
+    // Thread time is half of the global time in these trees.
+    nodes.setStartThread(node, start / 2);
+    nodes.setEndThread(node, end / 2);
+    return node;
+  }
+
+  private static void assertNode(@NotNull CaptureNode node, @NotNull String id, long start, long end, int depth) {
+    assertEquals(id, node.getData().getId());
+    assertEquals(start, node.getStartGlobal());
+    assertEquals(end, node.getEndGlobal());
+    assertEquals(start / 2, node.getStartThread());
+    assertEquals(end / 2, node.getEndThread());
+    assertEquals(depth, node.getDepth());
+    assertEquals(ClockType.GLOBAL, node.getClockType());
+    assertEquals(CaptureNode.FilterType.MATCH, node.getFilterType());
+  }
+
+  private static int countNodes(@NotNull CaptureNode node) {
+    int count = 1;
+    for (CaptureNode child : node.getChildren()) {
+      count += countNodes(child);
+    }
+    return count;
+  }
+}
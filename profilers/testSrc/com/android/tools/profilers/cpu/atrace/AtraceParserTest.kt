@@ -23,8 +23,10 @@ import com.android.tools.profilers.cpu.CpuThreadInfo
 import com.android.tools.profilers.cpu.atrace.AtraceFrameFilterConfig.APP_MAIN_THREAD_FRAME_ID_MPLUS
 import com.google.common.collect.Iterables
 import com.google.common.truth.Truth.assertThat
+import com.intellij.openapi.util.io.FileUtil
 import org.junit.Before
 import org.junit.Test
+import java.io.File
 import java.util.concurrent.TimeUnit
 
 class AtraceParserTest {
@@ -221,6 +223,63 @@ class AtraceParserTest {
     assertThat(parser.isMissingData).isTrue()
   }
 
+  @Test
+  fun streamingImportMatchesFullImportForSelectedProcess() {
+    val streamingParser = AtraceParser(TEST_PID, true)
+    streamingParser.parse(CpuProfilerTestUtils.getTraceFile("atrace.ctrace"), 0)
+
+    assertThat(streamingParser.range.min).isWithin(DELTA).of(EXPECTED_MIN_RANGE)
+    assertThat(streamingParser.range.max).isWithin(DELTA).of(EXPECTED_MAX_RANGE)
+    assertThat(streamingParser.captureTrees).hasSize(myParser.captureTrees.size)
+    val mainThread = Iterables.find(streamingParser.captureTrees.keys, { key -> key?.id == TEST_PID })
+    assertThat(streamingParser.captureTrees[mainThread]!!.childCount).isEqualTo(EXPECTED_CHILD_COUNT)
+    assertThat(streamingParser.threadStateDataSeries).hasSize(THREAD_STATE_SERIES_SIZE)
+
+    // CPU tracks hold every process and are sorted by time.
+    val cpuData = streamingParser.cpuThreadSliceInfoStates
+    assertThat(cpuData).hasSize(4)
+    for (series in cpuData.values) {
+      assertThat(series).isNotEmpty()
+      assertThat(series.map { it.x }).isOrdered()
+      assertThat(series.last().value).isEqualTo(CpuThreadSliceInfo.NULL_THREAD)
+    }
+    assertThat(cpuData.values.flatten().map { it.value.processId }.distinct().size).isGreaterThan(1)
+
+    for (data in streamingParser.cpuUtilizationSeries) {
+      assertThat(data.value).isAtLeast(0)
+      assertThat(data.value).isAtMost(100)
+    }
+  }
+
+  @Test
+  fun disposingStreamedCaptureDeletesSpilledFiles() {
+    val tempDir = File(FileUtil.getTempDirectory())
+    val spilledFiles = { tempDir.listFiles { file -> file.name.startsWith("atrace_cpu_") }.orEmpty().toSet() }
+    val filesBefore = spilledFiles()
+    val capture = AtraceParser(TEST_PID, true).parse(CpuProfilerTestUtils.getTraceFile("atrace.ctrace"), 0)
+    assertThat(spilledFiles() - filesBefore).isNotEmpty()
+
+    capture.dispose()
+    assertThat(spilledFiles() - filesBefore).isEmpty()
+  }
+
+  @Test
+  fun importedCaptureListsProcessesWithoutImportWhenStreamed() {
+    val traceFile = CpuProfilerTestUtils.getTraceFile("atrace.ctrace")
+    val parser = AtraceParser(traceFile, true)
+    val processes = parser.getProcessList("")
+    assertThat(processes[0].processName).isEqualTo("system_server")
+    assertThat(processes[1].processName).isEqualTo("splayingbitmaps")
+    assertThat(processes.last().processName).isEqualTo("<1404>")
+    assertThat(parser.getProcessList(".gms.persistent")[0].processName).isEqualTo(".gms.persistent")
+
+    parser.setSelectProcess(processes.first { it.id == TEST_PID })
+    val capture = parser.parse(traceFile, 0)
+    assertThat(capture.mainThreadId).isEqualTo(TEST_PID)
+    assertThat(parser.captureTrees).hasSize(myParser.captureTrees.size)
+    capture.dispose()
+  }
+
   companion object {
     private val DELTA = .00000001
 
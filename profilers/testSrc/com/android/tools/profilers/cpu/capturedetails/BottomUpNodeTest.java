@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
@@ -79,13 +80,13 @@ public class BottomUpNodeTest {
     );
 
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 20);
-    CaptureNode childA = newNode("A", 0, 10);
+    DefaultCaptureNode root = newNode("main", 0, 20);
+    DefaultCaptureNode childA = newNode("A", 0, 10);
     root.addChild(childA);
     root.addChild(newNode("B", 15, 20));
 
     childA.addChild(newNode("B", 2, 7));
-    childA.getChildren().get(0).addChild(newNode("C", 3, 4));
+    childA.getChildAt(0).addChild(newNode("C", 3, 4));
 
     traverseAndCheck(root, expectedNodes);
   }
@@ -119,7 +120,7 @@ public class BottomUpNodeTest {
       new ExpectedNode("main", 2.0, 0.0)
     );
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 20);
+    DefaultCaptureNode root = newNode("main", 0, 20);
     addChainSubtree(root, newNode("A", 0, 15), newNode("B", 3, 13),
                     newNode("B", 5, 10), newNode("B", 5, 7));
     traverseAndCheck(root, expectedNodes);
@@ -163,7 +164,7 @@ public class BottomUpNodeTest {
     );
 
     // Construct the tree
-    CaptureNode root = newNode("main", 0, 30);
+    DefaultCaptureNode root = newNode("main", 0, 30);
     addChainSubtree(root, newNode("A", 5, 25), newNode("B", 5, 20),
                     newNode("A", 10, 20), newNode("B", 15, 16));
 
@@ -223,7 +224,7 @@ public class BottomUpNodeTest {
       new ExpectedNode("main", 10.0, 5.0)
     );
 
-    CaptureNode root = newNode("main", 0, 40);
+    DefaultCaptureNode root = newNode("main", 0, 40);
     addChainSubtree(root, newNode("A", 0, 25), newNode("B", 0, 20),
                     newNode("C", 5, 15));
     addChainSubtree(root, newNode("D", 30, 40), newNode("C", 30, 35),
@@ -245,13 +246,13 @@ public class BottomUpNodeTest {
    */
   @Test
   public void testPartialRangeWithMixedTwoMethods() {
-    CaptureNode root = newNode("main", 0, 100);
+    DefaultCaptureNode root = newNode("main", 0, 100);
 
     addChainSubtree(root, newNode("A", 0, 100), newNode("A", 0, 40),
                     newNode("A", 0, 20));
-    addChainSubtree(root.getChildren().get(0), newNode("B", 45, 100), newNode("A", 50, 70),
+    addChainSubtree(root.getChildAt(0), newNode("B", 45, 100), newNode("A", 50, 70),
                     newNode("B", 55, 65));
-    addChainSubtree(root.getChildren().get(0), newNode("B", 21, 40),
+    addChainSubtree(root.getChildAt(0), newNode("B", 21, 40),
                     newNode("A", 25, 28));
 
     BottomUpNode node = new BottomUpNode(root);
@@ -283,7 +284,7 @@ public class BottomUpNodeTest {
    */
   @Test
   public void testWithUnmatchedNodes() {
-    CaptureNode root = newNode("main", 0, 100);
+    DefaultCaptureNode root = newNode("main", 0, 100);
     addChildren(root, newNode("A", 0, 50, true),
                           newNode("A", 51, 100, false));
     addChildren(root.getChildAt(0), newNode("B", 0, 50, true));
@@ -331,15 +332,15 @@ public class BottomUpNodeTest {
     checkTraverseOrder(expectedNodes, traverseOrder);
   }
 
-  private static void addChildren(CaptureNode node, CaptureNode... children) {
+  private static void addChildren(DefaultCaptureNode node, DefaultCaptureNode... children) {
     for (int i = 0; i < children.length; ++i) {
       node.addChild(children[i]);
     }
   }
 
-  private static void addChainSubtree(CaptureNode root, CaptureNode... chainNodes) {
-    CaptureNode last = root;
-    for (CaptureNode node : chainNodes) {
+  private static void addChainSubtree(DefaultCaptureNode root, DefaultCaptureNode... chainNodes) {
+    DefaultCaptureNode last = root;
+    for (DefaultCaptureNode node : chainNodes) {
       last.addChild(node);
       last = node;
     }
@@ -364,8 +365,8 @@ public class BottomUpNodeTest {
     }
   }
 
-  private static CaptureNode newNode(String method, long start, long end, boolean unmatched) {
-    CaptureNode node = new CaptureNode(new SingleNameModel(method));
+  private static DefaultCaptureNode newNode(String method, long start, long end, boolean unmatched) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new SingleNameModel(method));
     node.setStartGlobal(start);
     node.setEndGlobal(end);
     node.setStartThread(start);
@@ -375,23 +376,23 @@ public class BottomUpNodeTest {
   }
 
   @NotNull
-  private static CaptureNode newNode(String method, long start, long end) {
+  private static DefaultCaptureNode newNode(String method, long start, long end) {
     return newNode(method, start, end, false);
   }
 
   @NotNull
   public static CaptureNode createComplexTree() {
-    CaptureNode root = newNode("main", 0, 40);
-    CaptureNode childA = newNode("A", 0, 15);
-    CaptureNode childC = newNode("C", 20, 30);
-    CaptureNode childB = newNode("B", 35, 40);
+    DefaultCaptureNode root = newNode("main", 0, 40);
+    DefaultCaptureNode childA = newNode("A", 0, 15);
+    DefaultCaptureNode childC = newNode("C", 20, 30);
+    DefaultCaptureNode childB = newNode("B", 35, 40);
 
     root.addChild(childA);
     root.addChild(childC);
     root.addChild(childB);
     childA.addChild(newNode("B", 5, 10));
     childC.addChild(newNode("A", 20, 25));
-    childC.getChildren().get(0).addChild(newNode("B", 20, 25));
+    childC.getChildAt(0).addChild(newNode("B", 20, 25));
     return root;
   }
 
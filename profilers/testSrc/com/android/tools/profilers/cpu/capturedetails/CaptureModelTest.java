@@ -81,7 +81,7 @@ public class CaptureModelTest {
    *        -> otherPackage.method4 [860..900]
    */
   private static CaptureNode createFilterTestTree() {
-    CaptureNode root = createNode("mainPackage.main", 0, 1000);
+    DefaultCaptureNode root = createNode("mainPackage.main", 0, 1000);
     root.addChild(createNode("otherPackage.method1", 0, 500));
     root.addChild(createNode("myPackage.method1", 600, 700));
     root.addChild(createNode("otherPackage.method2", 800, 1000));
@@ -92,7 +92,7 @@ public class CaptureModelTest {
     root.getChildAt(2).addChild(createNode("otherPackage.method3", 800, 850));
     root.getChildAt(2).addChild(createNode("otherPackage.method4", 860, 900));
 
-    CaptureNode first = root.getFirstChild();
+    DefaultCaptureNode first = root.getFirstChild();
     first.addChild(createNode("myPackage.method2", 0, 200));
     first.addChild(createNode("otherPackage.method3", 300, 500));
 
@@ -235,13 +235,13 @@ public class CaptureModelTest {
     }
   }
 
-  private static CaptureNode createNode(String fullMethodName, long start, long end) {
+  private static DefaultCaptureNode createNode(String fullMethodName, long start, long end) {
     int index = fullMethodName.lastIndexOf('.');
     assert index != -1;
     String className = fullMethodName.substring(0, index);
     String methodName = fullMethodName.substring(index + 1);
 
-    CaptureNode node = new CaptureNode(new JavaMethodModel(methodName, className));
+    DefaultCaptureNode node = new DefaultCaptureNode(new JavaMethodModel(methodName, className));
     node.setClockType(ClockType.GLOBAL);
     node.setStartGlobal(start);
     node.setEndGlobal(end);
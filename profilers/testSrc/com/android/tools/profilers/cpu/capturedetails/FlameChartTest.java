@@ -18,6 +18,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 import com.android.tools.adtui.model.AspectObserver;
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Test;
@@ -44,13 +45,13 @@ public class FlameChartTest {
    */
   @Test
   public void testFlameChart() {
-    CaptureNode main = newNode("main", 0, 71);
+    DefaultCaptureNode main = newNode("main", 0, 71);
     main.addChild(newNode("A", 0, 20));
     main.addChild(newNode("B", 21, 30));
     main.addChild(newNode("A", 35, 40));
     main.addChild(newNode("C", 45, 71));
-    main.getChildren().get(1).addChild(newNode("C", 21, 25));
-    main.getChildren().get(1).addChild(newNode("C", 25, 30));
+    main.getChildAt(1).addChild(newNode("C", 21, 25));
+    main.getChildAt(1).addChild(newNode("C", 25, 30));
 
     CaptureNode flameChartNode = new CaptureDetails.FlameChart(new Range(0, 71), main).getNode();
     // main [0..71]
@@ -96,7 +97,7 @@ public class FlameChartTest {
    */
   @Test
   public void testNodesWithEqualTotal() {
-    CaptureNode main = newNode("main", 0, 60);
+    DefaultCaptureNode main = newNode("main", 0, 60);
     main.addChild(newNode("A", 0, 10));
     main.addChild(newNode("B", 10, 30));
     main.addChild(newNode("C", 30, 50));
@@ -122,7 +123,7 @@ public class FlameChartTest {
 
   @Test
   public void changingTheSelectionTheNodeShouldBeRecalculated() {
-    CaptureNode main = newNode("main", 0, 100);
+    DefaultCaptureNode main = newNode("main", 0, 100);
     main.addChild(newNode("A", 0, 10));
     main.addChild(newNode("B", 20, 25));
     main.addChild(newNode("C", 50, 100));
@@ -178,8 +179,8 @@ public class FlameChartTest {
   }
 
   @NotNull
-  private static CaptureNode newNode(String method, long start, long end) {
-    CaptureNode node = new CaptureNode(new SingleNameModel(method));
+  private static DefaultCaptureNode newNode(String method, long start, long end) {
+    DefaultCaptureNode node = new DefaultCaptureNode(new SingleNameModel(method));
     node.setStartGlobal(start);
     node.setEndGlobal(end);
 
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2018 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.tools.profilers.cpu.capturedetails;
+
+import com.android.tools.adtui.model.Range;
+import gnu.trove.TLongArrayList;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class IntervalSumIndexTest {
+
+  @Test
+  public void testIntersectionOfOverlappingIntervals() {
+    // [0..10], [2..5] (nested in the first one) and [20..30]
+    IntervalSumIndex index = new IntervalSumIndex(new TLongArrayList(new long[]{0, 2, 20}), new TLongArrayList(new long[]{10, 5, 30}));
+    assertEquals(3, index.size());
+    assertEquals(23, index.getIntersectionLength(new Range(-100, 100)), 0);
+    assertEquals(5, index.getIntersectionLength(new Range(1, 4)), 0);
+    assertEquals(0, index.getIntersectionLength(new Range(10, 20)), 0);
+    assertEquals(7, index.getIntersectionLength(new Range(8, 25)), 0);
+    assertEquals(0, index.getIntersectionLength(new Range(40, 50)), 0);
+  }
+
+  @Test
+  public void testIntersects() {
+    IntervalSumIndex index = new IntervalSumIndex(new TLongArrayList(new long[]{0, 20}), new TLongArrayList(new long[]{10, 30}));
+    assertTrue(index.intersects(new Range(5, 6)));
+    assertTrue(index.intersects(new Range(9, 21)));
+    assertFalse(index.intersects(new Range(10, 20)));
+    assertFalse(index.intersects(new Range(30, 40)));
+    assertFalse(index.intersects(new Range(-10, 0)));
+  }
+
+  @Test
+  public void testMatchesIntersectingEveryInterval() {
+    Random random = new Random(42);
+    int count = 1000;
+    long[] starts = new long[count];
+    long[] ends = new long[count];
+    for (int i = 0; i < count; i++) {
+      starts[i] = random.nextInt(10000);
+      ends[i] = starts[i] + random.nextInt(500);
+    }
+    IntervalSumIndex index = new IntervalSumIndex(new TLongArrayList(starts), new TLongArrayList(ends));
+
+    for (int query = 0; query < 200; query++) {
+      double min = random.nextInt(11000) - 500 + random.nextDouble();
+      Range range = new Range(min, min + random.nextInt(3000));
+      double expected = 0;
+      boolean expectedIntersects = false;
+      for (int i = 0; i < count; i++) {
+        Range intersection = range.getIntersection(new Range(starts[i], ends[i]));
+        expected += intersection.isEmpty() ? 0 : intersection.getLength();
+        expectedIntersects |= starts[i] < range.getMax() && range.getMin() < ends[i];
+      }
+      assertEquals(expected, index.getIntersectionLength(range), 1e-6);
+      assertEquals(expectedIntersects, index.intersects(range));
+    }
+  }
+}
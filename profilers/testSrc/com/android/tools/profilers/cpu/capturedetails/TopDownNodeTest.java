@@ -17,6 +17,7 @@ package com.android.tools.profilers.cpu.capturedetails;
 
 import com.android.tools.adtui.model.Range;
 import com.android.tools.profilers.cpu.CaptureNode;
+import com.android.tools.profilers.cpu.DefaultCaptureNode;
 import com.android.tools.profilers.cpu.nodemodel.JavaMethodModel;
 import com.android.tools.profilers.cpu.nodemodel.CaptureNodeModel;
 import com.android.tools.profilers.cpu.nodemodel.SingleNameModel;
@@ -93,7 +94,7 @@ public class TopDownNodeTest {
 
   @Test
   public void testTreeTime() {
-    CaptureNode root = newNode("A", 0, 10);
+    DefaultCaptureNode root = newNode("A", 0, 10);
     root.addChild(newNode("D", 3, 5));
     root.addChild(newNode("E", 7, 9));
 
@@ -125,7 +126,7 @@ public class TopDownNodeTest {
 
   @Test
   public void testThreadTime() {
-    CaptureNode root = newNode("A", 0, 10);
+    DefaultCaptureNode root = newNode("A", 0, 10);
     root.addChild(newNode("D", 3, 5));
     root.addChild(newNode("E", 7, 9));
 
@@ -157,9 +158,9 @@ public class TopDownNodeTest {
    */
   @NotNull
   static CaptureNode createTree() {
-    CaptureNode root = newNode("A", 0, 30);
+    DefaultCaptureNode root = newNode("A", 0, 30);
 
-    CaptureNode node = newNode("B", 1, 9);
+    DefaultCaptureNode node = newNode("B", 1, 9);
     node.addChild(newNode("D", 3, 5));
     node.addChild(newNode("E", 7, 9));
     root.addChild(node);
@@ -175,12 +176,12 @@ public class TopDownNodeTest {
     return root;
   }
 
-  static CaptureNode newNode(String method, long start, long end) {
+  static DefaultCaptureNode newNode(String method, long start, long end) {
     return newNode(new SingleNameModel(method), start, end);
   }
 
-  static CaptureNode newNode(CaptureNodeModel method, long start, long end) {
-    CaptureNode node = new CaptureNode(method);
+  static DefaultCaptureNode newNode(CaptureNodeModel method, long start, long end) {
+    DefaultCaptureNode node = new DefaultCaptureNode(method);
     node.setStartGlobal(start);
     node.setEndGlobal(end);
     node.setStartThread(start);
@@ -27,7 +27,12 @@ import org.junit.Test;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 
 import static com.android.tools.profilers.cpu.CpuProfilerTestUtils.traceFileToByteString;
@@ -176,6 +181,40 @@ public class SimpleperfTraceParserTest {
     assertEquals(expected.getMax(), myParser.getRange().getMax(), 0);
   }
 
+  @Test
+  public void parallelTreesMatchSequentialTrees() throws IOException {
+    SimpleperfTraceParser sequentialParser = new SimpleperfTraceParser(new ForkJoinPool(1));
+    sequentialParser.parse(myTraceFile, 0);
+    SimpleperfTraceParser parallelParser = new SimpleperfTraceParser(new ForkJoinPool(4));
+    List<Double> progress = Collections.synchronizedList(new ArrayList<>());
+    parallelParser.setProgressListener(progress::add);
+    parallelParser.parse(myTraceFile, 0);
+
+    Map<CpuThreadInfo, CaptureNode> expected = sequentialParser.getCaptureTrees();
+    Map<Integer, CaptureNode> actual = new HashMap<>();
+    parallelParser.getCaptureTrees().forEach((thread, tree) -> actual.put(thread.getId(), tree));
+    assertEquals(expected.size(), actual.size());
+    for (Map.Entry<CpuThreadInfo, CaptureNode> entry : expected.entrySet()) {
+      CaptureNode actualTree = actual.get(entry.getKey().getId());
+      assertNotNull(actualTree);
+      assertSameTree(entry.getValue(), actualTree);
+    }
+
+    assertFalse(progress.isEmpty());
+    assertEquals(1, progress.get(progress.size() - 1), 0);
+    assertEquals(1, Collections.max(progress), 0);
+  }
+
+  private static void assertSameTree(CaptureNode expected, CaptureNode actual) {
+    assertEquals(expected.getData().getFullName(), actual.getData().getFullName());
+    assertEquals(expected.getStartGlobal(), actual.getStartGlobal());
+    assertEquals(expected.getEndGlobal(), actual.getEndGlobal());
+    assertEquals(expected.getChildCount(), actual.getChildCount());
+    for (int i = 0; i < expected.getChildCount(); i++) {
+      assertSameTree(expected.getChildAt(i), actual.getChildAt(i));
+    }
+  }
+
   /**
    * Checks that a {@link CaptureNode} tree starts with "__start_thread -> __pthread_start", then verifies the node just after then.
    */